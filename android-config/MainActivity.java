@@ -8,6 +8,15 @@ import com.getcapacitor.BridgeActivity;
 import com.gestore.spese.NotificationListenerPlugin;
 import com.gestore.spese.SMSReaderPlugin;
 import com.gestore.spese.AppUpdatePlugin;
+import com.gestore.spese.BankSyncPlugin;
+import com.gestore.spese.CategorizerPlugin;
+import com.gestore.spese.ReceiptImagePlugin;
+import com.gestore.spese.ExportPlugin;
+import com.gestore.spese.StatementImportPlugin;
+import com.gestore.spese.CloudBackupPlugin;
+import com.gestore.spese.DashboardAggregatesPlugin;
+import com.gestore.spese.SearchPlugin;
+import com.gestore.spese.RawEventArchivePlugin;
 
 public class MainActivity extends BridgeActivity {
     @Override
@@ -17,6 +26,15 @@ public class MainActivity extends BridgeActivity {
         registerPlugin(NotificationListenerPlugin.class);
         registerPlugin(SMSReaderPlugin.class);
         registerPlugin(AppUpdatePlugin.class);
+        registerPlugin(BankSyncPlugin.class);
+        registerPlugin(CategorizerPlugin.class);
+        registerPlugin(ReceiptImagePlugin.class);
+        registerPlugin(ExportPlugin.class);
+        registerPlugin(StatementImportPlugin.class);
+        registerPlugin(CloudBackupPlugin.class);
+        registerPlugin(DashboardAggregatesPlugin.class);
+        registerPlugin(SearchPlugin.class);
+        registerPlugin(RawEventArchivePlugin.class);
         Log.d("MainActivity", "Custom plugins registered");
 
         super.onCreate(savedInstanceState);
@@ -10,6 +10,7 @@ import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.CancellationSignal;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
@@ -43,6 +44,10 @@ public class AppUpdatePlugin extends Plugin {
     static final String KEY_LAST_APK_PATH = "last_apk_path";
     static final String KEY_LAST_FILE_NAME = "last_file_name";
 
+    // Polled every second by the UI: one query at a time, stale polls are dropped quickly
+    private static final PluginTaskExecutor.Limits DOWNLOAD_PROGRESS_LIMITS =
+        new PluginTaskExecutor.Limits("AppUpdate", "getDownloadProgress", 1, 2, 3000);
+
     private Handler handler;
     private Runnable pollRunnable;
     private long currentDownloadId = -1;
@@ -386,44 +391,60 @@ public class AppUpdatePlugin extends Plugin {
             return;
         }
 
-        try {
-            DownloadManager downloadManager = (DownloadManager) getContext().getSystemService(Context.DOWNLOAD_SERVICE);
-            if (downloadManager == null) {
-                call.reject("DownloadManager not available");
-                return;
-            }
+        // ✅ DownloadManager query off the plugin thread, with deadline
+        final long downloadId = id;
+        PluginTaskExecutor.submit(call, DOWNLOAD_PROGRESS_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                DownloadManager downloadManager = (DownloadManager) getContext().getSystemService(Context.DOWNLOAD_SERVICE);
+                if (downloadManager == null) {
+                    throw new PluginTaskExecutor.Rejection("DownloadManager not available");
+                }
 
-            DownloadManager.Query query = new DownloadManager.Query();
-            query.setFilterById(id);
-            Cursor cursor = downloadManager.query(query);
+                DownloadManager.Query query = new DownloadManager.Query();
+                query.setFilterById(downloadId);
+                Cursor cursor = downloadManager.query(query);
+                if (cursor == null) {
+                    throw new PluginTaskExecutor.Rejection("Download not found");
+                }
 
-            if (cursor != null && cursor.moveToFirst()) {
-                int bytesDownloadedIndex = cursor.getColumnIndex(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR);
-                int bytesTotalIndex = cursor.getColumnIndex(DownloadManager.COLUMN_TOTAL_SIZE_BYTES);
-                int statusIndex = cursor.getColumnIndex(DownloadManager.COLUMN_STATUS);
+                try {
+                    if (!cursor.moveToFirst()) {
+                        throw new PluginTaskExecutor.Rejection("Download not found");
+                    }
 
-                long bytesDownloaded = cursor.getLong(bytesDownloadedIndex);
-                long bytesTotal = cursor.getLong(bytesTotalIndex);
-                int status = cursor.getInt(statusIndex);
+                    int bytesDownloadedIndex = cursor.getColumnIndex(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR);
+                    int bytesTotalIndex = cursor.getColumnIndex(DownloadManager.COLUMN_TOTAL_SIZE_BYTES);
+                    int statusIndex = cursor.getColumnIndex(DownloadManager.COLUMN_STATUS);
 
-                int progress = bytesTotal > 0 ? (int) ((bytesDownloaded * 100) / bytesTotal) : 0;
-                if (status == DownloadManager.STATUS_SUCCESSFUL) progress = 100;
+                    long bytesDownloaded = cursor.getLong(bytesDownloadedIndex);
+                    long bytesTotal = cursor.getLong(bytesTotalIndex);
+                    int status = cursor.getInt(statusIndex);
 
-                JSObject ret = new JSObject();
-                ret.put("progress", progress);
-                ret.put("bytesDownloaded", bytesDownloaded);
-                ret.put("bytesTotal", bytesTotal);
-                ret.put("status", getStatusString(status));
+                    int progress = bytesTotal > 0 ? (int) ((bytesDownloaded * 100) / bytesTotal) : 0;
+                    if (status == DownloadManager.STATUS_SUCCESSFUL) progress = 100;
 
-                cursor.close();
-                call.resolve(ret);
-            } else {
-                call.reject("Download not found");
+                    JSObject ret = new JSObject();
+                    ret.put("progress", progress);
+                    ret.put("bytesDownloaded", bytesDownloaded);
+                    ret.put("bytesTotal", bytesTotal);
+                    ret.put("status", getStatusString(status));
+                    return ret;
+                } finally {
+                    cursor.close();
+                }
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting download progress", e);
-            call.reject("Failed to get progress: " + e.getMessage());
-        }
+        });
+    }
+
+    /**
+     * ✅ NEW: Cancel a call started with the "requestId" option
+     */
+    @PluginMethod
+    public void cancelRequest(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("cancelled", PluginTaskExecutor.cancel(call.getString("requestId")));
+        call.resolve(result);
     }
 
     private String getStatusString(int status) {
@@ -446,6 +467,7 @@ public class AppUpdatePlugin extends Plugin {
     @Override
     protected void handleOnDestroy() {
         stopPolling();
+        PluginTaskExecutor.cancelAll("AppUpdate");
         super.handleOnDestroy();
     }
 }
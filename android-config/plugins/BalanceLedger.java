@@ -0,0 +1,238 @@
+package com.gestore.spese;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Running balances of the local accounts.
+ *
+ * Each account keeps its current balance (updated by every insert / edit / delete, so reading it
+ * is O(1)) and monthly checkpoints: a Fenwick tree over the month totals, whose prefix sums are
+ * the balances at the end of each month, plus the day totals of every month. The balance at the
+ * end of any day is a checkpoint (O(log months)) plus at most 31 day totals.
+ *
+ * Transactions are kept by id with their contribution, applied with the same rules as the JS
+ * balance: expense -, income +, adjustment +, transfer - on the source and + on the destination.
+ * Transactions without a valid date count in the current balance but not at a point in time.
+ */
+public final class BalanceLedger {
+
+    private static final int MIN_MONTHS = 64;
+    // ~340 years of checkpoints; months out of the window are scanned at every query
+    private static final int MAX_MONTHS = 1 << 12;
+
+    private static final class Entry {
+        final String account;
+        final long delta;
+        final String toAccount; // transfers only
+        final long toDelta;
+        final int day; // epoch day, or UNDATED
+
+        Entry(String account, long delta, String toAccount, long toDelta, int day) {
+            this.account = account;
+            this.delta = delta;
+            this.toAccount = toAccount;
+            this.toDelta = toDelta;
+            this.day = day;
+        }
+    }
+
+    private static final int UNDATED = Integer.MIN_VALUE;
+
+    private static final class Account {
+        long total; // current balance in cents, undated transactions included
+        int baseMonth; // month index (year * 12 + month - 1) of bucket 0
+        int months; // 0 until the first dated transaction
+        long[] checkpoints = new long[1]; // Fenwick tree over the month totals [months + 1]
+        long[][] days = new long[0][]; // per month the day totals [31], allocated on first use
+        final List<long[]> outliers = new ArrayList<>(); // {epoch day, cents} out of the window
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Account> accounts = new HashMap<>();
+
+    public synchronized void clear() {
+        entries.clear();
+        accounts.clear();
+    }
+
+    /**
+     * Insert or replace a transaction (null dateDay: undated)
+     */
+    public synchronized void put(String id, String type, double amount, String accountId, String toAccountId, Integer dateDay) {
+        remove(id);
+        if (accountId == null) return;
+
+        long cents = Double.isNaN(amount) || Double.isInfinite(amount) ? 0 : Math.round(amount * 100);
+        long delta;
+        long toDelta = 0;
+        switch (type) {
+            case "expense":
+                delta = -cents;
+                break;
+            case "income":
+            case "adjustment":
+                delta = cents;
+                break;
+            case "transfer":
+                delta = -cents;
+                toDelta = toAccountId != null ? cents : 0;
+                break;
+            default:
+                return;
+        }
+
+        Entry entry = new Entry(accountId, delta, toDelta != 0 ? toAccountId : null, toDelta,
+            dateDay != null ? dateDay : UNDATED);
+        entries.put(id, entry);
+        apply(entry, 1);
+    }
+
+    public synchronized void remove(String id) {
+        Entry old = entries.remove(id);
+        if (old != null) apply(old, -1);
+    }
+
+    /**
+     * Current balance of the account, in cents
+     */
+    public synchronized long balance(String accountId) {
+        Account account = accounts.get(accountId);
+        return account != null ? account.total : 0;
+    }
+
+    /**
+     * Balance at the end of the epoch day, in cents (undated transactions excluded)
+     */
+    public synchronized long balanceAt(String accountId, int day) {
+        Account account = accounts.get(accountId);
+        if (account == null) return 0;
+
+        long sum = 0;
+        for (long[] outlier : account.outliers) {
+            if (outlier[0] <= day) sum += outlier[1];
+        }
+        if (account.months == 0) return sum;
+
+        int[] civil = civilFromDays(day);
+        int bucket = monthIndex(civil) - account.baseMonth;
+        if (bucket < 0) return sum;
+        if (bucket >= account.months) return sum + prefix(account, account.months - 1);
+
+        // Checkpoint at the end of the previous month, then the days of this one
+        if (bucket > 0) sum += prefix(account, bucket - 1);
+        long[] days = account.days[bucket];
+        if (days != null) {
+            for (int d = 0; d < civil[2]; d++) sum += days[d];
+        }
+        return sum;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void apply(Entry entry, int sign) {
+        add(entry.account, entry.day, sign * entry.delta);
+        if (entry.toAccount != null) add(entry.toAccount, entry.day, sign * entry.toDelta);
+    }
+
+    private void add(String accountId, int day, long delta) {
+        if (delta == 0) return;
+        Account account = accounts.get(accountId);
+        if (account == null) {
+            account = new Account();
+            accounts.put(accountId, account);
+        }
+        account.total += delta;
+        if (day == UNDATED) return;
+
+        int[] civil = civilFromDays(day);
+        int month = monthIndex(civil);
+        if (!ensureMonth(account, month)) {
+            addOutlier(account, day, delta);
+            return;
+        }
+
+        int bucket = month - account.baseMonth;
+        if (account.days[bucket] == null) account.days[bucket] = new long[31];
+        account.days[bucket][civil[2] - 1] += delta;
+        for (int i = bucket + 1; i <= account.months; i += i & -i) account.checkpoints[i] += delta;
+    }
+
+    private static void addOutlier(Account account, int day, long delta) {
+        for (int i = 0; i < account.outliers.size(); i++) {
+            long[] outlier = account.outliers.get(i);
+            if (outlier[0] != day) continue;
+            outlier[1] += delta;
+            if (outlier[1] == 0) account.outliers.remove(i);
+            return;
+        }
+        account.outliers.add(new long[]{day, delta});
+    }
+
+    /**
+     * Sum of the month totals [0, bucket] = balance at the end of that month (dated only)
+     */
+    private static long prefix(Account account, int bucket) {
+        long sum = 0;
+        for (int i = bucket + 1; i > 0; i -= i & -i) sum += account.checkpoints[i];
+        return sum;
+    }
+
+    /**
+     * Grow the month window (doubling) to include the month; false if over MAX_MONTHS
+     */
+    private static boolean ensureMonth(Account account, int month) {
+        if (account.months > 0 && month >= account.baseMonth && month < account.baseMonth + account.months) return true;
+
+        int from = account.months == 0 ? month : Math.min(account.baseMonth, month);
+        int to = account.months == 0 ? month : Math.max(account.baseMonth + account.months - 1, month);
+        int months = Math.max(account.months, MIN_MONTHS);
+        while (months < to - from + 1) months *= 2;
+        if (months > MAX_MONTHS) return false;
+        int base = from - (months - (to - from + 1)) / 2;
+
+        long[][] days = new long[months][];
+        if (account.months > 0) System.arraycopy(account.days, 0, days, account.baseMonth - base, account.months);
+
+        // Rebuild the checkpoints from the day totals in O(months)
+        long[] checkpoints = new long[months + 1];
+        for (int m = 0; m < months; m++) {
+            if (days[m] == null) continue;
+            for (long value : days[m]) checkpoints[m + 1] += value;
+        }
+        for (int i = 1; i <= months; i++) {
+            int parent = i + (i & -i);
+            if (parent <= months) checkpoints[parent] += checkpoints[i];
+        }
+
+        account.baseMonth = base;
+        account.months = months;
+        account.days = days;
+        account.checkpoints = checkpoints;
+        return true;
+    }
+
+    private static int monthIndex(int[] civil) {
+        return civil[0] * 12 + civil[1] - 1;
+    }
+
+    /**
+     * {year, month, day} of an epoch day (inverse of DashboardAggregates.parseDay)
+     */
+    static int[] civilFromDays(int epochDay) {
+        int z = epochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return new int[]{year, month, day};
+    }
+}
@@ -0,0 +1,163 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.InputStream;
+import java.net.URLEncoder;
+
+/**
+ * Enable Banking endpoints on top of BankHttpClient, shared by BankSyncPlugin and BankSyncEngine.
+ */
+public final class BankApi {
+
+    private static final String TAG = "BankApi";
+
+    // Safety net against a server that keeps returning a continuation key
+    private static final int MAX_CONTINUATIONS = 50;
+
+    private BankApi() {
+    }
+
+    /**
+     * Outcome of a full transactions download (all continuation keys followed)
+     */
+    public static final class TransactionsResult {
+        public int status = 200;
+        public int count = 0;
+        public int responses = 0;
+        public int cachedResponses = 0;
+        // Stopped at MAX_CONTINUATIONS with a continuation key left: older/newer pages are missing
+        public boolean truncated = false;
+    }
+
+    /**
+     * GET/POST/... on the API, decoded as {status, ok, data | text, fromCache}
+     */
+    public static JSObject request(Context context, String path, String token, String method, String jsonBody,
+                                   boolean cacheable, CancellationSignal signal) throws Exception {
+        String url = BankSyncPlugin.getBaseUrl(context) + path;
+        return BankHttpClient.execute(context, url, token, method, jsonBody, cacheable, signal,
+            new BankHttpClient.BodyHandler<JSObject>() {
+                @Override
+                public JSObject handle(int status, InputStream in, boolean fromCache) throws Exception {
+                    return toResponse(status, in, fromCache);
+                }
+            });
+    }
+
+    /**
+     * All transactions of an account, pages handed to the listener while downloading.
+     * status=both is retried without status if the bank rejects it (e.g. BBVA); a 401 stops
+     * the download and is reported in the result, any other failure throws a Rejection.
+     * Hitting MAX_CONTINUATIONS sets `truncated`: callers must not treat the window as complete.
+     */
+    public static TransactionsResult fetchTransactions(Context context, String accountUid, String token,
+                                                       String status, String dateFrom, int pageSize,
+                                                       CancellationSignal signal,
+                                                       BankJsonStream.PageListener listener) throws Exception {
+        TransactionsResult result = new TransactionsResult();
+        String statusFilter = status;
+        String continuationKey = null;
+
+        do {
+            TransactionsResponse response = fetchTransactionsPage(context, accountUid, token, statusFilter,
+                dateFrom, continuationKey, pageSize, signal, listener);
+
+            if (!response.ok && response.status != 401 && statusFilter != null && continuationKey == null) {
+                Log.w(TAG, "⚠️ status=" + statusFilter + " failed with " + response.status + ", retrying without status");
+                statusFilter = null;
+                response = fetchTransactionsPage(context, accountUid, token, null, dateFrom, null, pageSize, signal, listener);
+            }
+
+            result.status = response.status;
+            if (!response.ok) {
+                if (response.status == 401) break;
+                throw new PluginTaskExecutor.Rejection("Failed to fetch transactions (" + response.status + "): " + response.error);
+            }
+
+            result.responses++;
+            if (response.fromCache) result.cachedResponses++;
+            result.count += response.page.count;
+            continuationKey = response.page.continuationKey;
+        } while (continuationKey != null && result.responses < MAX_CONTINUATIONS);
+
+        if (continuationKey != null && result.status != 401) {
+            Log.w(TAG, "⚠️ Stopped after " + MAX_CONTINUATIONS + " responses for " + accountUid + ", download truncated");
+            result.truncated = true;
+        }
+        return result;
+    }
+
+    private static final class TransactionsResponse {
+        int status;
+        boolean ok;
+        boolean fromCache;
+        String error;
+        BankJsonStream.TransactionsPage page;
+    }
+
+    private static TransactionsResponse fetchTransactionsPage(Context context, String accountUid, String token,
+                                                              String statusFilter, String dateFrom,
+                                                              String continuationKey, final int pageSize,
+                                                              final CancellationSignal signal,
+                                                              final BankJsonStream.PageListener listener) throws Exception {
+        StringBuilder url = new StringBuilder(BankSyncPlugin.getBaseUrl(context))
+            .append("/accounts/").append(URLEncoder.encode(accountUid, "UTF-8")).append("/transactions");
+        char sep = '?';
+        if (statusFilter != null) {
+            url.append(sep).append("status=").append(URLEncoder.encode(statusFilter, "UTF-8"));
+            sep = '&';
+        }
+        if (dateFrom != null) {
+            url.append(sep).append("date_from=").append(URLEncoder.encode(dateFrom, "UTF-8"));
+            sep = '&';
+        }
+        if (continuationKey != null) {
+            url.append(sep).append("continuation_key=").append(URLEncoder.encode(continuationKey, "UTF-8"));
+        }
+
+        return BankHttpClient.execute(context, url.toString(), token, "GET", null, true, signal,
+            new BankHttpClient.BodyHandler<TransactionsResponse>() {
+                @Override
+                public TransactionsResponse handle(int status, InputStream in, boolean fromCache) throws Exception {
+                    TransactionsResponse response = new TransactionsResponse();
+                    response.status = status;
+                    response.ok = status >= 200 && status < 300;
+                    response.fromCache = fromCache;
+                    if (response.ok) {
+                        response.page = BankJsonStream.readTransactions(in, pageSize, signal, listener);
+                    } else {
+                        Object error = BankJsonStream.readDocument(in);
+                        response.error = error != null ? error.toString() : "";
+                    }
+                    return response;
+                }
+            });
+    }
+
+    private static JSObject toResponse(int status, InputStream in, boolean fromCache) {
+        JSObject ret = new JSObject();
+        ret.put("status", status);
+        ret.put("ok", status >= 200 && status < 300);
+        ret.put("fromCache", fromCache);
+        try {
+            Object data = BankJsonStream.readDocument(in);
+            if (data instanceof JSONObject || data instanceof JSONArray) {
+                ret.put("data", data);
+            } else if (data != null) {
+                ret.put("text", data.toString());
+            }
+        } catch (Exception e) {
+            // Not JSON (HTML error page, plain text...)
+            ret.put("text", "");
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,256 @@
+package com.gestore.spese;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Periodic bank sync without the WebView (BankSyncJobService, JobScheduler).
+ *
+ * JS configures it after a successful live sync (credentials + linked account UIDs). Each run
+ * signs/reuses the JWT (BankJwt), runs the incremental engine and writes the delta (new and
+ * changed raw transactions + balances) as one batch file in an app-private inbox, then commits
+ * the cursors: the inbox is now the durable copy. At launch JS reads all batches at once,
+ * stores them and acks them.
+ */
+public final class BankBackgroundSync {
+
+    private static final String TAG = "BankBackgroundSync";
+    private static final String PREFS_NAME = "bank_background_sync";
+    private static final String KEY_ACCOUNTS = "accounts";
+    private static final String KEY_INTERVAL_MINUTES = "interval_minutes";
+    private static final String KEY_LAST_RUN = "last_run";
+    private static final String KEY_LAST_ERROR = "last_error";
+
+    private static final String INBOX_DIR = "bank_sync_inbox";
+    static final int JOB_ID = 4201;
+
+    public static final int DEFAULT_INTERVAL_MINUTES = 240;
+    // JobScheduler does not run periodic jobs more often than every 15 minutes
+    private static final int MIN_INTERVAL_MINUTES = 15;
+    // Unread batches kept before runs are skipped (data stays on the bank side, cursors untouched)
+    private static final int MAX_INBOX_BATCHES = 60;
+
+    private static final Object LOCK = new Object();
+
+    private BankBackgroundSync() {
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Save the accounts to sync and (re)schedule the periodic job
+     *
+     * @return true if JobScheduler accepted the job
+     */
+    public static boolean schedule(Context context, JSONArray accountUids, int intervalMinutes, boolean requiresIdle) {
+        int interval = Math.max(MIN_INTERVAL_MINUTES, intervalMinutes);
+        prefs(context).edit()
+            .putString(KEY_ACCOUNTS, accountUids.toString())
+            .putInt(KEY_INTERVAL_MINUTES, interval)
+            .apply();
+
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) return false;
+
+        JobInfo.Builder builder = new JobInfo.Builder(JOB_ID, new ComponentName(context, BankSyncJobService.class))
+            .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+            .setRequiresDeviceIdle(requiresIdle)
+            .setPeriodic(interval * 60L * 1000L)
+            .setPersisted(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setRequiresBatteryNotLow(true);
+        }
+
+        boolean scheduled = scheduler.schedule(builder.build()) == JobScheduler.RESULT_SUCCESS;
+        Log.d(TAG, (scheduled ? "⏰ Scheduled" : "❌ Could not schedule") + " background sync every " + interval
+            + " min for " + accountUids.length() + " accounts");
+        return scheduled;
+    }
+
+    /**
+     * Stop the job and forget credentials and accounts (unread batches stay in the inbox)
+     */
+    public static void cancel(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler != null) scheduler.cancel(JOB_ID);
+        prefs(context).edit().clear().apply();
+        BankJwt.clear(context);
+        Log.d(TAG, "⏹️ Background sync cancelled");
+    }
+
+    /**
+     * One job run. Returns normally when there is nothing to do; throws on failures worth a retry.
+     */
+    public static void run(Context context, CancellationSignal signal) throws Exception {
+        SharedPreferences prefs = prefs(context);
+        JSONArray accounts = new JSONArray(prefs.getString(KEY_ACCOUNTS, "[]"));
+        if (accounts.length() == 0 || !BankJwt.hasCredentials(context)) {
+            Log.d(TAG, "⏭️ Background sync not configured");
+            return;
+        }
+        if (listBatches(context).length >= MAX_INBOX_BATCHES) {
+            Log.w(TAG, "⏭️ Inbox full, waiting for the app to import it");
+            return;
+        }
+
+        List<String> accountUids = new ArrayList<>();
+        for (int i = 0; i < accounts.length(); i++) accountUids.add(accounts.getString(i));
+
+        try {
+            String token = BankJwt.getToken(context);
+            JSObject result = BankSyncEngine.sync(context, token, accountUids, BankSyncEngine.DEFAULT_PARALLELISM, false, signal);
+
+            // Keep only what JS needs: accounts with new/changed transactions or fresh balances
+            JSONArray accountsDelta = result.getJSONArray("accounts");
+            JSArray useful = new JSArray();
+            for (int i = 0; i < accountsDelta.length(); i++) {
+                JSONObject delta = accountsDelta.getJSONObject(i);
+                boolean hasTransactions = delta.getJSONArray("added").length() > 0 || delta.getJSONArray("changed").length() > 0
+                    || delta.getJSONArray("correlated").length() > 0;
+                JSONObject balances = delta.optJSONObject("balances");
+                if (hasTransactions || (balances != null && balances.optBoolean("ok"))) useful.put(delta);
+            }
+
+            String syncId = result.getString("syncId");
+            if (useful.length() > 0) {
+                JSObject batch = new JSObject();
+                batch.put("id", syncId);
+                batch.put("syncedAt", System.currentTimeMillis());
+                batch.put("added", result.getInt("added"));
+                batch.put("changed", result.getInt("changed"));
+                batch.put("accounts", useful);
+                writeBatch(context, syncId, batch);
+            }
+            // The batch is on disk: the cursors can move forward
+            BankSyncEngine.commit(context, syncId);
+
+            prefs.edit().putLong(KEY_LAST_RUN, System.currentTimeMillis()).remove(KEY_LAST_ERROR).apply();
+            Log.d(TAG, "✅ Background sync: " + result.getInt("added") + " new, " + result.getInt("changed") + " changed");
+        } catch (Exception e) {
+            prefs.edit().putString(KEY_LAST_ERROR, e.getMessage()).apply();
+            throw e;
+        }
+    }
+
+    /**
+     * Unread batches, oldest first, plus job state
+     */
+    public static JSObject getInbox(Context context) {
+        JSArray batches = new JSArray();
+        synchronized (LOCK) {
+            for (File file : listBatches(context)) {
+                try {
+                    batches.put(new JSONObject(readFile(file)));
+                } catch (Exception e) {
+                    Log.w(TAG, "⚠️ Dropping unreadable batch " + file.getName());
+                    file.delete();
+                }
+            }
+        }
+
+        SharedPreferences prefs = prefs(context);
+        JSObject ret = new JSObject();
+        ret.put("batches", batches);
+        ret.put("count", batches.length());
+        ret.put("scheduled", prefs.contains(KEY_ACCOUNTS));
+        ret.put("lastRun", prefs.getLong(KEY_LAST_RUN, 0));
+        ret.put("lastError", prefs.getString(KEY_LAST_ERROR, null));
+        return ret;
+    }
+
+    /**
+     * Delete batches stored by JS
+     */
+    public static int ack(Context context, Set<String> ids) {
+        int removed = 0;
+        synchronized (LOCK) {
+            for (String id : ids) {
+                if (id.contains("/")) continue;
+                if (new File(inbox(context), id + ".json").delete()) removed++;
+            }
+        }
+        return removed;
+    }
+
+    private static File inbox(Context context) {
+        File dir = new File(context.getFilesDir(), INBOX_DIR);
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+
+    private static File[] listBatches(Context context) {
+        File[] files = inbox(context).listFiles();
+        if (files == null) return new File[0];
+
+        List<File> batches = new ArrayList<>();
+        for (File f : files) {
+            if (f.getName().endsWith(".json")) batches.add(f);
+        }
+        File[] sorted = batches.toArray(new File[0]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        return sorted;
+    }
+
+    private static void writeBatch(Context context, String id, JSObject batch) throws IOException {
+        synchronized (LOCK) {
+            File temp = new File(inbox(context), id + ".tmp");
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(batch.toString().getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(new File(inbox(context), id + ".json"))) {
+                temp.delete();
+                throw new IOException("Could not publish batch " + id);
+            }
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int off = 0;
+            while (off < data.length) {
+                int n = in.read(data, off, data.length - off);
+                if (n < 0) break;
+                off += n;
+            }
+            return new String(data, 0, off, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
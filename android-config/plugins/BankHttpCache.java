@@ -0,0 +1,185 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * On-disk validator cache for bank API GET responses (app cache dir, evictable by the system).
+ *
+ * Each URL keeps its decoded body plus ETag / Last-Modified. The next request sends
+ * If-None-Match / If-Modified-Since and, on 304, the body is served from here.
+ */
+public final class BankHttpCache {
+
+    private static final String TAG = "BankHttpCache";
+    private static final String DIR_NAME = "bank_http";
+    private static final long MAX_TOTAL_BYTES = 8L * 1024 * 1024;
+
+    private static final Object LOCK = new Object();
+
+    private BankHttpCache() {
+    }
+
+    /**
+     * Stored validators of a URL
+     */
+    public static final class Entry {
+        final String etag;
+        final String lastModified;
+        final File body;
+
+        Entry(String etag, String lastModified, File body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+
+        InputStream open() throws IOException {
+            return new BufferedInputStream(new FileInputStream(body));
+        }
+    }
+
+    private static File dir(Context context) {
+        File dir = new File(context.getCacheDir(), DIR_NAME);
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+
+    public static Entry get(Context context, String url) {
+        synchronized (LOCK) {
+            String key = key(url);
+            File meta = new File(dir(context), key + ".meta");
+            File body = new File(dir(context), key + ".body");
+            if (!meta.exists() || !body.exists()) return null;
+
+            try {
+                JSONObject json = new JSONObject(readSmall(meta));
+                // Touch for LRU eviction
+                body.setLastModified(System.currentTimeMillis());
+                return new Entry(json.optString("etag", null), json.optString("lastModified", null), body);
+            } catch (Exception e) {
+                Log.w(TAG, "⚠️ Dropping unreadable cache entry", e);
+                meta.delete();
+                body.delete();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Temp file the response body is teed into while it is being parsed
+     */
+    public static File newTempFile(Context context) throws IOException {
+        return File.createTempFile("body", ".tmp", dir(context));
+    }
+
+    /**
+     * Publish a fully downloaded body with its validators
+     */
+    public static void put(Context context, String url, String etag, String lastModified, File tempBody) {
+        synchronized (LOCK) {
+            String key = key(url);
+            File body = new File(dir(context), key + ".body");
+            File meta = new File(dir(context), key + ".meta");
+            try {
+                JSONObject json = new JSONObject();
+                json.put("etag", etag);
+                json.put("lastModified", lastModified);
+                json.put("url", url);
+
+                OutputStream out = new FileOutputStream(meta);
+                try {
+                    out.write(json.toString().getBytes("UTF-8"));
+                } finally {
+                    out.close();
+                }
+                if (body.exists()) body.delete();
+                if (!tempBody.renameTo(body)) throw new IOException("rename failed");
+            } catch (Exception e) {
+                Log.w(TAG, "⚠️ Could not store cache entry", e);
+                meta.delete();
+                tempBody.delete();
+                return;
+            }
+            trim(context);
+        }
+    }
+
+    public static void clear(Context context) {
+        synchronized (LOCK) {
+            File[] files = dir(context).listFiles();
+            if (files == null) return;
+            for (File f : files) f.delete();
+        }
+    }
+
+    /**
+     * Drop least recently used bodies above MAX_TOTAL_BYTES
+     */
+    private static void trim(Context context) {
+        File[] bodies = dir(context).listFiles();
+        if (bodies == null) return;
+
+        long total = 0;
+        for (File f : bodies) total += f.length();
+        if (total <= MAX_TOTAL_BYTES) return;
+
+        Arrays.sort(bodies, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File f : bodies) {
+            if (total <= MAX_TOTAL_BYTES) break;
+            String name = f.getName();
+            if (!name.endsWith(".body")) continue;
+            total -= f.length();
+            f.delete();
+            File meta = new File(f.getParentFile(), name.substring(0, name.length() - 5) + ".meta");
+            total -= meta.length();
+            meta.delete();
+        }
+    }
+
+    private static String readSmall(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int off = 0;
+            while (off < data.length) {
+                int n = in.read(data, off, data.length - off);
+                if (n < 0) break;
+                off += n;
+            }
+            return new String(data, 0, off, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String key(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP transport for the Enable Banking API, used by BankSyncPlugin.
+ *
+ * - keep-alive connection reuse (HttpURLConnection pools sockets whose body was fully read)
+ * - gzip requested explicitly and decoded here, so wire vs decoded bytes can be measured
+ * - conditional GETs (ETag / Last-Modified) backed by BankHttpCache, 304 served from disk
+ * - retries on network errors, 429 and 5xx with exponential backoff + full jitter
+ *   (Retry-After honoured when the server sends it)
+ * - bodies are handed to the caller as a stream, never buffered as a whole String
+ */
+public final class BankHttpClient {
+
+    private static final String TAG = "BankHttpClient";
+
+    public static final String DEFAULT_BASE_URL = "https://api.enablebanking.com";
+
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long BASE_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 30000;
+
+    private static final Random random = new Random();
+
+    // Transport counters (getStats)
+    private static final AtomicLong requests = new AtomicLong();
+    private static final AtomicLong retries = new AtomicLong();
+    private static final AtomicLong notModified = new AtomicLong();
+    private static final AtomicLong bytesOnWire = new AtomicLong();
+    private static final AtomicLong bytesDecoded = new AtomicLong();
+
+    private BankHttpClient() {
+    }
+
+    /**
+     * Consumes a response body (the stream is closed by the client afterwards)
+     */
+    public interface BodyHandler<T> {
+        T handle(int status, InputStream body, boolean fromCache) throws Exception;
+    }
+
+    /**
+     * Perform a request, retrying transient failures.
+     *
+     * @param url       absolute URL
+     * @param bearer    JWT (nullable)
+     * @param method    GET / POST / DELETE ...
+     * @param jsonBody  request body for POST/PUT (nullable)
+     * @param cacheable GET whose body may be revalidated with ETag / Last-Modified
+     */
+    public static <T> T execute(Context context, String url, String bearer, String method, String jsonBody,
+                                boolean cacheable, CancellationSignal signal, BodyHandler<T> handler) throws Exception {
+        IOException lastError = null;
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            throwIfCanceled(signal);
+            if (attempt > 0) retries.incrementAndGet();
+
+            // Once the body is being consumed a failure is not retried (pages may be already emitted)
+            boolean consuming = false;
+            final HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+            if (signal != null) {
+                signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                    @Override
+                    public void onCancel() {
+                        conn.disconnect();
+                    }
+                });
+            }
+
+            try {
+                conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+                conn.setReadTimeout(READ_TIMEOUT_MS);
+                conn.setRequestMethod(method);
+                conn.setRequestProperty("Accept", "application/json");
+                conn.setRequestProperty("Accept-Encoding", "gzip");
+                if (bearer != null) conn.setRequestProperty("Authorization", "Bearer " + bearer);
+
+                BankHttpCache.Entry cached = cacheable ? BankHttpCache.get(context, url) : null;
+                if (cached != null) {
+                    if (cached.etag != null) conn.setRequestProperty("If-None-Match", cached.etag);
+                    if (cached.lastModified != null) conn.setRequestProperty("If-Modified-Since", cached.lastModified);
+                }
+
+                if (jsonBody != null) {
+                    byte[] payload = jsonBody.getBytes("UTF-8");
+                    conn.setDoOutput(true);
+                    conn.setRequestProperty("Content-Type", "application/json");
+                    conn.setFixedLengthStreamingMode(payload.length);
+                    OutputStream out = conn.getOutputStream();
+                    try {
+                        out.write(payload);
+                    } finally {
+                        out.close();
+                    }
+                }
+
+                requests.incrementAndGet();
+                int status = conn.getResponseCode();
+
+                if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                    notModified.incrementAndGet();
+                    drainAndClose(conn.getInputStream());
+                    InputStream body = cached.open();
+                    try {
+                        consuming = true;
+                        return handler.handle(200, body, true);
+                    } finally {
+                        body.close();
+                    }
+                }
+
+                if ((status == 429 || status >= 500) && attempt < MAX_ATTEMPTS - 1) {
+                    long delay = retryDelay(conn.getHeaderField("Retry-After"), attempt);
+                    Log.w(TAG, "⏳ HTTP " + status + " for " + url + ", retry in " + delay + "ms");
+                    drainAndClose(conn.getErrorStream());
+                    sleep(delay, signal);
+                    continue;
+                }
+
+                InputStream raw = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+                if (raw == null) {
+                    return handler.handle(status, new ByteArrayInputStream(new byte[0]), false);
+                }
+
+                InputStream body = new CountingInputStream(raw, bytesOnWire);
+                if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+                    body = new GZIPInputStream(body);
+                }
+                body = new CountingInputStream(body, bytesDecoded);
+
+                String etag = conn.getHeaderField("ETag");
+                String lastModified = conn.getHeaderField("Last-Modified");
+                boolean store = cacheable && status == 200 && (etag != null || lastModified != null);
+
+                File temp = null;
+                OutputStream tee = null;
+                if (store) {
+                    temp = BankHttpCache.newTempFile(context);
+                    tee = new FileOutputStream(temp);
+                    body = new TeeInputStream(body, tee);
+                }
+
+                try {
+                    consuming = true;
+                    T result = handler.handle(status, body, false);
+                    // Read what the handler left so the socket goes back to the pool
+                    // and the cached copy is complete
+                    drain(body);
+                    if (tee != null) {
+                        tee.close();
+                        tee = null;
+                        BankHttpCache.put(context, url, etag, lastModified, temp);
+                        temp = null;
+                    }
+                    return result;
+                } finally {
+                    body.close();
+                    if (tee != null) tee.close();
+                    if (temp != null) temp.delete();
+                }
+
+            } catch (IOException e) {
+                throwIfCanceled(signal);
+                if (consuming) throw e;
+                lastError = e;
+                if (attempt < MAX_ATTEMPTS - 1) {
+                    long delay = retryDelay(null, attempt);
+                    Log.w(TAG, "⚠️ " + e.getClass().getSimpleName() + " for " + url + ", retry in " + delay + "ms");
+                    sleep(delay, signal);
+                }
+            } finally {
+                if (signal != null) signal.setOnCancelListener(null);
+            }
+        }
+
+        throw lastError != null ? lastError : new IOException("Request failed: " + url);
+    }
+
+    /**
+     * Transport counters since process start
+     */
+    public static JSObject getStats() {
+        JSObject stats = new JSObject();
+        stats.put("requests", requests.get());
+        stats.put("retries", retries.get());
+        stats.put("notModified", notModified.get());
+        stats.put("bytesOnWire", bytesOnWire.get());
+        stats.put("bytesDecoded", bytesDecoded.get());
+        return stats;
+    }
+
+    /**
+     * Exponential backoff with full jitter: random in [0, min(cap, base * 2^attempt)].
+     * A Retry-After in seconds wins when present.
+     */
+    private static long retryDelay(String retryAfter, int attempt) {
+        if (retryAfter != null) {
+            try {
+                return Math.min(MAX_BACKOFF_MS, Long.parseLong(retryAfter.trim()) * 1000);
+            } catch (NumberFormatException ignored) {
+                // HTTP-date form: fall back to backoff
+            }
+        }
+        long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt, 10));
+        synchronized (random) {
+            return (long) (random.nextDouble() * ceiling);
+        }
+    }
+
+    private static void sleep(long ms, CancellationSignal signal) throws InterruptedException {
+        long end = System.currentTimeMillis() + ms;
+        while (System.currentTimeMillis() < end) {
+            throwIfCanceled(signal);
+            Thread.sleep(Math.min(250, Math.max(1, end - System.currentTimeMillis())));
+        }
+    }
+
+    private static void throwIfCanceled(CancellationSignal signal) {
+        if (signal != null && signal.isCanceled()) throw new OperationCanceledException();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer) != -1) {
+            // discard
+        }
+    }
+
+    private static void drainAndClose(InputStream in) {
+        if (in == null) return;
+        try {
+            drain(in);
+        } catch (IOException ignored) {
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+
+        CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) counter.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) counter.addAndGet(n);
+            return n;
+        }
+    }
+
+    private static final class TeeInputStream extends FilterInputStream {
+        private final OutputStream copy;
+
+        TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) copy.write(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) copy.write(b, off, n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.gestore.spese;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.getcapacitor.JSArray;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Streaming JSON decoding of bank API bodies (android.util.JsonReader).
+ *
+ * Transaction pages can be large: instead of reading the whole body into a String and
+ * parsing it, the "transactions" array is walked element by element and handed out in
+ * fixed-size pages while the rest of the body is still downloading.
+ */
+public final class BankJsonStream {
+
+    private BankJsonStream() {
+    }
+
+    /**
+     * Receives each page of transactions as soon as it is complete
+     */
+    public interface PageListener {
+        void onPage(JSArray transactions) throws Exception;
+    }
+
+    /**
+     * Result of one transactions response
+     */
+    public static final class TransactionsPage {
+        public int count = 0;
+        public String continuationKey = null;
+    }
+
+    public static JsonReader reader(InputStream body) throws IOException {
+        return new JsonReader(new InputStreamReader(body, "UTF-8"));
+    }
+
+    /**
+     * Read a whole JSON document (object, array or scalar)
+     */
+    public static Object readDocument(InputStream body) throws IOException, JSONException {
+        JsonReader reader = reader(body);
+        reader.setLenient(true);
+        if (reader.peek() == JsonToken.END_DOCUMENT) return null;
+        return readValue(reader);
+    }
+
+    /**
+     * Walk a {"transactions": [...], "continuation_key": "..."} body, emitting pages of pageSize
+     */
+    public static TransactionsPage readTransactions(InputStream body, int pageSize, CancellationSignal signal,
+                                                    PageListener listener) throws Exception {
+        TransactionsPage result = new TransactionsPage();
+        JsonReader reader = reader(body);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("transactions".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                JSArray page = new JSArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (signal != null && signal.isCanceled()) throw new OperationCanceledException();
+                    page.put(readValue(reader));
+                    result.count++;
+                    if (page.length() >= pageSize) {
+                        listener.onPage(page);
+                        page = new JSArray();
+                    }
+                }
+                reader.endArray();
+                if (page.length() > 0) listener.onPage(page);
+            } else if ("continuation_key".equals(name) && reader.peek() == JsonToken.STRING) {
+                result.continuationKey = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return result;
+    }
+
+    public static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String key = reader.nextName();
+                    object.put(key, readValue(reader));
+                }
+                reader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            case NUMBER:
+                // Keep integers exact, amounts are usually strings in this API anyway
+                String number = reader.nextString();
+                try {
+                    return Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    return Double.parseDouble(number);
+                }
+            default:
+                return reader.nextString();
+        }
+    }
+}
@@ -1,10 +1,7 @@
 package com.gestore.spese;
 
 import android.app.Notification;
-import android.content.ComponentName;
-import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
@@ -12,8 +9,7 @@ import android.util.Log;
 
 import com.getcapacitor.JSObject;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
+import org.json.JSONException;
 
 import java.util.Arrays;
 import java.util.List;
@@ -63,13 +59,8 @@ public class BankNotificationListenerService extends NotificationListenerService
         Log.d(TAG, "✅✅✅ Service CONNECTED to notification system");
         Log.d(TAG, "========================================");
         
-        try {
-            ComponentName component = new ComponentName(this, BankNotificationListenerService.class);
-            requestRebind(component);
-            Log.d(TAG, "✅ requestRebind() called successfully on connect");
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Error calling requestRebind on connect:", e);
-        }
+        // ✅ Connected: close the gap and cancel pending rebinds (no rebind on connect)
+        ListenerRebindController.onConnected(this);
     }
 
     @Override
@@ -79,13 +70,8 @@ public class BankNotificationListenerService extends NotificationListenerService
         Log.d(TAG, "⚠️⚠️⚠️ Service DISCONNECTED from notification system");
         Log.d(TAG, "========================================");
         
-        try {
-            ComponentName component = new ComponentName(this, BankNotificationListenerService.class);
-            requestRebind(component);
-            Log.d(TAG, "✅ requestRebind() called successfully on disconnect");
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Error calling requestRebind on disconnect:", e);
-        }
+        // ✅ Real disconnect: rebind with exponential backoff until reconnected
+        ListenerRebindController.onDisconnected(this);
     }
 
     @Override
@@ -301,27 +287,52 @@ public class BankNotificationListenerService extends NotificationListenerService
 
     /**
      * Invia dati al layer JavaScript tramite Capacitor
-     * ✅ UPDATED: Now also saves to persistent queue for app-closed scenarios
+     * ✅ UPDATED: Now also saves to persistent queue for app-closed scenarios (ack-based, see PendingNotificationQueue)
      * ✅ CRITICAL FIX: Made broadcast explicit to ensure delivery
+     * ✅ NEW: Headless capture when the WebView is not alive (see HeadlessTransactionCapture)
+     * ✅ NEW: Cross-source duplicates are collapsed first (see TransactionCorrelator)
      */
     private void sendToCapacitor(JSObject data) {
-        // 1. Invia broadcast intent che verrà catturato dal plugin (se app è aperta)
+        // ✅ NEW: Same payment already seen as SMS / bank transaction → only its provenance goes on
+        TransactionCorrelator.Match match = TransactionCorrelator.offerNotification(this, data);
+        if (match != null && match.isCollapsed()) {
+            try {
+                // The notification travels with the correlation: if JS does not have the canonical
+                // transaction (discarded, or not saved yet) it is parsed as usual. Queued as well,
+                // so a correlation arriving while JS is dead is replayed at the next launch.
+                JSObject queued = new JSObject(data.toString());
+                queued.put("correlated", match.canonical);
+                PendingNotificationQueue.append(this, queued);
+
+                JSObject correlated = new JSObject(match.canonical.toString());
+                correlated.put("event", data);
+                Intent intent = new Intent("com.gestore.spese.BANK_NOTIFICATION");
+                intent.setPackage(getPackageName());
+                intent.putExtra("correlated", correlated.toString());
+                sendBroadcast(intent);
+                Log.d(TAG, "🔗 Notification collapsed into " + match.canonical.optString("canonicalId"));
+                return;
+            } catch (JSONException e) {
+                Log.e(TAG, "❌ Error forwarding correlated notification, sending it as new", e);
+            }
+        }
+
+        // 0. ✅ HEADLESS: WebView non attiva → pipeline completa lato nativo
+        if (!NotificationListenerPlugin.isBridgeActive() && HeadlessCaptureStore.isEnabled(this)) {
+            if (HeadlessTransactionCapture.capture(this, data)) {
+                Log.d(TAG, "✅ Notification captured headless (WebView not alive)");
+                return;
+            }
+        }
+
+        // 1. ✅ Salva nella coda persistente (per app chiusa) - rimossa solo dopo ack da JS
+        PendingNotificationQueue.append(this, data);
+
+        // 2. Invia broadcast intent che verrà catturato dal plugin (se app è aperta)
         Intent intent = new Intent("com.gestore.spese.BANK_NOTIFICATION");
         intent.setPackage(getPackageName()); // ✅ CRITICAL: Makes broadcast explicit
         intent.putExtra("data", data.toString());
         sendBroadcast(intent);
         Log.d(TAG, "✅ Notification data sent to Capacitor (explicit broadcast)");
-        
-        // 2. ✅ NEW: Salva anche in SharedPreferences (per app chiusa)
-        try {
-            SharedPreferences prefs = getSharedPreferences("pending_notifications", Context.MODE_PRIVATE);
-            String existingJson = prefs.getString("queue", "[]");
-            JSONArray queue = new JSONArray(existingJson);
-            queue.put(new JSONObject(data.toString()));
-            prefs.edit().putString("queue", queue.toString()).apply();
-            Log.d(TAG, "✅ Notification saved to persistent queue (total: " + queue.length() + ")");
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Failed to save notification to queue", e);
-        }
     }
 }
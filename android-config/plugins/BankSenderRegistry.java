@@ -0,0 +1,208 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.provider.Telephony;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Registry of bank SMS senders, used to prefilter the inbox query in SQL.
+ *
+ * Two kinds of entries:
+ * - seeds: sender keywords, matched as substrings (same rule as the JS parser:
+ *   sender.toUpperCase().includes(identifier)) → ADDRESS LIKE '%KEYWORD%'
+ * - learned: exact addresses / alphanumeric short-codes whose SMS were parsed into
+ *   transactions, reported by JS → ADDRESS IN (...)
+ *
+ * Any other sender (a new bank, a numeric short code) still gets through when the body carries a
+ * money signal (BODY LIKE '%€%' ...): the JS universal parser decides, and learns the sender.
+ */
+public final class BankSenderRegistry {
+
+    private static final String TAG = "BankSenderRegistry";
+
+    private static final String PREFS_NAME = "sms_sender_registry";
+    private static final String KEY_SEEDS = "seeds";
+    private static final String KEY_LEARNED = "learned";
+
+    // SQLite allows 999 bound args: keep well below with seeds + learned
+    private static final int MAX_LEARNED = 300;
+    private static final int MAX_SEEDS = 100;
+
+    // Default seeds until JS pushes its own: BANK_CONFIGS identifiers + FINANCIAL_SENDERS
+    // of sms-transaction-parser.ts
+    private static final List<String> DEFAULT_SEEDS = Arrays.asList(
+        "REVOLUT", "PAYPAL", "POSTEPAY", "BBVA", "INTESA", "UNICREDIT", "MASTERCARD",
+        "BANK", "BANCA", "PAY", "CARD", "CARTA", "CREDIT", "DEBIT", "ALERT", "INFO", "CONTO",
+        "POSTE", "HYPE", "N26", "CURVE", "WISE", "SATISPAY", "AMEX", "VISA",
+        "ING", "BNL", "BPER", "FINECO", "WEBANK", "WIDIBA", "ILLIMITY",
+        "NEXI", "FINDOMESTIC", "COMPASS", "SANTANDER", "UBI", "CREDEM", "MEDIOLANUM"
+    );
+
+    // Money signals of the body for senders in neither list: a subset of MONEY_SIGNALS of
+    // sms-transaction-parser.ts (stems, so LIKE matches every inflection)
+    private static final List<String> BODY_SIGNALS = Arrays.asList(
+        "€", "EUR", "ADDEBIT", "ACCREDIT", "BONIFIC", "PAGAMENT", "PRELIEV"
+    );
+
+    private static final Object LOCK = new Object();
+
+    private BankSenderRegistry() {
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * SQL selection + args for the inbox query (DATE > ? AND (sender filter))
+     */
+    static final class Selection {
+        final String where;
+        final String[] args;
+
+        Selection(String where, String[] args) {
+            this.where = where;
+            this.args = args;
+        }
+    }
+
+    public static Selection buildSelection(Context context, long sinceTimestamp) {
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(sinceTimestamp));
+        String where = Telephony.Sms.DATE + " > ? AND " + senderClause(context, args);
+        return new Selection(where, args.toArray(new String[0]));
+    }
+
+    /**
+     * "(ADDRESS IN (...) OR ADDRESS LIKE ... OR BODY LIKE ...)" clause, appending its bound args
+     * to {@code args}
+     */
+    public static String senderClause(Context context, List<String> args) {
+        List<String> seeds = getSeeds(context);
+        List<String> learned = getLearned(context);
+
+        StringBuilder where = new StringBuilder("(");
+        boolean first = true;
+        if (!learned.isEmpty()) {
+            where.append(Telephony.Sms.ADDRESS).append(" IN (");
+            for (int i = 0; i < learned.size(); i++) {
+                where.append(i == 0 ? "?" : ",?");
+                args.add(learned.get(i));
+            }
+            where.append(")");
+            first = false;
+        }
+        for (String seed : seeds) {
+            if (!first) where.append(" OR ");
+            // LIKE is case-insensitive for ASCII in SQLite
+            where.append(Telephony.Sms.ADDRESS).append(" LIKE ? ESCAPE '\\'");
+            args.add("%" + escapeLike(seed) + "%");
+            first = false;
+        }
+        // Unknown senders: only messages that look like money movements
+        for (String signal : BODY_SIGNALS) {
+            if (!first) where.append(" OR ");
+            where.append(Telephony.Sms.BODY).append(" LIKE ? ESCAPE '\\'");
+            args.add("%" + escapeLike(signal) + "%");
+            first = false;
+        }
+        return where.append(")").toString();
+    }
+
+    public static List<String> getSeeds(Context context) {
+        synchronized (LOCK) {
+            List<String> stored = readList(prefs(context), KEY_SEEDS);
+            return stored != null ? stored : new ArrayList<>(DEFAULT_SEEDS);
+        }
+    }
+
+    public static List<String> getLearned(Context context) {
+        synchronized (LOCK) {
+            List<String> stored = readList(prefs(context), KEY_LEARNED);
+            return stored != null ? stored : new ArrayList<String>();
+        }
+    }
+
+    /**
+     * Replace the seed keywords (pushed by JS from its bank configs)
+     */
+    public static void setSeeds(Context context, JSONArray identifiers) {
+        synchronized (LOCK) {
+            Set<String> seeds = new LinkedHashSet<>();
+            for (int i = 0; identifiers != null && i < identifiers.length() && seeds.size() < MAX_SEEDS; i++) {
+                String id = identifiers.optString(i, "").trim().toUpperCase(Locale.ROOT);
+                if (!id.isEmpty()) seeds.add(id);
+            }
+            prefs(context).edit().putString(KEY_SEEDS, new JSONArray(seeds).toString()).apply();
+            Log.d(TAG, "✅ Sender seeds updated: " + seeds.size());
+        }
+    }
+
+    /**
+     * Learn exact sender addresses (most recent kept when over the cap)
+     *
+     * @return number of new senders
+     */
+    public static int learn(Context context, JSONArray senders) {
+        synchronized (LOCK) {
+            List<String> learned = getLearned(context);
+            Set<String> merged = new LinkedHashSet<>(learned);
+            int added = 0;
+            for (int i = 0; senders != null && i < senders.length(); i++) {
+                String sender = senders.optString(i, "").trim();
+                if (sender.isEmpty()) continue;
+                // Re-insert so recently seen senders move to the end (eviction drops the oldest)
+                if (!merged.remove(sender)) added++;
+                merged.add(sender);
+            }
+
+            List<String> list = new ArrayList<>(merged);
+            if (list.size() > MAX_LEARNED) {
+                list = list.subList(list.size() - MAX_LEARNED, list.size());
+            }
+            prefs(context).edit().putString(KEY_LEARNED, new JSONArray(list).toString()).apply();
+
+            if (added > 0) Log.d(TAG, "✅ Learned " + added + " new bank senders (total: " + list.size() + ")");
+            return added;
+        }
+    }
+
+    public static JSObject toJSObject(Context context) {
+        JSObject ret = new JSObject();
+        ret.put("seeds", new JSArray(getSeeds(context)));
+        ret.put("learned", new JSArray(getLearned(context)));
+        return ret;
+    }
+
+    private static List<String> readList(SharedPreferences prefs, String key) {
+        String raw = prefs.getString(key, null);
+        if (raw == null) return null;
+        List<String> list = new ArrayList<>();
+        try {
+            JSONArray array = new JSONArray(raw);
+            for (int i = 0; i < array.length(); i++) {
+                list.add(array.getString(i));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to read " + key, e);
+        }
+        return list;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
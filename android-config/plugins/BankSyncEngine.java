@@ -0,0 +1,488 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.json.JSONObject;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Incremental multi-account bank sync.
+ *
+ * Accounts are downloaded concurrently (bounded pool), so a sync takes about as long as the
+ * slowest account instead of the sum of all of them. Each account keeps a cursor:
+ * - watermark: latest booking date seen, the next request asks date_from = watermark - OVERLAP_DAYS
+ *   (late bookings and pending → booked transitions fall inside the overlap)
+ * - seen: transaction ID → content fingerprint (SHA-256) for the overlap window
+ * Only transactions with an unknown ID (added) or a different fingerprint (changed) go back to JS.
+ * Transactions without a bank ID get one from their stable fields (see fallbackId), so a pending
+ * transaction settling with an edited description is "changed", not a second "added".
+ *
+ * Cursors are staged per syncId and persisted only by commit(), after JS has stored the delta:
+ * if the app dies halfway the next sync simply replays the same window.
+ */
+public final class BankSyncEngine {
+
+    private static final String TAG = "BankSyncEngine";
+    private static final String PREFS_NAME = "bank_sync_cursors";
+    private static final String KEY_CURSOR_PREFIX = "cursor_";
+
+    private static final int OVERLAP_DAYS = 7;
+    private static final int PAGE_SIZE = 100;
+    public static final int DEFAULT_PARALLELISM = 3;
+    private static final int MAX_PARALLELISM = 6;
+    // Uncommitted syncs kept in memory (older ones are simply replayed next time)
+    private static final int MAX_STAGED = 4;
+
+    private static final Object LOCK = new Object();
+    private static final Map<String, Map<String, String>> staged = new LinkedHashMap<>();
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private BankSyncEngine() {
+    }
+
+    private static final class AccountDelta {
+        final String accountUid;
+        int status = 0;
+        String dateFrom;
+        int fetched = 0;
+        int unchanged = 0;
+        int responses = 0;
+        boolean notModified = false;
+        boolean truncated = false;
+        final JSArray added = new JSArray();
+        final JSArray changed = new JSArray();
+        // New for the bank but already captured from an SMS / notification (TransactionCorrelator)
+        final JSArray correlated = new JSArray();
+        JSObject balances;
+        String cursor;
+        String error;
+        long elapsedMs;
+
+        AccountDelta(String accountUid) {
+            this.accountUid = accountUid;
+        }
+
+        JSObject toJson() {
+            JSObject ret = new JSObject();
+            ret.put("accountUid", accountUid);
+            ret.put("status", status);
+            ret.put("dateFrom", dateFrom);
+            ret.put("fetched", fetched);
+            ret.put("unchanged", unchanged);
+            ret.put("responses", responses);
+            ret.put("notModified", notModified);
+            ret.put("truncated", truncated);
+            ret.put("added", added);
+            ret.put("changed", changed);
+            ret.put("correlated", correlated);
+            if (balances != null) ret.put("balances", balances);
+            if (error != null) ret.put("error", error);
+            ret.put("elapsedMs", elapsedMs);
+            return ret;
+        }
+    }
+
+    /**
+     * Sync the given accounts with at most `parallelism` downloads in flight.
+     * Failures are per account (status / error in its entry), cancellation aborts everything.
+     *
+     * @param full ignore the cursors and download the whole history
+     */
+    public static JSObject sync(final Context context, final String token, List<String> accountUids,
+                                int parallelism, final boolean full, CancellationSignal signal) throws Exception {
+        long startTime = System.currentTimeMillis();
+        int threads = Math.max(1, Math.min(Math.min(parallelism, MAX_PARALLELISM), accountUids.size()));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "bank-sync-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // One signal per account: BankHttpClient owns the cancel listener of the signal it gets
+        final List<CancellationSignal> children = new ArrayList<>();
+        for (int i = 0; i < accountUids.size(); i++) children.add(new CancellationSignal());
+        if (signal != null) {
+            signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    for (CancellationSignal child : children) child.cancel();
+                }
+            });
+        }
+
+        JSArray accounts = new JSArray();
+        Map<String, String> cursors = new HashMap<>();
+        int totalAdded = 0;
+        int totalChanged = 0;
+        long sumElapsed = 0;
+
+        try {
+            List<Future<AccountDelta>> futures = new ArrayList<>();
+            for (int i = 0; i < accountUids.size(); i++) {
+                final String accountUid = accountUids.get(i);
+                final CancellationSignal child = children.get(i);
+                futures.add(pool.submit(new Callable<AccountDelta>() {
+                    @Override
+                    public AccountDelta call() {
+                        return syncAccount(context, token, accountUid, full, child);
+                    }
+                }));
+            }
+
+            for (Future<AccountDelta> future : futures) {
+                AccountDelta delta;
+                try {
+                    delta = future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof OperationCanceledException) throw (OperationCanceledException) cause;
+                    throw e;
+                }
+                accounts.put(delta.toJson());
+                if (delta.cursor != null) cursors.put(delta.accountUid, delta.cursor);
+                totalAdded += delta.added.length();
+                totalChanged += delta.changed.length();
+                sumElapsed += delta.elapsedMs;
+            }
+        } catch (InterruptedException e) {
+            for (CancellationSignal child : children) child.cancel();
+            throw new OperationCanceledException();
+        } finally {
+            if (signal != null) signal.setOnCancelListener(null);
+            pool.shutdownNow();
+            // Every offered transaction in one write instead of one per offer
+            TransactionCorrelator.flush(context);
+        }
+
+        String syncId = UUID.randomUUID().toString();
+        synchronized (LOCK) {
+            staged.put(syncId, cursors);
+            Iterator<String> it = staged.keySet().iterator();
+            while (staged.size() > MAX_STAGED && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        long elapsed = System.currentTimeMillis() - startTime;
+        Log.d(TAG, "✅ Synced " + accountUids.size() + " accounts (" + threads + " parallel) in " + elapsed
+            + "ms, accounts total " + sumElapsed + "ms: " + totalAdded + " added, " + totalChanged + " changed");
+
+        JSObject result = new JSObject();
+        result.put("syncId", syncId);
+        result.put("accounts", accounts);
+        result.put("added", totalAdded);
+        result.put("changed", totalChanged);
+        result.put("parallelism", threads);
+        result.put("elapsedMs", elapsed);
+        return result;
+    }
+
+    /**
+     * Persist the cursors of a sync whose delta has been stored by JS
+     *
+     * @return false if the syncId is unknown (already committed or evicted)
+     */
+    public static boolean commit(Context context, String syncId) {
+        Map<String, String> cursors;
+        synchronized (LOCK) {
+            cursors = syncId != null ? staged.remove(syncId) : null;
+        }
+        if (cursors == null) return false;
+
+        SharedPreferences.Editor editor = prefs(context).edit();
+        for (Map.Entry<String, String> entry : cursors.entrySet()) {
+            editor.putString(KEY_CURSOR_PREFIX + entry.getKey(), entry.getValue());
+        }
+        editor.apply();
+        Log.d(TAG, "💾 Committed cursors of " + cursors.size() + " accounts");
+        return true;
+    }
+
+    /**
+     * Forget the cursor of one account (null = all): its next sync downloads the whole history
+     */
+    public static void reset(Context context, String accountUid) {
+        synchronized (LOCK) {
+            staged.clear();
+        }
+        SharedPreferences.Editor editor = prefs(context).edit();
+        if (accountUid == null) {
+            editor.clear();
+        } else {
+            editor.remove(KEY_CURSOR_PREFIX + accountUid);
+        }
+        editor.apply();
+    }
+
+    private static AccountDelta syncAccount(Context context, String token, String accountUid, boolean full,
+                                            CancellationSignal signal) {
+        long startTime = System.currentTimeMillis();
+        final AccountDelta delta = new AccountDelta(accountUid);
+
+        try {
+            JSONObject cursor = full ? null : loadCursor(context, accountUid);
+            final JSONObject seen = cursor != null ? cursor.optJSONObject("seen") : null;
+            String watermark = cursor != null ? cursor.optString("watermark", null) : null;
+            delta.dateFrom = watermark != null ? shiftDate(watermark, -OVERLAP_DAYS) : null;
+
+            final JSONObject nextSeen = new JSONObject();
+            final String[] maxBooked = {watermark};
+            // Same stable fields twice in one sync (e.g. two equal coffees): told apart by occurrence
+            final Map<String, Integer> fallbackCounts = new HashMap<>();
+
+            BankApi.TransactionsResult transactions = BankApi.fetchTransactions(context, accountUid, token, "both",
+                delta.dateFrom, PAGE_SIZE, signal, new BankJsonStream.PageListener() {
+                    @Override
+                    public void onPage(JSArray page) throws Exception {
+                        for (int i = 0; i < page.length(); i++) {
+                            JSONObject tx = page.optJSONObject(i);
+                            if (tx == null) continue;
+
+                            String fingerprint = sha256(tx.toString());
+                            String id = transactionId(tx, fallbackCounts);
+                            String date = transactionDate(tx);
+
+                            String previous = seen != null ? seen.optString(id, null) : null;
+                            if (previous == null) {
+                                TransactionCorrelator.Match match = TransactionCorrelator.offerBank(context, accountUid, id, tx);
+                                if (match.isCollapsed() || (match.repeated && match.sourceCount() > 1)) {
+                                    JSObject entry = JSObject.fromJSONObject(match.canonical);
+                                    entry.put("transaction", tx);
+                                    delta.correlated.put(entry);
+                                } else {
+                                    delta.added.put(tx);
+                                }
+                            } else if (!previous.startsWith(fingerprint + "|")) {
+                                delta.changed.put(tx);
+                            } else {
+                                delta.unchanged++;
+                            }
+                            nextSeen.put(id, fingerprint + "|" + date);
+
+                            if (!isPending(tx) && !date.isEmpty()
+                                && (maxBooked[0] == null || date.compareTo(maxBooked[0]) > 0)) {
+                                maxBooked[0] = date;
+                            }
+                        }
+                    }
+                });
+
+            delta.status = transactions.status;
+            delta.fetched = transactions.count;
+            delta.responses = transactions.responses;
+            delta.notModified = transactions.responses > 0 && transactions.cachedResponses == transactions.responses;
+            delta.truncated = transactions.truncated;
+            if (transactions.status == 401) {
+                Log.w(TAG, "⚠️ Session expired for " + accountUid);
+                return delta;
+            }
+            // Pages are missing: keep the old watermark so the next sync asks the same window again
+            // (the IDs seen here are still remembered, they are not returned twice)
+            if (delta.truncated) {
+                Log.w(TAG, "⚠️ Truncated download for " + accountUid + ", watermark kept at " + watermark);
+                maxBooked[0] = watermark;
+            }
+
+            // Only IDs inside the next request window need to be remembered
+            if (seen != null) {
+                Iterator<String> keys = seen.keys();
+                while (keys.hasNext()) {
+                    String id = keys.next();
+                    if (!nextSeen.has(id)) nextSeen.put(id, seen.optString(id, ""));
+                }
+            }
+            String nextFrom = maxBooked[0] != null ? shiftDate(maxBooked[0], -OVERLAP_DAYS) : null;
+            JSONObject window = new JSONObject();
+            Iterator<String> keys = nextSeen.keys();
+            while (keys.hasNext()) {
+                String id = keys.next();
+                String value = nextSeen.optString(id, "");
+                String date = value.substring(value.indexOf('|') + 1);
+                if (nextFrom == null || date.compareTo(nextFrom) >= 0) window.put(id, value);
+            }
+
+            JSONObject nextCursor = new JSONObject();
+            nextCursor.put("watermark", maxBooked[0]);
+            nextCursor.put("seen", window);
+            nextCursor.put("syncedAt", System.currentTimeMillis());
+            delta.cursor = nextCursor.toString();
+
+            delta.balances = BankApi.request(context, "/accounts/" + URLEncoder.encode(accountUid, "UTF-8") + "/balances",
+                token, "GET", null, true, signal);
+
+        } catch (OperationCanceledException e) {
+            throw e;
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Sync failed for " + accountUid, e);
+            delta.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+
+        delta.elapsedMs = System.currentTimeMillis() - startTime;
+        return delta;
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static JSONObject loadCursor(Context context, String accountUid) {
+        String json = prefs(context).getString(KEY_CURSOR_PREFIX + accountUid, null);
+        if (json == null) return null;
+        try {
+            return new JSONObject(json);
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ Dropping unreadable cursor for " + accountUid);
+            return null;
+        }
+    }
+
+    /**
+     * Same ID the JS mapping uses for bankTransactionId. When the bank sends none the fallback ID is
+     * also written as transactionId, so JS deduplicates the transaction by it when it changes.
+     */
+    private static String transactionId(JSONObject tx, Map<String, Integer> fallbackCounts) throws Exception {
+        String[] keys = {"entryReference", "entry_reference", "transactionId", "transaction_id", "endToEndId", "end_to_end_id"};
+        for (String key : keys) {
+            String value = tx.optString(key, "");
+            if (!value.isEmpty() && !"null".equals(value)) return value;
+        }
+
+        String stable = fallbackId(tx);
+        Integer previous = fallbackCounts.get(stable);
+        int occurrence = previous != null ? previous + 1 : 1;
+        fallbackCounts.put(stable, occurrence);
+
+        String id = occurrence > 1 ? stable + "#" + occurrence : stable;
+        tx.put("transactionId", id);
+        return id;
+    }
+
+    /**
+     * ID from the fields that do not change when a pending transaction is booked: value date,
+     * amount, currency, counterparty account and structured reference (not the description)
+     */
+    static String fallbackId(JSONObject tx) {
+        String date = "";
+        String[] dateKeys = {"valueDate", "value_date", "transactionDate", "transaction_date", "bookingDate", "booking_date"};
+        for (String key : dateKeys) {
+            String value = tx.optString(key, "");
+            if (value.length() >= 10 && !"null".equals(value)) {
+                date = value.substring(0, 10);
+                break;
+            }
+        }
+
+        JSONObject amount = tx.optJSONObject("transactionAmount");
+        if (amount == null) amount = tx.optJSONObject("transaction_amount");
+        String currency = amount != null ? amount.optString("currency", "") : "";
+        double value = TransactionCorrelator.parseAmount(tx);
+        // Some banks send unsigned amounts with a credit/debit indicator
+        if ("DBIT".equalsIgnoreCase(tx.optString("credit_debit_indicator", tx.optString("creditDebitIndicator", "")))) {
+            value = -Math.abs(value);
+        }
+
+        String key = date + "|" + String.format(Locale.US, "%.2f", value) + "|" + currency + "|"
+            + counterpartyAccount(tx) + "|"
+            + firstValue(tx, "reference_number", "remittanceInformationStructured", "creditorReference");
+        return "h:" + sha256(key).substring(0, 32);
+    }
+
+    private static String counterpartyAccount(JSONObject tx) {
+        String[] keys = {"creditorAccount", "creditor_account", "debtorAccount", "debtor_account"};
+        for (String key : keys) {
+            JSONObject account = tx.optJSONObject(key);
+            if (account == null) continue;
+            String iban = account.optString("iban", "");
+            if (!iban.isEmpty() && !"null".equals(iban)) return iban;
+        }
+        return "";
+    }
+
+    private static String firstValue(JSONObject tx, String... keys) {
+        for (String key : keys) {
+            String value = tx.optString(key, "");
+            if (!value.isEmpty() && !"null".equals(value)) return value;
+        }
+        return "";
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) hex.append(String.format(Locale.US, "%02x", b & 0xff));
+            return hex.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String transactionDate(JSONObject tx) {
+        String[] keys = {"bookingDate", "booking_date", "valueDate", "value_date", "transactionDate", "transaction_date"};
+        for (String key : keys) {
+            String value = tx.optString(key, "");
+            if (value.length() >= 10 && !"null".equals(value)) return value.substring(0, 10);
+        }
+        return "";
+    }
+
+    private static boolean isPending(JSONObject tx) {
+        return "PDNG".equalsIgnoreCase(tx.optString("status", ""));
+    }
+
+    private static String shiftDate(String isoDate, int days) {
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            Date date = format.parse(isoDate);
+            Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            calendar.setTime(date);
+            calendar.add(Calendar.DAY_OF_MONTH, days);
+            return format.format(calendar.getTime());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.gestore.spese;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * JobScheduler entry point of the background bank sync (scheduled by BankBackgroundSync).
+ *
+ * onStartJob runs on the main thread: the sync runs on its own thread and reports back with
+ * jobFinished(). If the constraints stop holding (network lost, device no longer idle) the
+ * sync is cancelled and the job rescheduled; nothing is committed for an interrupted run.
+ */
+public class BankSyncJobService extends JobService {
+
+    private static final String TAG = "BankSyncJobService";
+
+    private volatile CancellationSignal signal;
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final CancellationSignal current = new CancellationSignal();
+        signal = current;
+
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                boolean retry = false;
+                try {
+                    BankBackgroundSync.run(getApplicationContext(), current);
+                } catch (OperationCanceledException e) {
+                    Log.d(TAG, "⏹️ Background sync stopped");
+                    return;
+                } catch (Exception e) {
+                    Log.e(TAG, "❌ Background sync failed", e);
+                    retry = true;
+                }
+                if (!current.isCanceled()) jobFinished(params, retry);
+            }
+        }, "bank-sync-job");
+        worker.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        CancellationSignal current = signal;
+        if (current != null) current.cancel();
+        // Run again when the constraints are met
+        return true;
+    }
+}
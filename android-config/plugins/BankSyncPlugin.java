@@ -0,0 +1,309 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Native transport for BankSyncService (Enable Banking API).
+ *
+ * JS still signs the JWT and maps/stores transactions; this plugin replaces WebView fetch for the
+ * heavy GETs: pooled connections, gzip, ETag / If-Modified-Since revalidation, jittered
+ * backoff (BankHttpClient) and streaming decode of transaction pages (BankJsonStream).
+ * syncAccounts() runs the incremental multi-account sync (BankSyncEngine) and returns only the delta.
+ * The base URL is configurable so the whole flow can run against a local mock server.
+ */
+@CapacitorPlugin(name = "BankSync")
+public class BankSyncPlugin extends Plugin {
+
+    private static final String TAG = "BankSyncPlugin";
+    private static final String TRANSACTIONS_PAGE_EVENT = "transactionsPage";
+
+    static final String PREFS_NAME = "bank_sync";
+    static final String KEY_BASE_URL = "base_url";
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
+    private static final PluginTaskExecutor.Limits REQUEST_LIMITS =
+        new PluginTaskExecutor.Limits("BankSync", "request", 4, 16, 60000);
+    private static final PluginTaskExecutor.Limits TRANSACTIONS_LIMITS =
+        new PluginTaskExecutor.Limits("BankSync", "fetchTransactions", 3, 16, 180000);
+    // One multi-account sync at a time, it already runs its accounts in parallel
+    private static final PluginTaskExecutor.Limits SYNC_LIMITS =
+        new PluginTaskExecutor.Limits("BankSync", "syncAccounts", 1, 2, 300000);
+
+    @Override
+    protected void handleOnDestroy() {
+        PluginTaskExecutor.cancelAll("BankSync");
+        super.handleOnDestroy();
+    }
+
+    static String getBaseUrl(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return prefs.getString(KEY_BASE_URL, BankHttpClient.DEFAULT_BASE_URL);
+    }
+
+    /**
+     * ✅ NEW: Point the client to another API host (e.g. a local mock server); null resets it
+     */
+    @PluginMethod
+    public void configure(PluginCall call) {
+        String baseUrl = call.getString("baseUrl");
+        SharedPreferences.Editor editor = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit();
+        if (baseUrl == null || baseUrl.trim().isEmpty()) {
+            editor.remove(KEY_BASE_URL);
+        } else {
+            editor.putString(KEY_BASE_URL, trimSlash(baseUrl.trim()));
+        }
+        editor.apply();
+
+        JSObject result = new JSObject();
+        result.put("baseUrl", getBaseUrl(getContext()));
+        call.resolve(result);
+    }
+
+    /**
+     * ✅ NEW: Generic API call. GETs are revalidated with ETag / Last-Modified unless cache=false.
+     * Resolves {status, ok, data | text, fromCache} (non-2xx is not a rejection, like fetch).
+     */
+    @PluginMethod
+    public void request(PluginCall call) {
+        final String path = call.getString("path");
+        final String token = call.getString("token");
+        final String method = call.getString("method", "GET");
+        final JSObject body = call.getObject("body");
+        final boolean cacheable = "GET".equals(method) && call.getBoolean("cache", true);
+
+        if (path == null) {
+            call.reject("Missing path");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, REQUEST_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                return BankApi.request(getContext(), path, token, method,
+                    body != null ? body.toString() : null, cacheable, signal);
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: All transactions of an account, following continuation keys.
+     * Options: accountUid, token, status ("both" by default, retried without it if the bank
+     * rejects it), dateFrom, pageSize, stream. With stream=true pages are emitted as
+     * "transactionsPage" events while downloading; otherwise they are returned in "transactions".
+     */
+    @PluginMethod
+    public void fetchTransactions(final PluginCall call) {
+        final String accountUid = call.getString("accountUid");
+        final String token = call.getString("token");
+        final String status = call.getString("status", "both");
+        final String dateFrom = call.getString("dateFrom");
+        final int pageSize = Math.max(1, call.getInt("pageSize", DEFAULT_PAGE_SIZE));
+        final boolean stream = call.getBoolean("stream", false);
+        final String requestId = call.getString("requestId");
+
+        if (accountUid == null) {
+            call.reject("Missing accountUid");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, TRANSACTIONS_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                long startTime = System.currentTimeMillis();
+                final JSArray collected = new JSArray();
+                final int[] pages = {0};
+
+                BankJsonStream.PageListener listener = new BankJsonStream.PageListener() {
+                    @Override
+                    public void onPage(JSArray transactions) {
+                        pages[0]++;
+                        if (stream) {
+                            JSObject event = new JSObject();
+                            event.put("accountUid", accountUid);
+                            event.put("requestId", requestId);
+                            event.put("page", pages[0]);
+                            event.put("transactions", transactions);
+                            notifyListeners(TRANSACTIONS_PAGE_EVENT, event);
+                        } else {
+                            for (int i = 0; i < transactions.length(); i++) {
+                                collected.put(transactions.opt(i));
+                            }
+                        }
+                    }
+                };
+
+                BankApi.TransactionsResult fetched = BankApi.fetchTransactions(getContext(), accountUid, token,
+                    status, dateFrom, pageSize, signal, listener);
+
+                Log.d(TAG, "✅ " + fetched.count + " transactions for " + accountUid + " in " + fetched.responses + " responses ("
+                    + fetched.cachedResponses + " not modified), " + (System.currentTimeMillis() - startTime) + "ms");
+
+                JSObject result = new JSObject();
+                result.put("accountUid", accountUid);
+                result.put("status", fetched.status);
+                result.put("count", fetched.count);
+                result.put("pages", pages[0]);
+                result.put("responses", fetched.responses);
+                result.put("notModified", fetched.responses > 0 && fetched.cachedResponses == fetched.responses);
+                result.put("truncated", fetched.truncated);
+                if (!stream) result.put("transactions", collected);
+                return result;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Incremental sync of several accounts, downloaded concurrently (BankSyncEngine).
+     * Options: token, accounts (bank account UIDs), parallelism (default 3), full (ignore cursors).
+     * Resolves {syncId, accounts: [{accountUid, status, added, changed, balances, error...}], added, changed}:
+     * only new or changed transactions are returned. Call commitSync(syncId) once they are stored.
+     */
+    @PluginMethod
+    public void syncAccounts(PluginCall call) {
+        final String token = call.getString("token");
+        final JSArray accounts = call.getArray("accounts");
+        final int parallelism = call.getInt("parallelism", BankSyncEngine.DEFAULT_PARALLELISM);
+        final boolean full = call.getBoolean("full", false);
+
+        if (accounts == null || accounts.length() == 0) {
+            call.reject("Missing accounts");
+            return;
+        }
+
+        final List<String> accountUids = new ArrayList<>();
+        for (int i = 0; i < accounts.length(); i++) {
+            String uid = accounts.optString(i, null);
+            if (uid != null && !accountUids.contains(uid)) accountUids.add(uid);
+        }
+
+        PluginTaskExecutor.submit(call, SYNC_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                return BankSyncEngine.sync(getContext(), token, accountUids, parallelism, full, signal);
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Persist the cursors of a syncAccounts() result after its delta has been saved
+     */
+    @PluginMethod
+    public void commitSync(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("committed", BankSyncEngine.commit(getContext(), call.getString("syncId")));
+        call.resolve(result);
+    }
+
+    /**
+     * ✅ NEW: Forget the sync cursor of an account (all accounts if accountUid is omitted)
+     */
+    @PluginMethod
+    public void resetSyncState(PluginCall call) {
+        BankSyncEngine.reset(getContext(), call.getString("accountUid"));
+        call.resolve();
+    }
+
+    /**
+     * ✅ NEW: Periodic background sync (JobScheduler, network + idle constraints).
+     * Options: appId, clientId, privateKey (PKCS#8 PEM), accounts (bank account UIDs),
+     * intervalMinutes (default 240), requiresIdle (default true).
+     * Results are collected in an inbox read by getBackgroundSync() at launch.
+     */
+    @PluginMethod
+    public void scheduleBackgroundSync(PluginCall call) {
+        String appId = call.getString("appId");
+        String clientId = call.getString("clientId");
+        String privateKey = call.getString("privateKey");
+        JSArray accounts = call.getArray("accounts");
+        int intervalMinutes = call.getInt("intervalMinutes", BankBackgroundSync.DEFAULT_INTERVAL_MINUTES);
+        boolean requiresIdle = call.getBoolean("requiresIdle", true);
+
+        if (appId == null || clientId == null || privateKey == null || accounts == null) {
+            call.reject("Missing credentials or accounts");
+            return;
+        }
+
+        try {
+            BankJwt.setCredentials(getContext(), appId, clientId, privateKey);
+            JSObject result = new JSObject();
+            result.put("scheduled", BankBackgroundSync.schedule(getContext(), accounts, intervalMinutes, requiresIdle));
+            call.resolve(result);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error scheduling background sync", e);
+            call.reject("Failed to schedule background sync: " + e.getMessage());
+        }
+    }
+
+    /**
+     * ✅ NEW: Stop the background sync and forget its credentials
+     */
+    @PluginMethod
+    public void cancelBackgroundSync(PluginCall call) {
+        BankBackgroundSync.cancel(getContext());
+        call.resolve();
+    }
+
+    /**
+     * ✅ NEW: Batches collected by the background sync since the last ack, oldest first
+     */
+    @PluginMethod
+    public void getBackgroundSync(PluginCall call) {
+        call.resolve(BankBackgroundSync.getInbox(getContext()));
+    }
+
+    /**
+     * ✅ NEW: Delete background batches once JS has stored them
+     */
+    @PluginMethod
+    public void ackBackgroundSync(PluginCall call) {
+        JSArray ids = call.getArray("ids");
+        JSObject result = new JSObject();
+        result.put("removed", ids != null ? BankBackgroundSync.ack(getContext(), HeadlessCaptureStore.toIdSet(ids)) : 0);
+        call.resolve(result);
+    }
+
+    /**
+     * ✅ NEW: Transport counters (requests, retries, 304s, wire vs decoded bytes)
+     */
+    @PluginMethod
+    public void getStats(PluginCall call) {
+        call.resolve(BankHttpClient.getStats());
+    }
+
+    /**
+     * ✅ NEW: Drop cached bodies/validators (e.g. after disconnecting a bank)
+     */
+    @PluginMethod
+    public void clearCache(PluginCall call) {
+        BankHttpCache.clear(getContext());
+        call.resolve();
+    }
+
+    /**
+     * ✅ NEW: Cancel a call started with the "requestId" option
+     */
+    @PluginMethod
+    public void cancelRequest(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("cancelled", PluginTaskExecutor.cancel(call.getString("requestId")));
+        call.resolve(result);
+    }
+
+    private static String trimSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
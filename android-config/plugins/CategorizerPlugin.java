@@ -0,0 +1,196 @@
+package com.gestore.spese;
+
+import android.os.CancellationSignal;
+import android.util.Base64;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+/**
+ * Native categorization of auto transactions.
+ *
+ * The merchant index (MerchantCategoryIndex) and the classifier (CategoryClassifier) are also used
+ * directly by the native capture paths; this plugin lets JS query them for transactions parsed in
+ * the WebView, teach them the categories the user confirms, and move the index between devices
+ * as a compact blob.
+ */
+@CapacitorPlugin(name = "Categorizer")
+public class CategorizerPlugin extends Plugin {
+
+    // Learning rewrites the index file: serialize it, never block the bridge thread
+    private static final PluginTaskExecutor.Limits INDEX_LIMITS =
+        new PluginTaskExecutor.Limits("Categorizer", "index", 1, 32, 10000);
+
+    @Override
+    protected void handleOnDestroy() {
+        PluginTaskExecutor.cancelAll("Categorizer");
+        super.handleOnDestroy();
+    }
+
+    /**
+     * ✅ NEW: Category of the longest known merchant in the description (match), otherwise the
+     * classifier prediction with its confidence (prediction); neither if nothing is known yet
+     */
+    @PluginMethod
+    public void suggestCategory(PluginCall call) {
+        final String description = call.getString("description", "");
+        PluginTaskExecutor.submit(call, INDEX_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) {
+                JSObject ret = new JSObject();
+                JSObject match = MerchantCategoryIndex.lookup(getContext(), description);
+                if (match != null) {
+                    ret.put("match", match);
+                } else {
+                    ret.put("prediction", CategoryClassifier.classify(getContext(), description));
+                }
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Learn the category the user confirmed for a transaction.
+     * Options: description, merchant (optional explicit key), category, subcategory.
+     * The classifier learns every confirmation; the merchant index only when it was missing or wrong.
+     */
+    @PluginMethod
+    public void learnCategory(PluginCall call) {
+        final String description = call.getString("description", "");
+        final String merchant = call.getString("merchant");
+        final String category = call.getString("category");
+        final String subcategory = call.getString("subcategory", "");
+
+        if (category == null || category.isEmpty()) {
+            call.reject("Missing category");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, INDEX_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                CategoryClassifier.learn(getContext(), description, category, subcategory);
+
+                JSObject known = merchant == null ? MerchantCategoryIndex.lookup(getContext(), description) : null;
+                boolean indexed = known != null && category.equals(known.getString("category"))
+                    && subcategory.equals(known.getString("subcategory", ""));
+
+                JSObject ret = new JSObject();
+                ret.put("merchant", indexed
+                    ? known.getString("merchant")
+                    : MerchantCategoryIndex.learn(getContext(), description, merchant, category, subcategory));
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Forget a learned merchant
+     */
+    @PluginMethod
+    public void forgetMerchant(PluginCall call) {
+        final String merchant = call.getString("merchant");
+        if (merchant == null) {
+            call.reject("Missing merchant");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, INDEX_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                JSObject ret = new JSObject();
+                ret.put("removed", MerchantCategoryIndex.forget(getContext(), merchant));
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Whole merchant index as a base64 blob (for backups / other devices)
+     */
+    @PluginMethod
+    public void exportMerchantIndex(PluginCall call) {
+        PluginTaskExecutor.submit(call, INDEX_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                byte[] blob = MerchantCategoryIndex.exportBlob(getContext());
+                JSObject ret = MerchantCategoryIndex.getStats(getContext());
+                ret.put("data", Base64.encodeToString(blob, Base64.NO_WRAP));
+                ret.put("bytes", blob.length);
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Load a blob from exportMerchantIndex(); replace = false merges it over the current index
+     */
+    @PluginMethod
+    public void importMerchantIndex(PluginCall call) {
+        final String data = call.getString("data");
+        final boolean replace = call.getBoolean("replace", false);
+        if (data == null) {
+            call.reject("Missing data");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, INDEX_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                byte[] blob;
+                try {
+                    blob = Base64.decode(data, Base64.DEFAULT);
+                } catch (IllegalArgumentException e) {
+                    throw new PluginTaskExecutor.Rejection("Invalid merchant index data");
+                }
+                JSObject ret = new JSObject();
+                ret.put("entries", MerchantCategoryIndex.importBlob(getContext(), blob, replace));
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Classifier size, accuracy measured on the confirmations it predicted before
+     * learning them, and average classify() time
+     */
+    @PluginMethod
+    public void getClassifierStats(PluginCall call) {
+        PluginTaskExecutor.submit(call, INDEX_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) {
+                return CategoryClassifier.getStats(getContext());
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Forget everything the classifier learned
+     */
+    @PluginMethod
+    public void resetClassifier(PluginCall call) {
+        PluginTaskExecutor.submit(call, INDEX_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) {
+                CategoryClassifier.reset(getContext());
+                return new JSObject();
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Size of the merchant index (entries, learned overrides, trie nodes, bytes on disk)
+     */
+    @PluginMethod
+    public void getMerchantIndexStats(PluginCall call) {
+        PluginTaskExecutor.submit(call, INDEX_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) {
+                return MerchantCategoryIndex.getStats(getContext());
+            }
+        });
+    }
+}
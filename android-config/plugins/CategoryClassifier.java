@@ -0,0 +1,163 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * On-device category classifier: the naive Bayes CategoryModel, learned one example at a time
+ * from the categories the user confirms and kept in a file.
+ *
+ * It covers what the merchant index cannot: merchants never seen before that look like known
+ * ones ("PIZZERIA DA MARIO" after a few "PIZZERIA ..."). Each class is a dense count array over
+ * the hash space, so a prediction is a few hundred array reads plus logs.
+ *
+ * Quality is tracked prequentially: before learning an example the model predicts it, so the
+ * stats report the accuracy the user would have seen, per confidence level, on real data.
+ * CategoryClassifierTest measures the same on a synthetic corpus.
+ */
+public final class CategoryClassifier {
+
+    private static final String TAG = "CategoryClassifier";
+    private static final String FILE_NAME = "category_classifier.bin";
+
+    // Below this posterior (or with too little evidence) callers should not trust the prediction
+    public static final double CONFIDENT = CategoryModel.CONFIDENT;
+
+    private static final Object LOCK = new Object();
+    private static CategoryModel model;
+    // Timing of classify() since process start
+    private static long classifyCount = 0;
+    private static long classifyNanos = 0;
+
+    private CategoryClassifier() {
+    }
+
+    /**
+     * Most likely category
+     *
+     * @return {category, subcategory, confidence, confident, examples} or null if nothing learned yet
+     */
+    public static JSObject classify(Context context, String description) {
+        long start = System.nanoTime();
+        int[] features = CategoryModel.features(description);
+        if (features.length == 0) return null;
+
+        CategoryModel.Prediction prediction;
+        synchronized (LOCK) {
+            ensureLoaded(context);
+            prediction = model.predict(features);
+            classifyCount++;
+            classifyNanos += System.nanoTime() - start;
+        }
+        if (prediction == null) return null;
+
+        JSObject ret = new JSObject();
+        ret.put("category", prediction.category);
+        ret.put("subcategory", prediction.subcategory);
+        ret.put("confidence", prediction.confidence);
+        ret.put("confident", prediction.confident);
+        ret.put("examples", prediction.examples);
+        return ret;
+    }
+
+    /**
+     * Learn a confirmed categorization (one multinomial update)
+     */
+    public static void learn(Context context, String description, String category, String subcategory) throws IOException {
+        synchronized (LOCK) {
+            ensureLoaded(context);
+            if (model.classCount() >= CategoryModel.MAX_CLASSES && !model.knows(category, subcategory)) {
+                Log.w(TAG, "⚠️ Too many categories, not learning " + category);
+                return;
+            }
+            if (model.learn(description, category, subcategory)) save(context);
+        }
+    }
+
+    /**
+     * Forget everything learned
+     */
+    public static void reset(Context context) {
+        synchronized (LOCK) {
+            model = new CategoryModel();
+            new File(context.getFilesDir(), FILE_NAME).delete();
+        }
+    }
+
+    /**
+     * Model size, prequential accuracy and classify() timing
+     */
+    public static JSObject getStats(Context context) {
+        synchronized (LOCK) {
+            ensureLoaded(context);
+            JSObject ret = new JSObject();
+            ret.put("examples", model.examples());
+            ret.put("classes", model.classCount());
+            ret.put("tested", model.tested());
+            ret.put("accuracy", model.accuracy());
+            ret.put("confidentTested", model.confidentTested());
+            ret.put("confidentAccuracy", model.confidentAccuracy());
+            ret.put("coverage", model.coverage());
+            ret.put("avgClassifyMicros", classifyCount > 0 ? classifyNanos / 1000.0 / classifyCount : 0);
+            ret.put("bytes", new File(context.getFilesDir(), FILE_NAME).length());
+            return ret;
+        }
+    }
+
+    // ==================== PERSISTENCE ====================
+
+    private static void ensureLoaded(Context context) {
+        if (model != null) return;
+        model = new CategoryModel();
+
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        if (!file.exists()) return;
+        try {
+            DataInputStream in = new DataInputStream(new InflaterInputStream(new FileInputStream(file)));
+            try {
+                model = CategoryModel.read(in);
+                Log.d(TAG, "📂 Loaded classifier: " + model.examples() + " examples, " + model.classCount() + " categories");
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Corrupted classifier, starting over", e);
+            model = new CategoryModel();
+        }
+    }
+
+    private static void save(Context context) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+        try {
+            model.write(out);
+        } finally {
+            out.close();
+        }
+
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        File temp = new File(context.getFilesDir(), FILE_NAME + ".tmp");
+        FileOutputStream fos = new FileOutputStream(temp);
+        try {
+            bytes.writeTo(fos);
+        } finally {
+            fos.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not save classifier");
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.gestore.spese;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Multinomial naive Bayes over hashed character n-grams of the description words and of the
+ * merchant key (MerchantCategoryIndex.merchantKey): the model behind CategoryClassifier.
+ *
+ * It learns one example at a time (no retraining pass) and scores every example before
+ * learning it (prequential accuracy). Plain Java and not thread-safe: CategoryClassifier owns
+ * the instance, its lock and its file.
+ */
+final class CategoryModel {
+
+    static final int MAGIC = 0x43434C31; // "CCL1"
+    static final int VERSION = 1;
+
+    private static final int HASH_BITS = 13;
+    static final int DIMENSIONS = 1 << HASH_BITS;
+    static final int MAX_CLASSES = 64;
+    // Laplace smoothing
+    private static final double ALPHA = 0.5;
+    // Below this posterior (or with too little evidence) callers should not trust the prediction
+    static final double CONFIDENT = 0.8;
+    private static final int MIN_CLASS_EXAMPLES = 2;
+
+    private static final int SEED_WORD = 0x01000193;
+    private static final int SEED_MERCHANT = 0x2C1B3C6D;
+
+    private List<ClassStats> classes = new ArrayList<>();
+    private int examples = 0;
+    // Prequential accuracy: predictions made before learning, and how many were right
+    private int tested = 0;
+    private int correct = 0;
+    private int confidentTested = 0;
+    private int confidentCorrect = 0;
+
+    private static final class ClassStats {
+        final String category;
+        final String subcategory;
+        final int[] counts = new int[DIMENSIONS];
+        int documents = 0;
+        long total = 0;
+
+        ClassStats(String category, String subcategory) {
+            this.category = category;
+            this.subcategory = subcategory != null ? subcategory : "";
+        }
+
+        boolean is(String category, String subcategory) {
+            return this.category.equals(category) && this.subcategory.equals(subcategory != null ? subcategory : "");
+        }
+    }
+
+    /**
+     * Best class for a description
+     */
+    static final class Prediction {
+        final String category;
+        final String subcategory;
+        final double confidence;
+        final boolean confident;
+        final int examples;
+
+        Prediction(String category, String subcategory, double confidence, boolean confident, int examples) {
+            this.category = category;
+            this.subcategory = subcategory;
+            this.confidence = confidence;
+            this.confident = confident;
+            this.examples = examples;
+        }
+
+        boolean is(String category, String subcategory) {
+            return this.category.equals(category) && this.subcategory.equals(subcategory != null ? subcategory : "");
+        }
+    }
+
+    /**
+     * Most likely class, null if nothing learned yet or the description has no features
+     */
+    Prediction predict(String description) {
+        return predict(features(description));
+    }
+
+    /**
+     * Learn a confirmed categorization (one multinomial update), scoring it first.
+     *
+     * @return false if it was not learned (no features, no category, too many classes)
+     */
+    boolean learn(String description, String category, String subcategory) {
+        if (category == null || category.isEmpty()) return false;
+        int[] features = features(description);
+        if (features.length == 0) return false;
+
+        // Score the model on this example before it sees it
+        Prediction prediction = predict(features);
+        if (prediction != null) {
+            boolean right = prediction.is(category, subcategory);
+            tested++;
+            if (right) correct++;
+            if (prediction.confident) {
+                confidentTested++;
+                if (right) confidentCorrect++;
+            }
+        }
+
+        ClassStats target = null;
+        for (ClassStats c : classes) {
+            if (c.is(category, subcategory)) {
+                target = c;
+                break;
+            }
+        }
+        if (target == null) {
+            if (classes.size() >= MAX_CLASSES) return false;
+            target = new ClassStats(category, subcategory);
+            classes.add(target);
+        }
+
+        for (int f : features) target.counts[f]++;
+        target.total += features.length;
+        target.documents++;
+        examples++;
+        return true;
+    }
+
+    boolean knows(String category, String subcategory) {
+        for (ClassStats c : classes) {
+            if (c.is(category, subcategory)) return true;
+        }
+        return false;
+    }
+
+    int examples() {
+        return examples;
+    }
+
+    int classCount() {
+        return classes.size();
+    }
+
+    int tested() {
+        return tested;
+    }
+
+    double accuracy() {
+        return tested > 0 ? (double) correct / tested : 0;
+    }
+
+    int confidentTested() {
+        return confidentTested;
+    }
+
+    double confidentAccuracy() {
+        return confidentTested > 0 ? (double) confidentCorrect / confidentTested : 0;
+    }
+
+    /**
+     * Share of the scored examples that got a confident prediction
+     */
+    double coverage() {
+        return tested > 0 ? (double) confidentTested / tested : 0;
+    }
+
+    /**
+     * Same as predict(String), on features already computed with features()
+     */
+    Prediction predict(int[] features) {
+        if (features.length == 0 || examples == 0 || classes.isEmpty()) return null;
+
+        int n = classes.size();
+        double[] scores = new double[n];
+        double best = Double.NEGATIVE_INFINITY;
+        int bestIndex = 0;
+        for (int k = 0; k < n; k++) {
+            ClassStats c = classes.get(k);
+            double logDenominator = Math.log(c.total + ALPHA * DIMENSIONS);
+            double score = Math.log((double) c.documents / examples);
+            for (int f : features) {
+                score += Math.log(c.counts[f] + ALPHA) - logDenominator;
+            }
+            scores[k] = score;
+            if (score > best) {
+                best = score;
+                bestIndex = k;
+            }
+        }
+
+        // Posterior of the best class (softmax over log scores)
+        double sum = 0;
+        for (int k = 0; k < n; k++) sum += Math.exp(scores[k] - best);
+        double confidence = 1 / sum;
+
+        ClassStats winner = classes.get(bestIndex);
+        return new Prediction(winner.category, winner.subcategory, confidence,
+            confidence >= CONFIDENT && winner.documents >= MIN_CLASS_EXAMPLES && n > 1, winner.documents);
+    }
+
+    /**
+     * Hashed features: char 3-grams of each meaningful word (padded with spaces), plus the
+     * merchant key as a whole and its char 4-grams in a separate hash space
+     */
+    static int[] features(String description) {
+        String normalized = MerchantCategoryIndex.normalize(description);
+        List<Integer> ret = new ArrayList<>();
+
+        for (String word : normalized.split(" ")) {
+            if (word.length() < 2 || isNumber(word)) continue;
+            String padded = " " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                ret.add(hash(padded, i, i + 3, SEED_WORD));
+            }
+        }
+
+        String merchant = MerchantCategoryIndex.merchantKey(description);
+        if (merchant != null) {
+            ret.add(hash(merchant, 0, merchant.length(), SEED_MERCHANT));
+            for (int i = 0; i + 4 <= merchant.length(); i++) {
+                ret.add(hash(merchant, i, i + 4, SEED_MERCHANT));
+            }
+        }
+
+        int[] features = new int[ret.size()];
+        for (int i = 0; i < features.length; i++) features[i] = ret.get(i);
+        return features;
+    }
+
+    // FNV-1a, folded to the hash space
+    private static int hash(String s, int from, int to, int seed) {
+        int h = 0x811C9DC5 ^ seed;
+        for (int i = from; i < to; i++) {
+            h ^= s.charAt(i);
+            h *= 0x01000193;
+        }
+        return (h ^ (h >>> HASH_BITS)) & (DIMENSIONS - 1);
+    }
+
+    private static boolean isNumber(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) < '0' || word.charAt(i) > '9') return false;
+        }
+        return true;
+    }
+
+    // ==================== SERIALIZATION ====================
+
+    static CategoryModel read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION || in.readInt() != DIMENSIONS) {
+            throw new IOException("Incompatible classifier file");
+        }
+        CategoryModel model = new CategoryModel();
+        model.examples = in.readInt();
+        model.tested = in.readInt();
+        model.correct = in.readInt();
+        model.confidentTested = in.readInt();
+        model.confidentCorrect = in.readInt();
+
+        int classCount = in.readInt();
+        for (int k = 0; k < classCount; k++) {
+            ClassStats c = new ClassStats(in.readUTF(), in.readUTF());
+            c.documents = in.readInt();
+            c.total = in.readLong();
+            // Sparse counts: (gap from previous index, count) pairs
+            int nonZero = in.readInt();
+            int index = -1;
+            for (int i = 0; i < nonZero; i++) {
+                index += in.readShort() & 0xFFFF;
+                c.counts[index] = in.readInt();
+            }
+            model.classes.add(c);
+        }
+        return model;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(DIMENSIONS);
+        out.writeInt(examples);
+        out.writeInt(tested);
+        out.writeInt(correct);
+        out.writeInt(confidentTested);
+        out.writeInt(confidentCorrect);
+        out.writeInt(classes.size());
+        for (ClassStats c : classes) {
+            out.writeUTF(c.category);
+            out.writeUTF(c.subcategory);
+            out.writeInt(c.documents);
+            out.writeLong(c.total);
+
+            int nonZero = 0;
+            for (int count : c.counts) {
+                if (count != 0) nonZero++;
+            }
+            out.writeInt(nonZero);
+            int previous = -1;
+            for (int i = 0; i < DIMENSIONS; i++) {
+                if (c.counts[i] == 0) continue;
+                out.writeShort(i - previous);
+                out.writeInt(c.counts[i]);
+                previous = i;
+            }
+        }
+    }
+}
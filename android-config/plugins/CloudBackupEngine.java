@@ -0,0 +1,612 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.util.Base64;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Incremental, deduplicated backup of the app data.
+ *
+ * The serialized data is cut into content-defined chunks (ContentChunker), each stored under
+ * its SHA-256 and compressed; a backup is a manifest listing the chunks in order. Saving
+ * uploads only the chunks the remote store does not have yet, restoring downloads only those
+ * missing from the local chunk cache, then inflates them one after the other into the data.
+ *
+ * Remote protocol (JSON POST to the data script, see HttpStore):
+ * backupHas {hashes} → {missing}, backupPut {chunks: {hash: base64}}, backupCommit {manifest,
+ * pinHash, pinSalt} → {missing} when chunks are gone, backupManifest → {manifest, pinHash,
+ * pinSalt}, backupGet {hashes} → {chunks}. A local directory can stand in for it (DirectoryStore).
+ */
+public final class CloudBackupEngine {
+
+    private static final String TAG = "CloudBackupEngine";
+    private static final String DIR_NAME = "cloud_backup";
+    private static final String STATE_FILE = "state.json";
+    private static final String CHUNKS_DIR = "chunks";
+
+    private static final int MANIFEST_VERSION = 1;
+    private static final String CHUNKER = "gear-13-2k-64k";
+    // Per request: base64 bodies stay well under the script payload limits
+    private static final int UPLOAD_BATCH_BYTES = 256 * 1024;
+    private static final int DOWNLOAD_BATCH_CHUNKS = 48;
+
+    private CloudBackupEngine() {
+    }
+
+    /**
+     * The backend does not know the chunk actions (older script): the caller falls back to the full save
+     */
+    public static final class UnsupportedBackendException extends Exception {
+        public UnsupportedBackendException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Where chunks (compressed, keyed by the SHA-256 of their plain bytes) and manifests live
+     */
+    public interface Store {
+        /** The hashes among these that the store does not have */
+        List<String> missing(List<String> hashes) throws Exception;
+
+        void put(Map<String, byte[]> chunks) throws Exception;
+
+        Map<String, byte[]> get(List<String> hashes) throws Exception;
+
+        /** @return the chunks of the manifest the store lacks (nothing committed then), empty when done */
+        List<String> commit(JSONObject manifest, String pinHash, String pinSalt) throws Exception;
+
+        /** {manifest, pinHash, pinSalt} of the latest backup, null if there is none */
+        JSONObject latest() throws Exception;
+    }
+
+    // ==================== BACKUP / RESTORE ====================
+
+    /**
+     * Save the data, uploading only the chunks the store lacks
+     *
+     * @param account key of the local state (endpoint + email)
+     */
+    public static JSObject backup(Context context, Store store, String account, String data, String pinHash,
+                                  String pinSalt, CancellationSignal signal) throws Exception {
+        long startTime = System.currentTimeMillis();
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        String digest = hex(sha256(bytes, 0, bytes.length));
+        File dir = accountDir(context, account);
+        JSONObject state = readState(dir);
+
+        JSObject result = new JSObject();
+        result.put("size", bytes.length);
+        if (state != null && digest.equals(state.getJSONObject("manifest").optString("sha256"))
+            && same(pinHash, state.optString("pinHash", null)) && same(pinSalt, state.optString("pinSalt", null))) {
+            // Same data already committed from here: no request at all
+            result.put("unchanged", true);
+            result.put("createdAt", state.getJSONObject("manifest").optLong("createdAt"));
+            result.put("elapsedMs", System.currentTimeMillis() - startTime);
+            return result;
+        }
+
+        List<ContentChunker.Chunk> chunks = ContentChunker.split(bytes);
+        List<String> hashes = new ArrayList<>(chunks.size());
+        Map<String, ContentChunker.Chunk> distinct = new LinkedHashMap<>();
+        for (ContentChunker.Chunk chunk : chunks) {
+            String hash = hex(sha256(bytes, chunk.offset, chunk.length));
+            hashes.add(hash);
+            if (!distinct.containsKey(hash)) distinct.put(hash, chunk);
+        }
+
+        // Chunks of the last committed manifest are known to be there (commit re-checks anyway)
+        Set<String> known = state != null ? toSet(state.getJSONObject("manifest").optJSONArray("chunks")) : new HashSet<String>();
+        List<String> candidates = new ArrayList<>();
+        for (String hash : distinct.keySet()) {
+            if (!known.contains(hash)) candidates.add(hash);
+        }
+        signal.throwIfCanceled();
+        List<String> missing = candidates.isEmpty() ? new ArrayList<String>() : store.missing(candidates);
+
+        File cache = chunksDir(dir);
+        long[] uploaded = upload(store, missing, distinct, bytes, cache, signal);
+
+        JSONObject manifest = new JSONObject();
+        manifest.put("version", MANIFEST_VERSION);
+        manifest.put("chunker", CHUNKER);
+        manifest.put("size", bytes.length);
+        manifest.put("sha256", digest);
+        manifest.put("chunks", new JSONArray(hashes));
+        manifest.put("createdAt", System.currentTimeMillis());
+
+        List<String> refused = store.commit(manifest, pinHash, pinSalt);
+        if (!refused.isEmpty()) {
+            // Remote lost chunks we thought it had (e.g. account wiped): send them and retry once
+            Log.w(TAG, "⚠️ Commit refused, " + refused.size() + " chunks missing remotely");
+            long[] again = upload(store, refused, distinct, bytes, cache, signal);
+            uploaded[0] += again[0];
+            uploaded[1] += again[1];
+            if (!store.commit(manifest, pinHash, pinSalt).isEmpty()) throw new IOException("Backup commit refused");
+        }
+
+        // Local cache mirrors the committed manifest: the next restore downloads nothing
+        for (Map.Entry<String, ContentChunker.Chunk> entry : distinct.entrySet()) {
+            File file = new File(cache, entry.getKey());
+            if (!file.exists()) writeAtomic(file, deflate(bytes, entry.getValue().offset, entry.getValue().length));
+        }
+        saveState(dir, manifest, pinHash, pinSalt);
+
+        long elapsed = System.currentTimeMillis() - startTime;
+        Log.d(TAG, "☁️ Backup: " + chunks.size() + " chunks, " + uploaded[0] + " uploaded (" + uploaded[1] / 1024 + " KB of "
+            + bytes.length / 1024 + " KB) in " + elapsed + "ms");
+
+        result.put("unchanged", false);
+        result.put("createdAt", manifest.getLong("createdAt"));
+        result.put("chunks", chunks.size());
+        result.put("uploadedChunks", uploaded[0]);
+        result.put("uploadedBytes", uploaded[1]);
+        result.put("elapsedMs", elapsed);
+        return result;
+    }
+
+    /**
+     * Rebuild the data of the latest backup, downloading only the chunks not cached locally.
+     * Resolves {found: false} when the account has no chunked backup.
+     */
+    public static JSObject restore(Context context, Store store, String account, CancellationSignal signal) throws Exception {
+        long startTime = System.currentTimeMillis();
+        JSObject result = new JSObject();
+        JSONObject latest = store.latest();
+        if (latest == null || latest.optJSONObject("manifest") == null) {
+            result.put("found", false);
+            return result;
+        }
+
+        JSONObject manifest = latest.getJSONObject("manifest");
+        if (manifest.optInt("version") != MANIFEST_VERSION || !CHUNKER.equals(manifest.optString("chunker"))) {
+            throw new PluginTaskExecutor.Rejection("Unsupported backup format");
+        }
+        JSONArray hashes = manifest.getJSONArray("chunks");
+        File dir = accountDir(context, account);
+        File cache = chunksDir(dir);
+
+        List<String> needed = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < hashes.length(); i++) {
+            String hash = hashes.getString(i);
+            if (seen.add(hash) && !new File(cache, hash).exists()) needed.add(hash);
+        }
+
+        long downloadedBytes = 0;
+        for (int start = 0; start < needed.size(); start += DOWNLOAD_BATCH_CHUNKS) {
+            signal.throwIfCanceled();
+            List<String> batch = needed.subList(start, Math.min(needed.size(), start + DOWNLOAD_BATCH_CHUNKS));
+            Map<String, byte[]> chunks = store.get(batch);
+            for (String hash : batch) {
+                byte[] compressed = chunks.get(hash);
+                if (compressed == null) throw new IOException("Backup chunk " + hash + " not found");
+                byte[] plain = inflate(compressed);
+                if (!hash.equals(hex(sha256(plain, 0, plain.length)))) throw new IOException("Backup chunk " + hash + " is corrupted");
+                writeAtomic(new File(cache, hash), compressed);
+                downloadedBytes += compressed.length;
+            }
+        }
+
+        // Inflate the chunks in order straight into the output, checking the whole digest
+        int size = manifest.optInt("size", 0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, size));
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (int i = 0; i < hashes.length(); i++) {
+            if ((i & 15) == 0) signal.throwIfCanceled();
+            byte[] plain = inflate(readFile(new File(cache, hashes.getString(i))));
+            digest.update(plain);
+            out.write(plain);
+        }
+        if (!hex(digest.digest()).equals(manifest.optString("sha256"))) throw new IOException("Restored backup does not match its manifest");
+
+        String pinHash = latest.optString("pinHash", null);
+        String pinSalt = latest.optString("pinSalt", null);
+        saveState(dir, manifest, pinHash, pinSalt);
+
+        long elapsed = System.currentTimeMillis() - startTime;
+        Log.d(TAG, "☁️ Restore: " + hashes.length() + " chunks, " + needed.size() + " downloaded (" + downloadedBytes / 1024
+            + " KB) in " + elapsed + "ms");
+
+        result.put("found", true);
+        result.put("data", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        result.put("pinHash", pinHash);
+        result.put("pinSalt", pinSalt);
+        result.put("createdAt", manifest.optLong("createdAt"));
+        result.put("size", out.size());
+        result.put("chunks", hashes.length());
+        result.put("downloadedChunks", needed.size());
+        result.put("downloadedBytes", downloadedBytes);
+        result.put("elapsedMs", elapsed);
+        return result;
+    }
+
+    /**
+     * Drop the local state of an account (next backup asks the store again for every chunk)
+     */
+    public static void forget(Context context, String account) {
+        deleteRecursive(accountDir(context, account));
+    }
+
+    /**
+     * Compress and send the given chunks in batches of about UPLOAD_BATCH_BYTES
+     *
+     * @return {chunks, compressed bytes} sent
+     */
+    private static long[] upload(Store store, List<String> hashes, Map<String, ContentChunker.Chunk> chunks, byte[] data,
+                                 File cache, CancellationSignal signal) throws Exception {
+        long[] sent = {0, 0};
+        Map<String, byte[]> batch = new LinkedHashMap<>();
+        int batchBytes = 0;
+        for (String hash : hashes) {
+            ContentChunker.Chunk chunk = chunks.get(hash);
+            if (chunk == null) continue;
+            byte[] compressed = deflate(data, chunk.offset, chunk.length);
+            File cached = new File(cache, hash);
+            if (!cached.exists()) writeAtomic(cached, compressed);
+
+            if (!batch.isEmpty() && batchBytes + compressed.length > UPLOAD_BATCH_BYTES) {
+                signal.throwIfCanceled();
+                store.put(batch);
+                batch = new LinkedHashMap<>();
+                batchBytes = 0;
+            }
+            batch.put(hash, compressed);
+            batchBytes += compressed.length;
+            sent[0]++;
+            sent[1] += compressed.length;
+        }
+        if (!batch.isEmpty()) {
+            signal.throwIfCanceled();
+            store.put(batch);
+        }
+        return sent;
+    }
+
+    // ==================== STORES ====================
+
+    /**
+     * Chunks as files in a directory (local / mounted backups, tests): chunks/<hash> + latest.json
+     */
+    public static final class DirectoryStore implements Store {
+        private final File root;
+        private final File chunks;
+
+        public DirectoryStore(File root) {
+            this.root = root;
+            this.chunks = new File(root, CHUNKS_DIR);
+            if (!chunks.exists()) chunks.mkdirs();
+        }
+
+        @Override
+        public List<String> missing(List<String> hashes) {
+            List<String> missing = new ArrayList<>();
+            for (String hash : hashes) {
+                if (!new File(chunks, checkHash(hash)).exists()) missing.add(hash);
+            }
+            return missing;
+        }
+
+        @Override
+        public void put(Map<String, byte[]> batch) throws IOException {
+            for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+                writeAtomic(new File(chunks, checkHash(entry.getKey())), entry.getValue());
+            }
+        }
+
+        @Override
+        public Map<String, byte[]> get(List<String> hashes) throws IOException {
+            Map<String, byte[]> found = new LinkedHashMap<>();
+            for (String hash : hashes) {
+                File file = new File(chunks, checkHash(hash));
+                if (file.exists()) found.put(hash, readFile(file));
+            }
+            return found;
+        }
+
+        @Override
+        public List<String> commit(JSONObject manifest, String pinHash, String pinSalt) throws Exception {
+            List<String> all = new ArrayList<>(toSet(manifest.getJSONArray("chunks")));
+            List<String> missing = missing(all);
+            if (!missing.isEmpty()) return missing;
+
+            JSONObject latest = new JSONObject();
+            latest.put("manifest", manifest);
+            latest.put("pinHash", pinHash);
+            latest.put("pinSalt", pinSalt);
+            writeAtomic(new File(root, "latest.json"), latest.toString().getBytes(StandardCharsets.UTF_8));
+            return missing;
+        }
+
+        @Override
+        public JSONObject latest() throws IOException, JSONException {
+            return readJson(new File(root, "latest.json"));
+        }
+    }
+
+    /**
+     * The data script: one JSON POST per action, authenticated like the legacy save (email + pin hash)
+     */
+    public static final class HttpStore implements Store {
+        private final Context context;
+        private final String endpoint;
+        private final String email;
+        private final CancellationSignal signal;
+
+        public HttpStore(Context context, String endpoint, String email, CancellationSignal signal) {
+            this.context = context;
+            this.endpoint = endpoint;
+            this.email = email;
+            this.signal = signal;
+        }
+
+        @Override
+        public List<String> missing(List<String> hashes) throws Exception {
+            JSONObject request = request("backupHas");
+            request.put("hashes", new JSONArray(hashes));
+            return toList(call(request).optJSONArray("missing"));
+        }
+
+        @Override
+        public void put(Map<String, byte[]> batch) throws Exception {
+            JSONObject chunks = new JSONObject();
+            for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+                chunks.put(entry.getKey(), Base64.encodeToString(entry.getValue(), Base64.NO_WRAP));
+            }
+            JSONObject request = request("backupPut");
+            request.put("chunks", chunks);
+            call(request);
+        }
+
+        @Override
+        public Map<String, byte[]> get(List<String> hashes) throws Exception {
+            JSONObject request = request("backupGet");
+            request.put("hashes", new JSONArray(hashes));
+            JSONObject chunks = call(request).optJSONObject("chunks");
+            Map<String, byte[]> found = new LinkedHashMap<>();
+            if (chunks == null) return found;
+            for (String hash : hashes) {
+                String encoded = chunks.optString(hash, null);
+                if (encoded != null) found.put(hash, Base64.decode(encoded, Base64.DEFAULT));
+            }
+            return found;
+        }
+
+        @Override
+        public List<String> commit(JSONObject manifest, String pinHash, String pinSalt) throws Exception {
+            JSONObject request = request("backupCommit");
+            request.put("manifest", manifest);
+            request.put("pinHash", pinHash);
+            request.put("pinSalt", pinSalt);
+            return toList(call(request).optJSONArray("missing"));
+        }
+
+        @Override
+        public JSONObject latest() throws Exception {
+            JSONObject response = call(request("backupManifest"));
+            return response.optJSONObject("manifest") != null ? response : null;
+        }
+
+        private JSONObject request(String action) throws JSONException {
+            JSONObject request = new JSONObject();
+            request.put("action", action);
+            request.put("email", email);
+            return request;
+        }
+
+        private JSONObject call(JSONObject request) throws Exception {
+            final String action = request.getString("action");
+            return BankHttpClient.execute(context, endpoint, null, "POST", request.toString(), false, signal,
+                new BankHttpClient.BodyHandler<JSONObject>() {
+                    @Override
+                    public JSONObject handle(int status, InputStream body, boolean fromCache) throws Exception {
+                        if (status >= 400) throw new IOException("HTTP " + status + " for " + action);
+                        JSONObject response;
+                        try {
+                            response = new JSONObject(new String(readAll(body), StandardCharsets.UTF_8));
+                        } catch (JSONException e) {
+                            // Older scripts answer unknown actions with an HTML page
+                            throw new UnsupportedBackendException(action + " not supported by the backend");
+                        }
+                        if (!response.optBoolean("success")) {
+                            throw new UnsupportedBackendException(action + ": " + response.optString("error", "not supported"));
+                        }
+                        return response;
+                    }
+                });
+        }
+    }
+
+    // ==================== HELPERS ====================
+
+    private static File accountDir(Context context, String account) {
+        byte[] bytes = account.getBytes(StandardCharsets.UTF_8);
+        String key = hex(sha256(bytes, 0, bytes.length)).substring(0, 16);
+        File dir = new File(new File(context.getFilesDir(), DIR_NAME), key);
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+
+    private static File chunksDir(File accountDir) {
+        File dir = new File(accountDir, CHUNKS_DIR);
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+
+    /**
+     * Last committed {manifest, pinHash, pinSalt}; null if none or unreadable (everything is re-checked then)
+     */
+    private static JSONObject readState(File dir) {
+        try {
+            JSONObject state = readJson(new File(dir, STATE_FILE));
+            return state != null && state.optJSONObject("manifest") != null ? state : null;
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ Backup state unreadable, starting over: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Remember the committed manifest and drop cached chunks it no longer uses
+     */
+    private static void saveState(File dir, JSONObject manifest, String pinHash, String pinSalt) throws Exception {
+        JSONObject state = new JSONObject();
+        state.put("manifest", manifest);
+        state.put("pinHash", pinHash);
+        state.put("pinSalt", pinSalt);
+        writeAtomic(new File(dir, STATE_FILE), state.toString().getBytes(StandardCharsets.UTF_8));
+
+        Set<String> used = toSet(manifest.getJSONArray("chunks"));
+        File[] files = chunksDir(dir).listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (!used.contains(file.getName())) file.delete();
+        }
+    }
+
+    private static byte[] deflate(byte[] data, int offset, int length) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 3));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) throw new IOException("Truncated backup chunk");
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid backup chunk", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] sha256(byte[] data, int offset, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, offset, length);
+            return digest.digest();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    // Hashes come from the network: never let one become a path
+    private static String checkHash(String hash) {
+        if (!hash.matches("[0-9a-f]{64}")) throw new IllegalArgumentException("Invalid chunk hash");
+        return hash;
+    }
+
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static Set<String> toSet(JSONArray array) {
+        return new HashSet<>(toList(array));
+    }
+
+    private static List<String> toList(JSONArray array) {
+        List<String> list = new ArrayList<>();
+        if (array == null) return list;
+        for (int i = 0; i < array.length(); i++) {
+            String value = array.optString(i, null);
+            if (value != null) list.add(value);
+        }
+        return list;
+    }
+
+    private static JSONObject readJson(File file) throws IOException, JSONException {
+        if (!file.exists()) return null;
+        return new JSONObject(new String(readFile(file), StandardCharsets.UTF_8));
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return readAll(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    private static void writeAtomic(File file, byte[] data) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not write " + file.getName());
+        }
+    }
+
+    private static void deleteRecursive(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursive(child);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,137 @@
+package com.gestore.spese;
+
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import java.io.File;
+
+/**
+ * Incremental cloud backup of the app data (CloudBackupEngine).
+ *
+ * The endpoint is the data script URL; a file:// endpoint uses a local directory as the
+ * remote store instead. When the script does not support the chunk actions the calls resolve
+ * with supported = false and JS keeps using the legacy full save / load.
+ */
+@CapacitorPlugin(name = "CloudBackup")
+public class CloudBackupPlugin extends Plugin {
+
+    private static final String TAG = "CloudBackupPlugin";
+
+    // Backups and restores of the same account must never interleave
+    private static final PluginTaskExecutor.Limits SYNC_LIMITS =
+        new PluginTaskExecutor.Limits("CloudBackup", "sync", 1, 4, 120000);
+
+    @Override
+    protected void handleOnDestroy() {
+        PluginTaskExecutor.cancelAll("CloudBackup");
+        super.handleOnDestroy();
+    }
+
+    /**
+     * ✅ NEW: Save the app data (serialized JSON) uploading only the chunks the backend lacks.
+     * Options: endpoint, email, data, pinHash, pinSalt.
+     */
+    @PluginMethod
+    public void backup(PluginCall call) {
+        final String endpoint = call.getString("endpoint");
+        final String email = call.getString("email");
+        final String data = call.getString("data");
+        final String pinHash = call.getString("pinHash");
+        final String pinSalt = call.getString("pinSalt");
+
+        if (endpoint == null || email == null || data == null) {
+            call.reject("Missing endpoint, email or data");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, SYNC_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                try {
+                    JSObject ret = CloudBackupEngine.backup(getContext(), store(endpoint, email, signal), account(endpoint, email),
+                        data, pinHash, pinSalt, signal);
+                    ret.put("supported", true);
+                    return ret;
+                } catch (CloudBackupEngine.UnsupportedBackendException e) {
+                    return unsupported(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Rebuild the data of the latest backup (found = false if the account has none).
+     * Options: endpoint, email. Returns data (JSON string), pinHash, pinSalt and transfer counters.
+     */
+    @PluginMethod
+    public void restore(PluginCall call) {
+        final String endpoint = call.getString("endpoint");
+        final String email = call.getString("email");
+
+        if (endpoint == null || email == null) {
+            call.reject("Missing endpoint or email");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, SYNC_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                try {
+                    JSObject ret = CloudBackupEngine.restore(getContext(), store(endpoint, email, signal), account(endpoint, email), signal);
+                    ret.put("supported", true);
+                    return ret;
+                } catch (CloudBackupEngine.UnsupportedBackendException e) {
+                    return unsupported(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Forget the local backup state of an account (logout / account deleted)
+     */
+    @PluginMethod
+    public void forget(PluginCall call) {
+        final String endpoint = call.getString("endpoint");
+        final String email = call.getString("email");
+
+        if (endpoint == null || email == null) {
+            call.reject("Missing endpoint or email");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, SYNC_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) {
+                CloudBackupEngine.forget(getContext(), account(endpoint, email));
+                return new JSObject();
+            }
+        });
+    }
+
+    private CloudBackupEngine.Store store(String endpoint, String email, CancellationSignal signal) {
+        if (endpoint.startsWith("file://")) {
+            String folder = email.trim().toLowerCase().replaceAll("[^a-z0-9._@-]", "_");
+            return new CloudBackupEngine.DirectoryStore(new File(Uri.parse(endpoint).getPath(), folder));
+        }
+        return new CloudBackupEngine.HttpStore(getContext(), endpoint, email, signal);
+    }
+
+    private static String account(String endpoint, String email) {
+        return endpoint + "\n" + email.trim().toLowerCase();
+    }
+
+    private static JSObject unsupported(Exception e) {
+        Log.w(TAG, "⚠️ Chunked backup not available: " + e.getMessage());
+        JSObject ret = new JSObject();
+        ret.put("supported", false);
+        return ret;
+    }
+}
@@ -0,0 +1,67 @@
+package com.gestore.spese;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Content-defined chunking with a Gear rolling hash.
+ *
+ * A boundary is cut where the hash of the last bytes matches a mask, not at fixed offsets:
+ * an edit in the middle of the data only changes the chunks around it, the following ones
+ * realign and keep their hashes (so an incremental backup re-sends just those).
+ */
+public final class ContentChunker {
+
+    public static final int MIN_SIZE = 2 * 1024;
+    public static final int MAX_SIZE = 64 * 1024;
+    // 13 high bits (they depend on the last 64 bytes, the low ones only on the last few)
+    // → a boundary every ~8 KB after MIN_SIZE
+    private static final long MASK = ((1L << 13) - 1) << (64 - 13);
+
+    // Must be identical on every install: java.util.Random is specified to the bit for a seed
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x5EEDC0DEL);
+        for (int i = 0; i < GEAR.length; i++) GEAR[i] = random.nextLong();
+    }
+
+    private ContentChunker() {
+    }
+
+    /**
+     * A slice [offset, offset + length) of the input
+     */
+    public static final class Chunk {
+        public final int offset;
+        public final int length;
+
+        Chunk(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    public static List<Chunk> split(byte[] data) {
+        List<Chunk> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < data.length) {
+            int length = nextBoundary(data, start, Math.min(data.length - start, MAX_SIZE));
+            chunks.add(new Chunk(start, length));
+            start += length;
+        }
+        return chunks;
+    }
+
+    private static int nextBoundary(byte[] data, int start, int available) {
+        if (available <= MIN_SIZE) return available;
+        long hash = 0;
+        // The hash only needs to "see" the last 64 bytes before MIN_SIZE
+        for (int i = MIN_SIZE - 64; i < available; i++) {
+            hash = (hash << 1) + GEAR[data[start + i] & 0xFF];
+            if (i >= MIN_SIZE && (hash & MASK) == 0) return i + 1;
+        }
+        return available;
+    }
+}
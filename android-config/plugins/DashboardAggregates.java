@@ -0,0 +1,303 @@
+package com.gestore.spese;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Running totals of the transactions, pre-rolled into daily buckets, for the dashboard.
+ *
+ * Every series (expenses, income, adjustments and the expenses of each category) is an array
+ * of per-day totals in cents plus a Fenwick tree over it: adding / editing a transaction updates
+ * O(series) buckets in O(log days), the totals of any date range come from two prefix sums.
+ * The cost of a dashboard query depends on the days and categories, not on the history size.
+ *
+ * Transactions are kept by id with their last contribution, so an edit subtracts the old one
+ * before adding the new one. Transfers do not count in the dashboard and are not stored.
+ */
+public final class DashboardAggregates {
+
+    private static final int EXPENSE = 0;
+    private static final int INCOME = 1;
+    private static final int ADJUSTMENT = 2;
+    private static final int CATEGORIES = 3; // index of the first category series
+
+    private static final String DEFAULT_CATEGORY = "Altro";
+    private static final int MIN_CAPACITY = 512;
+    // ~45 years of buckets; days out of the window (typos like year 2204) go to the outliers
+    private static final int MAX_CAPACITY = 1 << 14;
+
+    private static final class Entry {
+        final int day;
+        final int type;
+        final int category; // series index, expenses only (-1 otherwise)
+        final long cents;
+
+        Entry(int day, int type, int category, long cents) {
+            this.day = day;
+            this.type = type;
+            this.category = category;
+            this.cents = cents;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Set<Entry> outliers = new HashSet<>(); // scanned on every query
+    private final Map<String, Integer> categoryIndex = new HashMap<>();
+    private final List<String> categoryNames = new ArrayList<>();
+
+    // Per series: raw day totals [capacity] and the Fenwick tree over them [capacity + 1]
+    private final List<long[]> daily = new ArrayList<>();
+    private final List<long[]> trees = new ArrayList<>();
+    private int baseDay = 0; // epoch day of bucket 0
+    private int capacity = 0; // 0 until the first transaction
+
+    public DashboardAggregates() {
+        for (int i = 0; i < CATEGORIES; i++) addSeries();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        outliers.clear();
+        categoryIndex.clear();
+        categoryNames.clear();
+        daily.clear();
+        trees.clear();
+        baseDay = 0;
+        capacity = 0;
+        for (int i = 0; i < CATEGORIES; i++) addSeries();
+    }
+
+    /**
+     * Insert or replace a transaction (null day: bad date). One that does not count (transfer,
+     * bad date or amount) just removes the stored one.
+     */
+    public synchronized void put(String id, String type, double amount, String category, Integer day) {
+        remove(id);
+
+        int series = typeOf(type);
+        if (series < 0 || day == null || Double.isNaN(amount) || Double.isInfinite(amount)) return;
+
+        int categorySeries = -1;
+        if (series == EXPENSE) {
+            categorySeries = categorySeries(category == null || category.isEmpty() ? DEFAULT_CATEGORY : category);
+        }
+        Entry entry = new Entry(day, series, categorySeries, Math.round(amount * 100));
+        entries.put(id, entry);
+        apply(entry, 1);
+    }
+
+    public synchronized void remove(String id) {
+        Entry old = entries.remove(id);
+        if (old != null) apply(old, -1);
+    }
+
+    /**
+     * Totals of the inclusive range [start, end] (YYYY-MM-DD) and the expenses of the day "today".
+     * Returns totalExpenses, totalIncome, totalAdjustments, dailyTotal and categories
+     * ([{name, value}] of the range, largest first).
+     */
+    public synchronized JSObject query(String start, String end, String today) {
+        Integer startDay = parseDay(start);
+        Integer endDay = parseDay(end);
+        Integer todayDay = parseDay(today);
+
+        long[] totals = new long[daily.size()];
+        for (int s = 0; s < totals.length; s++) totals[s] = rangeSum(s, startDay, endDay);
+        long todayCents = rangeSum(EXPENSE, todayDay, todayDay);
+        for (Entry entry : outliers) {
+            if (entry.type == EXPENSE && todayDay != null && entry.day == todayDay) todayCents += entry.cents;
+            if (startDay == null || endDay == null || entry.day < startDay || entry.day > endDay) continue;
+            totals[entry.type] += entry.cents;
+            if (entry.category >= 0) totals[entry.category] += entry.cents;
+        }
+
+        JSObject ret = new JSObject();
+        ret.put("totalExpenses", toAmount(totals[EXPENSE]));
+        ret.put("totalIncome", toAmount(totals[INCOME]));
+        ret.put("totalAdjustments", toAmount(totals[ADJUSTMENT]));
+        ret.put("dailyTotal", toAmount(todayCents));
+
+        List<Object[]> categories = new ArrayList<>();
+        for (int i = 0; i < categoryNames.size(); i++) {
+            long cents = totals[CATEGORIES + i];
+            if (cents != 0) categories.add(new Object[]{categoryNames.get(i), cents});
+        }
+        Collections.sort(categories, new Comparator<Object[]>() {
+            @Override
+            public int compare(Object[] a, Object[] b) {
+                return Long.compare((Long) b[1], (Long) a[1]);
+            }
+        });
+        JSArray list = new JSArray();
+        for (Object[] category : categories) {
+            JSObject item = new JSObject();
+            item.put("name", category[0]);
+            item.put("value", toAmount((Long) category[1]));
+            list.put(item);
+        }
+        ret.put("categories", list);
+        return ret;
+    }
+
+    public synchronized JSObject stats() {
+        JSObject ret = new JSObject();
+        ret.put("transactions", entries.size());
+        ret.put("days", capacity);
+        ret.put("outliers", outliers.size());
+        ret.put("categories", categoryNames.size());
+        return ret;
+    }
+
+    // ---- Buckets ----
+
+    private void apply(Entry entry, int sign) {
+        if (sign < 0 && outliers.remove(entry)) return;
+        if (!ensureDay(entry.day)) {
+            outliers.add(entry);
+            return;
+        }
+        long delta = sign * entry.cents;
+        int bucket = entry.day - baseDay;
+        add(entry.type, bucket, delta);
+        if (entry.category >= 0) add(entry.category, bucket, delta);
+    }
+
+    private void add(int series, int bucket, long delta) {
+        daily.get(series)[bucket] += delta;
+        long[] tree = trees.get(series);
+        for (int i = bucket + 1; i <= capacity; i += i & -i) tree[i] += delta;
+    }
+
+    /**
+     * Sum of the buckets [0, bucket]
+     */
+    private long prefix(int series, int bucket) {
+        long[] tree = trees.get(series);
+        long sum = 0;
+        for (int i = bucket + 1; i > 0; i -= i & -i) sum += tree[i];
+        return sum;
+    }
+
+    private long rangeSum(int series, Integer startDay, Integer endDay) {
+        if (startDay == null || endDay == null || capacity == 0) return 0;
+        int from = Math.max(startDay - baseDay, 0);
+        int to = Math.min(endDay - baseDay, capacity - 1);
+        if (from > to) return 0;
+        if (from == to) return daily.get(series)[from];
+        return prefix(series, to) - (from > 0 ? prefix(series, from - 1) : 0);
+    }
+
+    private int categorySeries(String name) {
+        Integer index = categoryIndex.get(name);
+        if (index == null) {
+            index = CATEGORIES + categoryNames.size();
+            categoryIndex.put(name, index);
+            categoryNames.add(name);
+            addSeries();
+        }
+        return index;
+    }
+
+    private void addSeries() {
+        daily.add(new long[capacity]);
+        trees.add(new long[capacity + 1]);
+    }
+
+    /**
+     * Grow the bucket range (doubling, so amortized O(1) per transaction) to include the day;
+     * false if that would exceed MAX_CAPACITY
+     */
+    private boolean ensureDay(int day) {
+        if (capacity > 0 && day >= baseDay && day < baseDay + capacity) return true;
+
+        int from = capacity == 0 ? day : Math.min(baseDay, day);
+        int to = capacity == 0 ? day : Math.max(baseDay + capacity - 1, day);
+        int newCapacity = Math.max(capacity, MIN_CAPACITY);
+        while (newCapacity < to - from + 1) newCapacity *= 2;
+        if (newCapacity > MAX_CAPACITY) return false;
+        // Leave room on both sides: history is imported backwards, new days are appended
+        int newBase = from - (newCapacity - (to - from + 1)) / 2;
+
+        for (int s = 0; s < daily.size(); s++) {
+            long[] values = new long[newCapacity];
+            if (capacity > 0) System.arraycopy(daily.get(s), 0, values, baseDay - newBase, capacity);
+            daily.set(s, values);
+            trees.set(s, build(values));
+        }
+        baseDay = newBase;
+        capacity = newCapacity;
+        return true;
+    }
+
+    /**
+     * Fenwick tree of the values in O(n)
+     */
+    private static long[] build(long[] values) {
+        long[] tree = new long[values.length + 1];
+        System.arraycopy(values, 0, tree, 1, values.length);
+        for (int i = 1; i <= values.length; i++) {
+            int parent = i + (i & -i);
+            if (parent <= values.length) tree[parent] += tree[i];
+        }
+        return tree;
+    }
+
+    // ---- Parsing ----
+
+    private static int typeOf(String type) {
+        switch (type) {
+            case "expense":
+                return EXPENSE;
+            case "income":
+                return INCOME;
+            case "adjustment":
+                return ADJUSTMENT;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Epoch day of a YYYY-MM-DD date (null if malformed). Out of range days roll over like
+     * the JS Date constructor does ("2024-02-30" is March 1st).
+     */
+    static Integer parseDay(String date) {
+        if (date == null) return null;
+        String[] parts = date.trim().split("-");
+        if (parts.length != 3) return null;
+        try {
+            int year = Integer.parseInt(parts[0]);
+            int month = Integer.parseInt(parts[1]);
+            int day = Integer.parseInt(parts[2]);
+            if (month < 1 || month > 12) return null;
+            return daysFromCivil(year, month, day);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date (no java.time below API 26)
+     */
+    static int daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static double toAmount(long cents) {
+        return cents / 100.0;
+    }
+}
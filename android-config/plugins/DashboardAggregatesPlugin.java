@@ -0,0 +1,198 @@
+package com.gestore.spese;
+
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Aggregates of the local transactions: dashboard totals from the pre-rolled daily buckets of
+ * DashboardAggregates, account balances from the BalanceLedger, recurring charges to suggest as
+ * subscriptions from the SubscriptionDetector.
+ *
+ * JS sends only the transactions added / edited / deleted since its last sync (everything,
+ * with reset = true, at the first sync of the session) and both stores are updated from it;
+ * the dashboard, the bank reconciliation and the subscriptions screen then query them without
+ * passing the history again.
+ * The stores live as long as the process.
+ */
+@CapacitorPlugin(name = "DashboardAggregates")
+public class DashboardAggregatesPlugin extends Plugin {
+
+    private static final String TAG = "DashboardAggregatesPlugin";
+
+    private static final DashboardAggregates STORE = new DashboardAggregates();
+    private static final BalanceLedger LEDGER = new BalanceLedger();
+    private static final SubscriptionDetector DETECTOR = new SubscriptionDetector();
+
+    // One lane for syncs and queries: a query must see the syncs sent before it
+    private static final PluginTaskExecutor.Limits LIMITS =
+        new PluginTaskExecutor.Limits("DashboardAggregates", "aggregates", 1, 16, 15000);
+
+    @Override
+    protected void handleOnDestroy() {
+        PluginTaskExecutor.cancelAll("DashboardAggregates");
+        super.handleOnDestroy();
+    }
+
+    /**
+     * ✅ NEW: Apply the changed transactions to the buckets.
+     * Options: reset (drop everything first), removals (ids),
+     * upserts ([{id, date, type, amount, category, accountId, toAccountId, description, recurring}]).
+     * Returns the store size.
+     */
+    @PluginMethod
+    public void sync(final PluginCall call) {
+        final boolean reset = call.getBoolean("reset", false);
+
+        PluginTaskExecutor.submit(call, LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) {
+                long startTime = System.currentTimeMillis();
+                if (reset) {
+                    STORE.clear();
+                    LEDGER.clear();
+                    DETECTOR.clear();
+                }
+                apply(call.getArray("removals"), call.getArray("upserts"));
+
+                JSObject ret = STORE.stats();
+                ret.put("ledgerTransactions", LEDGER.size());
+                if (reset) {
+                    Log.d(TAG, "✅ Aggregates rebuilt: " + ret.optInt("transactions") + " transactions, "
+                        + ret.optInt("days") + " days in " + (System.currentTimeMillis() - startTime) + "ms");
+                }
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Totals of a date range. Options: start, end (inclusive) and today, as YYYY-MM-DD.
+     */
+    @PluginMethod
+    public void query(PluginCall call) {
+        final String start = call.getString("start");
+        final String end = call.getString("end");
+        final String today = call.getString("today");
+
+        if (start == null || end == null) {
+            call.reject("Missing start or end");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) {
+                return STORE.query(start, end, today);
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Balances of the local accounts from the ledger.
+     * Options: accountIds, date (YYYY-MM-DD: balance at the end of that day, otherwise the current one).
+     * Returns balances: {accountId: amount}.
+     */
+    @PluginMethod
+    public void balances(PluginCall call) {
+        final JSArray accountIds = call.getArray("accountIds");
+        final String date = call.getString("date");
+
+        if (accountIds == null) {
+            call.reject("Missing accountIds");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                Integer day = null;
+                if (date != null) {
+                    day = DashboardAggregates.parseDay(date);
+                    if (day == null) throw new PluginTaskExecutor.Rejection("Invalid date " + date);
+                }
+
+                JSObject balances = new JSObject();
+                for (int i = 0; i < accountIds.length(); i++) {
+                    String id = accountIds.optString(i, null);
+                    if (id == null) continue;
+                    long cents = day != null ? LEDGER.balanceAt(id, day) : LEDGER.balance(id);
+                    balances.put(id, cents / 100.0);
+                }
+                JSObject ret = new JSObject();
+                ret.put("balances", balances);
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Recurring charges of the history still active at `today` (YYYY-MM-DD), most
+     * confident first. Options: today, minConfidence (0-1, default 0.5).
+     */
+    @PluginMethod
+    public void detectSubscriptions(PluginCall call) {
+        final String today = call.getString("today");
+        final double minConfidence = call.getDouble("minConfidence", 0.5);
+
+        if (today == null) {
+            call.reject("Missing today");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                Integer day = DashboardAggregates.parseDay(today);
+                if (day == null) throw new PluginTaskExecutor.Rejection("Invalid date " + today);
+
+                long startTime = System.currentTimeMillis();
+                JSObject ret = DETECTOR.detect(day, minConfidence);
+                Log.d(TAG, "🔁 " + ret.getJSONArray("suggestions").length() + " recurring charges, "
+                    + ret.optInt("analyzed") + "/" + ret.optInt("merchants") + " merchants analyzed in "
+                    + (System.currentTimeMillis() - startTime) + "ms");
+                return ret;
+            }
+        });
+    }
+
+    private static void apply(JSONArray removals, JSONArray upserts) {
+        if (removals != null) {
+            for (int i = 0; i < removals.length(); i++) {
+                String id = removals.optString(i, null);
+                if (id == null) continue;
+                STORE.remove(id);
+                LEDGER.remove(id);
+                DETECTOR.remove(id);
+            }
+        }
+        if (upserts == null) return;
+
+        for (int i = 0; i < upserts.length(); i++) {
+            JSONObject tx = upserts.optJSONObject(i);
+            if (tx == null) continue;
+            String id = tx.optString("id", null);
+            if (id == null) continue;
+
+            String type = tx.optString("type", "");
+            double amount = tx.optDouble("amount", Double.NaN);
+            Integer day = DashboardAggregates.parseDay(tx.optString("date", null));
+            STORE.put(id, type, amount, tx.optString("category", ""), day);
+            LEDGER.put(id, type, amount, tx.optString("accountId", null), tx.optString("toAccountId", null), day);
+            if (tx.optBoolean("recurring", false)) {
+                DETECTOR.remove(id); // Generated by a recurring template: already known
+            } else {
+                DETECTOR.put(id, type, amount, tx.optString("description", ""), tx.optString("category", ""), day);
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.gestore.spese;
+
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONArray;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Streaming CSV/XLSX export.
+ *
+ * JS opens an export, sends the rows in pages (appendRows) and finishes it: each page is written
+ * to the file as it arrives (SpreadsheetWriter), so neither the WebView nor this side ever holds
+ * the whole workbook. The file lands in the cache dir and its URI goes to the share sheet.
+ */
+@CapacitorPlugin(name = "Export")
+public class ExportPlugin extends Plugin {
+
+    private static final String TAG = "ExportPlugin";
+    private static final String PROGRESS_EVENT = "exportProgress";
+    private static final String EXPORTS_DIR = "exports";
+
+    // Files from previous exports are removed after this (the share target has copied them by then)
+    private static final long STALE_EXPORT_MS = 24L * 60 * 60 * 1000;
+    private static final int MAX_OPEN_EXPORTS = 4;
+
+    // One lane: the pages of an export must be written in order
+    private static final PluginTaskExecutor.Limits WRITE_LIMITS =
+        new PluginTaskExecutor.Limits("Export", "write", 1, 16, 60000);
+
+    private static final class Session {
+        final String id;
+        final String format;
+        final File file;
+        final File partial;
+        final SpreadsheetWriter writer;
+        final int totalRows;
+        final long startedAt = System.currentTimeMillis();
+
+        Session(String id, String format, File file, File partial, SpreadsheetWriter writer, int totalRows) {
+            this.id = id;
+            this.format = format;
+            this.file = file;
+            this.partial = partial;
+            this.writer = writer;
+            this.totalRows = totalRows;
+        }
+    }
+
+    private final Map<String, Session> sessions = new HashMap<>();
+
+    @Override
+    protected void handleOnDestroy() {
+        PluginTaskExecutor.cancelAll("Export");
+        synchronized (sessions) {
+            for (Session s : sessions.values()) discard(s);
+            sessions.clear();
+        }
+        super.handleOnDestroy();
+    }
+
+    /**
+     * ✅ NEW: Start an export.
+     * Options: format ("xlsx" | "csv"), fileName, columns (header labels), sheetName,
+     * totalRows (for progress), delimiter / decimalSeparator (CSV, default ";" and ",").
+     */
+    @PluginMethod
+    public void beginExport(PluginCall call) {
+        final String format = SpreadsheetWriter.FORMAT_CSV.equals(call.getString("format")) ? SpreadsheetWriter.FORMAT_CSV : SpreadsheetWriter.FORMAT_XLSX;
+        final String fileName = safeFileName(call.getString("fileName", "Export"), format);
+        final String sheetName = call.getString("sheetName", "Foglio1");
+        final int totalRows = call.getInt("totalRows", 0);
+        final String delimiter = call.getString("delimiter");
+        final String decimalSeparator = call.getString("decimalSeparator");
+        JSArray columns = call.getArray("columns");
+
+        if (columns == null || columns.length() == 0) {
+            call.reject("Missing columns");
+            return;
+        }
+        final List<String> headers = new ArrayList<>();
+        for (int i = 0; i < columns.length(); i++) headers.add(columns.optString(i, ""));
+
+        PluginTaskExecutor.submit(call, WRITE_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                synchronized (sessions) {
+                    if (sessions.size() >= MAX_OPEN_EXPORTS) throw new PluginTaskExecutor.Rejection("Too many open exports");
+                }
+                File dir = exportsDir();
+                cleanStaleExports(dir);
+
+                String id = UUID.randomUUID().toString();
+                File file = new File(dir, fileName);
+                File partial = new File(dir, id + ".part");
+                SpreadsheetWriter writer = SpreadsheetWriter.open(partial, format, sheetName, headers, delimiter, decimalSeparator);
+
+                synchronized (sessions) {
+                    sessions.put(id, new Session(id, format, file, partial, writer, totalRows));
+                }
+                Log.d(TAG, "📤 Export " + format + " started: " + fileName);
+
+                JSObject ret = new JSObject();
+                ret.put("exportId", id);
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Write a page of rows (array of arrays: strings, numbers, booleans or null).
+     * Emits "exportProgress" after each page.
+     */
+    @PluginMethod
+    public void appendRows(PluginCall call) {
+        final String exportId = call.getString("exportId");
+        final JSArray rows = call.getArray("rows");
+        if (exportId == null || rows == null) {
+            call.reject("Missing exportId or rows");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, WRITE_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                Session session = session(exportId);
+                try {
+                    for (int i = 0; i < rows.length(); i++) {
+                        if ((i & 255) == 0) signal.throwIfCanceled();
+                        JSONArray row = rows.optJSONArray(i);
+                        if (row != null) session.writer.writeRow(row);
+                    }
+                } catch (Exception e) {
+                    // A half-written page leaves the file unusable: drop the export
+                    close(session);
+                    throw e;
+                }
+
+                JSObject progress = progress(session);
+                notifyListeners(PROGRESS_EVENT, progress);
+                return progress;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Complete the file; returns its URI (for the share sheet), size and row count
+     */
+    @PluginMethod
+    public void finishExport(PluginCall call) {
+        final String exportId = call.getString("exportId");
+        if (exportId == null) {
+            call.reject("Missing exportId");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, WRITE_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                Session session = session(exportId);
+                synchronized (sessions) {
+                    sessions.remove(exportId);
+                }
+                try {
+                    session.writer.finish();
+                } catch (Exception e) {
+                    discard(session);
+                    throw e;
+                }
+                session.file.delete();
+                if (!session.partial.renameTo(session.file)) {
+                    session.partial.delete();
+                    throw new PluginTaskExecutor.Rejection("Could not save export");
+                }
+
+                JSObject ret = progress(session);
+                ret.put("uri", Uri.fromFile(session.file).toString());
+                ret.put("path", session.file.getAbsolutePath());
+                ret.put("fileName", session.file.getName());
+                ret.put("mimeType", SpreadsheetWriter.mimeType(session.format));
+                ret.put("bytes", session.file.length());
+                ret.put("elapsedMs", System.currentTimeMillis() - session.startedAt);
+                Log.d(TAG, "✅ Export done: " + session.writer.getRows() + " rows, " + session.file.length() / 1024 + " KB in "
+                    + (System.currentTimeMillis() - session.startedAt) + " ms");
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Abandon an export and delete the partial file
+     */
+    @PluginMethod
+    public void cancelExport(PluginCall call) {
+        String exportId = call.getString("exportId");
+        Session session;
+        synchronized (sessions) {
+            session = exportId != null ? sessions.remove(exportId) : null;
+        }
+        if (session != null) discard(session);
+        JSObject ret = new JSObject();
+        ret.put("cancelled", session != null);
+        call.resolve(ret);
+    }
+
+    // ==================== HELPERS ====================
+
+    private Session session(String exportId) throws PluginTaskExecutor.Rejection {
+        synchronized (sessions) {
+            Session session = sessions.get(exportId);
+            if (session == null) throw new PluginTaskExecutor.Rejection("Unknown export " + exportId);
+            return session;
+        }
+    }
+
+    private void close(Session session) {
+        synchronized (sessions) {
+            sessions.remove(session.id);
+        }
+        discard(session);
+    }
+
+    private static void discard(Session session) {
+        session.writer.abort();
+        session.partial.delete();
+    }
+
+    private static JSObject progress(Session session) {
+        JSObject ret = new JSObject();
+        ret.put("exportId", session.id);
+        ret.put("rows", session.writer.getRows());
+        ret.put("totalRows", session.totalRows);
+        ret.put("bytes", session.writer.getBytes());
+        ret.put("progress", session.totalRows > 0 ? Math.min(1.0, (double) session.writer.getRows() / session.totalRows) : 0);
+        return ret;
+    }
+
+    private File exportsDir() {
+        File dir = new File(getContext().getCacheDir(), EXPORTS_DIR);
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+
+    private void cleanStaleExports(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        long now = System.currentTimeMillis();
+        synchronized (sessions) {
+            for (File f : files) {
+                boolean open = false;
+                for (Session s : sessions.values()) {
+                    if (s.partial.equals(f)) open = true;
+                }
+                if (!open && now - f.lastModified() > STALE_EXPORT_MS) f.delete();
+            }
+        }
+    }
+
+    private static String safeFileName(String name, String format) {
+        String base = name.replaceAll("[^A-Za-z0-9._ -]", "_").trim();
+        if (base.isEmpty()) base = "Export";
+        String extension = "." + format;
+        return base.toLowerCase().endsWith(extension) ? base : base + extension;
+    }
+}
@@ -0,0 +1,186 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Native storage for transactions captured in headless mode (WebView not alive).
+ * Backed by SharedPreferences like the pending_notifications queue.
+ * JS pulls the finished transactions in one call and removes them once saved.
+ */
+public final class HeadlessCaptureStore {
+
+    private static final String TAG = "HeadlessCaptureStore";
+
+    static final String PREFS_NAME = "headless_capture";
+    private static final String KEY_ENABLED = "enabled";
+    private static final String KEY_API_ACTIVE_BANKS = "api_active_banks";
+    private static final String KEY_TRANSACTIONS = "transactions";
+    private static final String KEY_KNOWN_HASHES = "known_hashes";
+
+    // Hashes of already captured transactions (kept even after JS drained them)
+    private static final int MAX_KNOWN_HASHES = 200;
+
+    private static final Object LOCK = new Object();
+
+    private HeadlessCaptureStore() {
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static boolean isEnabled(Context context) {
+        return prefs(context).getBoolean(KEY_ENABLED, false);
+    }
+
+    /**
+     * Save headless configuration pushed from JS
+     */
+    public static void setConfig(Context context, boolean enabled, JSONArray apiActiveBanks) {
+        prefs(context).edit()
+            .putBoolean(KEY_ENABLED, enabled)
+            .putString(KEY_API_ACTIVE_BANKS, apiActiveBanks != null ? apiActiveBanks.toString() : "[]")
+            .apply();
+    }
+
+    /**
+     * Banks currently synced via API (their notifications are suppressed)
+     */
+    public static List<String> getApiActiveBanks(Context context) {
+        List<String> banks = new ArrayList<>();
+        try {
+            JSONArray array = new JSONArray(prefs(context).getString(KEY_API_ACTIVE_BANKS, "[]"));
+            for (int i = 0; i < array.length(); i++) {
+                banks.add(array.getString(i));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to read API active banks", e);
+        }
+        return banks;
+    }
+
+    /**
+     * Add a captured transaction unless its sourceHash was already captured.
+     *
+     * @return true if stored, false if duplicate
+     */
+    public static boolean add(Context context, JSObject transaction) {
+        synchronized (LOCK) {
+            try {
+                SharedPreferences prefs = prefs(context);
+                String hash = transaction.getString("sourceHash");
+
+                JSONArray known = new JSONArray(prefs.getString(KEY_KNOWN_HASHES, "[]"));
+                for (int i = 0; i < known.length(); i++) {
+                    if (known.getString(i).equals(hash)) {
+                        Log.d(TAG, "⏭️ Already captured: " + hash);
+                        return false;
+                    }
+                }
+
+                JSONArray queue = new JSONArray(prefs.getString(KEY_TRANSACTIONS, "[]"));
+                queue.put(transaction);
+
+                // Keep only the most recent hashes
+                JSONArray trimmed = new JSONArray();
+                int start = Math.max(0, known.length() + 1 - MAX_KNOWN_HASHES);
+                for (int i = start; i < known.length(); i++) {
+                    trimmed.put(known.getString(i));
+                }
+                trimmed.put(hash);
+
+                prefs.edit()
+                    .putString(KEY_TRANSACTIONS, queue.toString())
+                    .putString(KEY_KNOWN_HASHES, trimmed.toString())
+                    .apply();
+
+                Log.d(TAG, "✅ Headless transaction stored (total: " + queue.length() + ")");
+                return true;
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Failed to store headless transaction", e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * All captured transactions not yet removed by JS
+     */
+    public static JSArray getAll(Context context) {
+        synchronized (LOCK) {
+            JSArray result = new JSArray();
+            try {
+                JSONArray queue = new JSONArray(prefs(context).getString(KEY_TRANSACTIONS, "[]"));
+                for (int i = 0; i < queue.length(); i++) {
+                    result.put(queue.getJSONObject(i));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Failed to read headless transactions", e);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Remove the transactions JS has saved.
+     *
+     * @return number of removed entries
+     */
+    public static int remove(Context context, Set<String> ids) {
+        synchronized (LOCK) {
+            try {
+                SharedPreferences prefs = prefs(context);
+                JSONArray queue = new JSONArray(prefs.getString(KEY_TRANSACTIONS, "[]"));
+                JSONArray kept = new JSONArray();
+                int removed = 0;
+                for (int i = 0; i < queue.length(); i++) {
+                    JSONObject tx = queue.getJSONObject(i);
+                    if (ids.contains(tx.optString("id"))) {
+                        removed++;
+                    } else {
+                        kept.put(tx);
+                    }
+                }
+                prefs.edit().putString(KEY_TRANSACTIONS, kept.toString()).apply();
+                Log.d(TAG, "✅ Removed " + removed + " headless transactions (left: " + kept.length() + ")");
+                return removed;
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Failed to remove headless transactions", e);
+                return 0;
+            }
+        }
+    }
+
+    public static int count(Context context) {
+        synchronized (LOCK) {
+            try {
+                return new JSONArray(prefs(context).getString(KEY_TRANSACTIONS, "[]")).length();
+            } catch (Exception e) {
+                return 0;
+            }
+        }
+    }
+
+    static Set<String> toIdSet(JSONArray ids) {
+        Set<String> set = new HashSet<>();
+        if (ids == null) return set;
+        for (int i = 0; i < ids.length(); i++) {
+            String id = ids.optString(i);
+            if (id != null && !id.isEmpty()) set.add(id);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,159 @@
+package com.gestore.spese;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import com.getcapacitor.JSObject;
+
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Headless capture: runs the whole notification → transaction pipeline natively
+ * (extract, fingerprint, parse, categorize, persist, notify) when the WebView is not alive.
+ * JS picks up the finished transactions at next launch via getHeadlessTransactions().
+ */
+public final class HeadlessTransactionCapture {
+
+    private static final String TAG = "HeadlessCapture";
+    private static final String NOTIFICATION_CHANNEL_ID = "auto_transactions";
+
+    private HeadlessTransactionCapture() {
+    }
+
+    /**
+     * Try to capture a bank notification natively.
+     *
+     * @param data notification payload built by BankNotificationListenerService
+     * @return true if the notification was fully handled (stored or duplicate),
+     *         false if it must go through the JS queue instead (e.g. no pattern matched)
+     */
+    public static boolean capture(Context context, JSObject data) {
+        try {
+            String packageName = data.getString("packageName", "");
+            String appName = jsAppName(packageName, data.getString("appName", ""));
+            String title = data.getString("title", "");
+            String text = data.getString("text", "");
+            long timestamp = data.optLong("timestamp", System.currentTimeMillis());
+
+            JSObject tx = NotificationTransactionParser.parse(
+                appName, title, text, timestamp, HeadlessCaptureStore.getApiActiveBanks(context));
+
+            if (tx == null) {
+                Log.d(TAG, "⚠️ No native match for " + appName + ", leaving it to the JS queue");
+                return false;
+            }
+
+            String hash = TransactionHash.transactionHash(
+                tx.optDouble("amount", 0),
+                tx.getString("date"),
+                tx.getString("account"),
+                tx.getString("description"));
+
+            tx.put("id", UUID.randomUUID().toString());
+            tx.put("sourceHash", hash);
+            tx.put("status", "pending");
+            tx.put("createdAt", System.currentTimeMillis());
+            tx.put("rawHash", TransactionHash.rawNotificationHash(appName, title, text));
+            tx.put("capturedHeadless", true);
+            // ✅ NEW: Category of a known / learned merchant, ready for the confirmation screen
+            MerchantCategoryIndex.attachCategory(context, tx);
+
+            if (HeadlessCaptureStore.add(context, tx)) {
+                showConfirmationNotification(context, tx);
+            }
+            return true;
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Headless capture failed, falling back to JS queue", e);
+            return false;
+        }
+    }
+
+    /**
+     * Same normalization as normalizeAppName() in notification-listener.ts,
+     * so the raw hash matches the one computed by JS.
+     */
+    static String jsAppName(String packageName, String appName) {
+        switch (packageName) {
+            case "com.unicredit":
+            case "com.unicredit.mobile":
+            case "it.nogood.container":
+                return "UniCredit";
+            default:
+                return appName;
+        }
+    }
+
+    /**
+     * Local notification, same wording as AutoTransactionService.notifyNewTransaction()
+     */
+    private static void showConfirmationNotification(Context context, JSObject tx) {
+        try {
+            ensureNotificationChannel(context);
+
+            String type = tx.getString("type", "expense");
+            String emoji = "expense".equals(type) ? "💸" : "income".equals(type) ? "💰" : "🔄";
+            String action = "expense".equals(type) ? "Spesa" : "income".equals(type) ? "Entrata" : "Trasferimento";
+            boolean requiresConfirmation = tx.optBoolean("requiresConfirmation", false);
+            String amount = String.format(Locale.US, "%.2f", tx.optDouble("amount", 0));
+
+            String title = requiresConfirmation
+                ? emoji + " Transazione da Confermare"
+                : emoji + " " + action + " Rilevata";
+            String body = tx.getString("description", "") + " - €" + amount
+                + (requiresConfirmation ? " (richiede conferma)" : "");
+
+            Intent launchIntent = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName());
+            PendingIntent pendingIntent = null;
+            if (launchIntent != null) {
+                int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                    flags |= PendingIntent.FLAG_IMMUTABLE;
+                }
+                pendingIntent = PendingIntent.getActivity(context, 0, launchIntent, flags);
+            }
+
+            NotificationCompat.Builder builder = new NotificationCompat.Builder(context, NOTIFICATION_CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_dialog_info)
+                .setContentTitle(title)
+                .setContentText(body)
+                .setAutoCancel(true)
+                .setPriority(NotificationCompat.PRIORITY_DEFAULT);
+            if (pendingIntent != null) {
+                builder.setContentIntent(pendingIntent);
+            }
+
+            NotificationManagerCompat.from(context).notify(tx.getString("sourceHash").hashCode(), builder.build());
+            Log.d(TAG, "✅ Confirmation notification posted: " + title);
+
+        } catch (Exception e) {
+            // e.g. POST_NOTIFICATIONS not granted on Android 13+
+            Log.e(TAG, "❌ Error showing confirmation notification", e);
+        }
+    }
+
+    private static void ensureNotificationChannel(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return;
+
+        NotificationManager nm = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (nm == null) return;
+        if (nm.getNotificationChannel(NOTIFICATION_CHANNEL_ID) != null) return;
+
+        NotificationChannel channel = new NotificationChannel(
+            NOTIFICATION_CHANNEL_ID,
+            "Transazioni rilevate",
+            NotificationManager.IMPORTANCE_DEFAULT
+        );
+        channel.setDescription("Transazioni rilevate dalle notifiche bancarie ad app chiusa");
+        nm.createNotificationChannel(channel);
+    }
+}
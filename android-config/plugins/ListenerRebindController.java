@@ -0,0 +1,249 @@
+package com.gestore.spese;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.service.notification.NotificationListenerService;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Connection history and rebind policy for BankNotificationListenerService.
+ *
+ * The service used to call requestRebind() on every connect and disconnect, which only caused
+ * connect/rebind churn. Now a rebind is requested only after a real disconnect, retried with
+ * exponential backoff until the system connects us again. Connect/disconnect timestamps are
+ * persisted so uptime, reconnects and gap durations survive process restarts and can be
+ * correlated with missed transactions (see NotificationListenerPlugin.getListenerHealth()).
+ */
+public final class ListenerRebindController {
+
+    private static final String TAG = "ListenerRebind";
+
+    private static final String PREFS_NAME = "listener_health";
+    private static final String KEY_CONNECTED = "connected";
+    private static final String KEY_CONNECTED_AT = "connected_at";
+    private static final String KEY_DISCONNECTED_AT = "disconnected_at";
+    private static final String KEY_FIRST_CONNECTED_AT = "first_connected_at";
+    private static final String KEY_TOTAL_UPTIME_MS = "total_uptime_ms";
+    private static final String KEY_RECONNECT_COUNT = "reconnect_count";
+    private static final String KEY_DISCONNECT_COUNT = "disconnect_count";
+    private static final String KEY_REBIND_REQUESTS = "rebind_requests";
+    private static final String KEY_UNCLEAN_RESTARTS = "unclean_restarts";
+    private static final String KEY_GAPS = "gaps";
+
+    private static final int MAX_GAPS = 20;
+
+    // Backoff: 5s, 10s, 20s ... capped at 10 minutes
+    private static final long BASE_DELAY_MS = 5000;
+    private static final long MAX_DELAY_MS = 10 * 60 * 1000;
+
+    private static final Object LOCK = new Object();
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+
+    private static int attempt = 0;
+    private static Runnable pendingRebind;
+
+    private ListenerRebindController() {
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Called from onListenerConnected(): closes the current gap and stops any retry
+     */
+    public static void onConnected(Context context) {
+        synchronized (LOCK) {
+            cancelPendingRebind();
+            attempt = 0;
+
+            long now = System.currentTimeMillis();
+            SharedPreferences prefs = prefs(context);
+            SharedPreferences.Editor editor = prefs.edit();
+
+            long disconnectedAt = prefs.getLong(KEY_DISCONNECTED_AT, 0);
+            if (prefs.getBoolean(KEY_CONNECTED, false)) {
+                // Connected again without a disconnect callback: the process was killed while bound
+                editor.putInt(KEY_UNCLEAN_RESTARTS, prefs.getInt(KEY_UNCLEAN_RESTARTS, 0) + 1);
+                Log.w(TAG, "⚠️ Reconnected without a disconnect callback (process restart)");
+            } else if (disconnectedAt > 0) {
+                long gap = now - disconnectedAt;
+                editor.putInt(KEY_RECONNECT_COUNT, prefs.getInt(KEY_RECONNECT_COUNT, 0) + 1);
+                editor.putString(KEY_GAPS, appendGap(prefs, disconnectedAt, now));
+                Log.d(TAG, "✅ Reconnected after a gap of " + gap + "ms");
+            }
+
+            if (prefs.getLong(KEY_FIRST_CONNECTED_AT, 0) == 0) {
+                editor.putLong(KEY_FIRST_CONNECTED_AT, now);
+            }
+
+            editor.putBoolean(KEY_CONNECTED, true)
+                .putLong(KEY_CONNECTED_AT, now)
+                .putLong(KEY_DISCONNECTED_AT, 0)
+                .apply();
+        }
+    }
+
+    /**
+     * Called from onListenerDisconnected(): opens a gap and schedules a rebind with backoff
+     */
+    public static void onDisconnected(Context context) {
+        synchronized (LOCK) {
+            long now = System.currentTimeMillis();
+            SharedPreferences prefs = prefs(context);
+
+            long connectedAt = prefs.getLong(KEY_CONNECTED_AT, 0);
+            long uptime = prefs.getLong(KEY_TOTAL_UPTIME_MS, 0);
+            if (prefs.getBoolean(KEY_CONNECTED, false) && connectedAt > 0) {
+                uptime += now - connectedAt;
+            }
+
+            prefs.edit()
+                .putBoolean(KEY_CONNECTED, false)
+                .putLong(KEY_DISCONNECTED_AT, now)
+                .putLong(KEY_TOTAL_UPTIME_MS, uptime)
+                .putInt(KEY_DISCONNECT_COUNT, prefs.getInt(KEY_DISCONNECT_COUNT, 0) + 1)
+                .apply();
+
+            scheduleRebind(context.getApplicationContext() != null ? context.getApplicationContext() : context);
+        }
+    }
+
+    private static void scheduleRebind(final Context context) {
+        cancelPendingRebind();
+
+        final long delay = Math.min(MAX_DELAY_MS, BASE_DELAY_MS << Math.min(attempt, 20));
+        attempt++;
+
+        pendingRebind = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (LOCK) {
+                    pendingRebind = null;
+                    if (prefs(context).getBoolean(KEY_CONNECTED, false)) return;
+
+                    // Access revoked by the user: rebinding cannot succeed, stop waking up
+                    if (!ListenerStateObserver.readEnabled(context)) {
+                        Log.d(TAG, "⏹️ Notification access disabled, rebind retries stopped");
+                        attempt = 0;
+                        return;
+                    }
+
+                    requestRebind(context);
+                    // Keep retrying until onConnected() cancels us
+                    scheduleRebind(context);
+                }
+            }
+        };
+        handler.postDelayed(pendingRebind, delay);
+        Log.d(TAG, "🔄 Rebind #" + attempt + " scheduled in " + delay + "ms");
+    }
+
+    private static void requestRebind(Context context) {
+        // requestRebind() exists only from Android 7.0
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return;
+
+        try {
+            NotificationListenerService.requestRebind(
+                new ComponentName(context, BankNotificationListenerService.class));
+            SharedPreferences prefs = prefs(context);
+            prefs.edit().putInt(KEY_REBIND_REQUESTS, prefs.getInt(KEY_REBIND_REQUESTS, 0) + 1).apply();
+            Log.d(TAG, "✅ requestRebind() called");
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error calling requestRebind", e);
+        }
+    }
+
+    private static void cancelPendingRebind() {
+        if (pendingRebind != null) {
+            handler.removeCallbacks(pendingRebind);
+            pendingRebind = null;
+        }
+    }
+
+    private static String appendGap(SharedPreferences prefs, long from, long to) {
+        JSONArray gaps;
+        try {
+            gaps = new JSONArray(prefs.getString(KEY_GAPS, "[]"));
+        } catch (Exception e) {
+            gaps = new JSONArray();
+        }
+
+        JSONArray trimmed = new JSONArray();
+        for (int i = Math.max(0, gaps.length() + 1 - MAX_GAPS); i < gaps.length(); i++) {
+            trimmed.put(gaps.opt(i));
+        }
+
+        try {
+            JSONObject gap = new JSONObject();
+            gap.put("from", from);
+            gap.put("to", to);
+            gap.put("durationMs", to - from);
+            trimmed.put(gap);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to record gap", e);
+        }
+        return trimmed.toString();
+    }
+
+    /**
+     * Health snapshot: current state, uptime, reconnect count and recent gaps
+     */
+    public static JSObject getHealth(Context context) {
+        synchronized (LOCK) {
+            long now = System.currentTimeMillis();
+            SharedPreferences prefs = prefs(context);
+
+            boolean connected = prefs.getBoolean(KEY_CONNECTED, false);
+            long connectedAt = prefs.getLong(KEY_CONNECTED_AT, 0);
+            long disconnectedAt = prefs.getLong(KEY_DISCONNECTED_AT, 0);
+            long totalUptime = prefs.getLong(KEY_TOTAL_UPTIME_MS, 0);
+            long currentUptime = connected && connectedAt > 0 ? now - connectedAt : 0;
+
+            JSArray gaps = new JSArray();
+            long totalGapMs = 0;
+            long longestGapMs = 0;
+            try {
+                JSONArray stored = new JSONArray(prefs.getString(KEY_GAPS, "[]"));
+                for (int i = 0; i < stored.length(); i++) {
+                    JSONObject gap = stored.getJSONObject(i);
+                    long duration = gap.optLong("durationMs");
+                    totalGapMs += duration;
+                    longestGapMs = Math.max(longestGapMs, duration);
+                    gaps.put(gap);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Failed to read gaps", e);
+            }
+
+            JSObject health = new JSObject();
+            health.put("connected", connected);
+            health.put("serviceRunning", BankNotificationListenerService.getInstance() != null);
+            health.put("connectedSince", connected ? connectedAt : 0);
+            health.put("currentUptimeMs", currentUptime);
+            health.put("totalUptimeMs", totalUptime + currentUptime);
+            health.put("firstConnectedAt", prefs.getLong(KEY_FIRST_CONNECTED_AT, 0));
+            health.put("disconnectedSince", connected ? 0 : disconnectedAt);
+            health.put("currentGapMs", !connected && disconnectedAt > 0 ? now - disconnectedAt : 0);
+            health.put("reconnectCount", prefs.getInt(KEY_RECONNECT_COUNT, 0));
+            health.put("disconnectCount", prefs.getInt(KEY_DISCONNECT_COUNT, 0));
+            health.put("rebindRequests", prefs.getInt(KEY_REBIND_REQUESTS, 0));
+            health.put("rebindAttempt", attempt);
+            health.put("uncleanRestarts", prefs.getInt(KEY_UNCLEAN_RESTARTS, 0));
+            health.put("gaps", gaps);
+            health.put("totalGapMs", totalGapMs);
+            health.put("longestGapMs", longestGapMs);
+            return health;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.gestore.spese;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
+import android.util.Log;
+
+/**
+ * Push-based "notification listener enabled" state.
+ *
+ * Observes Settings.Secure "enabled_notification_listeners" and keeps the parsed result cached,
+ * so isEnabled() answers immediately instead of re-reading (and delaying) on every call.
+ * The callback fires only when the state actually changes.
+ */
+public class ListenerStateObserver {
+
+    private static final String TAG = "ListenerStateObserver";
+    private static final String ENABLED_LISTENERS_KEY = "enabled_notification_listeners";
+
+    public interface Callback {
+        void onListenerStateChanged(boolean enabled);
+    }
+
+    private final Context context;
+    private final Callback callback;
+    private final ContentObserver observer;
+    private volatile boolean enabled;
+    private boolean registered = false;
+
+    public ListenerStateObserver(Context context, Callback callback) {
+        this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        this.callback = callback;
+        this.enabled = readEnabled(this.context);
+        this.observer = new ContentObserver(new Handler(Looper.getMainLooper())) {
+            @Override
+            public void onChange(boolean selfChange) {
+                refresh();
+            }
+        };
+    }
+
+    public void register() {
+        if (registered) return;
+        try {
+            Uri uri = Settings.Secure.getUriFor(ENABLED_LISTENERS_KEY);
+            context.getContentResolver().registerContentObserver(uri, false, observer);
+            registered = true;
+            Log.d(TAG, "✅ Observing " + ENABLED_LISTENERS_KEY + " (current: " + enabled + ")");
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to register settings observer", e);
+        }
+    }
+
+    public void unregister() {
+        if (!registered) return;
+        try {
+            context.getContentResolver().unregisterContentObserver(observer);
+        } catch (Exception e) {
+            Log.e(TAG, "Error unregistering settings observer", e);
+        }
+        registered = false;
+    }
+
+    /**
+     * Cached state (kept up to date by the observer)
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Re-read the setting and notify if it changed (also used as a safety net on resume)
+     */
+    public void refresh() {
+        boolean current = readEnabled(context);
+        if (current == enabled) return;
+
+        enabled = current;
+        Log.d(TAG, "🔔 Notification listener state changed: " + current);
+        if (callback != null) {
+            callback.onListenerStateChanged(current);
+        }
+    }
+
+    /**
+     * Parse the colon-separated component list for our listener service
+     */
+    static boolean readEnabled(Context context) {
+        try {
+            String flat = Settings.Secure.getString(context.getContentResolver(), ENABLED_LISTENERS_KEY);
+            if (flat == null || flat.isEmpty()) return false;
+
+            ComponentName cn = new ComponentName(context, BankNotificationListenerService.class);
+            String full = cn.flattenToString();
+            String shortName = cn.flattenToShortString();
+            for (String entry : flat.split(":")) {
+                if (entry.equals(full) || entry.equals(shortName)) return true;
+            }
+            return false;
+        } catch (Exception e) {
+            Log.e(TAG, "Error checking if notification listener is enabled", e);
+            return false;
+        }
+    }
+}
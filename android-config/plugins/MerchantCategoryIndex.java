@@ -0,0 +1,668 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Merchant → category index used at capture time (HeadlessTransactionCapture, SMS history import).
+ *
+ * Merchant names are normalized (accents folded, lowercase, letters/digits only) and stored in a
+ * static trie flattened in BFS order: the children of a node are consecutive, so the whole trie
+ * is three arrays (childStart, label, value) and a step is a binary search among the children.
+ * A lookup walks the trie from every word start of the description and keeps the longest
+ * merchant that ends on a word boundary.
+ *
+ * A small built-in list covers common Italian merchants; categories the user picks when confirming
+ * a transaction are learned as overrides (same key replaced, longer keys win, ties go to learned).
+ * The index persists as the same compact blob that export/import exchange (deflated, varints).
+ */
+public final class MerchantCategoryIndex {
+
+    private static final String TAG = "MerchantCategoryIndex";
+    private static final String FILE_NAME = "merchant_index.bin";
+
+    private static final int MAGIC = 0x4D434931; // "MCI1"
+    private static final int VERSION = 1;
+    private static final int MAX_KEY_LENGTH = 64;
+    private static final int MAX_ENTRIES = 5000;
+    // Words that describe the payment, not the merchant ("PAGAMENTO POS ESSELUNGA" → "esselunga").
+    // "apple" / "google" are noise only in front of "pay" (APPLE.COM/BILL is a merchant).
+    private static final String[] NOISE_WORDS = {
+        "pagamento", "pagam", "pag", "pos", "carta", "acquisto", "acq", "presso", "c", "o", "di", "del", "da",
+        "operazione", "addebito", "sdd", "bonifico", "prelievo", "contactless", "pay",
+        "debit", "card", "payment", "to", "at", "the", "spa", "srl", "s", "r", "l", "p", "a",
+        // Transfers and cash withdrawals
+        "favore", "beneficiario", "ordine", "ordinante", "disposizione", "giroconto", "sepa", "sct", "istantaneo",
+        "inst", "accredito", "ricevuto", "eseguito", "vostro", "vs", "rif", "causale", "cro", "trn", "atm",
+        "bancomat", "cash", "withdrawal"
+    };
+    // After one of these the merchant is a payee name: first and last name are both kept
+    private static final String[] TRANSFER_WORDS = {"bonifico", "favore", "beneficiario", "ordinante", "giroconto"};
+
+    // Seed list: category names match the defaults of category-service.ts
+    private static final String[][] SEED = {
+        {"esselunga", "Shopping", "Supermercato"},
+        {"conad", "Shopping", "Supermercato"},
+        {"coop", "Shopping", "Supermercato"},
+        {"lidl", "Shopping", "Supermercato"},
+        {"carrefour", "Shopping", "Supermercato"},
+        {"eurospin", "Shopping", "Supermercato"},
+        {"pam", "Shopping", "Supermercato"},
+        {"penny market", "Shopping", "Supermercato"},
+        {"aldi", "Shopping", "Supermercato"},
+        {"md discount", "Shopping", "Supermercato"},
+        {"amazon", "Shopping", ""},
+        {"zalando", "Shopping", "Abbigliamento"},
+        {"mediaworld", "Shopping", "Elettronica"},
+        {"unieuro", "Shopping", "Elettronica"},
+        {"feltrinelli", "Shopping", "Libri"},
+        {"netflix", "Shopping", "Abbonamenti"},
+        {"spotify", "Shopping", "Abbonamenti"},
+        {"disney plus", "Shopping", "Abbonamenti"},
+        {"mcdonalds", "Alimentari", "Ristorante"},
+        {"mc donalds", "Alimentari", "Ristorante"},
+        {"burger king", "Alimentari", "Ristorante"},
+        {"just eat", "Alimentari", "Ristorante"},
+        {"deliveroo", "Alimentari", "Ristorante"},
+        {"glovo", "Alimentari", "Ristorante"},
+        {"autogrill", "Alimentari", "Autogrill"},
+        {"eni", "Trasporti", "Carburante"},
+        {"q8", "Trasporti", "Carburante"},
+        {"tamoil", "Trasporti", "Carburante"},
+        {"trenitalia", "Trasporti", "Mezzi Pubblici"},
+        {"atm milano", "Trasporti", "Mezzi Pubblici"},
+        {"uber", "Trasporti", "Taxi"},
+        {"autostrade", "Trasporti", "Pedaggio"},
+        {"telepass", "Trasporti", "Pedaggio"},
+        {"enel", "Casa", "Bollette"},
+        {"a2a", "Casa", "Bollette"},
+        {"hera", "Casa", "Bollette"},
+        {"tim", "Casa", "Bollette"},
+        {"vodafone", "Casa", "Bollette"},
+        {"fastweb", "Casa", "Bollette"},
+        {"iliad", "Casa", "Bollette"},
+        {"ikea", "Casa", "Arredamento"},
+        {"leroy merlin", "Casa", "Manutenzione"},
+        {"farmacia", "Salute", "Farmacia"},
+        {"decathlon", "Tempo Libero", "Sport"},
+        {"booking com", "Tempo Libero", "Viaggi"},
+        {"airbnb", "Tempo Libero", "Viaggi"},
+        {"ryanair", "Tempo Libero", "Viaggi"},
+        {"easyjet", "Tempo Libero", "Viaggi"},
+        {"ticketone", "Tempo Libero", "Concerti"},
+    };
+
+    private static final Object LOCK = new Object();
+    private static Set<String> noiseWords;
+
+    // Source of truth (sorted keys), the flat trie is rebuilt from it after each change
+    private static TreeMap<String, Value> entries;
+    private static FlatTrie trie;
+
+    private MerchantCategoryIndex() {
+    }
+
+    private static final class Value {
+        final String category;
+        final String subcategory;
+        final boolean learned;
+
+        Value(String category, String subcategory, boolean learned) {
+            this.category = category;
+            this.subcategory = subcategory != null ? subcategory : "";
+            this.learned = learned;
+        }
+
+        String id() {
+            return (learned ? "1" : "0") + category + "\u0000" + subcategory;
+        }
+    }
+
+    /**
+     * Trie in BFS order. Node 0 is the root; the children of node n are the nodes
+     * childStart[n] .. childStart[n + 1] - 1, sorted by label.
+     */
+    private static final class FlatTrie {
+        final int[] childStart;
+        final char[] label;
+        final int[] value; // index in values, -1 = not a merchant end
+        final Value[] values;
+
+        FlatTrie(int[] childStart, char[] label, int[] value, Value[] values) {
+            this.childStart = childStart;
+            this.label = label;
+            this.value = value;
+            this.values = values;
+        }
+
+        int nodeCount() {
+            return label.length;
+        }
+
+        int child(int node, char c) {
+            int lo = childStart[node];
+            int hi = childStart[node + 1] - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                char l = label[mid];
+                if (l < c) {
+                    lo = mid + 1;
+                } else if (l > c) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+    }
+
+    // ==================== PUBLIC API ====================
+
+    /**
+     * Category of the longest known merchant contained in the description (word-aligned)
+     *
+     * @return {category, subcategory, merchant, learned} or null
+     */
+    public static JSObject lookup(Context context, String description) {
+        String text = normalize(description);
+        if (text.isEmpty()) return null;
+
+        FlatTrie current;
+        synchronized (LOCK) {
+            ensureLoaded(context);
+            current = trie;
+        }
+
+        int bestStart = -1;
+        int bestEnd = -1;
+        int bestValue = -1;
+        for (int start = 0; start < text.length(); start++) {
+            if (start > 0 && text.charAt(start - 1) != ' ') continue;
+
+            int node = 0;
+            for (int i = start; i < text.length(); i++) {
+                node = current.child(node, text.charAt(i));
+                if (node < 0) break;
+
+                int v = current.value[node];
+                boolean wordEnd = i + 1 == text.length() || text.charAt(i + 1) == ' ';
+                if (v >= 0 && wordEnd) {
+                    int length = i + 1 - start;
+                    int bestLength = bestEnd - bestStart;
+                    if (length > bestLength || (length == bestLength && current.values[v].learned
+                        && !current.values[bestValue].learned)) {
+                        bestStart = start;
+                        bestEnd = i + 1;
+                        bestValue = v;
+                    }
+                }
+            }
+        }
+        if (bestValue < 0) return null;
+
+        Value value = current.values[bestValue];
+        JSObject ret = new JSObject();
+        ret.put("category", value.category);
+        ret.put("subcategory", value.subcategory);
+        ret.put("merchant", text.substring(bestStart, bestEnd));
+        ret.put("learned", value.learned);
+        return ret;
+    }
+
+    /**
+     * Attach category/subcategory to a freshly parsed transaction (expenses only, existing category kept).
+     * Unknown merchants get the on-device classifier prediction when it is confident.
+     */
+    public static void attachCategory(Context context, JSObject tx) {
+        if (!"expense".equals(tx.optString("type")) || tx.optString("category", "").length() > 0) return;
+        try {
+            String description = tx.optString("description", "");
+            JSObject match = lookup(context, description);
+            if (match == null) {
+                JSObject prediction = CategoryClassifier.classify(context, description);
+                if (prediction == null || !prediction.optBoolean("confident")) return;
+                match = prediction;
+            }
+            tx.put("category", match.getString("category"));
+            String subcategory = match.getString("subcategory", "");
+            if (!subcategory.isEmpty()) tx.put("subcategory", subcategory);
+        } catch (Exception e) {
+            // A missing category must never lose the transaction
+            Log.w(TAG, "⚠️ Category lookup failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Learn (or correct) the category of a merchant
+     *
+     * @param merchant explicit merchant name, or null to derive it from the description
+     * @return the normalized merchant key, null if nothing usable was left
+     */
+    public static String learn(Context context, String description, String merchant, String category,
+                               String subcategory) throws IOException {
+        String key = merchant != null && !merchant.trim().isEmpty() ? normalize(merchant) : merchantKey(description);
+        if (key == null || key.isEmpty() || category == null || category.isEmpty()) return null;
+        if (key.length() > MAX_KEY_LENGTH) key = key.substring(0, MAX_KEY_LENGTH).trim();
+        if (isGenericKey(key)) {
+            Log.d(TAG, "⏭️ Not learning generic key " + key);
+            return null;
+        }
+
+        synchronized (LOCK) {
+            ensureLoaded(context);
+            Value previous = entries.get(key);
+            if (previous != null && previous.learned && previous.category.equals(category)
+                && previous.subcategory.equals(subcategory != null ? subcategory : "")) {
+                return key;
+            }
+            if (previous == null && entries.size() >= MAX_ENTRIES) {
+                Log.w(TAG, "⚠️ Merchant index full, not learning " + key);
+                return null;
+            }
+            entries.put(key, new Value(category, subcategory, true));
+            rebuildAndSave(context);
+        }
+        Log.d(TAG, "🧠 Learned " + key + " → " + category + (subcategory != null && !subcategory.isEmpty() ? " / " + subcategory : ""));
+        return key;
+    }
+
+    /**
+     * Drop a learned merchant (built-in entries are restored, not removed)
+     */
+    public static boolean forget(Context context, String merchant) throws IOException {
+        String key = normalize(merchant);
+        synchronized (LOCK) {
+            ensureLoaded(context);
+            Value previous = entries.get(key);
+            if (previous == null || !previous.learned) return false;
+
+            entries.remove(key);
+            for (String[] seed : SEED) {
+                if (seed[0].equals(key)) entries.put(key, new Value(seed[1], seed[2], false));
+            }
+            rebuildAndSave(context);
+            return true;
+        }
+    }
+
+    /**
+     * Compact binary copy of the whole index (the persisted format)
+     */
+    public static byte[] exportBlob(Context context) throws IOException {
+        synchronized (LOCK) {
+            ensureLoaded(context);
+            return encode(trie);
+        }
+    }
+
+    /**
+     * Load a blob produced by exportBlob()
+     *
+     * @param replace true = the blob becomes the index, false = its entries override the current ones
+     * @return number of entries after the import
+     */
+    public static int importBlob(Context context, byte[] blob, boolean replace) throws IOException {
+        TreeMap<String, Value> imported = toEntries(decode(blob));
+        synchronized (LOCK) {
+            ensureLoaded(context);
+            if (replace) entries.clear();
+            for (Map.Entry<String, Value> entry : imported.entrySet()) {
+                if (!replace && entries.size() >= MAX_ENTRIES && !entries.containsKey(entry.getKey())) break;
+                entries.put(entry.getKey(), entry.getValue());
+            }
+            rebuildAndSave(context);
+            Log.d(TAG, "📥 Imported " + imported.size() + " merchants, index has " + entries.size());
+            return entries.size();
+        }
+    }
+
+    public static JSObject getStats(Context context) {
+        synchronized (LOCK) {
+            ensureLoaded(context);
+            int learned = 0;
+            for (Value value : entries.values()) {
+                if (value.learned) learned++;
+            }
+            JSObject ret = new JSObject();
+            ret.put("entries", entries.size());
+            ret.put("learned", learned);
+            ret.put("nodes", trie.nodeCount());
+            ret.put("bytes", new File(context.getFilesDir(), FILE_NAME).length());
+            return ret;
+        }
+    }
+
+    // ==================== KEYS ====================
+
+    /**
+     * Accents folded, lowercase, letters/digits separated by single spaces
+     */
+    static String normalize(String s) {
+        if (s == null) return "";
+        String folded = Normalizer.normalize(s, Normalizer.Form.NFD).toLowerCase();
+        StringBuilder sb = new StringBuilder(folded.length());
+        boolean space = true;
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK || c == '\'') continue;
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                sb.append(c);
+                space = false;
+            } else if (!space) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        int length = sb.length();
+        if (length > 0 && sb.charAt(length - 1) == ' ') sb.setLength(length - 1);
+        return sb.toString();
+    }
+
+    /**
+     * Merchant part of a description: first meaningful word, two if the first one is very short or
+     * the description is a transfer ("PAGAMENTO POS ESSELUNGA MILANO 12" → "esselunga",
+     * "MC DONALDS ROMA" → "mc donalds", "BONIFICO A FAVORE DI MARIO ROSSI" → "mario rossi")
+     */
+    static String merchantKey(String description) {
+        String[] words = normalize(description).split(" ");
+        StringBuilder key = new StringBuilder();
+        int taken = 0;
+        boolean transfer = false;
+        for (int i = 0; i < words.length; i++) {
+            String word = words[i];
+            boolean wallet = (word.equals("apple") || word.equals("google")) && i + 1 < words.length && words[i + 1].equals("pay");
+            if (word.isEmpty() || wallet || isNoise(word) || isNumber(word)) {
+                if (taken > 0) break;
+                transfer |= isTransferWord(word);
+                continue;
+            }
+            if (taken > 0) key.append(' ');
+            key.append(word);
+            taken++;
+            if (taken == 2 || (!transfer && word.length() >= 4)) break;
+        }
+        return key.length() > 0 ? key.toString() : null;
+    }
+
+    /**
+     * A key made only of banking words ("bonifico", "favore", "prelievo atm"): never learned, it
+     * would re-categorize every transfer or withdrawal
+     */
+    static boolean isGenericKey(String key) {
+        for (String word : key.split(" ")) {
+            if (!word.isEmpty() && !isNoise(word) && !isNumber(word)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isNoise(String word) {
+        synchronized (LOCK) {
+            if (noiseWords == null) {
+                noiseWords = new HashSet<>();
+                for (String w : NOISE_WORDS) noiseWords.add(w);
+            }
+            return noiseWords.contains(word);
+        }
+    }
+
+    private static boolean isTransferWord(String word) {
+        for (String w : TRANSFER_WORDS) {
+            if (w.equals(word)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isNumber(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) < '0' || word.charAt(i) > '9') return false;
+        }
+        return true;
+    }
+
+    // ==================== BUILD / PERSISTENCE ====================
+
+    private static void ensureLoaded(Context context) {
+        if (trie != null) return;
+
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        if (file.exists()) {
+            try {
+                trie = decode(readFile(file));
+                entries = toEntries(trie);
+                Log.d(TAG, "📂 Loaded " + entries.size() + " merchants (" + trie.nodeCount() + " nodes)");
+                return;
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Corrupted merchant index, starting from the built-in list", e);
+            }
+        }
+
+        entries = new TreeMap<>();
+        for (String[] seed : SEED) {
+            entries.put(normalize(seed[0]), new Value(seed[1], seed[2], false));
+        }
+        trie = build(entries);
+    }
+
+    private static void rebuildAndSave(Context context) throws IOException {
+        trie = build(entries);
+        byte[] blob = encode(trie);
+
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        File temp = new File(context.getFilesDir(), FILE_NAME + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(blob);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not save merchant index");
+        }
+    }
+
+    private static final class BuildNode {
+        final TreeMap<Character, BuildNode> children = new TreeMap<>();
+        Value value;
+    }
+
+    private static FlatTrie build(TreeMap<String, Value> source) {
+        BuildNode root = new BuildNode();
+        int nodeCount = 1;
+        for (Map.Entry<String, Value> entry : source.entrySet()) {
+            BuildNode node = root;
+            String key = entry.getKey();
+            for (int i = 0; i < key.length(); i++) {
+                BuildNode next = node.children.get(key.charAt(i));
+                if (next == null) {
+                    next = new BuildNode();
+                    node.children.put(key.charAt(i), next);
+                    nodeCount++;
+                }
+                node = next;
+            }
+            node.value = entry.getValue();
+        }
+
+        int[] childStart = new int[nodeCount + 1];
+        char[] label = new char[nodeCount];
+        int[] value = new int[nodeCount];
+        List<Value> values = new ArrayList<>();
+        Map<String, Integer> valueIds = new HashMap<>();
+
+        // BFS: children are numbered right after the nodes already queued
+        ArrayDeque<BuildNode> queue = new ArrayDeque<>();
+        queue.add(root);
+        int index = 0;
+        int next = 1;
+        while (!queue.isEmpty()) {
+            BuildNode node = queue.poll();
+            value[index] = valueId(node.value, values, valueIds);
+            childStart[index] = next;
+            for (Map.Entry<Character, BuildNode> child : node.children.entrySet()) {
+                label[next] = child.getKey();
+                next++;
+                queue.add(child.getValue());
+            }
+            index++;
+        }
+        childStart[nodeCount] = next;
+
+        return new FlatTrie(childStart, label, value, values.toArray(new Value[0]));
+    }
+
+    private static int valueId(Value v, List<Value> values, Map<String, Integer> valueIds) {
+        if (v == null) return -1;
+        Integer id = valueIds.get(v.id());
+        if (id == null) {
+            id = values.size();
+            values.add(v);
+            valueIds.put(v.id(), id);
+        }
+        return id;
+    }
+
+    /**
+     * Walk the flat trie back into key → value (used after decoding a blob)
+     */
+    private static TreeMap<String, Value> toEntries(FlatTrie t) {
+        TreeMap<String, Value> ret = new TreeMap<>();
+        ArrayDeque<Integer> nodes = new ArrayDeque<>();
+        ArrayDeque<String> prefixes = new ArrayDeque<>();
+        nodes.push(0);
+        prefixes.push("");
+        while (!nodes.isEmpty()) {
+            int node = nodes.pop();
+            String prefix = prefixes.pop();
+            if (t.value[node] >= 0) ret.put(prefix, t.values[t.value[node]]);
+            for (int c = t.childStart[node]; c < t.childStart[node + 1]; c++) {
+                nodes.push(c);
+                prefixes.push(prefix + t.label[c]);
+            }
+        }
+        return ret;
+    }
+
+    /*
+     * Blob layout (deflated): magic, version, value table (flags, category, subcategory),
+     * node count, then per node in BFS order: label char, child count varint, value+1 varint.
+     */
+    private static byte[] encode(FlatTrie t) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            writeVarint(out, t.values.length);
+            for (Value v : t.values) {
+                out.writeByte(v.learned ? 1 : 0);
+                out.writeUTF(v.category);
+                out.writeUTF(v.subcategory);
+            }
+            writeVarint(out, t.nodeCount());
+            for (int n = 0; n < t.nodeCount(); n++) {
+                out.writeChar(t.label[n]);
+                writeVarint(out, t.childStart[n + 1] - t.childStart[n]);
+                writeVarint(out, t.value[n] + 1);
+            }
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static FlatTrie decode(byte[] blob) throws IOException {
+        DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(blob)));
+        try {
+            if (in.readInt() != MAGIC) throw new IOException("Not a merchant index");
+            int version = in.readUnsignedByte();
+            if (version != VERSION) throw new IOException("Unsupported merchant index version " + version);
+
+            int valueCount = readVarint(in);
+            Value[] values = new Value[valueCount];
+            for (int i = 0; i < valueCount; i++) {
+                boolean learned = in.readUnsignedByte() == 1;
+                values[i] = new Value(in.readUTF(), in.readUTF(), learned);
+            }
+
+            int nodeCount = readVarint(in);
+            if (nodeCount < 1) throw new IOException("Empty merchant index");
+            int[] childStart = new int[nodeCount + 1];
+            char[] label = new char[nodeCount];
+            int[] value = new int[nodeCount];
+            int next = 1;
+            for (int n = 0; n < nodeCount; n++) {
+                label[n] = in.readChar();
+                childStart[n] = next;
+                int children = readVarint(in);
+                next += children;
+                value[n] = readVarint(in) - 1;
+                // Children always come after their parent (BFS), anything else would loop
+                if (next > nodeCount || value[n] >= valueCount || (children > 0 && childStart[n] <= n)) {
+                    throw new IOException("Corrupted merchant index");
+                }
+            }
+            if (next != nodeCount) throw new IOException("Corrupted merchant index");
+            childStart[nodeCount] = next;
+            return new FlatTrie(childStart, label, value, values);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeVarint(DataOutputStream out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
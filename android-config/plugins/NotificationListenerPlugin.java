@@ -1,15 +1,12 @@
 package com.gestore.spese;
 
 import android.content.BroadcastReceiver;
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.SharedPreferences;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
+import android.os.CancellationSignal;
 import android.provider.Settings;
 import android.service.notification.StatusBarNotification;
 import android.util.Log;
@@ -21,12 +18,16 @@ import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
-import org.json.JSONArray;
-
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @CapacitorPlugin(name = "NotificationListener")
 public class NotificationListenerPlugin extends Plugin {
@@ -34,8 +35,27 @@ public class NotificationListenerPlugin extends Plugin {
     private static final String TAG = "NotificationListenerPlugin";
     private BankNotificationReceiver receiver;
     
+    // Cached listener-enabled state, pushed by a Settings.Secure observer
+    private ListenerStateObserver listenerState;
+    
+    // True while the plugin (and so the WebView) is loaded; read by the listener service
+    private static volatile boolean bridgeActive = false;
+    
     // Set to track processed notification IDs to avoid duplicates
-    private Set<String> processedNotificationIds = new HashSet<>();
+    // (synchronized: also filled from the bootstrap executor)
+    private final Set<String> processedNotificationIds = Collections.synchronizedSet(new HashSet<String>());
+    
+    // Background pool for bootstrap(): the startup reads run in parallel, off the bridge thread
+    private final ExecutorService bootstrapExecutor = Executors.newFixedThreadPool(4);
+    
+    // Shared executor lanes (see PluginTaskExecutor)
+    private static final PluginTaskExecutor.Limits ACTIVE_NOTIFICATIONS_LIMITS =
+        new PluginTaskExecutor.Limits("NotificationListener", "getAllActiveNotifications", 1, 2, 5000);
+    private static final PluginTaskExecutor.Limits MISSED_NOTIFICATIONS_LIMITS =
+        new PluginTaskExecutor.Limits("NotificationListener", "checkMissedNotifications", 1, 2, 5000);
+    
+    // Upper bound for a single bootstrap section (a slow SMS provider must not block startup)
+    private static final long BOOTSTRAP_TIMEOUT_MS = 5000;
     
     // Bank app package names (same as BankNotificationListenerService)
     private static final List<String> BANK_PACKAGES = Arrays.asList(
@@ -59,6 +79,20 @@ public class NotificationListenerPlugin extends Plugin {
         Log.d(TAG, "NotificationListenerPlugin.load() called!");
         Log.d(TAG, "========================================");
         
+        bridgeActive = true;
+        
+        // ✅ Observe enabled_notification_listeners: isEnabled() answers from cache,
+        // changes are pushed to JS as "listenerStateChanged"
+        listenerState = new ListenerStateObserver(getContext(), new ListenerStateObserver.Callback() {
+            @Override
+            public void onListenerStateChanged(boolean enabled) {
+                JSObject data = new JSObject();
+                data.put("enabled", enabled);
+                notifyListeners("listenerStateChanged", data);
+            }
+        });
+        listenerState.register();
+        
         try {
             // Register broadcast receiver
             receiver = new BankNotificationReceiver();
@@ -83,6 +117,14 @@ public class NotificationListenerPlugin extends Plugin {
         super.handleOnDestroy();
         Log.d(TAG, "NotificationListenerPlugin.handleOnDestroy() called");
         
+        bridgeActive = false;
+        bootstrapExecutor.shutdownNow();
+        PluginTaskExecutor.cancelAll("NotificationListener");
+        
+        if (listenerState != null) {
+            listenerState.unregister();
+        }
+        
         // Unregister receiver
         if (receiver != null) {
             try {
@@ -94,33 +136,36 @@ public class NotificationListenerPlugin extends Plugin {
         }
     }
 
+    @Override
+    protected void handleOnResume() {
+        super.handleOnResume();
+        // Safety net: the observer already fires while we are in background,
+        // this only catches a change missed while the observer was not delivering
+        if (listenerState != null) {
+            listenerState.refresh();
+        }
+    }
+
+    /**
+     * Whether the WebView is alive to receive broadcasts (otherwise headless capture kicks in)
+     */
+    static boolean isBridgeActive() {
+        return bridgeActive;
+    }
+
     @PluginMethod
     public void isEnabled(PluginCall call) {
         Log.d(TAG, "========================================");
         Log.d(TAG, "isEnabled() method called from JavaScript!");
         Log.d(TAG, "========================================");
         
-        // ✅ CRITICAL: Add 300ms delay to ensure Android settings are updated
-        new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    boolean enabled = isNotificationListenerEnabled();
-                    Log.d(TAG, "Notification listener enabled status: " + enabled);
-                    
-                    JSObject ret = new JSObject();
-                    ret.put("enabled", enabled);
-                    
-                    Log.d(TAG, "Returning result: " + ret.toString());
-                    call.resolve(ret);
-                } catch (Exception e) {
-                    Log.e(TAG, "❌ Error checking permission (returning safe default)", e);
-                    JSObject ret = new JSObject();
-                    ret.put("enabled", false);
-                    call.resolve(ret);
-                }
-            }
-        }, 300);
+        // ✅ Answered from the cached state kept by the Settings observer (no delayed re-read)
+        boolean enabled = isNotificationListenerEnabled();
+        Log.d(TAG, "Notification listener enabled status: " + enabled);
+        
+        JSObject ret = new JSObject();
+        ret.put("enabled", enabled);
+        call.resolve(ret);
     }
 
     @PluginMethod
@@ -183,10 +228,142 @@ public class NotificationListenerPlugin extends Plugin {
         call.resolve(ret);
     }
     
+    /**
+     * ✅ NEW: Startup snapshot in a single bridge call.
+     * Replaces the isEnabled / checkPermission / getPendingNotifications / getHeadlessTransactions /
+     * checkMissedNotifications / getRecentSMS fan-out done by JS at launch: every section is read
+     * in parallel on a background executor and returned in one payload.
+     *
+     * Options: smsSince (timestamp watermark, SMS section skipped if missing), pendingLimit.
+     * A failing section is reported in "errors" instead of failing the whole call.
+     */
+    @PluginMethod
+    public void bootstrap(final PluginCall call) {
+        Log.d(TAG, "========================================");
+        Log.d(TAG, "🚀 bootstrap() called");
+        Log.d(TAG, "========================================");
+        
+        final long startTime = System.currentTimeMillis();
+        final Context context = getContext();
+        final Long smsSince = call.getLong("smsSince");
+        final int pendingLimit = call.getInt("pendingLimit", 0);
+        
+        try {
+            bootstrapExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final boolean listenerEnabled = isNotificationListenerEnabled();
+                    final boolean readSMS = SmsPermissionTracker.canRead(context);
+                    final boolean receiveSMS = SmsPermissionTracker.canReceive(context);
+                    
+                    Future<JSObject> pending = bootstrapExecutor.submit(new Callable<JSObject>() {
+                        @Override
+                        public JSObject call() {
+                            return PendingNotificationQueue.read(context, pendingLimit);
+                        }
+                    });
+                    Future<JSArray> headless = bootstrapExecutor.submit(new Callable<JSArray>() {
+                        @Override
+                        public JSArray call() {
+                            return HeadlessCaptureStore.getAll(context);
+                        }
+                    });
+                    Future<JSArray> missed = bootstrapExecutor.submit(new Callable<JSArray>() {
+                        @Override
+                        public JSArray call() {
+                            return listenerEnabled ? collectMissedNotifications() : new JSArray();
+                        }
+                    });
+                    Future<JSArray> sms = null;
+                    if (smsSince != null && readSMS) {
+                        sms = bootstrapExecutor.submit(new Callable<JSArray>() {
+                            @Override
+                            public JSArray call() {
+                                return SmsInboxReader.querySince(context, smsSince, false);
+                            }
+                        });
+                    }
+                    
+                    JSObject errors = new JSObject();
+                    
+                    JSObject permissions = new JSObject();
+                    permissions.put("readSMS", readSMS);
+                    permissions.put("receiveSMS", receiveSMS);
+                    
+                    JSObject ret = new JSObject();
+                    ret.put("listenerEnabled", listenerEnabled);
+                    ret.put("permissions", permissions);
+                    
+                    // One deadline for all the sections: they run in parallel
+                    long deadline = System.currentTimeMillis() + BOOTSTRAP_TIMEOUT_MS;
+                    
+                    // A failed section is left to JS, which reads it again from the plugin
+                    JSObject pendingBatch = awaitSection(pending, deadline, "pending", errors);
+                    ret.put("pending", pendingBatch != null ? pendingBatch : emptyPendingBatch());
+                    
+                    JSArray headlessTransactions = awaitSection(headless, deadline, "headless", errors);
+                    ret.put("headless", headlessTransactions != null ? headlessTransactions : new JSArray());
+                    
+                    JSArray missedNotifications = awaitSection(missed, deadline, "missed", errors);
+                    ret.put("missed", missedNotifications != null ? missedNotifications : new JSArray());
+                    
+                    if (sms != null) {
+                        JSArray messages = awaitSection(sms, deadline, "sms", errors);
+                        JSObject smsSection = new JSObject();
+                        smsSection.put("messages", messages != null ? messages : new JSArray());
+                        smsSection.put("count", messages != null ? messages.length() : 0);
+                        smsSection.put("since", smsSince.longValue());
+                        smsSection.put("watermark", startTime);
+                        ret.put("sms", smsSection);
+                    }
+                    
+                    ret.put("errors", errors);
+                    ret.put("elapsedMs", System.currentTimeMillis() - startTime);
+                    
+                    Log.d(TAG, "✅ bootstrap() done in " + (System.currentTimeMillis() - startTime) + "ms");
+                    call.resolve(ret);
+                }
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Error starting bootstrap", e);
+            call.reject("Failed to bootstrap: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Wait for a bootstrap section until the shared deadline, recording the failure instead of throwing
+     */
+    private <T> T awaitSection(Future<T> future, long deadline, String name, JSObject errors) {
+        try {
+            long timeout = Math.max(0, deadline - System.currentTimeMillis());
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            future.cancel(true);
+            Log.e(TAG, "❌ bootstrap section '" + name + "' failed", e);
+            errors.put(name, e.getClass().getSimpleName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Same shape as PendingNotificationQueue.read() with nothing in it
+     */
+    private static JSObject emptyPendingBatch() {
+        JSObject ret = new JSObject();
+        ret.put("notifications", new JSArray());
+        ret.put("count", 0);
+        ret.put("fromSeq", 0);
+        ret.put("toSeq", 0);
+        ret.put("ackedSeq", 0);
+        ret.put("remaining", 0);
+        return ret;
+    }
+    
     /**
      * ✅ NEW: Get pending notifications from persistent queue (for app-closed scenarios)
-     * Reads notifications saved to SharedPreferences by BankNotificationListenerService
-     * and clears the queue after reading.
+     * Reads notifications saved by BankNotificationListenerService WITHOUT removing them.
+     * Each entry carries a "seq": once processed, JS must call ackNotifications({ upTo: toSeq }).
+     * If the WebView dies mid-batch, the unacknowledged tail is returned again on the next read.
      */
     @PluginMethod
     public void getPendingNotifications(PluginCall call) {
@@ -195,34 +372,97 @@ public class NotificationListenerPlugin extends Plugin {
         Log.d(TAG, "========================================");
         
         try {
-            SharedPreferences prefs = getContext().getSharedPreferences("pending_notifications", Context.MODE_PRIVATE);
-            String queueJson = prefs.getString("queue", "[]");
-            JSONArray queue = new JSONArray(queueJson);
-            
-            Log.d(TAG, "Found " + queue.length() + " pending notifications in queue");
-            
-            JSArray pending = new JSArray();
-            for (int i = 0; i < queue.length(); i++) {
-                pending.put(queue.getJSONObject(i));
-            }
-            
-            // ✅ CRITICAL: Clear the queue after reading to avoid duplicates
-            prefs.edit().putString("queue", "[]").apply();
-            Log.d(TAG, "✅ Queue cleared after reading");
+            int limit = call.getInt("limit", 0);
+            JSObject ret = PendingNotificationQueue.read(getContext(), limit);
             
-            JSObject ret = new JSObject();
-            ret.put("notifications", pending);
-            ret.put("count", pending.length());
+            Log.d(TAG, "✅ Returned " + ret.getInteger("count") + " pending notifications (seq "
+                + ret.optLong("fromSeq") + ".." + ret.optLong("toSeq") + ")");
             call.resolve(ret);
             
-            Log.d(TAG, "✅ Returned " + pending.length() + " pending notifications");
-            
         } catch (Exception e) {
             Log.e(TAG, "❌ Error getting pending notifications", e);
             call.reject("Failed to get pending notifications: " + e.getMessage());
         }
     }
     
+    /**
+     * ✅ NEW: Acknowledge processed notifications up to (and including) a sequence number.
+     * Only acknowledged entries are compacted away from the persistent queue.
+     */
+    @PluginMethod
+    public void ackNotifications(PluginCall call) {
+        Long upTo = call.getLong("upTo");
+        if (upTo == null) {
+            call.reject("upTo is required");
+            return;
+        }
+        
+        int removed = PendingNotificationQueue.ack(getContext(), upTo);
+        
+        JSObject ret = new JSObject();
+        ret.put("removed", removed);
+        ret.put("remaining", PendingNotificationQueue.size(getContext()));
+        call.resolve(ret);
+    }
+    
+    /**
+     * ✅ NEW: Configure headless capture (native parsing when the WebView is not alive)
+     * apiActiveBanks mirrors BankSyncService active banks, whose notifications are suppressed.
+     */
+    @PluginMethod
+    public void setHeadlessCapture(PluginCall call) {
+        boolean enabled = call.getBoolean("enabled", true);
+        JSArray apiActiveBanks = call.getArray("apiActiveBanks", new JSArray());
+        
+        HeadlessCaptureStore.setConfig(getContext(), enabled, apiActiveBanks);
+        Log.d(TAG, "✅ Headless capture " + (enabled ? "enabled" : "disabled") + ", API banks: " + apiActiveBanks);
+        
+        JSObject ret = new JSObject();
+        ret.put("enabled", enabled);
+        call.resolve(ret);
+    }
+    
+    /**
+     * ✅ NEW: Get transactions captured natively while the WebView was not alive.
+     * Already parsed and fingerprinted: JS only has to save them.
+     * Entries stay stored until removeHeadlessTransactions() is called with their ids.
+     */
+    @PluginMethod
+    public void getHeadlessTransactions(PluginCall call) {
+        JSArray transactions = HeadlessCaptureStore.getAll(getContext());
+        Log.d(TAG, "📬 getHeadlessTransactions(): " + transactions.length() + " captured");
+        
+        JSObject ret = new JSObject();
+        ret.put("transactions", transactions);
+        ret.put("count", transactions.length());
+        call.resolve(ret);
+    }
+    
+    /**
+     * ✅ NEW: Remove headless transactions once JS has saved them
+     */
+    @PluginMethod
+    public void removeHeadlessTransactions(PluginCall call) {
+        JSArray ids = call.getArray("ids", new JSArray());
+        int removed = HeadlessCaptureStore.remove(getContext(), HeadlessCaptureStore.toIdSet(ids));
+        
+        JSObject ret = new JSObject();
+        ret.put("removed", removed);
+        call.resolve(ret);
+    }
+    
+    /**
+     * ✅ NEW: Listener connection health (uptime, reconnects, gap durations)
+     * Useful to correlate missed transactions with periods the listener was not bound.
+     */
+    @PluginMethod
+    public void getListenerHealth(PluginCall call) {
+        JSObject health = ListenerRebindController.getHealth(getContext());
+        health.put("enabled", isNotificationListenerEnabled());
+        Log.d(TAG, "📊 Listener health: " + health.toString());
+        call.resolve(health);
+    }
+    
     /**
      * ✅ NEW: Reprocess active bank notifications (for missed/stuck notifications)
      * This manually triggers processing of all active bank notifications,
@@ -364,62 +604,62 @@ public class NotificationListenerPlugin extends Plugin {
             return;
         }
         
-        try {
-            BankNotificationListenerService service = BankNotificationListenerService.getInstance();
-            
-            if (service == null) {
-                Log.w(TAG, "⚠️ NotificationListenerService not running");
-                call.reject("NotificationListenerService not running");
-                return;
-            }
-            
-            StatusBarNotification[] activeNotifications = service.getActiveNotifications();
-            Log.d(TAG, "Found " + activeNotifications.length + " total active notifications");
-            
-            JSArray allNotifs = new JSArray();
-            
-            for (StatusBarNotification sbn : activeNotifications) {
-                try {
-                    String packageName = sbn.getPackageName();
-                    android.app.Notification notification = sbn.getNotification();
-                    Bundle extras = notification.extras;
-                    
-                    JSObject notifData = new JSObject();
-                    notifData.put("packageName", packageName);
-                    notifData.put("key", sbn.getKey());
-                    notifData.put("postTime", sbn.getPostTime());
-                    
-                    if (extras != null) {
-                        notifData.put("title", extras.getString(android.app.Notification.EXTRA_TITLE, ""));
-                        notifData.put("text", extras.getString(android.app.Notification.EXTRA_TEXT, ""));
-                        notifData.put("bigText", extras.getString(android.app.Notification.EXTRA_BIG_TEXT, ""));
+        // ✅ getActiveNotifications() is a binder call: run it off the plugin thread, with deadline
+        PluginTaskExecutor.submit(call, ACTIVE_NOTIFICATIONS_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                BankNotificationListenerService service = BankNotificationListenerService.getInstance();
+                
+                if (service == null) {
+                    Log.w(TAG, "⚠️ NotificationListenerService not running");
+                    throw new PluginTaskExecutor.Rejection("NotificationListenerService not running");
+                }
+                
+                StatusBarNotification[] activeNotifications = service.getActiveNotifications();
+                Log.d(TAG, "Found " + activeNotifications.length + " total active notifications");
+                
+                JSArray allNotifs = new JSArray();
+                
+                for (StatusBarNotification sbn : activeNotifications) {
+                    if (signal.isCanceled()) break;
+                    try {
+                        String packageName = sbn.getPackageName();
+                        android.app.Notification notification = sbn.getNotification();
+                        Bundle extras = notification.extras;
                         
-                        // Add all extras keys for debugging
-                        JSArray extrasKeys = new JSArray();
-                        for (String key : extras.keySet()) {
-                            extrasKeys.put(key);
+                        JSObject notifData = new JSObject();
+                        notifData.put("packageName", packageName);
+                        notifData.put("key", sbn.getKey());
+                        notifData.put("postTime", sbn.getPostTime());
+                        
+                        if (extras != null) {
+                            notifData.put("title", extras.getString(android.app.Notification.EXTRA_TITLE, ""));
+                            notifData.put("text", extras.getString(android.app.Notification.EXTRA_TEXT, ""));
+                            notifData.put("bigText", extras.getString(android.app.Notification.EXTRA_BIG_TEXT, ""));
+                            
+                            // Add all extras keys for debugging
+                            JSArray extrasKeys = new JSArray();
+                            for (String key : extras.keySet()) {
+                                extrasKeys.put(key);
+                            }
+                            notifData.put("extrasKeys", extrasKeys);
                         }
-                        notifData.put("extrasKeys", extrasKeys);
+                        
+                        allNotifs.put(notifData);
+                        
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error processing notification", e);
                     }
-                    
-                    allNotifs.put(notifData);
-                    
-                } catch (Exception e) {
-                    Log.e(TAG, "Error processing notification", e);
                 }
+                
+                Log.d(TAG, "✅ Returning " + allNotifs.length() + " notifications");
+                
+                JSObject ret = new JSObject();
+                ret.put("notifications", allNotifs);
+                ret.put("count", allNotifs.length());
+                return ret;
             }
-            
-            Log.d(TAG, "✅ Returning " + allNotifs.length() + " notifications");
-            
-            JSObject ret = new JSObject();
-            ret.put("notifications", allNotifs);
-            ret.put("count", allNotifs.length());
-            call.resolve(ret);
-            
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Error getting all notifications", e);
-            call.reject("Failed to get notifications: " + e.getMessage());
-        }
+        });
     }
     
     /**
@@ -439,84 +679,106 @@ public class NotificationListenerPlugin extends Plugin {
             return;
         }
         
-        try {
-            BankNotificationListenerService service = BankNotificationListenerService.getInstance();
-            
-            if (service == null) {
-                Log.w(TAG, "⚠️ NotificationListenerService not running, returning empty array");
+        // ✅ Off the plugin thread, with deadline (a stuck binder call no longer blocks other calls)
+        PluginTaskExecutor.submit(call, MISSED_NOTIFICATIONS_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) {
                 JSObject ret = new JSObject();
-                ret.put("missed", new JSArray());
-                call.resolve(ret);
-                return;
+                ret.put("missed", collectMissedNotifications());
+                return ret;
             }
-            
-            StatusBarNotification[] activeNotifications = service.getActiveNotifications();
-            Log.d(TAG, "Found " + activeNotifications.length + " active notifications");
-            
-            JSArray missedArray = new JSArray();
-            long currentTime = System.currentTimeMillis();
-            long twentyFourHoursAgo = currentTime - (24 * 60 * 60 * 1000);
-            
-            for (StatusBarNotification sbn : activeNotifications) {
-                String packageName = sbn.getPackageName();
-                long postTime = sbn.getPostTime();
+        });
+    }
+    
+    /**
+     * ✅ NEW: Cancel a call started with the "requestId" option
+     */
+    @PluginMethod
+    public void cancelRequest(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("cancelled", PluginTaskExecutor.cancel(call.getString("requestId")));
+        call.resolve(result);
+    }
+    
+    /**
+     * ✅ NEW: Queueing delay / execution time / outcome counters of the shared plugin executor
+     */
+    @PluginMethod
+    public void getExecutorMetrics(PluginCall call) {
+        call.resolve(PluginTaskExecutor.getMetrics());
+    }
+    
+    /**
+     * Active bank notifications from the last 24h not yet handed to JS
+     * (shared by checkMissedNotifications and bootstrap)
+     */
+    private JSArray collectMissedNotifications() {
+        JSArray missedArray = new JSArray();
+        BankNotificationListenerService service = BankNotificationListenerService.getInstance();
+        
+        if (service == null) {
+            Log.w(TAG, "⚠️ NotificationListenerService not running, returning empty array");
+            return missedArray;
+        }
+        
+        StatusBarNotification[] activeNotifications = service.getActiveNotifications();
+        Log.d(TAG, "Found " + activeNotifications.length + " active notifications");
+        
+        long currentTime = System.currentTimeMillis();
+        long twentyFourHoursAgo = currentTime - (24 * 60 * 60 * 1000);
+        
+        for (StatusBarNotification sbn : activeNotifications) {
+            String packageName = sbn.getPackageName();
+            long postTime = sbn.getPostTime();
+            
+            // ✅ UPDATED: Check both whitelist AND keyword matching
+            boolean isBank = BANK_PACKAGES.contains(packageName) ||
+                            packageName.contains("bank") ||
+                            packageName.contains("unicredit") ||
+                            packageName.contains("revolut") ||
+                            packageName.contains("paypal");
+            
+            if (isBank && postTime >= twentyFourHoursAgo) {
+                String notificationId = sbn.getKey();
                 
-                // ✅ UPDATED: Check both whitelist AND keyword matching
-                boolean isBank = BANK_PACKAGES.contains(packageName) ||
-                                packageName.contains("bank") ||
-                                packageName.contains("unicredit") ||
-                                packageName.contains("revolut") ||
-                                packageName.contains("paypal");
+                if (processedNotificationIds.contains(notificationId)) {
+                    Log.d(TAG, "⏭️ Skipping already processed notification: " + notificationId);
+                    continue;
+                }
                 
-                if (isBank && postTime >= twentyFourHoursAgo) {
-                    String notificationId = sbn.getKey();
-                    
-                    if (processedNotificationIds.contains(notificationId)) {
-                        Log.d(TAG, "⏭️ Skipping already processed notification: " + notificationId);
-                        continue;
-                    }
+                try {
+                    android.app.Notification notification = sbn.getNotification();
+                    Bundle extras = notification.extras;
                     
-                    try {
-                        android.app.Notification notification = sbn.getNotification();
-                        Bundle extras = notification.extras;
+                    if (extras != null) {
+                        String title = extras.getString(android.app.Notification.EXTRA_TITLE, "");
+                        String text = extras.getString(android.app.Notification.EXTRA_TEXT, "");
+                        String bigText = extras.getString(android.app.Notification.EXTRA_BIG_TEXT, "");
                         
-                        if (extras != null) {
-                            String title = extras.getString(android.app.Notification.EXTRA_TITLE, "");
-                            String text = extras.getString(android.app.Notification.EXTRA_TEXT, "");
-                            String bigText = extras.getString(android.app.Notification.EXTRA_BIG_TEXT, "");
+                        String fullText = (bigText != null && !bigText.isEmpty()) ? bigText : text;
+                        
+                        if (fullText != null && !fullText.isEmpty()) {
+                            JSObject notifData = new JSObject();
+                            notifData.put("packageName", packageName);
+                            notifData.put("appName", getAppName(packageName));
+                            notifData.put("title", title);
+                            notifData.put("text", fullText);
+                            notifData.put("timestamp", postTime);
                             
-                            String fullText = (bigText != null && !bigText.isEmpty()) ? bigText : text;
+                            missedArray.put(notifData);
+                            processedNotificationIds.add(notificationId);
                             
-                            if (fullText != null && !fullText.isEmpty()) {
-                                JSObject notifData = new JSObject();
-                                notifData.put("packageName", packageName);
-                                notifData.put("appName", getAppName(packageName));
-                                notifData.put("title", title);
-                                notifData.put("text", fullText);
-                                notifData.put("timestamp", postTime);
-                                
-                                missedArray.put(notifData);
-                                processedNotificationIds.add(notificationId);
-                                
-                                Log.d(TAG, "✅ Found missed notification from " + packageName + ": " + title);
-                            }
+                            Log.d(TAG, "✅ Found missed notification from " + packageName + ": " + title);
                         }
-                    } catch (Exception e) {
-                        Log.e(TAG, "❌ Error processing notification", e);
                     }
+                } catch (Exception e) {
+                    Log.e(TAG, "❌ Error processing notification", e);
                 }
             }
-            
-            Log.d(TAG, "✅ Found " + missedArray.length() + " missed bank notifications");
-            
-            JSObject ret = new JSObject();
-            ret.put("missed", missedArray);
-            call.resolve(ret);
-            
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Error checking missed notifications", e);
-            call.reject("Failed to check missed notifications: " + e.getMessage());
         }
+        
+        Log.d(TAG, "✅ Found " + missedArray.length() + " missed bank notifications");
+        return missedArray;
     }
     
     @PluginMethod
@@ -530,25 +792,10 @@ public class NotificationListenerPlugin extends Plugin {
     }
 
     private boolean isNotificationListenerEnabled() {
-        try {
-            ComponentName cn = new ComponentName(getContext(), BankNotificationListenerService.class);
-            Log.d(TAG, "Checking for component: " + cn.flattenToString());
-            
-            String flat = Settings.Secure.getString(
-                getContext().getContentResolver(),
-                "enabled_notification_listeners"
-            );
-            
-            Log.d(TAG, "Enabled notification listeners: " + flat);
-            
-            boolean enabled = flat != null && flat.contains(cn.flattenToString());
-            Log.d(TAG, "Is our service enabled? " + enabled);
-            
-            return enabled;
-        } catch (Exception e) {
-            Log.e(TAG, "Error checking if notification listener is enabled", e);
-            return false;
+        if (listenerState != null) {
+            return listenerState.isEnabled();
         }
+        return ListenerStateObserver.readEnabled(getContext());
     }
     
     private String getAppName(String packageName) {
@@ -585,7 +832,16 @@ public class NotificationListenerPlugin extends Plugin {
             Log.d(TAG, "Action: " + intent.getAction());
             Log.d(TAG, "========================================");
             
-            if ("com.gestore.spese.BANK_NOTIFICATION".equals(intent.getAction())) {
+            if ("com.gestore.spese.BANK_NOTIFICATION".equals(intent.getAction())
+                    && intent.getStringExtra("correlated") != null) {
+                // ✅ NEW: Duplicate of a payment already seen from another source (TransactionCorrelator)
+                try {
+                    notifyListeners("transactionCorrelated",
+                        JSObject.fromJSONObject(new org.json.JSONObject(intent.getStringExtra("correlated"))));
+                } catch (Exception e) {
+                    Log.e(TAG, "❌ Error parsing correlated transaction", e);
+                }
+            } else if ("com.gestore.spese.BANK_NOTIFICATION".equals(intent.getAction())) {
                 String dataJson = intent.getStringExtra("data");
                 Log.d(TAG, "Received data JSON: " + dataJson);
                 
@@ -0,0 +1,239 @@
+package com.gestore.spese;
+
+import com.getcapacitor.JSObject;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Native port of src/services/notification-transaction-parser.ts.
+ * Used by the headless capture path, when the WebView is not alive to run the JS parser.
+ * ⚠️ Keep the patterns in sync with NOTIFICATION_CONFIGS in the TS parser.
+ */
+public final class NotificationTransactionParser {
+
+    // Same list as BANK_KEYWORDS in the TS parser (transfer detection)
+    private static final List<String> BANK_KEYWORDS = Arrays.asList(
+        "revolut", "paypal", "postepay", "bbva", "unicredit", "intesa", "bnl",
+        "poste", "banco", "banca", "conto", "carta", "prepagata",
+        "coinbase", "binance", "crypto", "kraken", "nexo", "n26", "wise",
+        "transferwise", "hype", "satispay", "tinaba", "yap", "buddybank",
+        "credit agricole", "ing", "webank", "fineco", "widiba", "chebanca",
+        "mediolanum", "monte paschi", "mps", "ubi", "bper", "carige"
+    );
+
+    private static final int FLAGS = Pattern.CASE_INSENSITIVE;
+
+    private static final List<BankConfig> CONFIGS = Arrays.asList(
+        new BankConfig("Revolut", "revolut", "revolut",
+            "(?:You\\s+spent|Hai\\s+speso|Payment|Pagamento).*?€?\\s*([\\d.,]+)\\s*(?:EUR)?.*?(?:at|presso|in|to|a|di)\\s+(.+)",
+            "(?:You\\s+received|Hai\\s+ricevuto|Received|Accredito).*?€?\\s*([\\d.,]+)\\s*(?:EUR)?.*?(?:from|da)\\s+(.+)",
+            "(?:Transfer|Trasferimento|Bonifico).*?€?\\s*([\\d.,]+)\\s*(?:EUR)?.*?(?:to|a)\\s+(.+)"),
+        new BankConfig("PayPal", "paypal", "paypal",
+            "(?:You\\s+sent|Hai\\s+inviato|Pagamento).*?€?\\s*([\\d.,]+)\\s*(?:EUR)?.*?(?:to|a)\\s+(.+)",
+            "(?:You\\s+received|Hai\\s+ricevuto).*?€?\\s*([\\d.,]+)\\s*(?:EUR)?.*?(?:from|da)\\s+(.+)",
+            null),
+        new BankConfig("Postepay", "postepay", "poste",
+            "(?:Pagamento|Addebito|Autorizzazione).*?€?\\s*([\\d.,]+)\\s*(?:EUR)?.*?(?:presso|at|c/o)\\s+(.+)",
+            "(?:Accredito|Ricarica).*?€?\\s*([\\d.,]+)\\s*(?:EUR)?",
+            "Bonifico.*?€?\\s*([\\d.,]+)\\s*(?:EUR)?.*?(?:a|verso)\\s+(.+)"),
+        new BankConfig("BBVA", "bbva", "bank-account",
+            "(?:Compra|Pago|Cargo|Acquisto).*?€?\\s*([\\d.,]+)\\s*(?:EUR)?.*?(?:en|c/o)\\s+(.+)",
+            "(?:Ingreso|Abono|Entrata).*?€?\\s*([\\d.,]+)\\s*(?:EUR)?",
+            "Transferencia.*?€?\\s*([\\d.,]+)\\s*(?:EUR)?.*?a\\s+(.+)"),
+        new BankConfig("Intesa Sanpaolo", "intesa", "bank-account",
+            "(?:Addebito|Pagamento|Pos).*?€?\\s*([\\d.,]+)\\s*(?:EUR)?.*?(?:presso|c/o)\\s+(.+)",
+            "Accredito.*?€?\\s*([\\d.,]+)\\s*(?:EUR)?",
+            "Bonifico.*?€?\\s*([\\d.,]+)\\s*(?:EUR)?.*?(?:a|favore)\\s+(.+)"),
+        new BankConfig("BNL", "bnl", "bank-account",
+            "(?:Pagamento|Prelievo|Addebito).*?€?\\s*([\\d.,]+)\\s*(?:EUR)?.*?(?:presso|c/o)\\s+(.+)",
+            "Accredito.*?€?\\s*([\\d.,]+)\\s*(?:EUR)?",
+            null),
+        new BankConfig("UniCredit", "unicredit", "bank-account",
+            "(?:autorizzata|Addebito|Pagamento|Transazione)\\s+(?:op\\.?\\w*\\s+)?(\\d+[.,]\\d{2})\\s*(?:EUR|€).*?(?:c/o|presso|at)\\s+(.+?)(?:\\s+\\d{6,}|\\s+\\d{2}/\\d{2}/\\d{2}|Per info|$)",
+            "(?:Accredito|bonifico).*?€?\\s*(\\d+[.,]\\d{2})\\s*(?:EUR)?",
+            "Bonifico.*?€?\\s*(\\d+[.,]\\d{2})\\s*(?:EUR)?.*?(?:verso|a)\\s+(.+)")
+    );
+
+    private static final Pattern FLOAT_PREFIX = Pattern.compile("^[+-]?(\\d+\\.?\\d*|\\.\\d+)");
+
+    private NotificationTransactionParser() {
+    }
+
+    /**
+     * Bank config, same shape as BankConfig in types/transaction.ts
+     */
+    static final class BankConfig {
+        final String name;
+        final String identifier;
+        final String accountName;
+        final Pattern expense;
+        final Pattern income;
+        final Pattern transfer;
+
+        BankConfig(String name, String identifier, String accountName, String expense, String income, String transfer) {
+            this.name = name;
+            this.identifier = identifier;
+            this.accountName = accountName;
+            this.expense = expense != null ? Pattern.compile(expense, FLAGS) : null;
+            this.income = income != null ? Pattern.compile(income, FLAGS) : null;
+            this.transfer = transfer != null ? Pattern.compile(transfer, FLAGS) : null;
+        }
+    }
+
+    /**
+     * Find the config for a (normalized) app name, null if the bank is unsupported
+     */
+    static BankConfig findConfig(String appName) {
+        if (appName == null) return null;
+        for (BankConfig config : CONFIGS) {
+            if (config.identifier.equalsIgnoreCase(appName)) return config;
+        }
+        return null;
+    }
+
+    /**
+     * Same matching rule as BankSyncService.isBankAPIActive()
+     */
+    static boolean isBankAPIActive(String bankName, Collection<String> activeBanks) {
+        if (activeBanks == null || bankName == null) return false;
+        String bank = bankName.toLowerCase(Locale.ROOT);
+        for (String name : activeBanks) {
+            String active = name.toLowerCase(Locale.ROOT);
+            if (bank.contains(active) || active.contains(bank)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parse a bank notification into an AutoTransaction-shaped object
+     * (without id/createdAt/sourceHash/status, exactly like tryParseTransaction in TS).
+     *
+     * @return parsed data or null if the app is unsupported, handled via API, or nothing matched
+     */
+    public static JSObject parse(String appName, String title, String text, long timestamp, Collection<String> apiActiveBanks) {
+        BankConfig config = findConfig(appName);
+        if (config == null) return null;
+
+        // Bank handled via API: legacy notifications are suppressed to avoid duplicates
+        if (isBankAPIActive(config.name, apiActiveBanks)) return null;
+
+        String fullText = ((title != null ? title : "") + " " + (text != null ? text : "")).trim();
+        JSObject parsed = tryParse(config, fullText, timestamp);
+        if (parsed == null) return null;
+
+        if (isLikelyTransfer(parsed)) {
+            parsed.put("requiresConfirmation", true);
+            parsed.put("confirmationType", "transfer_or_expense");
+        }
+        return parsed;
+    }
+
+    private static JSObject tryParse(BankConfig config, String text, long timestamp) {
+        if (config.expense != null) {
+            Matcher m = config.expense.matcher(text);
+            if (m.find()) {
+                return build(config, "expense", m.group(1),
+                    cleanMerchantName(trimOr(group(m, 2), "Pagamento")), text, timestamp);
+            }
+        }
+
+        if (config.income != null) {
+            Matcher m = config.income.matcher(text);
+            if (m.find()) {
+                return build(config, "income", m.group(1),
+                    trimOr(group(m, 2), "Accredito"), text, timestamp);
+            }
+        }
+
+        if (config.transfer != null) {
+            Matcher m = config.transfer.matcher(text);
+            if (m.find()) {
+                JSObject tx = build(config, "transfer", m.group(1), "Trasferimento", text, timestamp);
+                String to = group(m, 2);
+                if (to != null) tx.put("toAccount", to.trim());
+                return tx;
+            }
+        }
+
+        return null;
+    }
+
+    private static JSObject build(BankConfig config, String type, String amount, String description, String text, long timestamp) {
+        JSObject tx = new JSObject();
+        tx.put("type", type);
+        tx.put("amount", parseAmount(amount));
+        tx.put("description", description);
+        tx.put("date", formatDate(timestamp));
+        tx.put("account", config.accountName);
+        tx.put("sourceType", "notification");
+        tx.put("sourceApp", config.name.toLowerCase(Locale.ROOT));
+        tx.put("rawText", text);
+        return tx;
+    }
+
+    private static String group(Matcher m, int index) {
+        return m.groupCount() >= index ? m.group(index) : null;
+    }
+
+    // Equivalent of `match[n]?.trim() || fallback`
+    private static String trimOr(String value, String fallback) {
+        if (value == null) return fallback;
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? fallback : trimmed;
+    }
+
+    private static boolean isLikelyTransfer(JSObject parsed) {
+        if (!"expense".equals(parsed.getString("type"))) return false;
+        String merchant = parsed.getString("description", "").toLowerCase(Locale.ROOT);
+        for (String keyword : BANK_KEYWORDS) {
+            if (merchant.contains(keyword)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove trailing dates, times, "Per info..." and masked card numbers
+     */
+    static String cleanMerchantName(String merchant) {
+        String cleaned = merchant
+            .replaceAll("(?i)\\s+\\d{2}/\\d{2}/\\d{2,4}.*$", "")
+            .replaceAll("(?i)\\s+\\d{2}:\\d{2}.*$", "")
+            .replaceAll("(?i)Per info.*$", "")
+            .replaceAll("\\*+\\d+\\*+", "")
+            .trim();
+        return cleaned.isEmpty() ? merchant : cleaned;
+    }
+
+    /**
+     * Same semantics as parseAmount() in the TS notification parser
+     * (commas become dots, then JS parseFloat which reads the longest numeric prefix)
+     */
+    static double parseAmount(String amountStr) {
+        if (amountStr == null) return 0;
+        String cleaned = amountStr.replace(',', '.').replaceAll("\\s", "");
+        Matcher m = FLOAT_PREFIX.matcher(cleaned);
+        if (!m.find()) return 0;
+        try {
+            return Double.parseDouble(m.group());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * YYYY-MM-DD in UTC, like new Date(ts).toISOString().split('T')[0]
+     */
+    static String formatDate(long timestamp) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(timestamp));
+    }
+}
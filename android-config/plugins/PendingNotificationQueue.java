@@ -0,0 +1,209 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Persistent queue of bank notifications waiting for JS, with an ack cursor.
+ *
+ * Every entry gets a monotonically increasing "seq". JS reads a batch (seq range),
+ * processes it and then calls ack(upTo): only acknowledged entries are compacted away,
+ * so if the WebView dies mid-batch the unacknowledged tail is simply replayed.
+ */
+public final class PendingNotificationQueue {
+
+    private static final String TAG = "PendingNotificationQueue";
+
+    static final String PREFS_NAME = "pending_notifications";
+    private static final String KEY_QUEUE = "queue";
+    private static final String KEY_NEXT_SEQ = "next_seq";
+    private static final String KEY_ACKED_SEQ = "acked_seq";
+
+    // Safety cap: if JS never acks, drop the oldest entries instead of growing forever
+    private static final int MAX_ENTRIES = 500;
+
+    private static final Object LOCK = new Object();
+
+    private PendingNotificationQueue() {
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Append a notification payload.
+     *
+     * @return the sequence number assigned to it, -1 on failure
+     */
+    public static long append(Context context, JSObject data) {
+        synchronized (LOCK) {
+            try {
+                SharedPreferences prefs = prefs(context);
+                JSONArray queue = loadQueue(prefs);
+                long seq = prefs.getLong(KEY_NEXT_SEQ, 1);
+
+                JSONObject entry = new JSONObject(data.toString());
+                entry.put("seq", seq);
+                queue.put(entry);
+
+                if (queue.length() > MAX_ENTRIES) {
+                    JSONArray trimmed = new JSONArray();
+                    for (int i = queue.length() - MAX_ENTRIES; i < queue.length(); i++) {
+                        trimmed.put(queue.getJSONObject(i));
+                    }
+                    Log.w(TAG, "⚠️ Queue over " + MAX_ENTRIES + " entries, dropped " + (queue.length() - MAX_ENTRIES) + " oldest");
+                    queue = trimmed;
+                }
+
+                prefs.edit()
+                    .putString(KEY_QUEUE, queue.toString())
+                    .putLong(KEY_NEXT_SEQ, seq + 1)
+                    .apply();
+
+                Log.d(TAG, "✅ Notification queued with seq " + seq + " (total: " + queue.length() + ")");
+                return seq;
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Failed to queue notification", e);
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Read unacknowledged entries, oldest first, without removing them.
+     *
+     * @param limit max entries to return (<= 0 means all)
+     * @return { notifications, count, fromSeq, toSeq, ackedSeq } — fromSeq/toSeq are 0 when empty
+     */
+    public static JSObject read(Context context, int limit) {
+        synchronized (LOCK) {
+            JSArray batch = new JSArray();
+            long fromSeq = 0;
+            long toSeq = 0;
+            long acked = 0;
+            int remaining = 0;
+
+            try {
+                SharedPreferences prefs = prefs(context);
+                acked = prefs.getLong(KEY_ACKED_SEQ, 0);
+                JSONArray queue = loadQueue(prefs);
+
+                for (int i = 0; i < queue.length(); i++) {
+                    JSONObject entry = queue.getJSONObject(i);
+                    long seq = entry.optLong("seq");
+                    if (seq <= acked) continue;
+
+                    if (limit > 0 && batch.length() >= limit) {
+                        remaining++;
+                        continue;
+                    }
+                    if (fromSeq == 0) fromSeq = seq;
+                    toSeq = seq;
+                    batch.put(entry);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Failed to read queue", e);
+            }
+
+            JSObject ret = new JSObject();
+            ret.put("notifications", batch);
+            ret.put("count", batch.length());
+            ret.put("fromSeq", fromSeq);
+            ret.put("toSeq", toSeq);
+            ret.put("ackedSeq", acked);
+            ret.put("remaining", remaining);
+            return ret;
+        }
+    }
+
+    /**
+     * Acknowledge every entry with seq <= upTo and compact them away.
+     *
+     * @return number of entries removed
+     */
+    public static int ack(Context context, long upTo) {
+        synchronized (LOCK) {
+            try {
+                SharedPreferences prefs = prefs(context);
+                long acked = prefs.getLong(KEY_ACKED_SEQ, 0);
+                long nextSeq = prefs.getLong(KEY_NEXT_SEQ, 1);
+
+                // Never ack beyond what was handed out, and never move the cursor back
+                long newAcked = Math.max(acked, Math.min(upTo, nextSeq - 1));
+
+                JSONArray queue = loadQueue(prefs);
+                JSONArray kept = new JSONArray();
+                for (int i = 0; i < queue.length(); i++) {
+                    JSONObject entry = queue.getJSONObject(i);
+                    if (entry.optLong("seq") > newAcked) kept.put(entry);
+                }
+
+                prefs.edit()
+                    .putString(KEY_QUEUE, kept.toString())
+                    .putLong(KEY_ACKED_SEQ, newAcked)
+                    .apply();
+
+                int removed = queue.length() - kept.length();
+                Log.d(TAG, "✅ Acked up to seq " + newAcked + ", compacted " + removed + " entries (left: " + kept.length() + ")");
+                return removed;
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Failed to ack queue", e);
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Number of entries not yet acknowledged
+     */
+    public static int size(Context context) {
+        synchronized (LOCK) {
+            try {
+                SharedPreferences prefs = prefs(context);
+                long acked = prefs.getLong(KEY_ACKED_SEQ, 0);
+                JSONArray queue = loadQueue(prefs);
+                int count = 0;
+                for (int i = 0; i < queue.length(); i++) {
+                    if (queue.getJSONObject(i).optLong("seq") > acked) count++;
+                }
+                return count;
+            } catch (Exception e) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Load the queue, assigning a seq to legacy entries written before the cursor existed
+     */
+    private static JSONArray loadQueue(SharedPreferences prefs) throws Exception {
+        JSONArray queue = new JSONArray(prefs.getString(KEY_QUEUE, "[]"));
+        boolean migrated = false;
+        long nextSeq = prefs.getLong(KEY_NEXT_SEQ, 1);
+
+        for (int i = 0; i < queue.length(); i++) {
+            JSONObject entry = queue.getJSONObject(i);
+            if (!entry.has("seq")) {
+                entry.put("seq", nextSeq++);
+                migrated = true;
+            }
+        }
+
+        if (migrated) {
+            prefs.edit()
+                .putString(KEY_QUEUE, queue.toString())
+                .putLong(KEY_NEXT_SEQ, nextSeq)
+                .apply();
+            Log.d(TAG, "🔄 Assigned seq to legacy queue entries");
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,378 @@
+package com.gestore.spese;
+
+import android.os.CancellationSignal;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared background executor for blocking plugin methods (content provider queries, binder calls).
+ *
+ * Capacitor runs every @PluginMethod on the same plugin thread, so one slow query used to stall
+ * all other plugin calls. Tasks submitted here run off that thread, in one lane per method:
+ * - maxConcurrent: tasks of the method running at the same time, the rest wait in the lane queue
+ * - maxQueued: waiting tasks before new calls are rejected straight away
+ * - deadlineMs: from submission (queueing included); on expiry the call is rejected, the
+ *   CancellationSignal is cancelled and the worker interrupted
+ *
+ * A task can also be cancelled through the "requestId" option of its call (cancelRequest()),
+ * or in bulk when its plugin is destroyed. The PluginCall is settled exactly once.
+ * Per-method metrics (queueing delay, execution time, outcomes) are available via getMetrics().
+ */
+public final class PluginTaskExecutor {
+
+    private static final String TAG = "PluginTaskExecutor";
+
+    /**
+     * Body of a plugin method. Throw {@link Rejection} for an expected failure (its message is
+     * passed to call.reject as is); any other exception rejects with "<method> failed: ...".
+     * Long loops should check signal.isCanceled() and pass the signal to ContentResolver.query.
+     */
+    public interface Task {
+        JSObject run(CancellationSignal signal) throws Exception;
+    }
+
+    public static final class Rejection extends Exception {
+        public Rejection(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Limits of a plugin method lane (declared as a constant by each plugin)
+     */
+    public static final class Limits {
+        final String plugin;
+        final String method;
+        final int maxConcurrent;
+        final int maxQueued;
+        final long deadlineMs;
+
+        public Limits(String plugin, String method, int maxConcurrent, int maxQueued, long deadlineMs) {
+            this.plugin = plugin;
+            this.method = method;
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+            this.deadlineMs = deadlineMs;
+        }
+
+        String key() {
+            return plugin + "." + method;
+        }
+    }
+
+    private static final class Lane {
+        final Limits limits;
+        final ArrayDeque<Job> queue = new ArrayDeque<>();
+        int running = 0;
+
+        // Metrics (guarded by LOCK)
+        long submitted = 0;
+        long succeeded = 0;
+        long failed = 0;
+        long timedOut = 0;
+        long cancelled = 0;
+        long rejectedFull = 0;
+        long totalQueueMs = 0;
+        long maxQueueMs = 0;
+        long totalExecMs = 0;
+        long maxExecMs = 0;
+        long executed = 0;
+
+        Lane(Limits limits) {
+            this.limits = limits;
+        }
+    }
+
+    private static final class Job {
+        final Lane lane;
+        final PluginCall call;
+        final Task task;
+        final String requestId;
+        final long submittedAt = SystemClock.elapsedRealtime();
+        final CancellationSignal signal = new CancellationSignal();
+        final AtomicBoolean settled = new AtomicBoolean(false);
+
+        long startedAt = 0;
+        volatile Future<?> future;
+        volatile Future<?> deadline;
+
+        Job(Lane lane, PluginCall call, Task task, String requestId) {
+            this.lane = lane;
+            this.call = call;
+            this.task = task;
+            this.requestId = requestId;
+        }
+    }
+
+    private static final Object LOCK = new Object();
+    private static final Map<String, Lane> lanes = new HashMap<>();
+    private static final List<Job> active = new ArrayList<>();
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    // Lanes bound the concurrency, the pool itself only reuses threads
+    private static final ExecutorService workers = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "plugin-task-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "plugin-task-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private PluginTaskExecutor() {
+    }
+
+    /**
+     * Run a plugin method body in its lane; the call is resolved with the task result
+     */
+    public static void submit(PluginCall call, Limits limits, Task task) {
+        final Job job;
+        synchronized (LOCK) {
+            Lane lane = lanes.get(limits.key());
+            if (lane == null) {
+                lane = new Lane(limits);
+                lanes.put(limits.key(), lane);
+            }
+            lane.submitted++;
+
+            if (lane.running >= limits.maxConcurrent && lane.queue.size() >= limits.maxQueued) {
+                lane.rejectedFull++;
+                Log.w(TAG, "⚠️ " + limits.key() + " rejected: " + lane.queue.size() + " calls already waiting");
+                call.reject("Too many pending " + limits.method + " calls");
+                return;
+            }
+
+            job = new Job(lane, call, task, call.getString("requestId"));
+            job.deadline = deadlines.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    expire(job);
+                }
+            }, limits.deadlineMs, TimeUnit.MILLISECONDS);
+            active.add(job);
+            lane.queue.add(job);
+            drain(lane);
+        }
+    }
+
+    /**
+     * Cancel the task started with the given "requestId" option
+     *
+     * @return true if a queued or running task was found
+     */
+    public static boolean cancel(String requestId) {
+        if (requestId == null) return false;
+
+        List<Job> matches = new ArrayList<>();
+        synchronized (LOCK) {
+            for (Job job : active) {
+                if (requestId.equals(job.requestId)) matches.add(job);
+            }
+        }
+        for (Job job : matches) {
+            abort(job, job.lane.limits.method + " cancelled", false);
+        }
+        return !matches.isEmpty();
+    }
+
+    /**
+     * Cancel every task of a plugin (its bridge is going away)
+     */
+    public static void cancelAll(String plugin) {
+        List<Job> matches = new ArrayList<>();
+        synchronized (LOCK) {
+            for (Job job : active) {
+                if (job.lane.limits.plugin.equals(plugin)) matches.add(job);
+            }
+        }
+        for (Job job : matches) {
+            abort(job, job.lane.limits.method + " cancelled", false);
+        }
+        if (!matches.isEmpty()) Log.d(TAG, "⏹️ Cancelled " + matches.size() + " " + plugin + " tasks");
+    }
+
+    /**
+     * Per-method counters: queueing delay and execution time (avg/max ms) and outcomes
+     */
+    public static JSObject getMetrics() {
+        JSObject ret = new JSObject();
+        synchronized (LOCK) {
+            for (Lane lane : lanes.values()) {
+                JSObject m = new JSObject();
+                m.put("maxConcurrent", lane.limits.maxConcurrent);
+                m.put("deadlineMs", lane.limits.deadlineMs);
+                m.put("running", lane.running);
+                m.put("queued", lane.queue.size());
+                m.put("submitted", lane.submitted);
+                m.put("succeeded", lane.succeeded);
+                m.put("failed", lane.failed);
+                m.put("timedOut", lane.timedOut);
+                m.put("cancelled", lane.cancelled);
+                m.put("rejectedQueueFull", lane.rejectedFull);
+                m.put("avgQueueMs", lane.executed > 0 ? lane.totalQueueMs / lane.executed : 0);
+                m.put("maxQueueMs", lane.maxQueueMs);
+                m.put("avgExecMs", lane.executed > 0 ? lane.totalExecMs / lane.executed : 0);
+                m.put("maxExecMs", lane.maxExecMs);
+                ret.put(lane.limits.key(), m);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Start queued jobs while the lane has free slots (caller holds LOCK)
+     */
+    private static void drain(Lane lane) {
+        while (lane.running < lane.limits.maxConcurrent && !lane.queue.isEmpty()) {
+            final Job job = lane.queue.poll();
+            if (job.settled.get()) continue;
+
+            job.startedAt = SystemClock.elapsedRealtime();
+            long queueMs = job.startedAt - job.submittedAt;
+            lane.totalQueueMs += queueMs;
+            lane.maxQueueMs = Math.max(lane.maxQueueMs, queueMs);
+            lane.running++;
+
+            try {
+                job.future = workers.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        execute(job);
+                    }
+                });
+            } catch (Exception e) {
+                lane.running--;
+                active.remove(job);
+                if (job.settled.compareAndSet(false, true)) {
+                    lane.failed++;
+                    job.deadline.cancel(false);
+                    job.call.reject(lane.limits.method + " failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void execute(Job job) {
+        Lane lane = job.lane;
+        JSObject result = null;
+        Exception error = null;
+
+        try {
+            if (!job.signal.isCanceled()) {
+                result = job.task.run(job.signal);
+            }
+        } catch (Exception e) {
+            error = e;
+        } finally {
+            long execMs = SystemClock.elapsedRealtime() - job.startedAt;
+            synchronized (LOCK) {
+                lane.running--;
+                lane.executed++;
+                lane.totalExecMs += execMs;
+                lane.maxExecMs = Math.max(lane.maxExecMs, execMs);
+                active.remove(job);
+                drain(lane);
+            }
+            if (execMs > lane.limits.deadlineMs) {
+                Log.w(TAG, "⚠️ " + lane.limits.key() + " ran for " + execMs + "ms (deadline " + lane.limits.deadlineMs + "ms)");
+            }
+            // Clear a pending interrupt before the thread goes back to the pool
+            Thread.interrupted();
+        }
+
+        if (!job.settled.compareAndSet(false, true)) return;
+        job.deadline.cancel(false);
+
+        synchronized (LOCK) {
+            if (error == null) {
+                lane.succeeded++;
+            } else {
+                lane.failed++;
+            }
+        }
+
+        if (error == null) {
+            if (result != null) {
+                job.call.resolve(result);
+            } else {
+                job.call.resolve();
+            }
+        } else if (error instanceof Rejection) {
+            job.call.reject(error.getMessage());
+        } else {
+            Log.e(TAG, "❌ " + lane.limits.key() + " failed", error);
+            job.call.reject(lane.limits.method + " failed: " + error.getMessage());
+        }
+    }
+
+    private static void expire(Job job) {
+        abort(job, job.lane.limits.method + " timed out after " + job.lane.limits.deadlineMs + "ms", true);
+    }
+
+    /**
+     * Settle the call now and stop the task: removed from the queue if still waiting,
+     * otherwise signal cancelled + worker interrupted (the lane slot is freed when it returns)
+     */
+    private static void abort(Job job, String message, boolean timeout) {
+        if (!job.settled.compareAndSet(false, true)) return;
+
+        Lane lane = job.lane;
+        synchronized (LOCK) {
+            if (timeout) {
+                lane.timedOut++;
+            } else {
+                lane.cancelled++;
+            }
+            Iterator<Job> it = lane.queue.iterator();
+            while (it.hasNext()) {
+                if (it.next() == job) {
+                    it.remove();
+                    active.remove(job);
+                    break;
+                }
+            }
+        }
+
+        if (job.deadline != null) job.deadline.cancel(false);
+        job.signal.cancel();
+        if (job.future != null) job.future.cancel(true);
+
+        Log.w(TAG, "⏱️ " + lane.limits.key() + ": " + message);
+        job.call.reject(message);
+    }
+}
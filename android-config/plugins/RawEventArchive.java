@@ -0,0 +1,1010 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compressed archive of the raw events (bank notifications / SMS as received).
+ *
+ * Events are appended to a journal (the open block); every BLOCK_RECORDS events or BLOCK_BYTES of
+ * JSON the block is sealed: the payloads are deflated together with a preset dictionary trained on
+ * the archived text (bank templates repeat almost word for word, so even a small block compresses
+ * well from its first byte). The header of a sealed block - ids, times, statuses and payload
+ * offsets - is deflated on its own and is all that is read at startup: a lookup by id or a time
+ * range inflates only the blocks it returns events from (the last few are cached).
+ *
+ * A replaced event (same id) leaves a dead copy in its old block. The retention policy (days to
+ * keep per status, errors longer than processed events) hides expired events at once; compaction
+ * rewrites the blocks holding dead or expired events and deletes the dictionaries no longer used.
+ */
+public final class RawEventArchive {
+
+    private static final String TAG = "RawEventArchive";
+    private static final String DIR_NAME = "raw_archive";
+    private static final String PREFS_NAME = "raw_event_archive";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x52414231; // "RAB1"
+    private static final int VERSION = 1;
+    private static final int FIXED_HEADER_BYTES = 20; // magic, version, dictionary, count, header length
+
+    private static final int BLOCK_RECORDS = 64;
+    private static final int BLOCK_BYTES = 32 * 1024;
+    private static final int CACHED_BLOCKS = 4;
+
+    // Dictionary: 8-byte substrings seen in several events, collected in 64-byte segments
+    private static final int DICTIONARY_SIZE = 16 * 1024;
+    private static final int MIN_TRAINING_BYTES = 8 * 1024;
+    private static final int MAX_TRAINING_BYTES = 512 * 1024;
+    private static final int DMER = 8;
+    private static final int SEGMENT = 64;
+
+    // A block is rewritten when a quarter of it is dead or expired
+    private static final double COMPACTION_RATIO = 0.25;
+
+    static final byte PENDING = 0;
+    static final byte PROCESSED = 1;
+    static final byte ERROR = 2;
+    static final byte IGNORED = 3;
+    private static final String[] STATUS_NAMES = {"pending", "processed", "error", "ignored"};
+    // Days to keep per status, 0 = forever
+    static final int[] DEFAULT_RETENTION_DAYS = {0, 180, 730, 30};
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final long ACTIVE = -1L; // block number of the journal in a location
+
+    private static RawEventArchive instance;
+
+    /**
+     * An event to archive: the payload is the whole JSON of the event
+     */
+    public static final class Event {
+        final String id;
+        final long time;
+        final byte status;
+        final byte[] payload;
+
+        public Event(String id, long time, String status, String json) {
+            this.id = id;
+            this.time = time;
+            this.status = statusOf(status);
+            this.payload = json.getBytes(UTF8);
+        }
+
+        Event(String id, long time, byte status, byte[] payload) {
+            this.id = id;
+            this.time = time;
+            this.status = status;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * A page of events (JSON), newest first
+     */
+    public static final class Page {
+        public final List<String> events;
+        public final int total;
+
+        Page(List<String> events, int total) {
+            this.events = events;
+            this.total = total;
+        }
+    }
+
+    /**
+     * Archive counters (stored bytes include the dictionaries and the journal)
+     */
+    static final class Stats {
+        int events;
+        int blocks;
+        int openEvents;
+        int deadEvents;
+        long storedBytes;
+        long sealedJsonBytes;
+        long compressedJsonBytes; // the same events deflated, without the block headers
+        int dictionary; // number of the current dictionary, 0 = none
+        int dictionaryBytes;
+        int[] retentionDays;
+
+        JSObject toJSObject() {
+            JSObject ret = new JSObject();
+            ret.put("events", events);
+            ret.put("blocks", blocks);
+            ret.put("openEvents", openEvents);
+            ret.put("deadEvents", deadEvents);
+            ret.put("storedBytes", storedBytes);
+            ret.put("sealedJsonBytes", sealedJsonBytes);
+            ret.put("compressedJsonBytes", compressedJsonBytes);
+            ret.put("dictionaryBytes", dictionaryBytes);
+            for (int s = 0; s < STATUS_NAMES.length; s++) ret.put(STATUS_NAMES[s] + "RetentionDays", retentionDays[s]);
+            return ret;
+        }
+    }
+
+    /**
+     * Sealed block: the header, in memory, and where its compressed payloads start in the file
+     */
+    private static final class Block {
+        final int number;
+        final File file;
+        int dictionary; // 0 = none
+        int count;
+        String[] ids;
+        long[] times;
+        byte[] statuses;
+        int[] offsets; // [count + 1] in the inflated payloads
+        long dataPosition;
+        int dataLength;
+        long minTime;
+        long maxTime;
+        int live;
+
+        Block(int number, File file) {
+            this.number = number;
+            this.file = file;
+        }
+    }
+
+    private final File dir;
+    private final File journalFile;
+    private final SharedPreferences prefs; // null: retention not persisted
+    private final int[] retentionDays = new int[STATUS_NAMES.length];
+
+    // id → block number << 32 | index in the block (ACTIVE block: index in the journal)
+    private final Map<String, Long> locations = new HashMap<>();
+    private final TreeMap<Integer, Block> blocks = new TreeMap<>();
+    private final Map<Integer, byte[]> dictionaries = new HashMap<>();
+    private int currentDictionary; // 0 until there is enough text to train one
+    private int nextBlock = 1;
+
+    // Open block (journal)
+    private final List<Event> active = new ArrayList<>(); // null = replaced
+    private int activeBytes;
+
+    private final Map<Integer, byte[]> cache = new LinkedHashMap<Integer, byte[]>(CACHED_BLOCKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    private RawEventArchive(File dir, int[] retentionDays, SharedPreferences prefs) {
+        this.dir = dir;
+        this.journalFile = new File(dir, "active.log");
+        this.prefs = prefs;
+        System.arraycopy(retentionDays, 0, this.retentionDays, 0, STATUS_NAMES.length);
+    }
+
+    /**
+     * The archive, loaded from disk (block headers and journal) on first use
+     */
+    public static synchronized RawEventArchive get(Context context) throws IOException {
+        if (instance == null) {
+            Context app = context.getApplicationContext();
+            SharedPreferences prefs = app.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            int[] days = new int[STATUS_NAMES.length];
+            for (int s = 0; s < STATUS_NAMES.length; s++) {
+                days[s] = prefs.getInt("retention_" + STATUS_NAMES[s], DEFAULT_RETENTION_DAYS[s]);
+            }
+            instance = open(new RawEventArchive(new File(app.getFilesDir(), DIR_NAME), days, prefs));
+        }
+        return instance;
+    }
+
+    /**
+     * A private archive in dir with the given retention (days per status, 0 = forever), kept
+     * in memory only: for tests
+     */
+    static RawEventArchive open(File dir, int[] retentionDays) throws IOException {
+        return open(new RawEventArchive(dir, retentionDays, null));
+    }
+
+    private static RawEventArchive open(RawEventArchive archive) throws IOException {
+        if (!archive.dir.exists() && !archive.dir.mkdirs()) throw new IOException("Could not create " + archive.dir);
+        archive.load();
+        return archive;
+    }
+
+    // ==================== WRITES ====================
+
+    /**
+     * Add events (an existing id is replaced); the open block is sealed when full
+     */
+    public synchronized void append(List<Event> events) throws IOException {
+        int next = 0;
+        while (next < events.size()) {
+            DataOutputStream journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+            try {
+                while (next < events.size() && active.size() < BLOCK_RECORDS && activeBytes < BLOCK_BYTES) {
+                    Event event = events.get(next++);
+                    writeRecord(journal, event);
+                    putActive(event);
+                }
+            } finally {
+                journal.close();
+            }
+            if (active.size() >= BLOCK_RECORDS || activeBytes >= BLOCK_BYTES) seal();
+        }
+    }
+
+    /**
+     * Retention in days per status (pending, processed, error, ignored); null keeps the current
+     * value, 0 keeps forever
+     */
+    public synchronized void setRetention(Integer[] days) {
+        SharedPreferences.Editor editor = prefs != null ? prefs.edit() : null;
+        for (int s = 0; s < STATUS_NAMES.length; s++) {
+            if (days[s] == null) continue;
+            retentionDays[s] = Math.max(0, days[s]);
+            if (editor != null) editor.putInt("retention_" + STATUS_NAMES[s], retentionDays[s]);
+        }
+        if (editor != null) editor.apply();
+    }
+
+    /**
+     * Rewrite the blocks where at least COMPACTION_RATIO of the events are dead or expired
+     * (all of them with full = true, retraining the dictionary first). The first dictionary is
+     * trained on the first block only: once the archive holds enough text it is retrained too.
+     * Returns the ids dropped by the retention.
+     */
+    public synchronized List<String> compact(long now, boolean full) throws IOException {
+        long startTime = System.currentTimeMillis();
+        List<String> expired = new ArrayList<>();
+
+        long sealedBytes = 0;
+        for (Block block : blocks.values()) sealedBytes += block.offsets[block.count];
+        byte[] dictionary = dictionaries.get(currentDictionary);
+        if ((dictionary == null || dictionary.length < DICTIONARY_SIZE) && sealedBytes >= MAX_TRAINING_BYTES) full = true;
+
+        // Expired events leave the index now, their bytes when their block is rewritten
+        for (Block block : blocks.values()) {
+            for (int i = 0; i < block.count; i++) {
+                if (isLive(block, i) && isExpired(block.statuses[i], block.times[i], now)) {
+                    locations.remove(block.ids[i]);
+                    block.live--;
+                    expired.add(block.ids[i]);
+                }
+            }
+        }
+
+        List<Block> rewrite = new ArrayList<>();
+        for (Block block : blocks.values()) {
+            if (full || block.live < block.count * (1 - COMPACTION_RATIO)) rewrite.add(block);
+        }
+        if (full) {
+            List<byte[]> samples = new ArrayList<>();
+            int bytes = 0;
+            for (Block block : blocks.values()) {
+                if (bytes >= MAX_TRAINING_BYTES) break;
+                byte[] data = inflate(block);
+                for (int i = 0; i < block.count && bytes < MAX_TRAINING_BYTES; i++) {
+                    if (!isLive(block, i)) continue;
+                    samples.add(Arrays.copyOfRange(data, block.offsets[i], block.offsets[i + 1]));
+                    bytes += block.offsets[i + 1] - block.offsets[i];
+                }
+            }
+            trainDictionary(samples);
+        }
+
+        // Live events of the rewritten blocks, in the same order, into new full blocks
+        int rewritten = 0;
+        List<Event> pending = new ArrayList<>();
+        int pendingBytes = 0;
+        for (Block block : rewrite) {
+            byte[] data = block.live > 0 ? inflate(block) : null;
+            for (int i = 0; i < block.count; i++) {
+                if (!isLive(block, i)) continue;
+                byte[] payload = Arrays.copyOfRange(data, block.offsets[i], block.offsets[i + 1]);
+                pending.add(new Event(block.ids[i], block.times[i], block.statuses[i], payload));
+                pendingBytes += payload.length;
+                if (pending.size() >= BLOCK_RECORDS || pendingBytes >= BLOCK_BYTES) {
+                    writeBlock(pending);
+                    pending.clear();
+                    pendingBytes = 0;
+                }
+            }
+            rewritten++;
+        }
+        if (!pending.isEmpty()) writeBlock(pending);
+
+        // The new blocks are on disk: the old ones can go
+        for (Block block : rewrite) {
+            blocks.remove(block.number);
+            cache.remove(block.number);
+            if (!block.file.delete()) Log.w(TAG, "⚠️ Could not delete " + block.file.getName());
+        }
+        dropUnusedDictionaries();
+
+        Log.d(TAG, "🧹 Compacted: " + rewritten + " blocks rewritten, " + expired.size() + " expired, "
+            + blocks.size() + " blocks in " + (System.currentTimeMillis() - startTime) + "ms");
+        return expired;
+    }
+
+    // ==================== READS ====================
+
+    /**
+     * The event JSON, null if unknown or expired
+     */
+    public synchronized String get(String id, long now) throws IOException {
+        Long location = locations.get(id);
+        if (location == null) return null;
+
+        int number = (int) (location >> 32);
+        int index = (int) (long) location;
+        if (number == ACTIVE) {
+            Event event = active.get(index);
+            return isExpired(event.status, event.time, now) ? null : new String(event.payload, UTF8);
+        }
+        Block block = blocks.get(number);
+        if (isExpired(block.statuses[index], block.times[index], now)) return null;
+        return payload(block, inflate(block), index);
+    }
+
+    /**
+     * Events with from <= time <= to (statusMask: bit per status, 0 = all), newest first
+     */
+    public synchronized Page query(long from, long to, int statusMask, int offset, int limit, long now) throws IOException {
+        long[] times = new long[64];
+        long[] found = new long[64]; // locations
+        int count = 0;
+
+        // Only the headers of the blocks overlapping the range are scanned
+        for (Block block : blocks.values()) {
+            if (block.maxTime < from || block.minTime > to) continue;
+            for (int i = 0; i < block.count; i++) {
+                long time = block.times[i];
+                if (time < from || time > to || !isLive(block, i)) continue;
+                if (!matches(block.statuses[i], statusMask) || isExpired(block.statuses[i], time, now)) continue;
+                if (count == found.length) {
+                    times = Arrays.copyOf(times, count * 2);
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                times[count] = time;
+                found[count++] = (long) block.number << 32 | i;
+            }
+        }
+        for (int i = 0; i < active.size(); i++) {
+            Event event = active.get(i);
+            if (event == null || event.time < from || event.time > to) continue;
+            if (!matches(event.status, statusMask) || isExpired(event.status, event.time, now)) continue;
+            if (count == found.length) {
+                times = Arrays.copyOf(times, count * 2);
+                found = Arrays.copyOf(found, count * 2);
+            }
+            times[count] = event.time;
+            found[count++] = ACTIVE << 32 | i;
+        }
+
+        // Sort by time without boxing: (time - min) << 24 | candidate, coarser if the span is huge
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int k = 0; k < count; k++) {
+            min = Math.min(min, times[k]);
+            max = Math.max(max, times[k]);
+        }
+        int shift = 0;
+        while (count > 0 && ((max - min) >>> shift) >= 1L << 39) shift++;
+        long[] keys = new long[count];
+        for (int k = 0; k < count; k++) keys[k] = ((times[k] - min) >>> shift) << 24 | k;
+        Arrays.sort(keys);
+
+        List<String> events = new ArrayList<>();
+        for (int k = count - 1 - offset; k >= 0 && events.size() < limit; k--) {
+            long location = found[(int) (keys[k] & 0xFFFFFF)];
+            int number = (int) (location >> 32);
+            int index = (int) location;
+            if (number == ACTIVE) {
+                events.add(new String(active.get(index).payload, UTF8));
+            } else {
+                Block block = blocks.get(number);
+                events.add(payload(block, inflate(block), index));
+            }
+        }
+        return new Page(events, count);
+    }
+
+    /**
+     * Counts and sizes, plus the retention policy
+     */
+    public synchronized JSObject stats() {
+        return summary().toJSObject();
+    }
+
+    synchronized Stats summary() {
+        Stats stats = new Stats();
+        for (Block block : blocks.values()) {
+            stats.storedBytes += block.file.length();
+            stats.sealedJsonBytes += block.offsets[block.count];
+            stats.compressedJsonBytes += block.dataLength;
+            stats.deadEvents += block.count - block.live;
+        }
+        for (byte[] dictionary : dictionaries.values()) stats.storedBytes += dictionary.length;
+        stats.storedBytes += journalFile.length();
+        stats.events = locations.size();
+        stats.blocks = blocks.size();
+        stats.openEvents = active.size();
+        stats.dictionary = currentDictionary;
+        stats.dictionaryBytes = currentDictionary != 0 ? dictionaries.get(currentDictionary).length : 0;
+        stats.retentionDays = retentionDays.clone();
+        return stats;
+    }
+
+    static int statusMask(String status) {
+        return 1 << statusOf(status);
+    }
+
+    // ==================== BLOCKS ====================
+
+    private void putActive(Event event) {
+        drop(event.id);
+        locations.put(event.id, ACTIVE << 32 | active.size());
+        active.add(event);
+        activeBytes += event.payload.length;
+    }
+
+    /**
+     * Mark the current copy of the id dead (before it is replaced)
+     */
+    private void drop(String id) {
+        Long location = locations.remove(id);
+        if (location == null) return;
+        int number = (int) (location >> 32);
+        if (number == ACTIVE) {
+            active.set((int) (long) location, null);
+        } else {
+            blocks.get(number).live--;
+        }
+    }
+
+    private boolean isLive(Block block, int index) {
+        Long location = locations.get(block.ids[index]);
+        return location != null && location == ((long) block.number << 32 | index);
+    }
+
+    /**
+     * Write the open block as a sealed one and empty the journal
+     */
+    private void seal() throws IOException {
+        List<Event> events = new ArrayList<>();
+        for (Event event : active) {
+            if (event != null) events.add(event);
+        }
+        if (currentDictionary == 0) {
+            List<byte[]> samples = new ArrayList<>();
+            int bytes = 0;
+            for (Event event : events) {
+                samples.add(event.payload);
+                bytes += event.payload.length;
+            }
+            if (bytes >= MIN_TRAINING_BYTES) trainDictionary(samples);
+        }
+
+        if (!events.isEmpty()) writeBlock(events);
+        active.clear();
+        activeBytes = 0;
+        if (journalFile.exists() && !journalFile.delete()) throw new IOException("Could not reset the journal");
+    }
+
+    /**
+     * Deflate the events into a new block file (temp + rename) and point their ids to it
+     */
+    private void writeBlock(List<Event> events) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        for (Event event : events) raw.write(event.payload);
+        byte[] data = deflate(raw.toByteArray(), dictionaries.get(currentDictionary));
+
+        // Header: ids, times (delta from the previous one), statuses, payload lengths
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        long previousTime = 0;
+        for (Event event : events) {
+            header.writeUTF(event.id);
+            writeVarlong(header, zigzag(event.time - previousTime));
+            header.writeByte(event.status);
+            writeVarint(header, event.payload.length);
+            previousTime = event.time;
+        }
+        header.close();
+        byte[] compressedHeader = deflate(headerBytes.toByteArray(), null);
+
+        int number = nextBlock++;
+        File file = new File(dir, "block-" + number + ".bin");
+        File temp = new File(dir, file.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(currentDictionary);
+            out.writeInt(events.size());
+            out.writeInt(compressedHeader.length);
+            out.write(compressedHeader);
+            out.writeInt(data.length);
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not write " + file.getName());
+        }
+
+        Block block = readHeader(number, file);
+        blocks.put(number, block);
+        for (int i = 0; i < block.count; i++) {
+            drop(block.ids[i]);
+            locations.put(block.ids[i], (long) number << 32 | i);
+        }
+        block.live = block.count;
+    }
+
+    private static Block readHeader(int number, File file) throws IOException {
+        Block block = new Block(number, file);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Unknown format " + file.getName());
+            block.dictionary = in.readInt();
+            block.count = in.readInt();
+            byte[] compressedHeader = new byte[in.readInt()];
+            in.readFully(compressedHeader);
+            block.dataLength = in.readInt();
+            block.dataPosition = FIXED_HEADER_BYTES + compressedHeader.length + 4;
+
+            DataInputStream header = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressedHeader)));
+            block.ids = new String[block.count];
+            block.times = new long[block.count];
+            block.statuses = new byte[block.count];
+            block.offsets = new int[block.count + 1];
+            block.minTime = Long.MAX_VALUE;
+            block.maxTime = Long.MIN_VALUE;
+            long time = 0;
+            for (int i = 0; i < block.count; i++) {
+                block.ids[i] = header.readUTF();
+                time += unzigzag(readVarlong(header));
+                block.times[i] = time;
+                block.statuses[i] = header.readByte();
+                block.offsets[i + 1] = block.offsets[i] + readVarint(header);
+                block.minTime = Math.min(block.minTime, time);
+                block.maxTime = Math.max(block.maxTime, time);
+            }
+        } finally {
+            in.close();
+        }
+        if (block.dataPosition + block.dataLength != file.length()) throw new IOException("Truncated " + file.getName());
+        return block;
+    }
+
+    /**
+     * Inflated payloads of the block (cached)
+     */
+    private byte[] inflate(Block block) throws IOException {
+        byte[] data = cache.get(block.number);
+        if (data != null) return data;
+
+        byte[] compressed = new byte[block.dataLength];
+        RandomAccessFile file = new RandomAccessFile(block.file, "r");
+        try {
+            file.seek(block.dataPosition);
+            file.readFully(compressed);
+        } finally {
+            file.close();
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            data = new byte[block.offsets[block.count]];
+            int length = 0;
+            while (length < data.length) {
+                int n = inflater.inflate(data, length, data.length - length);
+                if (n == 0) {
+                    if (!inflater.needsDictionary()) throw new IOException("Truncated block " + block.file.getName());
+                    byte[] dictionary = dictionaries.get(block.dictionary);
+                    if (dictionary == null) throw new IOException("Missing dictionary " + block.dictionary);
+                    inflater.setDictionary(dictionary);
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted block " + block.file.getName(), e);
+        } finally {
+            inflater.end();
+        }
+        cache.put(block.number, data);
+        return data;
+    }
+
+    private static byte[] deflate(byte[] data, byte[] dictionary) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            if (dictionary != null) deflater.setDictionary(dictionary);
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String payload(Block block, byte[] data, int index) {
+        return new String(data, block.offsets[index], block.offsets[index + 1] - block.offsets[index], UTF8);
+    }
+
+    private boolean isExpired(byte status, long time, long now) {
+        int days = status < retentionDays.length ? retentionDays[status] : 0;
+        return days > 0 && time < now - days * DAY_MS;
+    }
+
+    private static boolean matches(byte status, int mask) {
+        return mask == 0 || (mask & (1 << status)) != 0;
+    }
+
+    private static byte statusOf(String status) {
+        for (byte s = 0; s < STATUS_NAMES.length; s++) {
+            if (STATUS_NAMES[s].equals(status)) return s;
+        }
+        return PENDING;
+    }
+
+    // ==================== DICTIONARY ====================
+
+    /**
+     * Train a preset dictionary on the samples (a light version of the zstd "cover" algorithm):
+     * every 8-byte substring is scored by how many samples contain it, the 64-byte segments with
+     * the highest total of not yet covered substrings are picked greedily. The best segments go
+     * at the end of the dictionary, where deflate reaches them with the shortest distances.
+     */
+    private void trainDictionary(List<byte[]> samples) throws IOException {
+        long startTime = System.currentTimeMillis();
+        LongCounter frequencies = new LongCounter(1 << 16);
+        int total = 0;
+        for (byte[] sample : samples) {
+            if (total >= MAX_TRAINING_BYTES) break;
+            LongCounter seen = new LongCounter(Math.max(16, Integer.highestOneBit(sample.length) * 2));
+            for (int i = 0; i + DMER <= sample.length; i++) {
+                long dmer = dmer(sample, i);
+                if (seen.get(dmer) == 0) {
+                    seen.add(dmer, 1);
+                    frequencies.add(dmer, 1);
+                }
+            }
+            total += sample.length;
+        }
+        if (total < MIN_TRAINING_BYTES) return;
+
+        // Candidate segments every half segment, in a max-heap with lazily refreshed scores
+        PriorityQueue<long[]> heap = new PriorityQueue<>(1024, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Long.compare(b[0], a[0]);
+            }
+        });
+        for (int s = 0; s < samples.size(); s++) {
+            byte[] sample = samples.get(s);
+            for (int start = 0; start + SEGMENT <= sample.length; start += SEGMENT / 2) {
+                long score = score(sample, start, frequencies);
+                if (score > 0) heap.add(new long[]{score, s, start});
+            }
+        }
+
+        List<byte[]> chosen = new ArrayList<>();
+        int size = 0;
+        while (size + SEGMENT <= DICTIONARY_SIZE && !heap.isEmpty()) {
+            long[] top = heap.poll();
+            byte[] sample = samples.get((int) top[1]);
+            int start = (int) top[2];
+            long score = score(sample, start, frequencies);
+            if (score <= 0) continue;
+            if (!heap.isEmpty() && score < heap.peek()[0]) {
+                top[0] = score; // Partly covered by the segments already chosen
+                heap.add(top);
+                continue;
+            }
+            chosen.add(Arrays.copyOfRange(sample, start, start + SEGMENT));
+            size += SEGMENT;
+            for (int i = start; i + DMER <= start + SEGMENT; i++) frequencies.set(dmer(sample, i), 0);
+        }
+        if (chosen.isEmpty()) return;
+
+        byte[] dictionary = new byte[size];
+        int position = size;
+        for (byte[] segment : chosen) {
+            position -= SEGMENT;
+            System.arraycopy(segment, 0, dictionary, position, SEGMENT);
+        }
+
+        // Increasing numbers: at startup the highest one is the current dictionary
+        int number = 1;
+        for (int existing : dictionaries.keySet()) number = Math.max(number, existing + 1);
+        File file = new File(dir, "dict-" + number + ".bin");
+        File temp = new File(dir, file.getName() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(dictionary);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not write " + file.getName());
+        }
+        dictionaries.put(number, dictionary);
+        currentDictionary = number;
+        Log.d(TAG, "📚 Trained dictionary " + number + ": " + size + " bytes from " + samples.size()
+            + " events in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * Sum of the sample counts of the (repeated) substrings in the segment
+     */
+    private static long score(byte[] sample, int start, LongCounter frequencies) {
+        long score = 0;
+        for (int i = start; i + DMER <= start + SEGMENT; i++) {
+            int frequency = frequencies.get(dmer(sample, i));
+            if (frequency > 1) score += frequency;
+        }
+        return score;
+    }
+
+    private static long dmer(byte[] data, int at) {
+        long value = 0;
+        for (int i = 0; i < DMER; i++) value = value << 8 | (data[at + i] & 0xFF);
+        return value;
+    }
+
+    private void dropUnusedDictionaries() {
+        Iterator<Map.Entry<Integer, byte[]>> it = dictionaries.entrySet().iterator();
+        while (it.hasNext()) {
+            int number = it.next().getKey();
+            if (number == currentDictionary) continue;
+            boolean used = false;
+            for (Block block : blocks.values()) {
+                if (block.dictionary == number) {
+                    used = true;
+                    break;
+                }
+            }
+            if (used) continue;
+            it.remove();
+            new File(dir, "dict-" + number + ".bin").delete();
+        }
+    }
+
+    /**
+     * Open addressing long → int map (no boxing while counting substrings)
+     */
+    private static final class LongCounter {
+        private long[] keys;
+        private int[] values;
+        private boolean[] used;
+        private int size;
+
+        LongCounter(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+            used = new boolean[capacity];
+        }
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) return values[slot];
+            }
+            return 0;
+        }
+
+        void add(long key, int delta) {
+            if (size * 2 >= keys.length) rehash();
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (used[slot] && keys[slot] != key) slot = (slot + 1) & mask;
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] += delta;
+        }
+
+        void set(long key, int value) {
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    values[slot] = value;
+                    return;
+                }
+            }
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) add(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    // ==================== PERSISTENCE ====================
+
+    private void load() throws IOException {
+        long startTime = System.currentTimeMillis();
+        File[] files = dir.listFiles();
+        if (files == null) files = new File[0];
+
+        TreeMap<Integer, File> blockFiles = new TreeMap<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".tmp")) {
+                file.delete(); // Killed while writing: the original is still there
+            } else if (name.startsWith("dict-") && name.endsWith(".bin")) {
+                int number = Integer.parseInt(name.substring(5, name.length() - 4));
+                dictionaries.put(number, readFile(file));
+                currentDictionary = Math.max(currentDictionary, number);
+            } else if (name.startsWith("block-") && name.endsWith(".bin")) {
+                blockFiles.put(Integer.parseInt(name.substring(6, name.length() - 4)), file);
+            }
+        }
+
+        // In number order: a newer copy of an id (compaction killed before deleting) wins
+        for (Map.Entry<Integer, File> item : blockFiles.entrySet()) {
+            int number = item.getKey();
+            nextBlock = Math.max(nextBlock, number + 1);
+            Block block;
+            try {
+                block = readHeader(number, item.getValue());
+            } catch (IOException e) {
+                Log.e(TAG, "❌ Dropping unreadable block " + item.getValue().getName(), e);
+                item.getValue().delete();
+                continue;
+            }
+            blocks.put(number, block);
+            for (int i = 0; i < block.count; i++) {
+                drop(block.ids[i]);
+                locations.put(block.ids[i], (long) number << 32 | i);
+            }
+            block.live = block.count;
+        }
+
+        if (journalFile.exists()) replayJournal();
+        Log.d(TAG, "📂 Archive loaded: " + locations.size() + " events in " + blocks.size() + " blocks ("
+            + (System.currentTimeMillis() - startTime) + "ms)");
+    }
+
+    private void replayJournal() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+        boolean truncated = false;
+        try {
+            while (true) {
+                String id;
+                try {
+                    id = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                long time = in.readLong();
+                byte status = in.readByte();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                putActive(new Event(id, time, status, payload));
+            }
+        } catch (EOFException e) {
+            // Killed while appending: the last record is incomplete
+            Log.w(TAG, "⚠️ Truncated archive journal, dropping the last record");
+            truncated = true;
+        } finally {
+            in.close();
+        }
+        if (truncated) seal();
+    }
+
+    private static void writeRecord(DataOutputStream out, Event event) throws IOException {
+        out.writeUTF(event.id);
+        out.writeLong(event.time);
+        out.writeByte(event.status);
+        out.writeInt(event.payload.length);
+        out.write(event.payload);
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    private static void writeVarint(DataOutputStream out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static void writeVarlong(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarlong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Malformed varlong");
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,173 @@
+package com.gestore.spese;
+
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compressed archive of the settled raw events (RawEventArchive).
+ *
+ * JS moves here the events it no longer needs to update (processed / error / ignored) and deletes
+ * them from IndexedDB; they stay readable by id and by time range until their retention expires.
+ * compact() is meant to be called about once a day and returns the ids it dropped.
+ */
+@CapacitorPlugin(name = "RawEventArchive")
+public class RawEventArchivePlugin extends Plugin {
+
+    private static final String TAG = "RawEventArchivePlugin";
+    private static final int DEFAULT_LIMIT = 50;
+    private static final String[] RETENTION_OPTIONS = {"pendingDays", "processedDays", "errorDays", "ignoredDays"};
+
+    // A single archive on disk: every call in order
+    private static final PluginTaskExecutor.Limits LIMITS =
+        new PluginTaskExecutor.Limits("RawEventArchive", "archive", 1, 16, 60000);
+
+    @Override
+    protected void handleOnDestroy() {
+        PluginTaskExecutor.cancelAll("RawEventArchive");
+        super.handleOnDestroy();
+    }
+
+    /**
+     * ✅ NEW: Archive raw events ({events: [{id, timestamp, status, ...}]}, stored as they are).
+     * An id already archived is replaced. Returns the archive stats.
+     */
+    @PluginMethod
+    public void append(final PluginCall call) {
+        PluginTaskExecutor.submit(call, LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                JSArray items = call.getArray("events", new JSArray());
+                List<RawEventArchive.Event> events = new ArrayList<>();
+                for (int i = 0; i < items.length(); i++) {
+                    JSONObject item = items.optJSONObject(i);
+                    if (item == null || item.optString("id", null) == null) continue;
+                    events.add(new RawEventArchive.Event(item.optString("id"), item.optLong("timestamp", 0),
+                        item.optString("status", "pending"), item.toString()));
+                }
+
+                RawEventArchive archive = RawEventArchive.get(getContext());
+                archive.append(events);
+                return archive.stats();
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: One archived event by id ({event: null} if unknown or expired)
+     */
+    @PluginMethod
+    public void get(final PluginCall call) {
+        final String id = call.getString("id");
+
+        if (id == null) {
+            call.reject("Missing id");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                String json = RawEventArchive.get(getContext()).get(id, System.currentTimeMillis());
+                JSObject ret = new JSObject();
+                ret.put("event", json != null ? new JSObject(json) : JSONObject.NULL);
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Archived events in a time range, newest first.
+     * Options: from, to (epoch ms, inclusive), status, offset, limit. Returns events and total.
+     */
+    @PluginMethod
+    public void query(final PluginCall call) {
+        final long from = call.getLong("from", 0L);
+        final long to = call.getLong("to", Long.MAX_VALUE);
+        final String status = call.getString("status");
+        final int offset = Math.max(0, call.getInt("offset", 0));
+        final int limit = Math.max(1, call.getInt("limit", DEFAULT_LIMIT));
+
+        PluginTaskExecutor.submit(call, LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                int statusMask = status != null ? RawEventArchive.statusMask(status) : 0;
+                RawEventArchive.Page page = RawEventArchive.get(getContext())
+                    .query(from, to, statusMask, offset, limit, System.currentTimeMillis());
+
+                JSArray events = new JSArray();
+                for (String json : page.events) events.put(new JSObject(json));
+
+                JSObject ret = new JSObject();
+                ret.put("events", events);
+                ret.put("total", page.total);
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Drop the expired events and rewrite the blocks with many dead copies
+     * (full: every block, with a retrained dictionary). Returns expiredIds and the stats.
+     */
+    @PluginMethod
+    public void compact(final PluginCall call) {
+        final boolean full = call.getBoolean("full", false);
+
+        PluginTaskExecutor.submit(call, LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                RawEventArchive archive = RawEventArchive.get(getContext());
+                List<String> expired = archive.compact(System.currentTimeMillis(), full);
+
+                JSObject ret = archive.stats();
+                ret.put("expiredIds", new JSArray(expired));
+                if (!expired.isEmpty()) Log.d(TAG, "🧹 " + expired.size() + " archived events expired");
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Days to keep the events of each status (pendingDays, processedDays, errorDays,
+     * ignoredDays; 0 = forever, missing = unchanged). Returns the archive stats.
+     */
+    @PluginMethod
+    public void setRetention(final PluginCall call) {
+        final Integer[] days = new Integer[RETENTION_OPTIONS.length];
+        for (int s = 0; s < RETENTION_OPTIONS.length; s++) days[s] = call.getInt(RETENTION_OPTIONS[s]);
+
+        PluginTaskExecutor.submit(call, LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                RawEventArchive archive = RawEventArchive.get(getContext());
+                archive.setRetention(days);
+                return archive.stats();
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Events, blocks, bytes on disk and retention of the archive
+     */
+    @PluginMethod
+    public void getStats(final PluginCall call) {
+        PluginTaskExecutor.submit(call, LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                return RawEventArchive.get(getContext()).stats();
+            }
+        });
+    }
+}
@@ -0,0 +1,495 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offline receipt queue on disk, content-addressed.
+ *
+ * Image bytes live in receipt_blobs/ under their SHA-256, so the same photo queued twice (shared
+ * again, picked twice) is stored once; queue entries are small metadata records pointing at a
+ * hash, kept newest first in one JSON index and listed a page at a time. A blob is deleted when
+ * the last entry referencing it goes.
+ *
+ * Thumbnails for the queue screen are decoded once from the blob and kept as small JPEG files in
+ * an LRU cache bounded in bytes, so scrolling the list never decodes a full image twice.
+ */
+public final class ReceiptBlobStore {
+
+    private static final String TAG = "ReceiptBlobStore";
+    private static final String BLOBS_DIR = "receipt_blobs";
+    private static final String THUMBS_DIR = "receipt_thumbs";
+    private static final String INDEX_FILE = "receipt_queue.json";
+
+    public static final int DEFAULT_THUMB_SIZE = 256;
+    private static final int THUMB_QUALITY = 70;
+    private static final long MAX_THUMB_CACHE_BYTES = 4L * 1024 * 1024;
+
+    private static final Object LOCK = new Object();
+    // Newest first
+    private static List<Entry> entries;
+    // Thumbnail file name -> size, in access order (first = least recently used)
+    private static LinkedHashMap<String, Long> thumbs;
+    private static long thumbBytes = 0;
+    private static long thumbHits = 0;
+    private static long thumbMisses = 0;
+
+    private ReceiptBlobStore() {
+    }
+
+    private static final class Entry {
+        String id;
+        String hash;
+        String mimeType;
+        int width;
+        int height;
+        long bytes;
+        long timestamp;
+
+        JSONObject toJson() throws org.json.JSONException {
+            JSONObject o = new JSONObject();
+            o.put("id", id);
+            o.put("hash", hash);
+            o.put("mimeType", mimeType);
+            o.put("width", width);
+            o.put("height", height);
+            o.put("bytes", bytes);
+            o.put("timestamp", timestamp);
+            return o;
+        }
+
+        static Entry fromJson(JSONObject o) {
+            Entry e = new Entry();
+            e.id = o.optString("id");
+            e.hash = o.optString("hash");
+            e.mimeType = o.optString("mimeType", "image/jpeg");
+            e.width = o.optInt("width");
+            e.height = o.optInt("height");
+            e.bytes = o.optLong("bytes");
+            e.timestamp = o.optLong("timestamp");
+            return e;
+        }
+    }
+
+    /**
+     * Move an image file into the store and queue it under id (replacing an entry with the same id).
+     * The source file is consumed: renamed into the store, or deleted if the content is already there.
+     */
+    public static JSObject add(Context context, String id, File source, String mimeType, int width, int height, long timestamp) throws IOException {
+        String hash = sha256(source);
+        long size = source.length();
+
+        synchronized (LOCK) {
+            ensureLoaded(context);
+
+            File blob = blobFile(context, hash);
+            boolean deduplicated = blob.exists();
+            if (deduplicated) {
+                source.delete();
+            } else if (!source.renameTo(blob)) {
+                copy(source, blob);
+                source.delete();
+            }
+
+            Entry previous = find(id);
+            if (previous != null) {
+                entries.remove(previous);
+                if (!previous.hash.equals(hash)) releaseBlob(context, previous.hash);
+            }
+
+            Entry entry = new Entry();
+            entry.id = id;
+            entry.hash = hash;
+            entry.mimeType = mimeType != null ? mimeType : "image/jpeg";
+            entry.width = width;
+            entry.height = height;
+            entry.bytes = size;
+            entry.timestamp = timestamp;
+
+            // Keep newest first: insert before the first older entry
+            int at = 0;
+            while (at < entries.size() && entries.get(at).timestamp >= timestamp) at++;
+            entries.add(at, entry);
+            saveIndex(context);
+
+            Log.d(TAG, (deduplicated ? "♻️ Already stored " : "💾 Stored ") + hash.substring(0, 12) + " (" + size / 1024 + " KB)");
+            JSObject ret = toJs(context, entry);
+            ret.put("deduplicated", deduplicated);
+            return ret;
+        }
+    }
+
+    /**
+     * One page of the queue, newest first, metadata only
+     */
+    public static JSObject list(Context context, int offset, int limit) {
+        synchronized (LOCK) {
+            ensureLoaded(context);
+            JSArray items = new JSArray();
+            int end = Math.min(entries.size(), offset + limit);
+            for (int i = Math.max(0, offset); i < end; i++) {
+                items.put(toJs(context, entries.get(i)));
+            }
+            JSObject ret = new JSObject();
+            ret.put("items", items);
+            ret.put("total", entries.size());
+            ret.put("hasMore", end < entries.size());
+            return ret;
+        }
+    }
+
+    public static JSObject get(Context context, String id) {
+        synchronized (LOCK) {
+            ensureLoaded(context);
+            Entry entry = find(id);
+            return entry != null ? toJs(context, entry) : null;
+        }
+    }
+
+    /**
+     * Remove a queue entry; its blob and thumbnails go when no other entry references them
+     */
+    public static boolean remove(Context context, String id) throws IOException {
+        synchronized (LOCK) {
+            ensureLoaded(context);
+            Entry entry = find(id);
+            if (entry == null) return false;
+            entries.remove(entry);
+            releaseBlob(context, entry.hash);
+            saveIndex(context);
+            return true;
+        }
+    }
+
+    /**
+     * File URI of a thumbnail (longest side = size) for a queue entry, decoded and cached on first use
+     *
+     * @return null if the entry does not exist
+     */
+    public static JSObject thumbnail(Context context, String id, int size) throws IOException {
+        String hash;
+        synchronized (LOCK) {
+            ensureLoaded(context);
+            Entry entry = find(id);
+            if (entry == null) return null;
+            hash = entry.hash;
+
+            String name = hash + "_" + size + ".jpg";
+            File cached = new File(thumbsDir(context), name);
+            if (thumbs.get(name) != null && cached.exists()) {
+                thumbHits++;
+                cached.setLastModified(System.currentTimeMillis());
+                return thumbnailJs(cached, true);
+            }
+        }
+
+        // Decode outside the lock: listing and other thumbnails keep going
+        Bitmap bitmap = decodeThumbnail(blobFile(context, hash), size);
+        if (bitmap == null) throw new IOException("Unreadable image " + hash);
+
+        String name = hash + "_" + size + ".jpg";
+        File file = new File(thumbsDir(context), name);
+        File temp = new File(thumbsDir(context), name + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, THUMB_QUALITY, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            bitmap.recycle();
+        }
+
+        synchronized (LOCK) {
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Could not save thumbnail");
+            }
+            thumbMisses++;
+            Long previous = thumbs.put(name, file.length());
+            if (previous != null) thumbBytes -= previous;
+            thumbBytes += file.length();
+            evictThumbs(context, name);
+            return thumbnailJs(file, false);
+        }
+    }
+
+    /**
+     * Queue size, blob store size (after deduplication) and thumbnail cache usage
+     */
+    public static JSObject getStats(Context context) {
+        synchronized (LOCK) {
+            ensureLoaded(context);
+            long logical = 0;
+            for (Entry e : entries) logical += e.bytes;
+
+            long stored = 0;
+            int blobs = 0;
+            File[] files = blobsDir(context).listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    stored += f.length();
+                    blobs++;
+                }
+            }
+
+            JSObject ret = new JSObject();
+            ret.put("entries", entries.size());
+            ret.put("blobs", blobs);
+            ret.put("logicalBytes", logical);
+            ret.put("storedBytes", stored);
+            ret.put("thumbnails", thumbs.size());
+            ret.put("thumbnailBytes", thumbBytes);
+            ret.put("thumbnailMaxBytes", MAX_THUMB_CACHE_BYTES);
+            ret.put("thumbnailHits", thumbHits);
+            ret.put("thumbnailMisses", thumbMisses);
+            return ret;
+        }
+    }
+
+    // ==================== BLOBS ====================
+
+    private static void releaseBlob(Context context, String hash) {
+        for (Entry e : entries) {
+            if (e.hash.equals(hash)) return;
+        }
+        blobFile(context, hash).delete();
+
+        Iterator<Map.Entry<String, Long>> it = thumbs.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> thumb = it.next();
+            if (thumb.getKey().startsWith(hash + "_")) {
+                new File(thumbsDir(context), thumb.getKey()).delete();
+                thumbBytes -= thumb.getValue();
+                it.remove();
+            }
+        }
+    }
+
+    private static void evictThumbs(Context context, String keep) {
+        Iterator<Map.Entry<String, Long>> it = thumbs.entrySet().iterator();
+        while (thumbBytes > MAX_THUMB_CACHE_BYTES && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (eldest.getKey().equals(keep)) continue;
+            new File(thumbsDir(context), eldest.getKey()).delete();
+            thumbBytes -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    private static Bitmap decodeThumbnail(File blob, int size) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(blob.getAbsolutePath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+        int longest = Math.max(bounds.outWidth, bounds.outHeight);
+        int sampleSize = 1;
+        while (longest / (sampleSize * 2) >= size) sampleSize *= 2;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = BitmapFactory.decodeFile(blob.getAbsolutePath(), options);
+        if (bitmap == null) return null;
+
+        longest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (longest <= size) return bitmap;
+        float scale = (float) size / longest;
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+            Math.max(1, Math.round(bitmap.getWidth() * scale)), Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        if (scaled != bitmap) bitmap.recycle();
+        return scaled;
+    }
+
+    static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) digest.update(buffer, 0, n);
+        } finally {
+            in.close();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        File temp = new File(to.getParentFile(), to.getName() + ".tmp");
+        InputStream in = new FileInputStream(from);
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        if (!temp.renameTo(to)) {
+            temp.delete();
+            throw new IOException("Could not store blob");
+        }
+    }
+
+    // ==================== INDEX ====================
+
+    private static Entry find(String id) {
+        for (Entry e : entries) {
+            if (e.id.equals(id)) return e;
+        }
+        return null;
+    }
+
+    private static JSObject toJs(Context context, Entry e) {
+        JSObject o = new JSObject();
+        o.put("id", e.id);
+        o.put("hash", e.hash);
+        o.put("uri", Uri.fromFile(blobFile(context, e.hash)).toString());
+        o.put("mimeType", e.mimeType);
+        o.put("width", e.width);
+        o.put("height", e.height);
+        o.put("bytes", e.bytes);
+        o.put("timestamp", e.timestamp);
+        return o;
+    }
+
+    private static JSObject thumbnailJs(File file, boolean cached) {
+        JSObject ret = new JSObject();
+        ret.put("uri", Uri.fromFile(file).toString());
+        ret.put("bytes", file.length());
+        ret.put("cached", cached);
+        return ret;
+    }
+
+    private static void ensureLoaded(Context context) {
+        if (entries != null) return;
+        entries = new ArrayList<>();
+        thumbs = new LinkedHashMap<>(16, 0.75f, true);
+        thumbBytes = 0;
+
+        File index = new File(context.getFilesDir(), INDEX_FILE);
+        if (index.exists()) {
+            try {
+                JSONArray array = new JSONArray(readFile(index));
+                for (int i = 0; i < array.length(); i++) {
+                    Entry e = Entry.fromJson(array.getJSONObject(i));
+                    // An entry whose blob is gone is useless (e.g. files cleared by hand)
+                    if (blobFile(context, e.hash).exists()) entries.add(e);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Corrupted receipt queue index, starting over", e);
+            }
+        }
+
+        // Rebuild the thumbnail LRU from disk, least recently used first
+        File[] files = thumbsDir(context).listFiles();
+        if (files != null) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    return Long.compare(a.lastModified(), b.lastModified());
+                }
+            });
+            for (File f : files) {
+                if (f.getName().endsWith(".tmp")) {
+                    f.delete();
+                    continue;
+                }
+                thumbs.put(f.getName(), f.length());
+                thumbBytes += f.length();
+            }
+        }
+        Log.d(TAG, "📂 Receipt queue: " + entries.size() + " images, " + thumbs.size() + " thumbnails");
+    }
+
+    private static void saveIndex(Context context) throws IOException {
+        JSONArray array = new JSONArray();
+        try {
+            for (Entry e : entries) array.put(e.toJson());
+        } catch (org.json.JSONException e) {
+            throw new IOException(e);
+        }
+
+        File file = new File(context.getFilesDir(), INDEX_FILE);
+        File temp = new File(context.getFilesDir(), INDEX_FILE + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(array.toString().getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not save receipt queue");
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int off = 0;
+            while (off < data.length) {
+                int n = in.read(data, off, data.length - off);
+                if (n < 0) break;
+                off += n;
+            }
+            return new String(data, 0, off, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static File blobFile(Context context, String hash) {
+        return new File(blobsDir(context), hash);
+    }
+
+    private static File blobsDir(Context context) {
+        File dir = new File(context.getFilesDir(), BLOBS_DIR);
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+
+    private static File thumbsDir(Context context) {
+        File dir = new File(context.getFilesDir(), THUMBS_DIR);
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+}
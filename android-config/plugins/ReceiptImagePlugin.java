@@ -0,0 +1,543 @@
+package com.gestore.spese;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageDecoder;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.provider.MediaStore;
+import android.util.Base64;
+import android.util.Log;
+import android.util.Size;
+
+import androidx.activity.result.ActivityResult;
+import androidx.core.content.FileProvider;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PermissionState;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.ActivityCallback;
+import com.getcapacitor.annotation.CapacitorPlugin;
+import com.getcapacitor.annotation.Permission;
+import com.getcapacitor.annotation.PermissionCallback;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+
+/**
+ * Receipt photos: decode already downscaled, compress, write to an app-private file.
+ *
+ * A 12 MP camera photo never becomes a full-size bitmap, nor a base64 string on the bridge:
+ * ImageDecoder (API 28+) decodes straight to the target size, older devices decode with a
+ * power-of-two inSampleSize and scale the (small) rest. JS gets back a file URI and metadata;
+ * the only bytes it ever reads are the compressed output (~100-300 KB).
+ *
+ * pickImage() also replaces the WebView file input: the camera writes into the cache dir through
+ * the app FileProvider and the gallery hands over a content:// URI, so the original photo is read
+ * only here.
+ */
+@CapacitorPlugin(
+    name = "ReceiptImage",
+    permissions = {
+        @Permission(strings = {Manifest.permission.CAMERA}, alias = "camera")
+    }
+)
+public class ReceiptImagePlugin extends Plugin {
+
+    private static final String TAG = "ReceiptImagePlugin";
+    private static final String RECEIPTS_DIR = "receipts";
+    // Full-size camera captures, deleted once processed (covered by the cache-path of file_paths.xml)
+    private static final String CAPTURE_DIR = "receipt_captures";
+
+    private static final int DEFAULT_MAX_DIMENSION = 1024;
+    private static final int DEFAULT_QUALITY = 80;
+
+    // One decode at a time: each one holds a bitmap of a few MB
+    private static final PluginTaskExecutor.Limits PROCESS_LIMITS =
+        new PluginTaskExecutor.Limits("ReceiptImage", "process", 1, 4, 30000);
+    // Offline queue (ReceiptBlobStore): index updates are serialized, thumbnails decode two at a time
+    private static final PluginTaskExecutor.Limits QUEUE_LIMITS =
+        new PluginTaskExecutor.Limits("ReceiptImage", "queue", 1, 32, 10000);
+    private static final PluginTaskExecutor.Limits THUMBNAIL_LIMITS =
+        new PluginTaskExecutor.Limits("ReceiptImage", "thumbnail", 2, 64, 10000);
+
+    @Override
+    protected void handleOnDestroy() {
+        PluginTaskExecutor.cancelAll("ReceiptImage");
+        super.handleOnDestroy();
+    }
+
+    /**
+     * ✅ NEW: Downscale and compress an image (content:// or file:// URI) into the receipts dir.
+     * Options: uri, maxDimension (longest side, default 1024), quality (JPEG, default 80),
+     * deleteSource (remove the original if it is an app-owned file, e.g. a camera capture).
+     */
+    @PluginMethod
+    public void processImage(PluginCall call) {
+        final String uri = call.getString("uri");
+        final int maxDimension = Math.max(64, call.getInt("maxDimension", DEFAULT_MAX_DIMENSION));
+        final int quality = Math.min(100, Math.max(10, call.getInt("quality", DEFAULT_QUALITY)));
+        final boolean deleteSource = call.getBoolean("deleteSource", false);
+
+        if (uri == null || uri.isEmpty()) {
+            call.reject("Missing uri");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, PROCESS_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                Uri source = toUri(uri);
+                JSObject ret = process(source, maxDimension, quality, signal);
+                if (deleteSource) ret.put("sourceDeleted", deleteOwnedFile(source));
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Take a photo (source = "camera") or pick one (source = "gallery") and process it like
+     * processImage. Same options except uri; rejects if the user cancels.
+     */
+    @PluginMethod
+    public void pickImage(PluginCall call) {
+        if ("camera".equals(call.getString("source", "gallery"))) {
+            if (getPermissionState("camera") != PermissionState.GRANTED) {
+                requestPermissionForAlias("camera", call, "cameraPermissionCallback");
+                return;
+            }
+            launchCamera(call);
+        } else {
+            Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+            intent.setType("image/*");
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            startActivityForResult(call, intent, "galleryResult");
+        }
+    }
+
+    @PermissionCallback
+    private void cameraPermissionCallback(PluginCall call) {
+        if (getPermissionState("camera") == PermissionState.GRANTED) {
+            launchCamera(call);
+        } else {
+            call.reject("Camera permission denied");
+        }
+    }
+
+    private void launchCamera(PluginCall call) {
+        try {
+            File dir = new File(getContext().getCacheDir(), CAPTURE_DIR);
+            if (!dir.exists()) dir.mkdirs();
+            File capture = new File(dir, "capture_" + System.currentTimeMillis() + ".jpg");
+            Uri output = FileProvider.getUriForFile(getContext(), getContext().getPackageName() + ".fileprovider", capture);
+
+            Intent intent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
+            intent.putExtra(MediaStore.EXTRA_OUTPUT, output);
+            intent.addFlags(Intent.FLAG_GRANT_WRITE_URI_PERMISSION | Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            // Kept in the saved call: the activity may be recreated while the camera is open
+            call.getData().put("capturePath", capture.getAbsolutePath());
+            startActivityForResult(call, intent, "cameraResult");
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Camera not available", e);
+            call.reject("Camera not available: " + e.getMessage());
+        }
+    }
+
+    @ActivityCallback
+    private void cameraResult(PluginCall call, ActivityResult result) {
+        if (call == null) return;
+        File capture = new File(call.getString("capturePath", ""));
+        if (result.getResultCode() != Activity.RESULT_OK || capture.length() == 0) {
+            capture.delete();
+            call.reject("No image");
+            return;
+        }
+        processPicked(call, Uri.fromFile(capture), true);
+    }
+
+    @ActivityCallback
+    private void galleryResult(PluginCall call, ActivityResult result) {
+        if (call == null) return;
+        Intent data = result.getData();
+        if (result.getResultCode() != Activity.RESULT_OK || data == null || data.getData() == null) {
+            call.reject("No image");
+            return;
+        }
+        processPicked(call, data.getData(), false);
+    }
+
+    private void processPicked(PluginCall call, final Uri source, final boolean deleteSource) {
+        final int maxDimension = Math.max(64, call.getInt("maxDimension", DEFAULT_MAX_DIMENSION));
+        final int quality = Math.min(100, Math.max(10, call.getInt("quality", DEFAULT_QUALITY)));
+
+        PluginTaskExecutor.submit(call, PROCESS_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                try {
+                    return process(source, maxDimension, quality, signal);
+                } finally {
+                    if (deleteSource) deleteOwnedFile(source);
+                }
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Delete a file returned by processImage (anything outside the receipts dir is refused)
+     */
+    @PluginMethod
+    public void deleteImage(PluginCall call) {
+        String uri = call.getString("uri");
+        if (uri == null) {
+            call.reject("Missing uri");
+            return;
+        }
+
+        try {
+            File file = new File(toUri(uri).getPath());
+            if (!isInside(file, receiptsDir())) {
+                call.reject("Not a receipt image");
+                return;
+            }
+            JSObject ret = new JSObject();
+            ret.put("deleted", file.delete());
+            call.resolve(ret);
+        } catch (IOException e) {
+            call.reject("Error deleting image: " + e.getMessage());
+        }
+    }
+
+    /**
+     * ✅ NEW: Put an image in the offline queue (content-addressed blob store).
+     * Options: id, uri (file from processImage/pickImage, moved into the store) or data (base64),
+     * mimeType, width, height, timestamp.
+     */
+    @PluginMethod
+    public void queueImage(PluginCall call) {
+        final String id = call.getString("id");
+        final String uri = call.getString("uri");
+        final String data = call.getString("data");
+        final String mimeType = call.getString("mimeType", "image/jpeg");
+        final int width = call.getInt("width", 0);
+        final int height = call.getInt("height", 0);
+        final long timestamp = call.getLong("timestamp", System.currentTimeMillis());
+
+        if (id == null || (uri == null && data == null)) {
+            call.reject("Missing id and uri or data");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, QUEUE_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                File source;
+                if (uri != null) {
+                    source = new File(toUri(uri).getPath());
+                    if (!isInside(source, receiptsDir())) throw new PluginTaskExecutor.Rejection("Not a receipt image");
+                    if (!source.exists()) throw new PluginTaskExecutor.Rejection("Image not found");
+                } else {
+                    byte[] bytes;
+                    try {
+                        bytes = Base64.decode(data, Base64.DEFAULT);
+                    } catch (IllegalArgumentException e) {
+                        throw new PluginTaskExecutor.Rejection("Invalid image data");
+                    }
+                    source = new File(receiptsDir(), UUID.randomUUID().toString() + ".bin");
+                    OutputStream out = new FileOutputStream(source);
+                    try {
+                        out.write(bytes);
+                    } finally {
+                        out.close();
+                    }
+                }
+                return ReceiptBlobStore.add(getContext(), id, source, mimeType, width, height, timestamp);
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: One page of the offline queue, newest first (metadata + blob URI, no image data)
+     */
+    @PluginMethod
+    public void listQueuedImages(PluginCall call) {
+        final int offset = Math.max(0, call.getInt("offset", 0));
+        final int limit = Math.min(200, Math.max(1, call.getInt("limit", 20)));
+        PluginTaskExecutor.submit(call, QUEUE_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) {
+                return ReceiptBlobStore.list(getContext(), offset, limit);
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Remove an image from the offline queue (the blob goes with its last reference)
+     */
+    @PluginMethod
+    public void removeQueuedImage(PluginCall call) {
+        final String id = call.getString("id");
+        if (id == null) {
+            call.reject("Missing id");
+            return;
+        }
+        PluginTaskExecutor.submit(call, QUEUE_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                JSObject ret = new JSObject();
+                ret.put("removed", ReceiptBlobStore.remove(getContext(), id));
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Thumbnail file URI of a queued image (longest side = size, default 256), from the LRU cache
+     */
+    @PluginMethod
+    public void getQueuedThumbnail(PluginCall call) {
+        final String id = call.getString("id");
+        final int size = Math.min(1024, Math.max(32, call.getInt("size", ReceiptBlobStore.DEFAULT_THUMB_SIZE)));
+        if (id == null) {
+            call.reject("Missing id");
+            return;
+        }
+        PluginTaskExecutor.submit(call, THUMBNAIL_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                JSObject ret = ReceiptBlobStore.thumbnail(getContext(), id, size);
+                if (ret == null) throw new PluginTaskExecutor.Rejection("Image not queued");
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Queue size, bytes saved by deduplication, thumbnail cache usage and hit rate
+     */
+    @PluginMethod
+    public void getQueueStats(PluginCall call) {
+        PluginTaskExecutor.submit(call, QUEUE_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) {
+                return ReceiptBlobStore.getStats(getContext());
+            }
+        });
+    }
+
+    // ==================== DECODE ====================
+
+    private JSObject process(Uri source, int maxDimension, int quality, CancellationSignal signal) throws Exception {
+        long start = System.currentTimeMillis();
+        // [original width, original height, sample size]
+        int[] info = new int[]{0, 0, 1};
+
+        Bitmap bitmap = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+            ? decodeTargetSize(source, maxDimension, info)
+            : decodeSampled(source, maxDimension, info);
+        if (bitmap == null) throw new PluginTaskExecutor.Rejection("Unsupported image");
+
+        try {
+            signal.throwIfCanceled();
+
+            boolean png = bitmap.hasAlpha();
+            File dir = receiptsDir();
+            String name = UUID.randomUUID().toString() + (png ? ".png" : ".jpg");
+            File file = new File(dir, name);
+            File temp = new File(dir, name + ".tmp");
+
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                if (!bitmap.compress(png ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG, quality, out)) {
+                    throw new IOException("Compression failed");
+                }
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Could not save image");
+            }
+
+            JSObject ret = new JSObject();
+            ret.put("uri", Uri.fromFile(file).toString());
+            ret.put("path", file.getAbsolutePath());
+            ret.put("mimeType", png ? "image/png" : "image/jpeg");
+            ret.put("width", bitmap.getWidth());
+            ret.put("height", bitmap.getHeight());
+            ret.put("bytes", file.length());
+            ret.put("originalWidth", info[0]);
+            ret.put("originalHeight", info[1]);
+            ret.put("sampleSize", info[2]);
+            ret.put("elapsedMs", System.currentTimeMillis() - start);
+            Log.d(TAG, "🖼️ " + info[0] + "x" + info[1] + " -> " + bitmap.getWidth() + "x" + bitmap.getHeight()
+                + ", " + file.length() / 1024 + " KB in " + (System.currentTimeMillis() - start) + " ms");
+            return ret;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * API 28+: the decoder scales while decoding (and applies the EXIF orientation itself)
+     */
+    private Bitmap decodeTargetSize(Uri source, final int maxDimension, final int[] info) throws IOException {
+        ImageDecoder.Source decoderSource = ImageDecoder.createSource(getContext().getContentResolver(), source);
+        return ImageDecoder.decodeBitmap(decoderSource, new ImageDecoder.OnHeaderDecodedListener() {
+            @Override
+            public void onHeaderDecoded(ImageDecoder decoder, ImageDecoder.ImageInfo imageInfo, ImageDecoder.Source s) {
+                Size size = imageInfo.getSize();
+                info[0] = size.getWidth();
+                info[1] = size.getHeight();
+                int[] target = fit(size.getWidth(), size.getHeight(), maxDimension);
+                if (target[0] < size.getWidth()) decoder.setTargetSize(target[0], target[1]);
+                // Software bitmap: compress() would copy a hardware one back anyway
+                decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+            }
+        });
+    }
+
+    /**
+     * Older devices: bounds pass, power-of-two subsampled decode, exact scale and EXIF rotation
+     * on the already small bitmap
+     */
+    private Bitmap decodeSampled(Uri source, int maxDimension, int[] info) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        InputStream in = open(source);
+        try {
+            BitmapFactory.decodeStream(in, null, bounds);
+        } finally {
+            in.close();
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+        info[0] = bounds.outWidth;
+        info[1] = bounds.outHeight;
+
+        // Largest power of two that keeps the longest side >= maxDimension
+        int longest = Math.max(bounds.outWidth, bounds.outHeight);
+        int sampleSize = 1;
+        while (longest / (sampleSize * 2) >= maxDimension) sampleSize *= 2;
+        info[2] = sampleSize;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        in = open(source);
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+        if (bitmap == null) return null;
+
+        int[] target = fit(bitmap.getWidth(), bitmap.getHeight(), maxDimension);
+        if (target[0] < bitmap.getWidth()) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, target[0], target[1], true);
+            if (scaled != bitmap) bitmap.recycle();
+            bitmap = scaled;
+        }
+
+        int degrees = exifRotation(source);
+        if (degrees != 0) {
+            Matrix matrix = new Matrix();
+            matrix.postRotate(degrees);
+            Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+            if (rotated != bitmap) bitmap.recycle();
+            bitmap = rotated;
+        }
+        return bitmap;
+    }
+
+    private int exifRotation(Uri source) {
+        try {
+            ExifInterface exif;
+            if ("file".equals(source.getScheme())) {
+                exif = new ExifInterface(source.getPath());
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                InputStream in = open(source);
+                try {
+                    exif = new ExifInterface(in);
+                } finally {
+                    in.close();
+                }
+            } else {
+                return 0;
+            }
+            switch (exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "⚠️ No EXIF orientation: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    // Longest side clamped to maxDimension, aspect ratio kept
+    private static int[] fit(int width, int height, int maxDimension) {
+        if (width <= maxDimension && height <= maxDimension) return new int[]{width, height};
+        if (width >= height) {
+            return new int[]{maxDimension, Math.max(1, Math.round((float) height * maxDimension / width))};
+        }
+        return new int[]{Math.max(1, Math.round((float) width * maxDimension / height)), maxDimension};
+    }
+
+    // ==================== FILES ====================
+
+    private InputStream open(Uri source) throws IOException {
+        InputStream in = getContext().getContentResolver().openInputStream(source);
+        if (in == null) throw new IOException("Cannot open " + source);
+        return in;
+    }
+
+    private static Uri toUri(String uri) {
+        return uri.contains("://") ? Uri.parse(uri) : Uri.fromFile(new File(uri));
+    }
+
+    private File receiptsDir() {
+        File dir = new File(getContext().getFilesDir(), RECEIPTS_DIR);
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+
+    /**
+     * Remove a source file only if it lives in one of the app's own directories
+     * (camera captures); gallery content:// URIs are never touched
+     */
+    private boolean deleteOwnedFile(Uri source) {
+        if (!"file".equals(source.getScheme())) return false;
+        try {
+            File file = new File(source.getPath());
+            Context context = getContext();
+            File external = context.getExternalFilesDir(null);
+            boolean owned = isInside(file, context.getCacheDir()) || isInside(file, context.getFilesDir())
+                || (external != null && isInside(file, external));
+            return owned && !isInside(file, receiptsDir()) && file.delete();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isInside(File file, File dir) throws IOException {
+        return file.getCanonicalPath().startsWith(dir.getCanonicalPath() + File.separator);
+    }
+}
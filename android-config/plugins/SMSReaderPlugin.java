@@ -3,17 +3,11 @@ package com.gestore.spese;
 import android.Manifest;
 import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.ContentResolver;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.pm.PackageManager;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Build;
-import android.provider.Telephony;
+import android.os.CancellationSignal;
 import android.util.Log;
-import androidx.core.app.ActivityCompat;
-import androidx.core.content.ContextCompat;
 
 import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
@@ -26,8 +20,10 @@ import com.getcapacitor.annotation.PermissionCallback;
 
 import org.json.JSONObject;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
 
 @CapacitorPlugin(
     name = "SMSReader",
@@ -38,19 +34,70 @@ import java.util.List;
 public class SMSReaderPlugin extends Plugin {
     private static final String TAG = "SMSReaderPlugin";
     private static final String SMS_RECEIVED_EVENT = "smsReceived";
+    private static final String CORRELATED_EVENT = "transactionCorrelated";
+    private static final String PERMISSION_CHANGED_EVENT = "smsPermissionChanged";
+    private static final String IMPORT_PROGRESS_EVENT = "smsImportProgress";
+    private static final String IMPORT_CHUNK_EVENT = "smsImportChunk";
+
+    // Inbox scans are heavy: at most 2 at a time, 20s including queueing
+    private static final PluginTaskExecutor.Limits RECENT_SMS_LIMITS =
+        new PluginTaskExecutor.Limits("SMSReader", "getRecentSMS", 2, 4, 20000);
+
+    private static final int DEFAULT_IMPORT_PAGE_SIZE = 200;
+    private static final int MAX_IMPORT_PAGE_SIZE = 1000;
     
     private BroadcastReceiver smsReceiver;
 
+    // Historical import: one reader thread + work-stealing pool for parsing
+    private final ExecutorService importExecutor = Executors.newSingleThreadExecutor();
+    private final ForkJoinPool parsePool =
+        new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    private volatile SmsHistoryImportJob importJob;
+
     @Override
     public void load() {
         super.load();
         Log.d(TAG, "SMSReaderPlugin loaded");
+        SmsPermissionTracker.refresh(getContext());
         registerSMSReceiver();
     }
 
+    @Override
+    protected void handleOnResume() {
+        super.handleOnResume();
+        // The user may have granted the permission from app settings while we were in background
+        refreshPermissionState();
+    }
+
+    /**
+     * Re-check the cached permission state and push it to JS if it changed
+     */
+    private void refreshPermissionState() {
+        if (SmsPermissionTracker.refresh(getContext())) {
+            notifyListeners(PERMISSION_CHANGED_EVENT, permissionState());
+        }
+    }
+
+    private JSObject permissionState() {
+        boolean readGranted = SmsPermissionTracker.canRead(getContext());
+        boolean receiveGranted = SmsPermissionTracker.canReceive(getContext());
+
+        JSObject result = new JSObject();
+        result.put("granted", readGranted && receiveGranted);
+        result.put("readSMS", readGranted);
+        result.put("receiveSMS", receiveGranted);
+        return result;
+    }
+
     @Override
     protected void handleOnDestroy() {
         unregisterSMSReceiver();
+        PluginTaskExecutor.cancelAll("SMSReader");
+        // The checkpoint is persisted: the import resumes on next launch
+        SmsHistoryImportJob job = importJob;
+        if (job != null) job.stop();
+        importExecutor.shutdownNow();
+        parsePool.shutdownNow();
         super.handleOnDestroy();
     }
 
@@ -72,6 +119,18 @@ public class SMSReaderPlugin extends Plugin {
                         data.put("body", smsData.getString("body"));
                         data.put("timestamp", smsData.getLong("timestamp"));
                         
+                        // ✅ NEW: Same payment already seen as notification / bank transaction → provenance only
+                        TransactionCorrelator.Match match = TransactionCorrelator.offerSms(getContext(),
+                            data.getString("sender"), data.getString("body"), smsData.getLong("timestamp"));
+                        if (match != null && match.isCollapsed()) {
+                            Log.d(TAG, "🔗 SMS collapsed into " + match.canonical.optString("canonicalId"));
+                            // The SMS goes along: JS parses it if the canonical transaction is not stored
+                            JSObject correlated = new JSObject(match.canonical.toString());
+                            correlated.put("event", data);
+                            notifyListeners(CORRELATED_EVENT, correlated);
+                            return;
+                        }
+
                         Log.d(TAG, "Notifying JavaScript listeners for SMS: " + data.toString());
                         notifyListeners(SMS_RECEIVED_EVENT, data);
                     }
@@ -107,25 +166,9 @@ public class SMSReaderPlugin extends Plugin {
     public void checkPermission(PluginCall call) {
         Log.d(TAG, "✅ checkPermission() called");
         
-        boolean hasReadPermission = ContextCompat.checkSelfPermission(
-            getContext(),
-            Manifest.permission.READ_SMS
-        ) == PackageManager.PERMISSION_GRANTED;
-        
-        boolean hasReceivePermission = ContextCompat.checkSelfPermission(
-            getContext(),
-            Manifest.permission.RECEIVE_SMS
-        ) == PackageManager.PERMISSION_GRANTED;
-
-        // ✅ DETAILED LOGGING
-        Log.d(TAG, "📝 READ_SMS permission: " + (hasReadPermission ? "GRANTED" : "DENIED"));
-        Log.d(TAG, "📝 RECEIVE_SMS permission: " + (hasReceivePermission ? "GRANTED" : "DENIED"));
-        Log.d(TAG, "📊 Final result: " + (hasReadPermission && hasReceivePermission ? "GRANTED" : "DENIED"));
-
-        JSObject result = new JSObject();
-        result.put("granted", hasReadPermission && hasReceivePermission);
-        result.put("readSMS", hasReadPermission);
-        result.put("receiveSMS", hasReceivePermission);
+        // ✅ Answered from the cached tracker (refreshed on load, resume and after the dialog)
+        JSObject result = permissionState();
+        Log.d(TAG, "📊 SMS permissions: " + result.toString());
         call.resolve(result);
     }
 
@@ -133,15 +176,8 @@ public class SMSReaderPlugin extends Plugin {
     public void requestPermission(PluginCall call) {
         Log.d(TAG, "📱 requestPermission() called");
         
-        boolean hasReadPermission = ContextCompat.checkSelfPermission(
-            getContext(), 
-            Manifest.permission.READ_SMS
-        ) == PackageManager.PERMISSION_GRANTED;
-        
-        boolean hasReceivePermission = ContextCompat.checkSelfPermission(
-            getContext(),
-            Manifest.permission.RECEIVE_SMS
-        ) == PackageManager.PERMISSION_GRANTED;
+        boolean hasReadPermission = SmsPermissionTracker.canRead(getContext());
+        boolean hasReceivePermission = SmsPermissionTracker.canReceive(getContext());
 
         if (hasReadPermission && hasReceivePermission) {
             Log.d(TAG, "✅ Both permissions already granted");
@@ -161,26 +197,39 @@ public class SMSReaderPlugin extends Plugin {
     private void smsPermissionCallback(PluginCall call) {
         Log.d(TAG, "🔔 smsPermissionCallback invoked");
         
-        // Re-check actual permissions after request
-        boolean readGranted = ContextCompat.checkSelfPermission(
-            getContext(),
-            Manifest.permission.READ_SMS
-        ) == PackageManager.PERMISSION_GRANTED;
-        
-        boolean receiveGranted = ContextCompat.checkSelfPermission(
-            getContext(),
-            Manifest.permission.RECEIVE_SMS
-        ) == PackageManager.PERMISSION_GRANTED;
-        
-        Log.d(TAG, "READ_SMS after request: " + (readGranted ? "GRANTED" : "DENIED"));
-        Log.d(TAG, "RECEIVE_SMS after request: " + (receiveGranted ? "GRANTED" : "DENIED"));
-        
-        boolean granted = readGranted && receiveGranted;
+        // Re-check actual permissions after request (updates the cache and notifies listeners)
+        refreshPermissionState();
+        JSObject result = permissionState();
         
+        Log.d(TAG, "SMS permissions after request: " + result.toString());
+        call.resolve(result);
+    }
+
+    /**
+     * ✅ NEW: Bank sender registry used to prefilter getRecentSMS in SQL
+     */
+    @PluginMethod
+    public void getSenderRegistry(PluginCall call) {
+        call.resolve(BankSenderRegistry.toJSObject(getContext()));
+    }
+
+    /**
+     * ✅ NEW: Replace the sender keywords (bank identifiers from the JS configs)
+     */
+    @PluginMethod
+    public void setSenderSeeds(PluginCall call) {
+        BankSenderRegistry.setSeeds(getContext(), call.getArray("identifiers", new JSArray()));
+        call.resolve(BankSenderRegistry.toJSObject(getContext()));
+    }
+
+    /**
+     * ✅ NEW: Learn senders whose SMS were parsed into transactions
+     */
+    @PluginMethod
+    public void learnSenders(PluginCall call) {
+        int added = BankSenderRegistry.learn(getContext(), call.getArray("senders", new JSArray()));
         JSObject result = new JSObject();
-        result.put("granted", granted);
-        result.put("readSMS", readGranted);
-        result.put("receiveSMS", receiveGranted);
+        result.put("added", added);
         call.resolve(result);
     }
 
@@ -189,74 +238,162 @@ public class SMSReaderPlugin extends Plugin {
         Log.d(TAG, "📬 getRecentSMS() called");
         
         // Check permission first
-        if (ContextCompat.checkSelfPermission(getContext(), Manifest.permission.READ_SMS) 
-            != PackageManager.PERMISSION_GRANTED) {
+        if (!SmsPermissionTracker.canRead(getContext())) {
             Log.e(TAG, "❌ Permission denied for READ_SMS");
             call.reject("Permission denied. Call requestPermission() first.");
             return;
         }
 
-        int hours = call.getInt("hours", 24);
-        long cutoffTime = System.currentTimeMillis() - (hours * 60 * 60 * 1000L);
+        final int hours = call.getInt("hours", 24);
+        final boolean scanAll = call.getBoolean("scanAll", false);
+        final long cutoffTime = System.currentTimeMillis() - (hours * 60 * 60 * 1000L);
 
-        Log.d(TAG, "🔍 Scanning SMS from last " + hours + " hours");
+        Log.d(TAG, "🔍 Scanning SMS from last " + hours + " hours" + (scanAll ? " (all senders)" : " (bank senders only)"));
 
-        List<JSObject> smsList = new ArrayList<>();
+        // ✅ Inbox query off the plugin thread, with deadline and cancellation
+        PluginTaskExecutor.submit(call, RECENT_SMS_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) {
+                JSArray messages = SmsInboxReader.querySince(getContext(), cutoffTime, scanAll, signal);
 
-        try {
-            ContentResolver contentResolver = getContext().getContentResolver();
-            Uri smsUri = Telephony.Sms.Inbox.CONTENT_URI;
-
-            // Columns to retrieve
-            String[] projection = {
-                Telephony.Sms._ID,
-                Telephony.Sms.ADDRESS,  // Sender
-                Telephony.Sms.BODY,     // Message body
-                Telephony.Sms.DATE      // Timestamp
-            };
-
-            // Query only recent SMS
-            String selection = Telephony.Sms.DATE + " > ?";
-            String[] selectionArgs = {String.valueOf(cutoffTime)};
-            String sortOrder = Telephony.Sms.DATE + " DESC";
-
-            Cursor cursor = contentResolver.query(
-                smsUri,
-                projection,
-                selection,
-                selectionArgs,
-                sortOrder
-            );
-
-            if (cursor != null) {
-                int idIndex = cursor.getColumnIndex(Telephony.Sms._ID);
-                int addressIndex = cursor.getColumnIndex(Telephony.Sms.ADDRESS);
-                int bodyIndex = cursor.getColumnIndex(Telephony.Sms.BODY);
-                int dateIndex = cursor.getColumnIndex(Telephony.Sms.DATE);
-
-                while (cursor.moveToNext()) {
-                    JSObject sms = new JSObject();
-                    sms.put("id", cursor.getString(idIndex));
-                    sms.put("sender", cursor.getString(addressIndex));
-                    sms.put("body", cursor.getString(bodyIndex));
-                    sms.put("timestamp", cursor.getLong(dateIndex));
-
-                    smsList.add(sms);
-                }
+                Log.d(TAG, "✅ Found " + messages.length() + " SMS messages");
 
-                cursor.close();
+                JSObject result = new JSObject();
+                result.put("messages", messages);
+                result.put("count", messages.length());
+                result.put("filtered", !scanAll);
+                return result;
             }
+        });
+    }
 
-            Log.d(TAG, "✅ Found " + smsList.size() + " SMS messages");
+    /**
+     * ✅ NEW: Cancel a call started with the "requestId" option
+     */
+    @PluginMethod
+    public void cancelRequest(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("cancelled", PluginTaskExecutor.cancel(call.getString("requestId")));
+        call.resolve(result);
+    }
 
-            JSObject result = new JSObject();
-            result.put("messages", new JSArray(smsList));
-            result.put("count", smsList.size());
+    /**
+     * ✅ NEW: Historical SMS import (months of inbox), paged + parsed natively.
+     * Results arrive as "smsImportChunk" events that must be acked with ackHistoryImport(),
+     * progress as "smsImportProgress". With resume=true an interrupted job continues
+     * from its checkpoint instead of starting over.
+     */
+    @PluginMethod
+    public void startHistoryImport(PluginCall call) {
+        if (!SmsPermissionTracker.canRead(getContext())) {
+            call.reject("Permission denied. Call requestPermission() first.");
+            return;
+        }
+
+        SmsHistoryImportJob running = importJob;
+        if (running != null) {
+            JSObject result = SmsHistoryImportJob.getStatus(getContext());
+            result.put("jobId", running.getJobId());
+            result.put("alreadyRunning", true);
             call.resolve(result);
+            return;
+        }
+
+        int pageSize = Math.max(1, Math.min(MAX_IMPORT_PAGE_SIZE, call.getInt("pageSize", DEFAULT_IMPORT_PAGE_SIZE)));
+        boolean resume = call.getBoolean("resume", false);
+
+        SmsHistoryImportJob.Listener listener = new SmsHistoryImportJob.Listener() {
+            @Override
+            public void onChunk(JSObject chunk) {
+                notifyListeners(IMPORT_CHUNK_EVENT, chunk);
+            }
+
+            @Override
+            public void onProgress(JSObject progress) {
+                notifyListeners(IMPORT_PROGRESS_EVENT, progress);
+            }
+        };
+
+        SmsHistoryImportJob job = resume
+            ? SmsHistoryImportJob.resume(getContext(), listener, parsePool, pageSize)
+            : null;
+
+        if (job == null) {
+            if (resume) {
+                JSObject result = SmsHistoryImportJob.getStatus(getContext());
+                result.put("resumed", false);
+                call.resolve(result);
+                return;
+            }
+            int months = call.getInt("months", 6);
+            long since = call.getLong("since", System.currentTimeMillis() - months * 30L * 24 * 60 * 60 * 1000);
+            job = SmsHistoryImportJob.create(getContext(), listener, parsePool, pageSize, since,
+                call.getBoolean("scanAll", false));
+        }
 
+        final SmsHistoryImportJob started = job;
+        importJob = started;
+        try {
+            importExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        started.run();
+                    } finally {
+                        if (importJob == started) importJob = null;
+                    }
+                }
+            });
         } catch (Exception e) {
-            Log.e(TAG, "❌ Error reading SMS: " + e.getMessage(), e);
-            call.reject("Error reading SMS: " + e.getMessage(), e);
+            importJob = null;
+            call.reject("Failed to start SMS import: " + e.getMessage());
+            return;
         }
+
+        JSObject result = SmsHistoryImportJob.getStatus(getContext());
+        result.put("jobId", started.getJobId());
+        result.put("resumed", resume);
+        call.resolve(result);
+    }
+
+    /**
+     * ✅ NEW: Chunk saved by JS, the import checkpoint can move past it.
+     * With failed=true the chunk could not be saved: the import stops as "failed".
+     */
+    @PluginMethod
+    public void ackHistoryImport(PluginCall call) {
+        SmsHistoryImportJob job = importJob;
+        String jobId = call.getString("jobId");
+        if (job != null && job.getJobId().equals(jobId)) {
+            long seq = call.getLong("seq", 0L);
+            if (call.getBoolean("failed", false)) {
+                job.fail(seq, call.getString("error", "unknown error"));
+            } else {
+                job.ack(seq);
+            }
+        }
+        call.resolve();
+    }
+
+    /**
+     * ✅ NEW: Stop the running import at the user's request (state "cancelled")
+     */
+    @PluginMethod
+    public void cancelHistoryImport(PluginCall call) {
+        SmsHistoryImportJob job = importJob;
+        if (job != null) job.cancel();
+        JSObject result = new JSObject();
+        result.put("cancelled", job != null);
+        call.resolve(result);
+    }
+
+    /**
+     * ✅ NEW: Persisted state of the last import (running / cancelled / completed / failed)
+     */
+    @PluginMethod
+    public void getHistoryImportStatus(PluginCall call) {
+        JSObject result = SmsHistoryImportJob.getStatus(getContext());
+        result.put("active", importJob != null);
+        call.resolve(result);
     }
 }
@@ -0,0 +1,656 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Full-text inverted index (one per name: transactions, raw events...).
+ *
+ * Text is folded (accents removed, lowercase), split on anything that is not a letter or digit
+ * and reduced with a light Italian stemmer (spesa / spese → spes, banca / banche → banc), so a
+ * query matches its inflections. Every term has a postings list (document, term frequency) in
+ * insertion order; the term dictionary is sorted, so the last word of a query can also match as
+ * a prefix (search as you type). All the words of a query must match; results are ranked with
+ * BM25, title occurrences counting double.
+ *
+ * Updates are incremental: a replaced or removed document is only marked deleted and skipped by
+ * the queries until a compaction renumbers the documents. Each update batch is appended to a
+ * journal next to a deflated snapshot (terms and per-document term lists, no raw text); the
+ * snapshot is rewritten and the journal dropped when either grows past a quarter of the index.
+ */
+public final class SearchIndex {
+
+    private static final String TAG = "SearchIndex";
+    private static final String DIR_NAME = "search_index";
+
+    private static final int MAGIC = 0x53494431; // "SID1"
+    private static final int VERSION = 1;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_FINGERPRINT = 3;
+
+    private static final int TITLE_WEIGHT = 2;
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final float PREFIX_WEIGHT = 0.7f; // a prefix match ranks below the whole word
+    private static final int MIN_STEM_LENGTH = 5;
+    private static final int MIN_COMPACTION = 1000;
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+        "il", "lo", "la", "i", "gli", "le", "un", "uno", "una", "di", "a", "da", "in", "con", "su", "per",
+        "tra", "fra", "del", "dello", "della", "dei", "degli", "delle", "al", "allo", "alla", "ai", "agli",
+        "alle", "dal", "dalla", "dai", "nel", "nella", "nei", "sul", "sulla", "e", "ed", "o", "the", "of",
+        "and", "to", "at"
+    ));
+
+    private static final Map<String, SearchIndex> OPEN = new HashMap<>();
+
+    /**
+     * A document to index: title (description, merchant) weighs double, text is the rest
+     */
+    public static final class Document {
+        final String id;
+        final String title;
+        final String text;
+        final long time;
+
+        public Document(String id, String title, String text, long time) {
+            this.id = id;
+            this.title = title;
+            this.text = text;
+            this.time = time;
+        }
+    }
+
+    /**
+     * A page of ranked ids
+     */
+    public static final class Page {
+        public final List<String> ids;
+        public final int total;
+
+        Page(List<String> ids, int total) {
+            this.ids = ids;
+            this.total = total;
+        }
+    }
+
+    private static final class Postings {
+        int[] docs = new int[4];
+        int[] freqs = new int[4];
+        int size;
+
+        void add(int doc, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size] = freq;
+            size++;
+        }
+    }
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private int journalOps;
+    private String fingerprint = "";
+
+    // Documents by number (assigned in insertion order)
+    private final Map<String, Integer> docNos = new HashMap<>();
+    private String[] ids = new String[64];
+    private long[] times = new long[64];
+    private int[][] docTerms = new int[64][];
+    private int[][] docFreqs = new int[64][];
+    private int[] lengths = new int[64];
+    private boolean[] deleted = new boolean[64];
+    private int docCount;
+    private int deletedCount;
+    private long liveLength; // sum of the lengths of the live documents
+
+    // Terms: sorted dictionary (prefix ranges) → id → postings
+    private final TreeMap<String, Integer> termIds = new TreeMap<>();
+    private final List<String> terms = new ArrayList<>();
+    private final List<Postings> postings = new ArrayList<>();
+
+    // Query buffers, reused (calls are synchronized)
+    private float[] scores = new float[0];
+    private int[] matched = new int[0];
+
+    private SearchIndex(File dir, String name) {
+        this.snapshotFile = new File(dir, name + ".bin");
+        this.journalFile = new File(dir, name + ".log");
+    }
+
+    /**
+     * The index with this name (letters, digits, _), loaded from disk on first use
+     */
+    public static SearchIndex open(Context context, String name) throws IOException {
+        if (name == null || !name.matches("[A-Za-z0-9_]+")) throw new IOException("Invalid index name " + name);
+        synchronized (OPEN) {
+            SearchIndex index = OPEN.get(name);
+            if (index == null) {
+                File dir = new File(context.getFilesDir(), DIR_NAME);
+                if (!dir.exists() && !dir.mkdirs()) throw new IOException("Could not create " + dir);
+                index = open(dir, name);
+                OPEN.put(name, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * A private instance over dir/name.bin + name.log (not shared through open(Context, ...))
+     */
+    static SearchIndex open(File dir, String name) {
+        SearchIndex index = new SearchIndex(dir, name);
+        index.load();
+        return index;
+    }
+
+    // ==================== UPDATES ====================
+
+    /**
+     * Apply a batch: reset drops everything first, then the removals and the documents
+     * (an existing id is replaced). The fingerprint (opaque, kept for the caller) is stored too.
+     */
+    public synchronized void update(boolean reset, List<String> removals, List<Document> documents, String fingerprint)
+        throws IOException {
+        if (reset) clear();
+
+        DataOutputStream journal = reset ? null : openJournal();
+        try {
+            for (String id : removals) {
+                if (!remove(id)) continue;
+                if (journal != null) {
+                    journal.writeByte(OP_REMOVE);
+                    journal.writeUTF(id);
+                    journalOps++;
+                }
+            }
+            for (Document document : documents) {
+                int doc = put(document.id, document.time, analyze(document));
+                if (journal == null) continue;
+                journal.writeByte(OP_PUT);
+                journal.writeUTF(document.id);
+                journal.writeLong(document.time);
+                writeVarint(journal, docTerms[doc].length);
+                for (int i = 0; i < docTerms[doc].length; i++) {
+                    journal.writeUTF(terms.get(docTerms[doc][i]));
+                    writeVarint(journal, docFreqs[doc][i]);
+                }
+                journalOps++;
+            }
+            if (fingerprint != null) {
+                this.fingerprint = fingerprint;
+                if (journal != null) {
+                    journal.writeByte(OP_FINGERPRINT);
+                    journal.writeUTF(fingerprint);
+                }
+            }
+        } finally {
+            if (journal != null) journal.close();
+        }
+
+        int live = docCount - deletedCount;
+        int threshold = Math.max(MIN_COMPACTION, live / 4);
+        if (reset || journalOps > threshold || deletedCount > threshold) compact();
+    }
+
+    public synchronized String getFingerprint() {
+        return fingerprint;
+    }
+
+    public synchronized int size() {
+        return docCount - deletedCount;
+    }
+
+    public synchronized int termCount() {
+        return termIds.size();
+    }
+
+    private void clear() {
+        docNos.clear();
+        ids = new String[64];
+        times = new long[64];
+        docTerms = new int[64][];
+        docFreqs = new int[64][];
+        lengths = new int[64];
+        deleted = new boolean[64];
+        docCount = 0;
+        deletedCount = 0;
+        liveLength = 0;
+        termIds.clear();
+        terms.clear();
+        postings.clear();
+        fingerprint = "";
+    }
+
+    private boolean remove(String id) {
+        Integer doc = docNos.remove(id);
+        if (doc == null) return false;
+        deleted[doc] = true;
+        deletedCount++;
+        liveLength -= lengths[doc];
+        return true;
+    }
+
+    /**
+     * Add a document from its term frequencies; returns its number
+     */
+    private int put(String id, long time, Map<String, Integer> frequencies) {
+        remove(id);
+
+        if (docCount == ids.length) grow(docCount * 2);
+        int doc = docCount++;
+        int[] termList = new int[frequencies.size()];
+        int[] freqList = new int[frequencies.size()];
+        int length = 0;
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            int term = termId(entry.getKey());
+            termList[i] = term;
+            freqList[i] = entry.getValue();
+            postings.get(term).add(doc, entry.getValue());
+            length += entry.getValue();
+            i++;
+        }
+
+        ids[doc] = id;
+        times[doc] = time;
+        docTerms[doc] = termList;
+        docFreqs[doc] = freqList;
+        lengths[doc] = length;
+        deleted[doc] = false;
+        liveLength += length;
+        docNos.put(id, doc);
+        return doc;
+    }
+
+    private int termId(String term) {
+        Integer id = termIds.get(term);
+        if (id == null) {
+            id = terms.size();
+            termIds.put(term, id);
+            terms.add(term);
+            postings.add(new Postings());
+        }
+        return id;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        times = Arrays.copyOf(times, capacity);
+        docTerms = Arrays.copyOf(docTerms, capacity);
+        docFreqs = Arrays.copyOf(docFreqs, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        deleted = Arrays.copyOf(deleted, capacity);
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * Ids of the documents matching every word of the query, best first.
+     * With prefix, the last word also matches the terms starting with it (unless the query ends
+     * with a space, i.e. the word is complete).
+     */
+    public synchronized Page search(String query, boolean prefix, int offset, int limit) {
+        List<String> words = tokens(query);
+        boolean lastIsPrefix = prefix && !words.isEmpty() && query.length() > 0
+            && Character.isLetterOrDigit(query.charAt(query.length() - 1));
+        // Stop words only matter while being typed (prefix of a longer word)
+        List<String> kept = new ArrayList<>();
+        for (int i = 0; i < words.size(); i++) {
+            boolean last = i == words.size() - 1;
+            if (!STOP_WORDS.contains(words.get(i)) || (last && lastIsPrefix)) kept.add(words.get(i));
+        }
+        int live = docCount - deletedCount;
+        if (kept.isEmpty() || live == 0) return new Page(new ArrayList<String>(), 0);
+
+        if (scores.length < docCount) {
+            scores = new float[ids.length];
+            matched = new int[ids.length];
+        } else {
+            Arrays.fill(scores, 0, docCount, 0f);
+            Arrays.fill(matched, 0, docCount, 0);
+        }
+
+        float avgLength = Math.max(1f, (float) liveLength / live);
+        for (int w = 0; w < kept.size(); w++) {
+            String word = kept.get(w);
+            boolean expand = lastIsPrefix && w == kept.size() - 1;
+
+            Map<Integer, Float> expansion = new HashMap<>();
+            Integer exact = termIds.get(stem(word));
+            if (exact != null) expansion.put(exact, 1f);
+            if (expand) {
+                for (Integer term : termIds.subMap(word, true, word + Character.MAX_VALUE, true).values()) {
+                    if (!expansion.containsKey(term)) expansion.put(term, PREFIX_WEIGHT);
+                }
+            }
+            if (expansion.isEmpty()) return new Page(new ArrayList<String>(), 0);
+
+            for (Map.Entry<Integer, Float> entry : expansion.entrySet()) {
+                Postings list = postings.get(entry.getKey());
+                float idf = (float) Math.log(1 + (live - list.size + 0.5) / (list.size + 0.5));
+                float weight = entry.getValue() * Math.max(idf, 0.01f);
+                for (int p = 0; p < list.size; p++) {
+                    int doc = list.docs[p];
+                    // Must have matched all the previous words (w) or this one already (w + 1)
+                    if (deleted[doc] || matched[doc] < w) continue;
+                    float tf = list.freqs[p];
+                    scores[doc] += weight * tf * (K1 + 1) / (tf + K1 * (1 - B + B * lengths[doc] / avgLength));
+                    matched[doc] = w + 1;
+                }
+            }
+        }
+
+        // score bits (positive floats sort like ints) above, document number (newer first on ties) below.
+        // Only the best offset + limit are kept, in a min-heap: no sort of every match
+        int wanted = kept.size();
+        int k = (int) Math.min(Integer.MAX_VALUE - 8, (long) Math.max(0, offset) + Math.max(0, limit));
+        long[] heap = new long[Math.min(k, 64)];
+        int size = 0;
+        int total = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (matched[doc] != wanted) continue;
+            total++;
+            if (k == 0) continue;
+            long key = ((long) Float.floatToIntBits(scores[doc]) << 32) | doc;
+            if (size < k) {
+                if (size == heap.length) heap = Arrays.copyOf(heap, Math.min(k, size * 2));
+                heap[size] = key;
+                siftUp(heap, size++);
+            } else if (key > heap[0]) {
+                heap[0] = key;
+                siftDown(heap, size, 0);
+            }
+        }
+        Arrays.sort(heap, 0, size);
+
+        List<String> page = new ArrayList<>();
+        for (int i = size - 1 - Math.max(0, offset); i >= 0 && page.size() < limit; i--) {
+            page.add(ids[(int) heap[i]]);
+        }
+        return new Page(page, total);
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        long key = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= key) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = key;
+    }
+
+    private static void siftDown(long[] heap, int size, int i) {
+        long key = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+            if (key <= heap[child]) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = key;
+    }
+
+    // ==================== ANALYSIS ====================
+
+    private static Map<String, Integer> analyze(Document document) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        addTerms(frequencies, document.title, TITLE_WEIGHT);
+        addTerms(frequencies, document.text, 1);
+        return frequencies;
+    }
+
+    private static void addTerms(Map<String, Integer> frequencies, String text, int weight) {
+        for (String token : tokens(text)) {
+            if (STOP_WORDS.contains(token)) continue;
+            String term = stem(token);
+            Integer count = frequencies.get(term);
+            frequencies.put(term, count == null ? weight : count + weight);
+        }
+    }
+
+    /**
+     * Accent-folded, lowercase runs of letters / digits
+     */
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) return tokens;
+        String folded = isAscii(text) ? text.toLowerCase(Locale.ROOT)
+            : Normalizer.normalize(text, Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) tokens.add(token.toString());
+        return tokens;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Light Italian stemmer: drops the final vowel that carries gender / number
+     * (and the i / h before it: banche → banc, farmacia → farmac). Short words and
+     * numbers are kept whole.
+     */
+    static String stem(String token) {
+        int length = token.length();
+        if (length < MIN_STEM_LENGTH || Character.isDigit(token.charAt(length - 1))) return token;
+        char last = token.charAt(length - 1);
+        char before = token.charAt(length - 2);
+        switch (last) {
+            case 'e':
+            case 'i':
+                return token.substring(0, before == 'i' || before == 'h' ? length - 2 : length - 1);
+            case 'a':
+            case 'o':
+                return token.substring(0, before == 'i' ? length - 2 : length - 1);
+            default:
+                return token;
+        }
+    }
+
+    // ==================== PERSISTENCE ====================
+
+    private void load() {
+        try {
+            if (snapshotFile.exists()) readSnapshot();
+            if (journalFile.exists()) replayJournal();
+            Log.d(TAG, "📂 Loaded " + snapshotFile.getName() + ": " + size() + " documents, " + termIds.size() + " terms");
+        } catch (Exception e) {
+            // The caller sees an empty index (fingerprint mismatch) and sends everything again
+            Log.e(TAG, "❌ Corrupted search index " + snapshotFile.getName() + ", starting empty", e);
+            clear();
+            journalOps = 0;
+            snapshotFile.delete();
+            journalFile.delete();
+        }
+    }
+
+    private void readSnapshot() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new InflaterInputStream(new FileInputStream(snapshotFile))));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Unknown format");
+            String storedFingerprint = in.readUTF();
+            int termCount = readVarint(in);
+            String[] names = new String[termCount];
+            for (int t = 0; t < termCount; t++) names[t] = in.readUTF();
+
+            int documents = readVarint(in);
+            for (int d = 0; d < documents; d++) {
+                String id = in.readUTF();
+                long time = in.readLong();
+                int n = readVarint(in);
+                Map<String, Integer> frequencies = new HashMap<>();
+                for (int i = 0; i < n; i++) {
+                    String term = names[readVarint(in)];
+                    frequencies.put(term, readVarint(in));
+                }
+                put(id, time, frequencies);
+            }
+            fingerprint = storedFingerprint;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void replayJournal() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+        boolean truncated = false;
+        try {
+            while (true) {
+                int op = in.read();
+                if (op < 0) break;
+                if (op == OP_PUT) {
+                    String id = in.readUTF();
+                    long time = in.readLong();
+                    int n = readVarint(in);
+                    Map<String, Integer> frequencies = new HashMap<>();
+                    for (int i = 0; i < n; i++) {
+                        String term = in.readUTF();
+                        frequencies.put(term, readVarint(in));
+                    }
+                    put(id, time, frequencies);
+                } else if (op == OP_REMOVE) {
+                    remove(in.readUTF());
+                } else if (op == OP_FINGERPRINT) {
+                    fingerprint = in.readUTF();
+                } else {
+                    throw new IOException("Unknown journal op " + op);
+                }
+                journalOps++;
+            }
+        } catch (EOFException e) {
+            // Killed while appending: the last record is incomplete
+            Log.w(TAG, "⚠️ Truncated journal " + journalFile.getName() + ", dropping the last record");
+            truncated = true;
+        } finally {
+            in.close();
+        }
+        if (truncated) compact();
+    }
+
+    private DataOutputStream openJournal() throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+    }
+
+    /**
+     * Renumber the live documents (dropping unused terms), rewrite the snapshot and empty the journal
+     */
+    private void compact() throws IOException {
+        long startTime = System.currentTimeMillis();
+        if (deletedCount > 0) renumber();
+
+        File temp = new File(snapshotFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new DeflaterOutputStream(new FileOutputStream(temp))));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(fingerprint);
+            writeVarint(out, terms.size());
+            for (String term : terms) out.writeUTF(term);
+            writeVarint(out, docCount);
+            for (int doc = 0; doc < docCount; doc++) {
+                out.writeUTF(ids[doc]);
+                out.writeLong(times[doc]);
+                writeVarint(out, docTerms[doc].length);
+                for (int i = 0; i < docTerms[doc].length; i++) {
+                    writeVarint(out, docTerms[doc][i]);
+                    writeVarint(out, docFreqs[doc][i]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(snapshotFile)) {
+            temp.delete();
+            throw new IOException("Could not save search index");
+        }
+        journalFile.delete();
+        journalOps = 0;
+        Log.d(TAG, "🧹 Compacted " + snapshotFile.getName() + ": " + docCount + " documents, " + terms.size()
+            + " terms in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    private void renumber() {
+        String[] oldIds = ids;
+        long[] oldTimes = times;
+        int[][] oldTerms = docTerms;
+        int[][] oldFreqs = docFreqs;
+        boolean[] oldDeleted = deleted;
+        int oldCount = docCount;
+        List<String> oldNames = new ArrayList<>(terms);
+        String keptFingerprint = fingerprint;
+
+        clear();
+        fingerprint = keptFingerprint;
+        for (int doc = 0; doc < oldCount; doc++) {
+            if (oldDeleted[doc]) continue;
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (int i = 0; i < oldTerms[doc].length; i++) frequencies.put(oldNames.get(oldTerms[doc][i]), oldFreqs[doc][i]);
+            put(oldIds[doc], oldTimes[doc], frequencies);
+        }
+    }
+
+    private static void writeVarint(DataOutputStream out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,152 @@
+package com.gestore.spese;
+
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Full-text search over transactions and raw bank events (SearchIndex).
+ *
+ * JS pushes the documents as they are added / edited / removed and stores an opaque fingerprint
+ * of what it sent: at the next launch it compares it with getIndexInfo() and sends everything
+ * again only if they differ. Queries return ranked ids in pages.
+ */
+@CapacitorPlugin(name = "Search")
+public class SearchPlugin extends Plugin {
+
+    private static final String TAG = "SearchPlugin";
+    private static final int DEFAULT_LIMIT = 50;
+
+    // Updates of an index must be applied in order
+    private static final PluginTaskExecutor.Limits INDEX_LIMITS =
+        new PluginTaskExecutor.Limits("Search", "index", 1, 16, 60000);
+    // Search as you type: JS drops the outdated queries before sending them
+    private static final PluginTaskExecutor.Limits SEARCH_LIMITS =
+        new PluginTaskExecutor.Limits("Search", "search", 2, 8, 5000);
+
+    @Override
+    protected void handleOnDestroy() {
+        PluginTaskExecutor.cancelAll("Search");
+        super.handleOnDestroy();
+    }
+
+    /**
+     * ✅ NEW: Add / replace / remove documents of an index.
+     * Options: index, reset (drop everything first), documents ([{id, title, text, time}]),
+     * removals (ids), fingerprint (stored as is). Returns the index info.
+     */
+    @PluginMethod
+    public void index(final PluginCall call) {
+        final String name = call.getString("index");
+        final boolean reset = call.getBoolean("reset", false);
+        final String fingerprint = call.getString("fingerprint");
+
+        if (name == null) {
+            call.reject("Missing index");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, INDEX_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                long startTime = System.currentTimeMillis();
+                SearchIndex index = SearchIndex.open(getContext(), name);
+
+                List<String> removals = new ArrayList<>();
+                JSArray ids = call.getArray("removals", new JSArray());
+                for (int i = 0; i < ids.length(); i++) {
+                    String id = ids.optString(i, null);
+                    if (id != null) removals.add(id);
+                }
+
+                List<SearchIndex.Document> documents = new ArrayList<>();
+                JSArray items = call.getArray("documents", new JSArray());
+                for (int i = 0; i < items.length(); i++) {
+                    JSONObject item = items.optJSONObject(i);
+                    if (item == null || item.optString("id", null) == null) continue;
+                    documents.add(new SearchIndex.Document(item.optString("id"), item.optString("title", ""),
+                        item.optString("text", ""), item.optLong("time", 0)));
+                }
+
+                index.update(reset, removals, documents, fingerprint);
+                if (reset || documents.size() > 100) {
+                    Log.d(TAG, "✅ Indexed " + documents.size() + " documents in " + name + " ("
+                        + (System.currentTimeMillis() - startTime) + "ms)");
+                }
+                return info(index);
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Ranked ids of the documents matching every word of the query.
+     * Options: index, query, offset, limit, prefix (default true: the last word can be incomplete).
+     * Returns ids, total and elapsedMs.
+     */
+    @PluginMethod
+    public void search(PluginCall call) {
+        final String name = call.getString("index");
+        final String query = call.getString("query", "");
+        final int offset = Math.max(0, call.getInt("offset", 0));
+        final int limit = Math.max(1, call.getInt("limit", DEFAULT_LIMIT));
+        final boolean prefix = call.getBoolean("prefix", true);
+
+        if (name == null) {
+            call.reject("Missing index");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, SEARCH_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                long startTime = System.nanoTime();
+                SearchIndex.Page page = SearchIndex.open(getContext(), name).search(query, prefix, offset, limit);
+
+                JSObject ret = new JSObject();
+                ret.put("ids", new JSArray(page.ids));
+                ret.put("total", page.total);
+                ret.put("elapsedMs", (System.nanoTime() - startTime) / 1000000.0);
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Size and fingerprint of an index (empty if it was never written)
+     */
+    @PluginMethod
+    public void getIndexInfo(final PluginCall call) {
+        final String name = call.getString("index");
+
+        if (name == null) {
+            call.reject("Missing index");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, INDEX_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                return info(SearchIndex.open(getContext(), name));
+            }
+        });
+    }
+
+    private static JSObject info(SearchIndex index) {
+        JSObject ret = new JSObject();
+        ret.put("documents", index.size());
+        ret.put("terms", index.termCount());
+        ret.put("fingerprint", index.getFingerprint());
+        return ret;
+    }
+}
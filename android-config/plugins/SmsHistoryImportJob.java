@@ -0,0 +1,519 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.provider.Telephony;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Historical SMS import (first-time backfill of months of bank SMS).
+ *
+ * The inbox is read oldest → newest in keyset pages (DATE, _ID), each page is parsed and
+ * fingerprinted on a work-stealing ForkJoinPool, and the results are streamed to JS as chunks.
+ * JS acks every chunk once saved; the checkpoint persisted in SharedPreferences only moves past
+ * acknowledged pages, so a job killed with the app resumes without losing or skipping messages
+ * (replayed pages are deduplicated by sourceHash on the JS side).
+ */
+public class SmsHistoryImportJob implements Runnable {
+
+    private static final String TAG = "SmsHistoryImport";
+
+    static final String PREFS_NAME = "sms_history_import";
+    private static final String KEY_JOB_ID = "job_id";
+    private static final String KEY_STATE = "state";
+    private static final String KEY_SINCE = "since";
+    private static final String KEY_UNTIL = "until";
+    private static final String KEY_SCAN_ALL = "scan_all";
+    private static final String KEY_LAST_DATE = "last_date";
+    private static final String KEY_LAST_ID = "last_id";
+    private static final String KEY_PROCESSED = "processed";
+    private static final String KEY_MATCHED = "matched";
+    private static final String KEY_UPDATED_AT = "updated_at";
+
+    public static final String STATE_RUNNING = "running";
+    public static final String STATE_CANCELLED = "cancelled";
+    public static final String STATE_COMPLETED = "completed";
+    public static final String STATE_FAILED = "failed";
+
+    // Pages not yet acked by JS before the reader pauses (backpressure)
+    private static final int MAX_IN_FLIGHT = 4;
+    // Messages per fork-join leaf task
+    private static final int PARSE_THRESHOLD = 32;
+
+    /**
+     * Receives job events (implemented by SMSReaderPlugin → notifyListeners)
+     */
+    public interface Listener {
+        void onChunk(JSObject chunk);
+
+        void onProgress(JSObject progress);
+    }
+
+    /**
+     * Keyset position: every message with (date, id) <= this one has been handled
+     */
+    private static final class Checkpoint {
+        final long date;
+        final long id;
+        final int processed;
+        final int matched;
+
+        Checkpoint(long date, long id, int processed, int matched) {
+            this.date = date;
+            this.id = id;
+            this.processed = processed;
+            this.matched = matched;
+        }
+    }
+
+    private static final class RawSms {
+        final long id;
+        final String sender;
+        final String body;
+        final long timestamp;
+
+        RawSms(long id, String sender, String body, long timestamp) {
+            this.id = id;
+            this.sender = sender;
+            this.body = body;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final ForkJoinPool pool;
+    private final int pageSize;
+
+    private final String jobId;
+    private final long since;
+    private final long until;
+    private final boolean scanAll;
+
+    private volatile boolean cancelled = false;
+    // Plugin destroyed: the job ends but stays "running", resumed at next launch
+    private volatile boolean stopped = false;
+    // JS could not save a chunk (after its retries): the job ends as "failed"
+    private volatile String failure = null;
+
+    // seq → checkpoint reached after that page; guarded by "this"
+    private final TreeMap<Long, Checkpoint> checkpoints = new TreeMap<>();
+    private final Set<Long> acked = new HashSet<>();
+    private long committedSeq = 0;
+    private long nextSeq = 1;
+
+    private Checkpoint start;
+    private int total = -1;
+
+    private SmsHistoryImportJob(Context context, Listener listener, ForkJoinPool pool, int pageSize,
+                                String jobId, long since, long until, boolean scanAll, Checkpoint start) {
+        this.context = context;
+        this.listener = listener;
+        this.pool = pool;
+        this.pageSize = pageSize;
+        this.jobId = jobId;
+        this.since = since;
+        this.until = until;
+        this.scanAll = scanAll;
+        this.start = start;
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * New job importing SMS received in [since, now)
+     */
+    public static SmsHistoryImportJob create(Context context, Listener listener, ForkJoinPool pool,
+                                             int pageSize, long since, boolean scanAll) {
+        String jobId = UUID.randomUUID().toString();
+        long until = System.currentTimeMillis();
+        Checkpoint start = new Checkpoint(since, -1, 0, 0);
+
+        prefs(context).edit()
+            .putString(KEY_JOB_ID, jobId)
+            .putString(KEY_STATE, STATE_RUNNING)
+            .putLong(KEY_SINCE, since)
+            .putLong(KEY_UNTIL, until)
+            .putBoolean(KEY_SCAN_ALL, scanAll)
+            .putLong(KEY_LAST_DATE, since)
+            .putLong(KEY_LAST_ID, -1)
+            .putInt(KEY_PROCESSED, 0)
+            .putInt(KEY_MATCHED, 0)
+            .putLong(KEY_UPDATED_AT, System.currentTimeMillis())
+            .apply();
+
+        return new SmsHistoryImportJob(context, listener, pool, pageSize, jobId, since, until, scanAll, start);
+    }
+
+    /**
+     * Job rebuilt from the persisted checkpoint, or null if there is nothing to resume
+     */
+    public static SmsHistoryImportJob resume(Context context, Listener listener, ForkJoinPool pool, int pageSize) {
+        SharedPreferences prefs = prefs(context);
+        String state = prefs.getString(KEY_STATE, null);
+        String jobId = prefs.getString(KEY_JOB_ID, null);
+        if (jobId == null || !(STATE_RUNNING.equals(state) || STATE_CANCELLED.equals(state) || STATE_FAILED.equals(state))) {
+            return null;
+        }
+
+        Checkpoint start = new Checkpoint(
+            prefs.getLong(KEY_LAST_DATE, 0),
+            prefs.getLong(KEY_LAST_ID, -1),
+            prefs.getInt(KEY_PROCESSED, 0),
+            prefs.getInt(KEY_MATCHED, 0));
+
+        prefs.edit().putString(KEY_STATE, STATE_RUNNING).apply();
+        Log.d(TAG, "🔄 Resuming import " + jobId + " from date " + start.date + " / id " + start.id);
+
+        return new SmsHistoryImportJob(context, listener, pool, pageSize, jobId,
+            prefs.getLong(KEY_SINCE, 0), prefs.getLong(KEY_UNTIL, System.currentTimeMillis()),
+            prefs.getBoolean(KEY_SCAN_ALL, false), start);
+    }
+
+    /**
+     * Persisted status of the last job (state, counters, checkpoint)
+     */
+    public static JSObject getStatus(Context context) {
+        SharedPreferences prefs = prefs(context);
+        JSObject status = new JSObject();
+        status.put("jobId", prefs.getString(KEY_JOB_ID, null));
+        status.put("state", prefs.getString(KEY_STATE, "idle"));
+        status.put("since", prefs.getLong(KEY_SINCE, 0));
+        status.put("until", prefs.getLong(KEY_UNTIL, 0));
+        status.put("scanAll", prefs.getBoolean(KEY_SCAN_ALL, false));
+        status.put("checkpointDate", prefs.getLong(KEY_LAST_DATE, 0));
+        status.put("processed", prefs.getInt(KEY_PROCESSED, 0));
+        status.put("matched", prefs.getInt(KEY_MATCHED, 0));
+        status.put("updatedAt", prefs.getLong(KEY_UPDATED_AT, 0));
+        return status;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * Stopped by the user: persisted as "cancelled"
+     */
+    public void cancel() {
+        cancelled = true;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * App going away: end without touching the persisted state, so resume() continues
+     * from the last acked page
+     */
+    public void stop() {
+        stopped = true;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * JS saved the chunk with this seq: the checkpoint can move past it
+     */
+    public synchronized void ack(long seq) {
+        if (seq <= committedSeq) return;
+        acked.add(seq);
+        advanceCommitted();
+        notifyAll();
+    }
+
+    /**
+     * JS could not save the chunk with this seq: the checkpoint stays before it and the job
+     * ends as "failed" (resumable from there)
+     */
+    public synchronized void fail(long seq, String error) {
+        if (seq <= committedSeq) return;
+        failure = "Chunk " + seq + " not saved: " + error;
+        notifyAll();
+    }
+
+    private boolean isActive() {
+        return !cancelled && !stopped && failure == null;
+    }
+
+    @Override
+    public void run() {
+        Log.d(TAG, "🚀 Import " + jobId + " started (scanAll=" + scanAll + ")");
+        try {
+            total = countRemaining();
+            Checkpoint position = start;
+
+            while (isActive()) {
+                List<RawSms> page = readPage(position);
+                if (page.isEmpty()) break;
+
+                List<JSObject> parsed = pool.invoke(new ParseTask(page, 0, page.size(),
+                    HeadlessCaptureStore.getApiActiveBanks(context)));
+
+                JSArray transactions = new JSArray();
+                Set<String> pageHashes = new HashSet<>();
+                for (JSObject tx : parsed) {
+                    // Same SMS can exist twice in the inbox (e.g. resent by the bank)
+                    if (tx != null && pageHashes.add(tx.getString("sourceHash"))) {
+                        MerchantCategoryIndex.attachCategory(context, tx);
+                        transactions.put(tx);
+                    }
+                }
+
+                RawSms last = page.get(page.size() - 1);
+                position = new Checkpoint(last.timestamp, last.id,
+                    position.processed + page.size(), position.matched + transactions.length());
+
+                long seq = registerPage(position, transactions.length() == 0);
+                if (transactions.length() > 0) {
+                    JSObject chunk = new JSObject();
+                    chunk.put("jobId", jobId);
+                    chunk.put("seq", seq);
+                    chunk.put("transactions", transactions);
+                    listener.onChunk(chunk);
+                }
+                listener.onProgress(progress(position, STATE_RUNNING));
+
+                if (page.size() < pageSize) break;
+                awaitCapacity();
+            }
+
+            // Wait for the last chunks to be acked so the final checkpoint is persisted
+            awaitAllAcked();
+
+            if (stopped && !cancelled) {
+                Log.d(TAG, "⏸️ Import " + jobId + " stopped, resumes from its checkpoint");
+                return;
+            }
+            if (failure != null && !cancelled) throw new IllegalStateException(failure);
+
+            String state = cancelled ? STATE_CANCELLED : STATE_COMPLETED;
+            prefs(context).edit().putString(KEY_STATE, state).putLong(KEY_UPDATED_AT, System.currentTimeMillis()).apply();
+            listener.onProgress(progress(lastCommitted(), state));
+            Log.d(TAG, "✅ Import " + jobId + " " + state);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Interrupted by the executor shutdown on destroy: still resumable unless the user cancelled
+            if (cancelled) prefs(context).edit().putString(KEY_STATE, STATE_CANCELLED).apply();
+            Log.d(TAG, "⏹️ Import " + jobId + " interrupted");
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Import " + jobId + " failed", e);
+            prefs(context).edit().putString(KEY_STATE, STATE_FAILED).apply();
+            JSObject failure = progress(lastCommitted(), STATE_FAILED);
+            failure.put("error", e.getMessage());
+            listener.onProgress(failure);
+        }
+    }
+
+    /**
+     * Next keyset page after the given position, oldest first
+     */
+    private List<RawSms> readPage(Checkpoint after) {
+        List<RawSms> page = new ArrayList<>();
+
+        String[] projection = {
+            Telephony.Sms._ID,
+            Telephony.Sms.ADDRESS,
+            Telephony.Sms.BODY,
+            Telephony.Sms.DATE
+        };
+
+        List<String> args = new ArrayList<>();
+        StringBuilder where = new StringBuilder();
+        where.append("(").append(Telephony.Sms.DATE).append(" > ? OR (")
+            .append(Telephony.Sms.DATE).append(" = ? AND ").append(Telephony.Sms._ID).append(" > ?))")
+            .append(" AND ").append(Telephony.Sms.DATE).append(" < ?");
+        args.add(String.valueOf(after.date));
+        args.add(String.valueOf(after.date));
+        args.add(String.valueOf(after.id));
+        args.add(String.valueOf(until));
+        if (!scanAll) {
+            where.append(" AND ").append(BankSenderRegistry.senderClause(context, args));
+        }
+
+        String sortOrder = Telephony.Sms.DATE + " ASC, " + Telephony.Sms._ID + " ASC";
+
+        Cursor cursor = context.getContentResolver().query(
+            Telephony.Sms.Inbox.CONTENT_URI, projection, where.toString(), args.toArray(new String[0]), sortOrder);
+        if (cursor == null) return page;
+
+        try {
+            int idIndex = cursor.getColumnIndex(Telephony.Sms._ID);
+            int addressIndex = cursor.getColumnIndex(Telephony.Sms.ADDRESS);
+            int bodyIndex = cursor.getColumnIndex(Telephony.Sms.BODY);
+            int dateIndex = cursor.getColumnIndex(Telephony.Sms.DATE);
+
+            // Only one page is materialized, the cursor is closed right after
+            while (page.size() < pageSize && cursor.moveToNext()) {
+                page.add(new RawSms(
+                    cursor.getLong(idIndex),
+                    cursor.getString(addressIndex),
+                    cursor.getString(bodyIndex),
+                    cursor.getLong(dateIndex)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return page;
+    }
+
+    /**
+     * Messages left to import (for the progress percentage), -1 if unknown
+     */
+    private int countRemaining() {
+        List<String> args = new ArrayList<>();
+        StringBuilder where = new StringBuilder(Telephony.Sms.DATE).append(" > ? AND ")
+            .append(Telephony.Sms.DATE).append(" < ?");
+        args.add(String.valueOf(start.date));
+        args.add(String.valueOf(until));
+        if (!scanAll) {
+            where.append(" AND ").append(BankSenderRegistry.senderClause(context, args));
+        }
+
+        Cursor cursor = null;
+        try {
+            cursor = context.getContentResolver().query(Telephony.Sms.Inbox.CONTENT_URI,
+                new String[] {Telephony.Sms._ID}, where.toString(), args.toArray(new String[0]), null);
+            return cursor != null ? cursor.getCount() + start.processed : -1;
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ Could not count messages", e);
+            return -1;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private synchronized long registerPage(Checkpoint checkpoint, boolean empty) {
+        long seq = nextSeq++;
+        checkpoints.put(seq, checkpoint);
+        // Nothing for JS to save: the page is acked right away (still committed in order)
+        if (empty) acked.add(seq);
+        advanceCommitted();
+        return seq;
+    }
+
+    /**
+     * Move the persisted checkpoint over the contiguous run of acked pages
+     */
+    private void advanceCommitted() {
+        Checkpoint latest = null;
+        while (acked.remove(committedSeq + 1)) {
+            committedSeq++;
+            latest = checkpoints.remove(committedSeq);
+        }
+        if (latest == null) return;
+
+        prefs(context).edit()
+            .putLong(KEY_LAST_DATE, latest.date)
+            .putLong(KEY_LAST_ID, latest.id)
+            .putInt(KEY_PROCESSED, latest.processed)
+            .putInt(KEY_MATCHED, latest.matched)
+            .putLong(KEY_UPDATED_AT, System.currentTimeMillis())
+            .apply();
+        start = latest;
+    }
+
+    private synchronized Checkpoint lastCommitted() {
+        return start;
+    }
+
+    private synchronized void awaitCapacity() throws InterruptedException {
+        while (isActive() && nextSeq - 1 - committedSeq >= MAX_IN_FLIGHT) {
+            wait();
+        }
+    }
+
+    private synchronized void awaitAllAcked() throws InterruptedException {
+        while (isActive() && committedSeq < nextSeq - 1) {
+            wait();
+        }
+    }
+
+    private JSObject progress(Checkpoint position, String state) {
+        JSObject progress = new JSObject();
+        progress.put("jobId", jobId);
+        progress.put("state", state);
+        progress.put("processed", position.processed);
+        progress.put("matched", position.matched);
+        progress.put("total", total);
+        progress.put("checkpointDate", position.date);
+        progress.put("done", !STATE_RUNNING.equals(state));
+        return progress;
+    }
+
+    /**
+     * Parse + fingerprint a slice of the page, splitting until PARSE_THRESHOLD.
+     * Results keep the page order (null for non-transactions).
+     */
+    private static final class ParseTask extends RecursiveTask<List<JSObject>> {
+        private final List<RawSms> page;
+        private final int from;
+        private final int to;
+        private final List<String> apiActiveBanks;
+
+        ParseTask(List<RawSms> page, int from, int to, List<String> apiActiveBanks) {
+            this.page = page;
+            this.from = from;
+            this.to = to;
+            this.apiActiveBanks = apiActiveBanks;
+        }
+
+        @Override
+        protected List<JSObject> compute() {
+            if (to - from <= PARSE_THRESHOLD) {
+                List<JSObject> results = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    results.add(parseOne(page.get(i)));
+                }
+                return results;
+            }
+
+            int mid = (from + to) >>> 1;
+            ParseTask left = new ParseTask(page, from, mid, apiActiveBanks);
+            ParseTask right = new ParseTask(page, mid, to, apiActiveBanks);
+            left.fork();
+            List<JSObject> results = new ArrayList<>(right.compute());
+            results.addAll(0, left.join());
+            return results;
+        }
+
+        private JSObject parseOne(RawSms sms) {
+            try {
+                JSObject tx = SmsTransactionParser.parse(sms.sender, sms.body, sms.timestamp, apiActiveBanks);
+                if (tx == null) return null;
+
+                tx.put("id", UUID.randomUUID().toString());
+                tx.put("sourceHash", TransactionHash.transactionHash(
+                    tx.optDouble("amount", 0),
+                    tx.getString("date"),
+                    tx.getString("account"),
+                    tx.getString("description")));
+                tx.put("status", "pending");
+                tx.put("createdAt", System.currentTimeMillis());
+                tx.put("smsId", sms.id);
+                tx.put("sender", sms.sender);
+                return tx;
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Failed to parse SMS " + sms.id, e);
+                return null;
+            }
+        }
+    }
+}
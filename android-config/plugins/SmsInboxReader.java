@@ -0,0 +1,102 @@
+package com.gestore.spese;
+
+import android.Manifest;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.provider.Telephony;
+
+import androidx.core.content.ContextCompat;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+/**
+ * Shared SMS inbox access, used by SMSReaderPlugin and by the startup bootstrap snapshot.
+ */
+public final class SmsInboxReader {
+
+    private SmsInboxReader() {
+    }
+
+    public static boolean hasReadPermission(Context context) {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.READ_SMS)
+            == PackageManager.PERMISSION_GRANTED;
+    }
+
+    public static boolean hasReceivePermission(Context context) {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.RECEIVE_SMS)
+            == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * Read inbox SMS received after a timestamp, newest first.
+     * Caller must hold READ_SMS.
+     *
+     * @param scanAll false to select only senders in BankSenderRegistry, or bodies with a money
+     *                signal (filtered in SQL),
+     *                true to read every message in the window
+     */
+    public static JSArray querySince(Context context, long sinceTimestamp, boolean scanAll) {
+        return querySince(context, sinceTimestamp, scanAll, null);
+    }
+
+    /**
+     * Same as {@link #querySince(Context, long, boolean)}, abortable through {@code signal}
+     * (throws OperationCanceledException once cancelled)
+     */
+    public static JSArray querySince(Context context, long sinceTimestamp, boolean scanAll, CancellationSignal signal) {
+        JSArray messages = new JSArray();
+
+        ContentResolver contentResolver = context.getContentResolver();
+        Uri smsUri = Telephony.Sms.Inbox.CONTENT_URI;
+
+        // Columns to retrieve
+        String[] projection = {
+            Telephony.Sms._ID,
+            Telephony.Sms.ADDRESS,  // Sender
+            Telephony.Sms.BODY,     // Message body
+            Telephony.Sms.DATE      // Timestamp
+        };
+
+        // Query only recent SMS (and, unless scanAll, only from known bank senders or with a money signal)
+        String selection;
+        String[] selectionArgs;
+        if (scanAll) {
+            selection = Telephony.Sms.DATE + " > ?";
+            selectionArgs = new String[] {String.valueOf(sinceTimestamp)};
+        } else {
+            BankSenderRegistry.Selection filter = BankSenderRegistry.buildSelection(context, sinceTimestamp);
+            selection = filter.where;
+            selectionArgs = filter.args;
+        }
+        String sortOrder = Telephony.Sms.DATE + " DESC";
+
+        Cursor cursor = contentResolver.query(smsUri, projection, selection, selectionArgs, sortOrder, signal);
+        if (cursor == null) return messages;
+
+        try {
+            int idIndex = cursor.getColumnIndex(Telephony.Sms._ID);
+            int addressIndex = cursor.getColumnIndex(Telephony.Sms.ADDRESS);
+            int bodyIndex = cursor.getColumnIndex(Telephony.Sms.BODY);
+            int dateIndex = cursor.getColumnIndex(Telephony.Sms.DATE);
+
+            while (cursor.moveToNext()) {
+                if (signal != null) signal.throwIfCanceled();
+                JSObject sms = new JSObject();
+                sms.put("id", cursor.getString(idIndex));
+                sms.put("sender", cursor.getString(addressIndex));
+                sms.put("body", cursor.getString(bodyIndex));
+                sms.put("timestamp", cursor.getLong(dateIndex));
+                messages.put(sms);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return messages;
+    }
+}
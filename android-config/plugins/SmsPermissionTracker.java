@@ -0,0 +1,57 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Cached READ_SMS / RECEIVE_SMS grant state.
+ *
+ * Android kills the process when a runtime permission is revoked, so within a process the state
+ * can only go from denied to granted: a refresh after the permission dialog and on resume
+ * (user back from app settings) keeps the cache exact without checking on every call.
+ */
+public final class SmsPermissionTracker {
+
+    private static final String TAG = "SmsPermissionTracker";
+
+    private static volatile boolean initialized = false;
+    private static volatile boolean readGranted = false;
+    private static volatile boolean receiveGranted = false;
+
+    private SmsPermissionTracker() {
+    }
+
+    public static boolean canRead(Context context) {
+        ensureInitialized(context);
+        return readGranted;
+    }
+
+    public static boolean canReceive(Context context) {
+        ensureInitialized(context);
+        return receiveGranted;
+    }
+
+    /**
+     * Re-check both permissions.
+     *
+     * @return true if the cached state changed
+     */
+    public static synchronized boolean refresh(Context context) {
+        boolean read = SmsInboxReader.hasReadPermission(context);
+        boolean receive = SmsInboxReader.hasReceivePermission(context);
+        boolean changed = initialized && (read != readGranted || receive != receiveGranted);
+
+        readGranted = read;
+        receiveGranted = receive;
+        initialized = true;
+
+        if (changed) {
+            Log.d(TAG, "🔔 SMS permissions changed: READ_SMS=" + read + ", RECEIVE_SMS=" + receive);
+        }
+        return changed;
+    }
+
+    private static void ensureInitialized(Context context) {
+        if (!initialized) refresh(context);
+    }
+}
@@ -0,0 +1,223 @@
+package com.gestore.spese;
+
+import com.getcapacitor.JSObject;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Native port of parseSMS() in src/services/sms-transaction-parser.ts (regex path only,
+ * the AI fallback is disabled there too). Used by the historical SMS import, which parses
+ * thousands of messages off the JS thread.
+ * ⚠️ Keep BANK_CONFIGS, FINANCIAL_SENDERS and MONEY_SIGNALS in sync with the TS parser.
+ */
+public final class SmsTransactionParser {
+
+    private static final int FLAGS = Pattern.CASE_INSENSITIVE;
+
+    // Same order as BANK_CONFIGS in the TS parser (first match wins).
+    // Identifiers are compared against the upper-cased sender exactly like in JS,
+    // so "PayPal" never matches there either.
+    private static final List<NotificationTransactionParser.BankConfig> BANK_CONFIGS = Arrays.asList(
+        new NotificationTransactionParser.BankConfig("Revolut", "REVOLUT", "revolut",
+            "(?:hai\\s+speso|payment\\s+of|spent).*?(\\d+(?:[.,]\\d+)*)\\s*€?.*?(?:at|presso|da|in)\\s+(.+)",
+            "(?:ricevuto|received).*?(\\d+(?:[.,]\\d+)*)\\s*€?.*?(?:from|da)\\s+(.+)",
+            "(?:trasferimento|transfer).*?(\\d+(?:[.,]\\d+)*)\\s*€?.*?(?:to|a|verso)\\s+(.+)"),
+        new NotificationTransactionParser.BankConfig("PayPal", "PayPal", "paypal",
+            "(?:sent|inviato|hai\\s+inviato).*?(\\d+(?:[.,]\\d+)*)\\s*€?.*?(?:to|a)\\s+(.+)",
+            "(?:received|ricevuto|hai\\s+ricevuto).*?(\\d+(?:[.,]\\d+)*)\\s*€?.*?(?:from|da)\\s+(.+)",
+            null),
+        new NotificationTransactionParser.BankConfig("Postepay", "POSTEPAY", "poste",
+            "(?:pagamento|addebito).*?(\\d+(?:[.,]\\d+)*)\\s*€?.*?(?:presso|at)\\s+(.+)",
+            "(?:accredito|ricarica).*?(\\d+(?:[.,]\\d+)*)\\s*€?",
+            "bonifico.*?(\\d+(?:[.,]\\d+)*)\\s*€?.*?(?:a|verso)\\s+(.+)"),
+        new NotificationTransactionParser.BankConfig("BBVA", "BBVA", "bank-account",
+            "(?:compra|pago|cargo).*?(\\d+(?:[.,]\\d+)*)\\s*€?.*?(?:en|at)\\s+(.+)",
+            "(?:ingreso|abono).*?(\\d+(?:[.,]\\d+)*)\\s*€?",
+            "transferencia.*?(\\d+(?:[.,]\\d+)*)\\s*€?.*?(?:a|para)\\s+(.+)"),
+        new NotificationTransactionParser.BankConfig("Intesa Sanpaolo", "INTESA", "bank-account",
+            "(?:addebito|pagamento)\\s+carta.*?(\\d+(?:[.,]\\d+)*)\\s*€?.*?presso\\s+(.+)",
+            "accredito.*?(\\d+(?:[.,]\\d+)*)\\s*€?",
+            "bonifico.*?(\\d+(?:[.,]\\d+)*)\\s*€?.*?(?:a|verso)\\s+(.+)"),
+        new NotificationTransactionParser.BankConfig("UniCredit", "UNICREDIT", "bank-account",
+            "(?:autorizzata|Addebito|Pagamento|Transazione)\\s+(?:op\\.?\\w*\\s+)?(\\d+[.,]\\d{2})\\s*(?:EUR|€).*?(?:c/o|presso|at)\\s+(.+?)(?:\\s+\\d{6,}|\\s+\\d{2}/\\d{2}/\\d{2}|Per info|$)",
+            "(?:Accredito|bonifico).*?€?\\s*(\\d+[.,]\\d{2})\\s*(?:EUR)?",
+            "Bonifico.*?€?\\s*(\\d+[.,]\\d{2})\\s*(?:EUR)?.*?(?:verso|a)\\s+(.+)"),
+        new NotificationTransactionParser.BankConfig("Mastercard", "MASTERCARD", "credit-card",
+            "(?:Autorizzazione|Spesa|Pagamento).*?€?\\s*(\\d+(?:[.,]\\d+)*)\\s*(?:EUR)?.*?(?:presso|at)\\s+(.+)",
+            null,
+            null)
+    );
+
+    private static final List<String> FINANCIAL_SENDERS = Arrays.asList(
+        "BANK", "BANCA", "PAY", "CARD", "CARTA", "CREDIT", "DEBIT", "ALERT", "INFO", "CONTO",
+        "POSTE", "HYPE", "N26", "REVOLUT", "CURVE", "WISE", "SATISPAY", "AMEX", "VISA",
+        "MASTERCARD", "ING", "BNL", "BPER", "FINECO", "WEBANK", "WIDIBA", "ILLIMITY",
+        "NEXI", "FINDOMESTIC", "COMPASS", "SANTANDER", "UBI", "CREDEM", "MEDIOLANUM"
+    );
+
+    private static final List<String> MONEY_SIGNALS = Arrays.asList(
+        "€", "EUR", "SPESO", "SPESA", "PAGATO", "PAGAMENTO", "ADDEBITO", "ACCREDITO", "BONIFICO",
+        "AUTHORIZED", "AUTORIZZAZIONE", "SPENT", "PURCHASE", "TRANSAZIONE", "TRANSACTION",
+        "PRELIEVO", "WITHDRAWAL", "USCITA", "ENTRATA", "GIROCONTO", "SALARY", "STIPENDIO"
+    );
+
+    // Generic patterns of the "universal detection" path
+    private static final String GENERIC_EXPENSE =
+        "(?:speso|spesa|pagato|pagamento|addebito|autorizzata|autorizzazione|transazione|purchase|sent|spent|payment|prelievo|withdrawal|uscita).*?(\\d+(?:[.,]\\d+)*)\\s*€?.*?(?:presso|at|c/o|to|a|da|in)\\s+(.+)";
+    private static final String GENERIC_INCOME =
+        "(?:ricevuto|accredito|ricarica|received|credit|entrata|stipendio|salary).*?(\\d+(?:[.,]\\d+)*)\\s*€?.*?(?:da|from)\\s*(.*)";
+    private static final String GENERIC_TRANSFER =
+        "(?:bonifico|transfer|giroconto).*?(\\d+(?:[.,]\\d+)*)\\s*€?";
+
+    private static final Pattern GENERIC_EXPENSE_PATTERN = Pattern.compile(GENERIC_EXPENSE, FLAGS);
+    private static final Pattern GENERIC_INCOME_PATTERN = Pattern.compile(GENERIC_INCOME, FLAGS);
+    private static final Pattern GENERIC_TRANSFER_PATTERN = Pattern.compile(GENERIC_TRANSFER, FLAGS);
+
+    private static final Pattern FLOAT_PREFIX = Pattern.compile("^[+-]?(\\d+\\.?\\d*|\\.\\d+)");
+
+    private SmsTransactionParser() {
+    }
+
+    /**
+     * Parse an SMS into an AutoTransaction-shaped object
+     * (without id/createdAt/sourceHash/status, like parseSMS in TS).
+     * Thread-safe: patterns are immutable, a new Matcher is created per call.
+     *
+     * @return parsed data or null if not a (supported) transaction or handled via API
+     */
+    public static JSObject parse(String sender, String body, long timestamp, Collection<String> apiActiveBanks) {
+        if (sender == null || body == null) return null;
+        String upperSender = sender.toUpperCase(Locale.ROOT);
+
+        String name = null;
+        String accountName = null;
+        Pattern expense = null;
+        Pattern income = null;
+        Pattern transfer = null;
+
+        for (NotificationTransactionParser.BankConfig config : BANK_CONFIGS) {
+            if (upperSender.contains(config.identifier)) {
+                name = config.name;
+                accountName = config.accountName;
+                expense = config.expense;
+                income = config.income;
+                transfer = config.transfer;
+                break;
+            }
+        }
+
+        // 🧠 UNIVERSAL DETECTION
+        if (name == null) {
+            if (!containsAny(upperSender, FINANCIAL_SENDERS)
+                && !containsAny(body.toUpperCase(Locale.ROOT), MONEY_SIGNALS)) {
+                return null;
+            }
+            name = sender;
+            accountName = "Conto " + sender;
+            expense = GENERIC_EXPENSE_PATTERN;
+            income = GENERIC_INCOME_PATTERN;
+            transfer = GENERIC_TRANSFER_PATTERN;
+        }
+
+        // Bank handled via API: legacy SMS are suppressed to avoid duplicates
+        if (NotificationTransactionParser.isBankAPIActive(name, apiActiveBanks)) return null;
+
+        JSObject parsed = null;
+
+        if (expense != null) {
+            Matcher m = expense.matcher(body);
+            if (m.find()) {
+                parsed = build("expense", m.group(1), trimOr(group(m, 2), "Pagamento"), name, accountName, body, timestamp);
+            }
+        }
+
+        if (parsed == null && income != null) {
+            Matcher m = income.matcher(body);
+            if (m.find()) {
+                parsed = build("income", m.group(1), trimOr(group(m, 2), "Accredito"), name, accountName, body, timestamp);
+            }
+        }
+
+        if (parsed == null && transfer != null) {
+            Matcher m = transfer.matcher(body);
+            if (m.find()) {
+                parsed = build("transfer", m.group(1), "Trasferimento", name, accountName, body, timestamp);
+                String to = group(m, 2);
+                if (to != null) parsed.put("toAccount", to.trim());
+            }
+        }
+
+        // Same "suspicious 0.00" rule as the TS parser
+        if (parsed != null && parsed.optDouble("amount", 0) == 0) {
+            return null;
+        }
+        return parsed;
+    }
+
+    private static JSObject build(String type, String amount, String description, String name,
+                                  String accountName, String body, long timestamp) {
+        JSObject tx = new JSObject();
+        tx.put("type", type);
+        tx.put("amount", parseAmount(amount));
+        tx.put("description", description);
+        tx.put("date", NotificationTransactionParser.formatDate(timestamp));
+        tx.put("account", accountName);
+        tx.put("sourceType", "sms");
+        tx.put("sourceApp", name.toLowerCase(Locale.ROOT));
+        tx.put("rawText", body);
+        return tx;
+    }
+
+    private static boolean containsAny(String value, List<String> keywords) {
+        for (String keyword : keywords) {
+            if (value.contains(keyword)) return true;
+        }
+        return false;
+    }
+
+    private static String group(Matcher m, int index) {
+        return m.groupCount() >= index ? m.group(index) : null;
+    }
+
+    // Equivalent of `match[n]?.trim() || fallback`
+    private static String trimOr(String value, String fallback) {
+        if (value == null) return fallback;
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? fallback : trimmed;
+    }
+
+    /**
+     * Same semantics as parseAmount() in the TS SMS parser (EU 1.234,56 vs US 1,234.56)
+     */
+    static double parseAmount(String amountStr) {
+        if (amountStr == null) return 0;
+        String clean = amountStr.replaceAll("\\s", "");
+
+        boolean hasComma = clean.indexOf(',') >= 0;
+        boolean hasDot = clean.indexOf('.') >= 0;
+
+        if (hasComma && hasDot) {
+            if (clean.lastIndexOf(',') > clean.lastIndexOf('.')) {
+                clean = clean.replace(".", "").replace(',', '.');
+            } else {
+                clean = clean.replace(",", "");
+            }
+        } else if (hasComma) {
+            clean = clean.replace(',', '.');
+        }
+
+        // JS parseFloat reads the longest numeric prefix
+        Matcher m = FLOAT_PREFIX.matcher(clean);
+        if (!m.find()) return 0;
+        try {
+            return Double.parseDouble(m.group());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.gestore.spese;
+
+import org.json.JSONArray;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streaming spreadsheet writer: rows go straight to the file, nothing is kept in memory.
+ *
+ * XLSX is written as a zip stream where every part except the sheet is a small constant; the
+ * sheet is the last entry and its XML is emitted row by row (inline strings, no shared string
+ * table to build), so the workbook never exists as a whole. CSV is UTF-8 with BOM, ';' and
+ * decimal comma by default, which is what Excel expects with an Italian locale.
+ */
+public abstract class SpreadsheetWriter {
+
+    public static final String FORMAT_XLSX = "xlsx";
+    public static final String FORMAT_CSV = "csv";
+
+    protected final CountingOutputStream counter;
+    protected int rows = 0;
+
+    protected SpreadsheetWriter(File file) throws IOException {
+        this.counter = new CountingOutputStream(new FileOutputStream(file));
+    }
+
+    public static SpreadsheetWriter open(File file, String format, String sheetName, List<String> headers,
+                                         String delimiter, String decimalSeparator) throws IOException {
+        SpreadsheetWriter writer = FORMAT_CSV.equals(format)
+            ? new Csv(file, delimiter, decimalSeparator)
+            : new Xlsx(file, sheetName);
+        try {
+            writer.writeHeader(headers);
+        } catch (IOException e) {
+            writer.abort();
+            throw e;
+        }
+        return writer;
+    }
+
+    public static String mimeType(String format) {
+        return FORMAT_CSV.equals(format)
+            ? "text/csv"
+            : "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+    }
+
+    /**
+     * One row: strings become text cells, numbers numeric cells, null an empty cell
+     */
+    public abstract void writeRow(JSONArray row) throws IOException;
+
+    protected abstract void writeHeader(List<String> headers) throws IOException;
+
+    /**
+     * Complete the file (closing tags, zip directory)
+     */
+    public abstract void finish() throws IOException;
+
+    /**
+     * Close without completing; the caller deletes the partial file
+     */
+    public abstract void abort();
+
+    public int getRows() {
+        return rows;
+    }
+
+    public long getBytes() {
+        return counter.count;
+    }
+
+    // ==================== XLSX ====================
+
+    private static final class Xlsx extends SpreadsheetWriter {
+        private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+        private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+        private static final String PKG_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+        private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+        private final ZipOutputStream zip;
+        private final Writer out;
+        // Sheet row number (1 = header)
+        private int sheetRow = 0;
+
+        Xlsx(File file, String sheetName) throws IOException {
+            super(file);
+            zip = new ZipOutputStream(new BufferedOutputStream(counter, 64 * 1024));
+            out = new BufferedWriter(new OutputStreamWriter(zip, "UTF-8"), 32 * 1024);
+
+            part("[Content_Types].xml", XML_HEADER
+                + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                + "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+                + "<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>"
+                + "</Types>");
+            part("_rels/.rels", XML_HEADER
+                + "<Relationships xmlns=\"" + PKG_REL_NS + "\">"
+                + "<Relationship Id=\"rId1\" Type=\"" + REL_NS + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>");
+            part("xl/workbook.xml", XML_HEADER
+                + "<workbook xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + REL_NS + "\">"
+                + "<sheets><sheet name=\"" + escape(sheetName(sheetName)) + "\" sheetId=\"1\" r:id=\"rId1\"/></sheets>"
+                + "</workbook>");
+            part("xl/_rels/workbook.xml.rels", XML_HEADER
+                + "<Relationships xmlns=\"" + PKG_REL_NS + "\">"
+                + "<Relationship Id=\"rId1\" Type=\"" + REL_NS + "/worksheet\" Target=\"worksheets/sheet1.xml\"/>"
+                + "<Relationship Id=\"rId2\" Type=\"" + REL_NS + "/styles\" Target=\"styles.xml\"/>"
+                + "</Relationships>");
+            // Style 1 = bold, for the header row
+            part("xl/styles.xml", XML_HEADER
+                + "<styleSheet xmlns=\"" + MAIN_NS + "\">"
+                + "<fonts count=\"2\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font><font><b/><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>"
+                + "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill></fills>"
+                + "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>"
+                + "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+                + "<cellXfs count=\"2\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+                + "<xf numFmtId=\"0\" fontId=\"1\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\"/></cellXfs>"
+                + "</styleSheet>");
+
+            // The sheet stays open until finish(): rows are appended to this entry
+            zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+            out.write(XML_HEADER);
+            out.write("<worksheet xmlns=\"" + MAIN_NS + "\">"
+                + "<sheetViews><sheetView workbookViewId=\"0\"><pane ySplit=\"1\" topLeftCell=\"A2\" activePane=\"bottomLeft\" state=\"frozen\"/></sheetView></sheetViews>"
+                + "<sheetData>");
+        }
+
+        private void part(String name, String content) throws IOException {
+            zip.putNextEntry(new ZipEntry(name));
+            zip.write(content.getBytes("UTF-8"));
+            zip.closeEntry();
+        }
+
+        @Override
+        protected void writeHeader(List<String> headers) throws IOException {
+            int r = ++sheetRow;
+            out.write("<row r=\"" + r + "\">");
+            for (int c = 0; c < headers.size(); c++) {
+                out.write("<c r=\"" + column(c) + r + "\" s=\"1\" t=\"inlineStr\"><is><t>");
+                out.write(escape(headers.get(c)));
+                out.write("</t></is></c>");
+            }
+            out.write("</row>");
+        }
+
+        @Override
+        public void writeRow(JSONArray row) throws IOException {
+            int r = ++sheetRow;
+            out.write("<row r=\"" + r + "\">");
+            for (int c = 0; c < row.length(); c++) {
+                Object value = row.opt(c);
+                if (value == null || value == org.json.JSONObject.NULL) continue;
+
+                if (value instanceof Number) {
+                    String number = number((Number) value);
+                    if (number == null) continue;
+                    out.write("<c r=\"" + column(c) + r + "\"><v>" + number + "</v></c>");
+                } else if (value instanceof Boolean) {
+                    out.write("<c r=\"" + column(c) + r + "\" t=\"b\"><v>" + (((Boolean) value) ? 1 : 0) + "</v></c>");
+                } else {
+                    String text = value.toString();
+                    out.write("<c r=\"" + column(c) + r + "\" t=\"inlineStr\"><is><t");
+                    // Keep leading/trailing spaces
+                    if (!text.isEmpty() && (text.charAt(0) == ' ' || text.charAt(text.length() - 1) == ' ')) {
+                        out.write(" xml:space=\"preserve\"");
+                    }
+                    out.write(">");
+                    out.write(escape(text));
+                    out.write("</t></is></c>");
+                }
+            }
+            out.write("</row>");
+            rows++;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.write("</sheetData></worksheet>");
+            out.flush();
+            zip.closeEntry();
+            zip.finish();
+            zip.close();
+        }
+
+        @Override
+        public void abort() {
+            try {
+                zip.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        // 0 -> A, 25 -> Z, 26 -> AA
+        private static String column(int index) {
+            StringBuilder sb = new StringBuilder();
+            int n = index + 1;
+            while (n > 0) {
+                int rem = (n - 1) % 26;
+                sb.insert(0, (char) ('A' + rem));
+                n = (n - 1) / 26;
+            }
+            return sb.toString();
+        }
+
+        // Excel: max 31 chars, none of : \ / ? * [ ]
+        private static String sheetName(String name) {
+            String clean = (name == null || name.isEmpty() ? "Foglio1" : name).replaceAll("[:\\\\/?*\\[\\]]", " ");
+            return clean.length() > 31 ? clean.substring(0, 31) : clean;
+        }
+
+        private static String escape(String s) {
+            StringBuilder sb = null;
+            for (int i = 0; i < s.length(); i++) {
+                char ch = s.charAt(i);
+                String rep = null;
+                if (ch == '<') rep = "&lt;";
+                else if (ch == '>') rep = "&gt;";
+                else if (ch == '&') rep = "&amp;";
+                else if (ch == '"') rep = "&quot;";
+                // Not allowed in XML 1.0 at all: dropped
+                else if ((ch < 0x20 && ch != '\t' && ch != '\n' && ch != '\r') || ch == 0xFFFE || ch == 0xFFFF) rep = "";
+
+                if (rep != null) {
+                    if (sb == null) {
+                        sb = new StringBuilder(s.length() + 16);
+                        sb.append(s, 0, i);
+                    }
+                    sb.append(rep);
+                } else if (sb != null) {
+                    sb.append(ch);
+                }
+            }
+            return sb != null ? sb.toString() : s;
+        }
+    }
+
+    // ==================== CSV ====================
+
+    private static final class Csv extends SpreadsheetWriter {
+        private final Writer out;
+        private final String delimiter;
+        private final String decimalSeparator;
+
+        Csv(File file, String delimiter, String decimalSeparator) throws IOException {
+            super(file);
+            this.delimiter = delimiter != null && !delimiter.isEmpty() ? delimiter : ";";
+            this.decimalSeparator = decimalSeparator != null && !decimalSeparator.isEmpty() ? decimalSeparator : ",";
+            out = new BufferedWriter(new OutputStreamWriter(new BufferedOutputStream(counter, 64 * 1024), "UTF-8"), 32 * 1024);
+            // BOM: Excel otherwise reads UTF-8 as the ANSI code page
+            out.write('\uFEFF');
+        }
+
+        @Override
+        protected void writeHeader(List<String> headers) throws IOException {
+            for (int c = 0; c < headers.size(); c++) {
+                if (c > 0) out.write(delimiter);
+                out.write(quote(headers.get(c)));
+            }
+            out.write("\r\n");
+        }
+
+        @Override
+        public void writeRow(JSONArray row) throws IOException {
+            for (int c = 0; c < row.length(); c++) {
+                if (c > 0) out.write(delimiter);
+                Object value = row.opt(c);
+                if (value == null || value == org.json.JSONObject.NULL) continue;
+
+                if (value instanceof Number) {
+                    String number = number((Number) value);
+                    if (number != null) out.write(".".equals(decimalSeparator) ? number : number.replace(".", decimalSeparator));
+                } else {
+                    String text = value.toString();
+                    // A text cell starting like a formula would be evaluated by the spreadsheet
+                    if (!text.isEmpty() && "=+-@".indexOf(text.charAt(0)) >= 0) text = "'" + text;
+                    out.write(quote(text));
+                }
+            }
+            out.write("\r\n");
+            rows++;
+        }
+
+        private String quote(String s) {
+            if (s.contains(delimiter) || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0) {
+                return "\"" + s.replace("\"", "\"\"") + "\"";
+            }
+            return s;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.close();
+        }
+
+        @Override
+        public void abort() {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // ==================== HELPERS ====================
+
+    /**
+     * Plain decimal notation (no exponent, no trailing ".0"); null for NaN/Infinity
+     */
+    static String number(Number n) {
+        if (n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte) {
+            return String.valueOf(n.longValue());
+        }
+        double d = n.doubleValue();
+        if (Double.isNaN(d) || Double.isInfinite(d)) return null;
+        if (d == Math.rint(d) && Math.abs(d) < 1e15) return String.valueOf((long) d);
+        return new java.math.BigDecimal(Double.toString(d)).stripTrailingZeros().toPlainString();
+    }
+
+    protected static final class CountingOutputStream extends OutputStream {
+        private final OutputStream target;
+        long count = 0;
+
+        CountingOutputStream(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            target.close();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.gestore.spese;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import androidx.activity.result.ActivityResult;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.ActivityCallback;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import java.util.UUID;
+
+/**
+ * Import of bank statement files (CSV / XLSX).
+ *
+ * The statement is read natively row by row (StatementImporter): the columns are detected from
+ * the header (or the content), and the parsed transactions reach JS as "statementChunk" events
+ * while the rest of the file is still being read.
+ */
+@CapacitorPlugin(name = "StatementImport")
+public class StatementImportPlugin extends Plugin {
+
+    private static final String TAG = "StatementImportPlugin";
+    private static final String CHUNK_EVENT = "statementChunk";
+    private static final int DEFAULT_CHUNK_SIZE = 200;
+
+    private static final String[] STATEMENT_MIME_TYPES = {
+        "text/csv",
+        "text/comma-separated-values",
+        "text/plain",
+        "application/csv",
+        "application/vnd.ms-excel",
+        "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+        "application/octet-stream"
+    };
+
+    // One statement at a time: large files take a while and the chunks must stay in order
+    private static final PluginTaskExecutor.Limits IMPORT_LIMITS =
+        new PluginTaskExecutor.Limits("StatementImport", "import", 1, 2, 10 * 60 * 1000);
+
+    @Override
+    protected void handleOnDestroy() {
+        PluginTaskExecutor.cancelAll("StatementImport");
+        super.handleOnDestroy();
+    }
+
+    /**
+     * ✅ NEW: Let the user choose a statement file; returns its uri, name and size
+     */
+    @PluginMethod
+    public void pickStatement(PluginCall call) {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("*/*");
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, STATEMENT_MIME_TYPES);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        startActivityForResult(call, intent, "pickResult");
+    }
+
+    @ActivityCallback
+    private void pickResult(PluginCall call, ActivityResult result) {
+        if (call == null) return;
+        Intent data = result.getData();
+        if (result.getResultCode() != Activity.RESULT_OK || data == null || data.getData() == null) {
+            call.reject("No file");
+            return;
+        }
+        Uri uri = data.getData();
+        JSObject ret = describe(uri);
+        ret.put("uri", uri.toString());
+        call.resolve(ret);
+    }
+
+    /**
+     * ✅ NEW: Read a statement and emit its transactions as "statementChunk" events.
+     * Options: uri, requestId (also the importId of the events, cancelRequest), chunkSize,
+     * mapping (columns to use instead of the detected ones).
+     * Resolves with the counters, the mapping used and the throughput (rowsPerSecond).
+     */
+    @PluginMethod
+    public void importStatement(PluginCall call) {
+        final String uriString = call.getString("uri");
+        final String requestId = call.getString("requestId");
+        final int chunkSize = Math.max(1, call.getInt("chunkSize", DEFAULT_CHUNK_SIZE));
+        final StatementImporter.Mapping mapping = StatementImporter.Mapping.fromJSObject(call.getObject("mapping"));
+
+        if (uriString == null) {
+            call.reject("Missing uri");
+            return;
+        }
+
+        PluginTaskExecutor.submit(call, IMPORT_LIMITS, new PluginTaskExecutor.Task() {
+            @Override
+            public JSObject run(CancellationSignal signal) throws Exception {
+                long startTime = System.currentTimeMillis();
+                final String importId = requestId != null ? requestId : UUID.randomUUID().toString();
+                Uri uri = Uri.parse(uriString);
+                long size = describe(uri).optLong("size", -1);
+
+                StatementImporter.Result result = StatementImporter.run(getContext(), uri, size, mapping, chunkSize, signal,
+                    new StatementImporter.ChunkListener() {
+                        @Override
+                        public void onChunk(JSArray transactions, StatementImporter.Result progress) {
+                            JSObject event = progress.toJSObject();
+                            event.put("importId", importId);
+                            event.put("seq", progress.chunks);
+                            event.put("transactions", transactions);
+                            notifyListeners(CHUNK_EVENT, event);
+                        }
+                    });
+
+                long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+                long rowsPerSecond = result.rows * 1000L / elapsed;
+                Log.d(TAG, "✅ Statement " + result.format + ": " + result.parsed + "/" + result.rows + " rows in " + elapsed
+                    + "ms (" + rowsPerSecond + " rows/s, " + result.bytesRead / 1024 + " KB)");
+
+                JSObject ret = result.toJSObject();
+                ret.put("importId", importId);
+                ret.put("mapping", result.mapping != null ? result.mapping.toJSObject() : null);
+                ret.put("elapsedMs", elapsed);
+                ret.put("rowsPerSecond", rowsPerSecond);
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * ✅ NEW: Cancel a call started with the "requestId" option
+     */
+    @PluginMethod
+    public void cancelRequest(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("cancelled", PluginTaskExecutor.cancel(call.getString("requestId")));
+        call.resolve(result);
+    }
+
+    /**
+     * Display name and size of a picked document (size -1 when the provider does not know it)
+     */
+    private JSObject describe(Uri uri) {
+        JSObject ret = new JSObject();
+        ret.put("name", uri.getLastPathSegment());
+        ret.put("size", -1);
+        try {
+            Cursor cursor = getContext().getContentResolver().query(uri,
+                new String[]{OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE}, null, null, null);
+            if (cursor == null) return ret;
+            try {
+                if (cursor.moveToFirst()) {
+                    int name = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
+                    int size = cursor.getColumnIndex(OpenableColumns.SIZE);
+                    if (name >= 0 && !cursor.isNull(name)) ret.put("name", cursor.getString(name));
+                    if (size >= 0 && !cursor.isNull(size)) ret.put("size", cursor.getLong(size));
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (Exception e) {
+            // file:// URIs and some providers have no metadata
+            Log.w(TAG, "⚠️ Could not read document metadata: " + e.getMessage());
+        }
+        return ret;
+    }
+}
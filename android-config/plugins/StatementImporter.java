@@ -0,0 +1,1215 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Streaming reader for bank statement files (CSV and XLSX).
+ *
+ * The file is read row by row: CSV through a quote-aware tokenizer, XLSX by walking the sheet
+ * XML with SAX straight out of the zip. Only the first rows are buffered, to find the columns
+ * holding date, amount (or debit / credit) and description; every following row is turned into
+ * a transaction and handed out in chunks, so memory stays flat whatever the statement size.
+ */
+public final class StatementImporter {
+
+    private static final String TAG = "StatementImporter";
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_XLSX = "xlsx";
+
+    // Rows buffered to find the header (or infer the columns when there is none)
+    private static final int SAMPLE_ROWS = 30;
+    private static final int SNIFF_BYTES = 64 * 1024;
+    // An unbalanced quote must not swallow the whole file into one field
+    private static final int MAX_FIELD_CHARS = 64 * 1024;
+    private static final int MAX_COLUMNS = 256;
+    private static final int MAX_DESCRIPTION = 200;
+    private static final String IMPORTS_DIR = "statement_imports";
+
+    private static final char[] DELIMITERS = {';', ',', '\t', '|'};
+
+    // Header words (whole words, accents stripped)
+    private static final Set<String> DATE_WORDS = words("data", "date", "giorno");
+    private static final Set<String> VALUE_DATE_WORDS = words("valuta", "value");
+    private static final Set<String> AMOUNT_WORDS = words("importo", "importi", "amount", "ammontare", "totale");
+    private static final Set<String> DEBIT_WORDS = words("uscite", "uscita", "addebiti", "addebito", "dare",
+        "debit", "debits", "debito", "spese");
+    private static final Set<String> CREDIT_WORDS = words("entrate", "entrata", "accrediti", "accredito", "avere",
+        "credit", "credits", "credito");
+    private static final Set<String> DESCRIPTION_WORDS = words("descrizione", "causale", "dettagli", "dettaglio",
+        "operazione", "beneficiario", "controparte", "motivazione", "description", "details", "memo", "payee",
+        "reference", "narrative");
+
+    private static final Pattern ISO_DATE = Pattern.compile("^(\\d{4})[-/.](\\d{1,2})[-/.](\\d{1,2})");
+    private static final Pattern LOCAL_DATE = Pattern.compile("^(\\d{1,2})[-/.](\\d{1,2})[-/.](\\d{2}|\\d{4})(?!\\d)");
+    private static final Pattern PLAIN_NUMBER = Pattern.compile("^-?\\d+(\\.\\d+)?([eE][-+]?\\d+)?$");
+
+    private StatementImporter() {
+    }
+
+    /**
+     * Receives each chunk of transactions as soon as it is complete
+     */
+    public interface ChunkListener {
+        void onChunk(JSArray transactions, Result progress) throws Exception;
+    }
+
+    /**
+     * Receives each transaction of the statement, in file order
+     */
+    interface TransactionHandler {
+        void onTransaction(Transaction tx) throws Exception;
+    }
+
+    private interface RowHandler {
+        void onRow(List<String> cells) throws Exception;
+    }
+
+    /**
+     * One statement row turned into a transaction
+     */
+    static final class Transaction {
+        final String date; // YYYY-MM-DD
+        final double amount; // positive, rounded to cents
+        final String type; // expense / income
+        final String description;
+        final int row; // 1-based, empty rows not counted
+
+        Transaction(String date, double amount, String type, String description, int row) {
+            this.date = date;
+            this.amount = amount;
+            this.type = type;
+            this.description = description;
+            this.row = row;
+        }
+
+        JSObject toJSObject() {
+            JSObject ret = new JSObject();
+            ret.put("date", date);
+            ret.put("amount", amount);
+            ret.put("type", type);
+            ret.put("description", description);
+            ret.put("row", row);
+            return ret;
+        }
+    }
+
+    /**
+     * Columns of a statement (0-based indexes, -1 when missing)
+     */
+    public static final class Mapping {
+        public int headerRow = -1; // -1: no header, rows without a valid date are skipped
+        public int date = -1;
+        public int amount = -1; // signed amount; otherwise debit / credit
+        public int debit = -1;
+        public int credit = -1;
+        public int[] description = new int[0]; // joined in this order
+        public boolean dayFirst = true; // 03/04/2024 = 3 April
+        public boolean detected = true;
+
+        boolean isUsable() {
+            return date >= 0 && (amount >= 0 || debit >= 0 || credit >= 0);
+        }
+
+        public JSObject toJSObject() {
+            JSObject ret = new JSObject();
+            ret.put("headerRow", headerRow);
+            ret.put("date", date);
+            ret.put("amount", amount);
+            ret.put("debit", debit);
+            ret.put("credit", credit);
+            JSArray columns = new JSArray();
+            for (int column : description) columns.put(column);
+            ret.put("description", columns);
+            ret.put("dayFirst", dayFirst);
+            ret.put("detected", detected);
+            return ret;
+        }
+
+        /**
+         * Mapping chosen by the user (same shape as toJSObject); null if it has no date or amount
+         */
+        public static Mapping fromJSObject(JSObject json) {
+            if (json == null) return null;
+            Mapping mapping = new Mapping();
+            mapping.headerRow = json.optInt("headerRow", -1);
+            mapping.date = json.optInt("date", -1);
+            mapping.amount = json.optInt("amount", -1);
+            mapping.debit = json.optInt("debit", -1);
+            mapping.credit = json.optInt("credit", -1);
+            JSONArray columns = json.optJSONArray("description");
+            if (columns != null) {
+                mapping.description = new int[columns.length()];
+                for (int i = 0; i < columns.length(); i++) mapping.description[i] = columns.optInt(i, -1);
+            } else if (json.has("description")) {
+                mapping.description = new int[]{json.optInt("description", -1)};
+            }
+            mapping.dayFirst = json.optBoolean("dayFirst", true);
+            mapping.detected = false;
+            return mapping.isUsable() ? mapping : null;
+        }
+    }
+
+    /**
+     * Counters of an import (also sent with every chunk as progress)
+     */
+    public static final class Result {
+        public String format;
+        public Mapping mapping;
+        public int rows = 0; // data rows after the header
+        public int parsed = 0;
+        public int skipped = 0; // rows without a valid date or amount (totals, balances...)
+        public int chunks = 0;
+        public long bytesRead = 0;
+        public long totalBytes = -1;
+
+        public JSObject toJSObject() {
+            JSObject ret = new JSObject();
+            ret.put("format", format);
+            ret.put("rows", rows);
+            ret.put("parsed", parsed);
+            ret.put("skipped", skipped);
+            ret.put("chunks", chunks);
+            ret.put("bytesRead", bytesRead);
+            ret.put("totalBytes", totalBytes);
+            ret.put("progress", totalBytes > 0 ? Math.min(1.0, (double) bytesRead / totalBytes) : 0);
+            return ret;
+        }
+    }
+
+    /**
+     * Read a statement and emit its transactions in chunks of chunkSize
+     *
+     * @param mapping columns chosen by the user, or null to detect them
+     * @param totalBytes size of the file if known (progress), otherwise -1
+     */
+    public static Result run(Context context, Uri uri, long totalBytes, Mapping mapping, int chunkSize,
+                             CancellationSignal signal, ChunkListener listener) throws Exception {
+        InputStream input = context.getContentResolver().openInputStream(uri);
+        if (input == null) throw new PluginTaskExecutor.Rejection("Cannot open " + uri);
+
+        BufferedInputStream in = new BufferedInputStream(input, SNIFF_BYTES);
+        Result result = new Result();
+        result.totalBytes = totalBytes;
+        Chunks chunks = new Chunks(context, Math.max(1, chunkSize), result, listener);
+
+        File copy = null;
+        try {
+            in.mark(8);
+            byte[] magic = new byte[4];
+            int n = readFully(in, magic, 4);
+            in.reset();
+
+            if (n == 4 && magic[0] == (byte) 0xD0 && magic[1] == (byte) 0xCF && magic[2] == 0x11 && magic[3] == (byte) 0xE0) {
+                throw new PluginTaskExecutor.Rejection("Legacy .xls files are not supported: save the statement as .xlsx or .csv");
+            }
+            if (n == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+                // ZipFile needs random access: content:// streams are copied to the cache first
+                if ("file".equals(uri.getScheme()) && uri.getPath() != null) {
+                    in.close();
+                    readXlsx(new File(uri.getPath()), mapping, result, signal, chunks);
+                } else {
+                    copy = copyToCache(context, in, signal);
+                    readXlsx(copy, mapping, result, signal, chunks);
+                }
+            } else {
+                readCsv(in, mapping, result, signal, chunks);
+            }
+            chunks.flush();
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+            if (copy != null) copy.delete();
+        }
+        return result;
+    }
+
+    /**
+     * Transactions of a CSV statement (no Context or JSON: also used by the JVM tests)
+     *
+     * @param mapping columns chosen by the user, or null to detect them
+     */
+    static void readCsv(InputStream input, Mapping mapping, Result result, CancellationSignal signal,
+                        TransactionHandler handler) throws Exception {
+        BufferedInputStream in = input instanceof BufferedInputStream
+            ? (BufferedInputStream) input : new BufferedInputStream(input, SNIFF_BYTES);
+        result.format = FORMAT_CSV;
+        Collector collector = new Collector(mapping, result, signal, handler);
+        readCsvRows(in, result, collector, signal);
+        collector.finish();
+    }
+
+    /**
+     * Transactions of the first sheet of an XLSX statement (no Context or JSON)
+     *
+     * @param mapping columns chosen by the user, or null to detect them
+     */
+    static void readXlsx(File file, Mapping mapping, Result result, CancellationSignal signal,
+                         TransactionHandler handler) throws Exception {
+        result.format = FORMAT_XLSX;
+        Collector collector = new Collector(mapping, result, signal, handler);
+        readXlsxRows(file, result, collector);
+        collector.finish();
+    }
+
+    // ==================== ROWS → TRANSACTIONS ====================
+
+    private static final class Collector implements RowHandler {
+        private final Result result;
+        private final CancellationSignal signal;
+        private final TransactionHandler handler;
+        private final List<List<String>> sample = new ArrayList<>();
+        private Mapping mapping;
+        private int rowIndex = 0; // non-empty rows read so far
+
+        Collector(Mapping mapping, Result result, CancellationSignal signal, TransactionHandler handler) {
+            this.mapping = mapping;
+            this.result = result;
+            this.signal = signal;
+            this.handler = handler;
+            result.mapping = mapping;
+        }
+
+        @Override
+        public void onRow(List<String> cells) throws Exception {
+            if (mapping == null) {
+                sample.add(cells);
+                if (sample.size() >= SAMPLE_ROWS) replaySample();
+                return;
+            }
+            if ((rowIndex & 255) == 0) signal.throwIfCanceled();
+            process(cells, rowIndex++);
+        }
+
+        void finish() throws Exception {
+            if (mapping == null) replaySample();
+        }
+
+        private void replaySample() throws Exception {
+            mapping = detectMapping(sample);
+            if (mapping == null) throw new PluginTaskExecutor.Rejection("Could not find the date and amount columns");
+            result.mapping = mapping;
+            for (List<String> row : sample) process(row, rowIndex++);
+            sample.clear();
+        }
+
+        private void process(List<String> cells, int index) throws Exception {
+            if (index <= mapping.headerRow) return;
+            result.rows++;
+
+            Transaction tx = toTransaction(cells, mapping, index + 1);
+            if (tx == null) {
+                result.skipped++;
+                return;
+            }
+            result.parsed++;
+            handler.onTransaction(tx);
+        }
+    }
+
+    /**
+     * Categorizes the transactions and hands them to the listener in chunks
+     */
+    private static final class Chunks implements TransactionHandler {
+        private final Context context;
+        private final int chunkSize;
+        private final Result result;
+        private final ChunkListener listener;
+        private JSArray pending = new JSArray();
+
+        Chunks(Context context, int chunkSize, Result result, ChunkListener listener) {
+            this.context = context;
+            this.chunkSize = chunkSize;
+            this.result = result;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onTransaction(Transaction tx) throws Exception {
+            JSObject json = tx.toJSObject();
+            MerchantCategoryIndex.attachCategory(context, json);
+            pending.put(json);
+            if (pending.length() >= chunkSize) flush();
+        }
+
+        void flush() throws Exception {
+            if (pending.length() == 0) return;
+            result.chunks++;
+            JSArray chunk = pending;
+            pending = new JSArray();
+            listener.onChunk(chunk, result);
+        }
+    }
+
+    private static Transaction toTransaction(List<String> cells, Mapping mapping, int row) {
+        String date = parseDate(cell(cells, mapping.date), mapping.dayFirst);
+        if (date == null) return null;
+
+        double amount = Double.NaN;
+        if (mapping.amount >= 0) {
+            amount = parseAmount(cell(cells, mapping.amount));
+        }
+        if ((Double.isNaN(amount) || amount == 0) && (mapping.debit >= 0 || mapping.credit >= 0)) {
+            double debit = parseAmount(cell(cells, mapping.debit));
+            double credit = parseAmount(cell(cells, mapping.credit));
+            // Debit columns are unsigned on some statements and negative on others
+            if (!Double.isNaN(debit) && debit != 0) amount = -Math.abs(debit);
+            else if (!Double.isNaN(credit) && credit != 0) amount = Math.abs(credit);
+        }
+        if (Double.isNaN(amount) || amount == 0) return null;
+
+        StringBuilder description = new StringBuilder();
+        for (int column : mapping.description) {
+            String text = cell(cells, column).replaceAll("\\s+", " ").trim();
+            if (text.isEmpty()) continue;
+            if (description.length() > 0) description.append(" - ");
+            description.append(text);
+        }
+        String text = description.length() > 0 ? description.toString() : "Movimento bancario";
+        if (text.length() > MAX_DESCRIPTION) text = text.substring(0, MAX_DESCRIPTION);
+
+        return new Transaction(date, Math.round(Math.abs(amount) * 100) / 100.0, amount < 0 ? "expense" : "income",
+            text, row);
+    }
+
+    private static String cell(List<String> cells, int column) {
+        if (column < 0 || column >= cells.size()) return "";
+        String value = cells.get(column);
+        return value != null ? value : "";
+    }
+
+    // ==================== COLUMN DETECTION ====================
+
+    static Mapping detectMapping(List<List<String>> sample) {
+        Mapping mapping = findHeader(sample);
+        if (mapping == null) mapping = inferColumns(sample);
+        if (mapping == null) return null;
+
+        // Day-first unless a date only makes sense month-first (12/25/2024)
+        boolean dayFirst = true;
+        for (int r = mapping.headerRow + 1; r < sample.size(); r++) {
+            Matcher m = LOCAL_DATE.matcher(cell(sample.get(r), mapping.date).trim());
+            if (!m.find()) continue;
+            int first = Integer.parseInt(m.group(1));
+            int second = Integer.parseInt(m.group(2));
+            if (first > 12) break;
+            if (second > 12) {
+                dayFirst = false;
+                break;
+            }
+        }
+        mapping.dayFirst = dayFirst;
+        return mapping;
+    }
+
+    private static Mapping findHeader(List<List<String>> sample) {
+        for (int r = 0; r < sample.size(); r++) {
+            List<String> cells = sample.get(r);
+            Mapping mapping = new Mapping();
+            mapping.headerRow = r;
+            int valueDate = -1;
+            List<Integer> description = new ArrayList<>();
+
+            for (int c = 0; c < cells.size(); c++) {
+                Set<String> tokens = tokens(cells.get(c));
+                if (tokens.isEmpty()) continue;
+                if (containsAny(tokens, DATE_WORDS)) {
+                    // Prefer the booking date over the value date
+                    if (containsAny(tokens, VALUE_DATE_WORDS)) {
+                        if (valueDate < 0) valueDate = c;
+                    } else if (mapping.date < 0) {
+                        mapping.date = c;
+                    }
+                } else if (containsAny(tokens, DEBIT_WORDS)) {
+                    if (mapping.debit < 0) mapping.debit = c;
+                } else if (containsAny(tokens, CREDIT_WORDS)) {
+                    if (mapping.credit < 0) mapping.credit = c;
+                } else if (containsAny(tokens, AMOUNT_WORDS)) {
+                    if (mapping.amount < 0) mapping.amount = c;
+                } else if (containsAny(tokens, DESCRIPTION_WORDS)) {
+                    description.add(c);
+                }
+            }
+            if (mapping.date < 0) mapping.date = valueDate;
+            if (mapping.isUsable()) {
+                mapping.description = toArray(description);
+                return mapping;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * No header: the column most often holding dates, the most "monetary" numeric column
+     * and the one with the longest text
+     */
+    private static Mapping inferColumns(List<List<String>> sample) {
+        int columns = 0;
+        for (List<String> row : sample) columns = Math.max(columns, row.size());
+        if (columns == 0) return null;
+
+        int[] dates = new int[columns];
+        int[] numbers = new int[columns];
+        int[] money = new int[columns];
+        long[] text = new long[columns];
+        for (List<String> row : sample) {
+            for (int c = 0; c < row.size(); c++) {
+                String value = cell(row, c).trim();
+                if (value.isEmpty()) continue;
+                if (parseDate(value, true) != null) {
+                    dates[c]++;
+                } else if (!Double.isNaN(parseAmount(value))) {
+                    numbers[c]++;
+                    if (value.indexOf(',') >= 0 || value.indexOf('.') >= 0 || value.indexOf('-') >= 0) money[c]++;
+                } else {
+                    text[c] += value.length();
+                }
+            }
+        }
+
+        int threshold = Math.max(1, sample.size() / 3);
+        Mapping mapping = new Mapping();
+        for (int c = 0; c < columns; c++) {
+            if (dates[c] >= threshold && (mapping.date < 0 || dates[c] > dates[mapping.date])) mapping.date = c;
+        }
+        for (int c = 0; c < columns; c++) {
+            if (c == mapping.date || numbers[c] < threshold) continue;
+            if (mapping.amount < 0 || numbers[c] + money[c] > numbers[mapping.amount] + money[mapping.amount]) mapping.amount = c;
+        }
+        int description = -1;
+        for (int c = 0; c < columns; c++) {
+            if (c == mapping.date || c == mapping.amount || text[c] == 0) continue;
+            if (description < 0 || text[c] > text[description]) description = c;
+        }
+        if (description >= 0) mapping.description = new int[]{description};
+        return mapping.isUsable() ? mapping : null;
+    }
+
+    private static Set<String> tokens(String header) {
+        Set<String> tokens = new HashSet<>();
+        if (header == null) return tokens;
+        for (String token : stripAccents(header.toLowerCase(Locale.ROOT)).split("[^a-z]+")) {
+            if (!token.isEmpty()) tokens.add(token);
+        }
+        return tokens;
+    }
+
+    private static String stripAccents(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case 'à': case 'á': case 'â': case 'ä': sb.append('a'); break;
+                case 'è': case 'é': case 'ê': case 'ë': sb.append('e'); break;
+                case 'ì': case 'í': case 'î': case 'ï': sb.append('i'); break;
+                case 'ò': case 'ó': case 'ô': case 'ö': sb.append('o'); break;
+                case 'ù': case 'ú': case 'û': case 'ü': sb.append('u'); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean containsAny(Set<String> tokens, Set<String> words) {
+        for (String token : tokens) {
+            if (words.contains(token)) return true;
+        }
+        return false;
+    }
+
+    private static Set<String> words(String... words) {
+        return new HashSet<>(Arrays.asList(words));
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) array[i] = list.get(i);
+        return array;
+    }
+
+    // ==================== VALUES ====================
+
+    /**
+     * Date as YYYY-MM-DD: ISO (also with a time), dd/MM/yyyy, dd.MM.yy... (MM/dd when !dayFirst)
+     */
+    static String parseDate(String raw, boolean dayFirst) {
+        if (raw == null) return null;
+        String s = raw.trim();
+        if (s.length() < 6) return null;
+
+        int year;
+        int month;
+        int day;
+        Matcher m = ISO_DATE.matcher(s);
+        if (m.find()) {
+            year = Integer.parseInt(m.group(1));
+            month = Integer.parseInt(m.group(2));
+            day = Integer.parseInt(m.group(3));
+        } else {
+            m = LOCAL_DATE.matcher(s);
+            if (!m.find()) return null;
+            int first = Integer.parseInt(m.group(1));
+            int second = Integer.parseInt(m.group(2));
+            day = dayFirst ? first : second;
+            month = dayFirst ? second : first;
+            year = Integer.parseInt(m.group(3));
+            if (m.group(3).length() == 2) year += year > 70 ? 1900 : 2000;
+        }
+        if (month < 1 || month > 12 || day < 1 || day > 31 || year < 1970 || year > 2100) return null;
+        return isoDate(year, month, day);
+    }
+
+    /**
+     * Amount in Italian or English notation: "-1.234,56", "1,234.56", "€ 12,50", "12,50-", "(12.50)".
+     * NaN if the text is not a number.
+     */
+    static double parseAmount(String raw) {
+        if (raw == null) return Double.NaN;
+        String s = raw.trim();
+        if (s.isEmpty()) return Double.NaN;
+        if (PLAIN_NUMBER.matcher(s).matches()) return Double.parseDouble(s);
+
+        boolean negative = false;
+        if (s.length() > 2 && s.charAt(0) == '(' && s.charAt(s.length() - 1) == ')') {
+            negative = true;
+            s = s.substring(1, s.length() - 1);
+        }
+
+        StringBuilder number = new StringBuilder(s.length());
+        int dots = 0;
+        int commas = 0;
+        int lastDot = -1;
+        int lastComma = -1;
+        boolean signAfterDigits = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (signAfterDigits) return Double.NaN; // "2024-01-15"
+                number.append(c);
+            } else if (c == '.') {
+                dots++;
+                lastDot = number.length();
+                number.append(c);
+            } else if (c == ',') {
+                commas++;
+                lastComma = number.length();
+                number.append(c);
+            } else if (c == '-' || c == '+') {
+                if (number.length() > 0) signAfterDigits = true;
+                if (c == '-') negative = true;
+            } else if (!isCurrencyChar(c)) {
+                return Double.NaN;
+            }
+        }
+        if (number.length() == 0) return Double.NaN;
+
+        // The separator written last is the decimal one; a lone comma is decimal (Italian)
+        char decimal;
+        if (dots > 0 && commas > 0) decimal = lastComma > lastDot ? ',' : '.';
+        else if (commas > 0) decimal = commas == 1 ? ',' : 0;
+        else decimal = dots == 1 ? '.' : 0;
+
+        StringBuilder plain = new StringBuilder(number.length() + 1);
+        if (negative) plain.append('-');
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c == decimal) plain.append('.');
+            else if (c != '.' && c != ',') plain.append(c);
+        }
+        try {
+            return Double.parseDouble(plain.toString());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static boolean isCurrencyChar(char c) {
+        return c == ' ' || c == '\u00A0' || c == '\'' || c == '\u20AC' || c == '$' || c == '\u00A3'
+            || c == 'E' || c == 'U' || c == 'R' || c == 'e' || c == 'u' || c == 'r';
+    }
+
+    /**
+     * Excel serial date (days since 1899-12-30) as YYYY-MM-DD
+     */
+    static String serialToIso(double serial) {
+        long epochDay = (long) Math.floor(serial) - 25569;
+        // Days → civil date (proleptic Gregorian)
+        long z = epochDay + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+        return isoDate(year, month, day);
+    }
+
+    private static String isoDate(int year, int month, int day) {
+        char[] out = new char[10];
+        out[0] = (char) ('0' + year / 1000 % 10);
+        out[1] = (char) ('0' + year / 100 % 10);
+        out[2] = (char) ('0' + year / 10 % 10);
+        out[3] = (char) ('0' + year % 10);
+        out[4] = '-';
+        out[5] = (char) ('0' + month / 10);
+        out[6] = (char) ('0' + month % 10);
+        out[7] = '-';
+        out[8] = (char) ('0' + day / 10);
+        out[9] = (char) ('0' + day % 10);
+        return new String(out);
+    }
+
+    // ==================== CSV ====================
+
+    private static void readCsvRows(BufferedInputStream in, Result result, RowHandler handler,
+                                    CancellationSignal signal) throws Exception {
+        in.mark(SNIFF_BYTES);
+        byte[] head = new byte[SNIFF_BYTES];
+        int n = readFully(in, head, SNIFF_BYTES);
+        in.reset();
+
+        int bom = n >= 3 && head[0] == (byte) 0xEF && head[1] == (byte) 0xBB && head[2] == (byte) 0xBF ? 3 : 0;
+        Charset charset = bom > 0 || isUtf8(head, n, n == SNIFF_BYTES) ? StandardCharsets.UTF_8 : windows1252();
+        char delimiter = detectDelimiter(new String(head, bom, Math.max(0, n - bom), charset));
+        if (bom > 0) in.skip(bom);
+
+        CountingInputStream counting = new CountingInputStream(in);
+        Reader reader = new InputStreamReader(counting, charset);
+        char[] buffer = new char[8192];
+        List<String> row = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean quoteClosed = false;
+        boolean lastCR = false;
+
+        int len;
+        while ((len = reader.read(buffer)) > 0) {
+            for (int i = 0; i < len; i++) {
+                char c = buffer[i];
+                boolean cr = false;
+                if (quoted) {
+                    if (c == '"') {
+                        quoted = false;
+                        quoteClosed = true;
+                    } else {
+                        if (field.length() >= MAX_FIELD_CHARS) {
+                            throw new PluginTaskExecutor.Rejection("Malformed CSV: unterminated quoted field");
+                        }
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    if (quoteClosed) {
+                        // "" inside a quoted field
+                        field.append('"');
+                        quoted = true;
+                        quoteClosed = false;
+                    } else if (field.length() == 0) {
+                        quoted = true;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == delimiter) {
+                    row.add(field.toString());
+                    field.setLength(0);
+                    quoteClosed = false;
+                } else if (c == '\n' || c == '\r') {
+                    cr = c == '\r';
+                    if (!(c == '\n' && lastCR)) {
+                        row.add(field.toString());
+                        field.setLength(0);
+                        quoteClosed = false;
+                        result.bytesRead = counting.count;
+                        emitRow(row, handler);
+                        row = new ArrayList<>();
+                    }
+                } else {
+                    quoteClosed = false;
+                    field.append(c);
+                }
+                lastCR = cr;
+            }
+            signal.throwIfCanceled();
+        }
+        if (field.length() > 0 || !row.isEmpty()) {
+            row.add(field.toString());
+            emitRow(row, handler);
+        }
+        result.bytesRead = counting.count;
+    }
+
+    private static void emitRow(List<String> row, RowHandler handler) throws Exception {
+        for (String value : row) {
+            if (!value.trim().isEmpty()) {
+                handler.onRow(row);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Delimiter found the same (non-zero) number of times on most of the first lines
+     */
+    static char detectDelimiter(String head) {
+        String[] lines = head.split("\r\n|\n|\r", SAMPLE_ROWS + 1);
+        int lineCount = Math.min(lines.length, SAMPLE_ROWS);
+        char best = ';';
+        int bestLines = 0;
+        int bestCount = 0;
+
+        for (char delimiter : DELIMITERS) {
+            Map<Integer, Integer> frequency = new HashMap<>();
+            for (int l = 0; l < lineCount; l++) {
+                int count = 0;
+                boolean quoted = false;
+                String line = lines[l];
+                for (int i = 0; i < line.length(); i++) {
+                    char c = line.charAt(i);
+                    if (c == '"') quoted = !quoted;
+                    else if (c == delimiter && !quoted) count++;
+                }
+                if (count == 0) continue;
+                Integer seen = frequency.get(count);
+                frequency.put(count, seen == null ? 1 : seen + 1);
+            }
+            for (Map.Entry<Integer, Integer> entry : frequency.entrySet()) {
+                int matching = entry.getValue();
+                int count = entry.getKey();
+                if (matching > bestLines || (matching == bestLines && count > bestCount)) {
+                    best = delimiter;
+                    bestLines = matching;
+                    bestCount = count;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Valid UTF-8? (a sequence cut by the end of a partial buffer is accepted)
+     */
+    private static boolean isUtf8(byte[] bytes, int length, boolean partial) {
+        int i = 0;
+        while (i < length) {
+            int b = bytes[i] & 0xFF;
+            int extra;
+            if (b < 0x80) extra = 0;
+            else if (b >= 0xC2 && b <= 0xDF) extra = 1;
+            else if (b >= 0xE0 && b <= 0xEF) extra = 2;
+            else if (b >= 0xF0 && b <= 0xF4) extra = 3;
+            else return false;
+            for (int k = 1; k <= extra; k++) {
+                if (i + k >= length) return partial;
+                if ((bytes[i + k] & 0xC0) != 0x80) return false;
+            }
+            i += extra + 1;
+        }
+        return true;
+    }
+
+    private static Charset windows1252() {
+        try {
+            return Charset.forName("windows-1252");
+        } catch (Exception e) {
+            return StandardCharsets.ISO_8859_1;
+        }
+    }
+
+    // ==================== XLSX ====================
+
+    private static void readXlsxRows(File file, Result result, RowHandler handler) throws Exception {
+        ZipFile zip;
+        try {
+            zip = new ZipFile(file);
+        } catch (IOException e) {
+            throw new PluginTaskExecutor.Rejection("Invalid XLSX file");
+        }
+        try {
+            List<String> strings = readSharedStrings(zip);
+            boolean[] dateStyles = readDateStyles(zip);
+            ZipEntry sheet = zip.getEntry(firstSheetPath(zip));
+            if (sheet == null) sheet = zip.getEntry("xl/worksheets/sheet1.xml");
+            if (sheet == null) throw new PluginTaskExecutor.Rejection("No worksheet in XLSX file");
+
+            result.totalBytes = sheet.getSize();
+            CountingInputStream in = new CountingInputStream(zip.getInputStream(sheet));
+            try {
+                parseXml(in, new SheetHandler(strings, dateStyles, handler, in, result));
+            } finally {
+                in.close();
+            }
+            result.bytesRead = in.count;
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static List<String> readSharedStrings(ZipFile zip) throws Exception {
+        final List<String> strings = new ArrayList<>();
+        ZipEntry entry = zip.getEntry("xl/sharedStrings.xml");
+        if (entry == null) return strings;
+
+        InputStream in = zip.getInputStream(entry);
+        try {
+            parseXml(in, new DefaultHandler() {
+                private final StringBuilder text = new StringBuilder();
+                private boolean inText = false;
+                private boolean inPhonetic = false;
+
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    String name = localName(qName);
+                    if ("si".equals(name)) text.setLength(0);
+                    else if ("rPh".equals(name)) inPhonetic = true;
+                    else if ("t".equals(name)) inText = !inPhonetic;
+                }
+
+                @Override
+                public void characters(char[] ch, int start, int length) {
+                    if (inText) text.append(ch, start, length);
+                }
+
+                @Override
+                public void endElement(String uri, String localName, String qName) {
+                    String name = localName(qName);
+                    if ("t".equals(name)) inText = false;
+                    else if ("rPh".equals(name)) inPhonetic = false;
+                    else if ("si".equals(name)) strings.add(text.toString());
+                }
+            });
+        } finally {
+            in.close();
+        }
+        return strings;
+    }
+
+    /**
+     * For each cell style (cellXfs index): does its number format show a date?
+     */
+    private static boolean[] readDateStyles(ZipFile zip) throws Exception {
+        ZipEntry entry = zip.getEntry("xl/styles.xml");
+        if (entry == null) return new boolean[0];
+
+        final Map<Integer, String> formats = new HashMap<>();
+        final List<Integer> styles = new ArrayList<>();
+        InputStream in = zip.getInputStream(entry);
+        try {
+            parseXml(in, new DefaultHandler() {
+                private boolean inCellXfs = false;
+
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    String name = localName(qName);
+                    if ("numFmt".equals(name)) {
+                        Integer id = parseInt(attributes.getValue("numFmtId"));
+                        if (id != null) formats.put(id, attributes.getValue("formatCode"));
+                    } else if ("cellXfs".equals(name)) {
+                        inCellXfs = true;
+                    } else if ("xf".equals(name) && inCellXfs) {
+                        Integer id = parseInt(attributes.getValue("numFmtId"));
+                        styles.add(id != null ? id : 0);
+                    }
+                }
+
+                @Override
+                public void endElement(String uri, String localName, String qName) {
+                    if ("cellXfs".equals(localName(qName))) inCellXfs = false;
+                }
+            });
+        } finally {
+            in.close();
+        }
+
+        boolean[] dates = new boolean[styles.size()];
+        for (int i = 0; i < dates.length; i++) {
+            int id = styles.get(i);
+            dates[i] = isDateFormat(id, formats.get(id));
+        }
+        return dates;
+    }
+
+    private static boolean isDateFormat(int id, String code) {
+        if (code == null) {
+            // Built-in date formats (time-only ones excluded)
+            return (id >= 14 && id <= 17) || id == 22 || (id >= 27 && id <= 36) || (id >= 50 && id <= 58);
+        }
+        String plain = code.replaceAll("\"[^\"]*\"|\\[[^\\]]*\\]|\\\\.", "").toLowerCase(Locale.ROOT);
+        return plain.indexOf('d') >= 0 || plain.indexOf('y') >= 0;
+    }
+
+    /**
+     * Path of the first sheet of the workbook (workbook.xml + its relationships)
+     */
+    private static String firstSheetPath(ZipFile zip) throws Exception {
+        ZipEntry workbook = zip.getEntry("xl/workbook.xml");
+        ZipEntry rels = zip.getEntry("xl/_rels/workbook.xml.rels");
+        if (workbook == null || rels == null) return "xl/worksheets/sheet1.xml";
+
+        final String[] relationId = {null};
+        InputStream in = zip.getInputStream(workbook);
+        try {
+            parseXml(in, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    if (relationId[0] != null || !"sheet".equals(localName(qName))) return;
+                    for (int i = 0; i < attributes.getLength(); i++) {
+                        if (attributes.getQName(i).endsWith(":id")) relationId[0] = attributes.getValue(i);
+                    }
+                }
+            });
+        } finally {
+            in.close();
+        }
+        if (relationId[0] == null) return "xl/worksheets/sheet1.xml";
+
+        final String[] target = {null};
+        in = zip.getInputStream(rels);
+        try {
+            parseXml(in, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    if ("Relationship".equals(localName(qName)) && relationId[0].equals(attributes.getValue("Id"))) {
+                        target[0] = attributes.getValue("Target");
+                    }
+                }
+            });
+        } finally {
+            in.close();
+        }
+        if (target[0] == null) return "xl/worksheets/sheet1.xml";
+        return target[0].startsWith("/") ? target[0].substring(1) : "xl/" + target[0];
+    }
+
+    private static final class SheetHandler extends DefaultHandler {
+        private final List<String> strings;
+        private final boolean[] dateStyles;
+        private final RowHandler handler;
+        private final CountingInputStream in;
+        private final Result result;
+        private final StringBuilder value = new StringBuilder();
+        private List<String> cells;
+        private int column;
+        private int nextColumn;
+        private String type;
+        private int style;
+        private boolean capture = false;
+
+        SheetHandler(List<String> strings, boolean[] dateStyles, RowHandler handler, CountingInputStream in, Result result) {
+            this.strings = strings;
+            this.dateStyles = dateStyles;
+            this.handler = handler;
+            this.in = in;
+            this.result = result;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            String name = localName(qName);
+            if ("row".equals(name)) {
+                cells = new ArrayList<>();
+                nextColumn = 0;
+            } else if ("c".equals(name) && cells != null) {
+                String ref = attributes.getValue("r");
+                column = ref != null ? columnIndex(ref) : nextColumn;
+                type = attributes.getValue("t");
+                Integer s = parseInt(attributes.getValue("s"));
+                style = s != null ? s : -1;
+                value.setLength(0);
+            } else if ("v".equals(name) || "t".equals(name)) {
+                // <t> is the text of inline strings (<is><t>)
+                capture = cells != null;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (capture) value.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            String name = localName(qName);
+            if ("v".equals(name) || "t".equals(name)) {
+                capture = false;
+            } else if ("c".equals(name) && cells != null) {
+                if (column >= 0 && column < MAX_COLUMNS) {
+                    while (cells.size() <= column) cells.add("");
+                    cells.set(column, cellValue());
+                }
+                nextColumn = column + 1;
+            } else if ("row".equals(name) && cells != null) {
+                result.bytesRead = in.count;
+                try {
+                    emitRow(cells, handler);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new SAXException(e);
+                }
+                cells = null;
+            }
+        }
+
+        private String cellValue() {
+            String raw = value.toString();
+            if ("s".equals(type)) {
+                Integer index = parseInt(raw.trim());
+                return index != null && index >= 0 && index < strings.size() ? strings.get(index) : "";
+            }
+            if ("e".equals(type)) return "";
+            if (type == null || "n".equals(type)) {
+                if (style >= 0 && style < dateStyles.length && dateStyles[style] && !raw.isEmpty()) {
+                    try {
+                        return serialToIso(Double.parseDouble(raw));
+                    } catch (NumberFormatException e) {
+                        return raw;
+                    }
+                }
+            }
+            return raw;
+        }
+    }
+
+    private static int columnIndex(String ref) {
+        int index = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char c = ref.charAt(i);
+            if (c < 'A' || c > 'Z') break;
+            index = index * 26 + (c - 'A' + 1);
+        }
+        return index - 1;
+    }
+
+    private static void parseXml(InputStream in, DefaultHandler handler) throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        try {
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        } catch (Exception ignored) {
+            // Not supported by every parser: entities are not resolved there anyway
+        }
+        try {
+            factory.newSAXParser().parse(in, handler);
+        } catch (SAXException e) {
+            if (e.getException() != null) throw e.getException();
+            throw new PluginTaskExecutor.Rejection("Invalid XLSX file: " + e.getMessage());
+        }
+    }
+
+    private static String localName(String qName) {
+        int colon = qName.indexOf(':');
+        return colon >= 0 ? qName.substring(colon + 1) : qName;
+    }
+
+    private static Integer parseInt(String s) {
+        if (s == null) return null;
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // ==================== IO ====================
+
+    private static File copyToCache(Context context, InputStream in, CancellationSignal signal) throws IOException {
+        File dir = new File(context.getCacheDir(), IMPORTS_DIR);
+        if (!dir.exists()) dir.mkdirs();
+        File file = new File(dir, UUID.randomUUID().toString() + ".xlsx");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+                signal.throwIfCanceled();
+            }
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            file.delete();
+            throw e;
+        }
+        out.close();
+        Log.d(TAG, "📄 XLSX copied to cache (" + file.length() / 1024 + " KB)");
+        return file;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int n = in.read(buffer, total, length - total);
+            if (n < 0) break;
+            total += n;
+        }
+        return total;
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package com.gestore.spese;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Recurring charges found in the expense history, to suggest as subscriptions.
+ *
+ * Expenses are grouped by merchant (MerchantCategoryIndex.merchantKey) into day-sorted primitive
+ * arrays; inside a merchant the amounts are split into bands (a price change of a few percent
+ * stays in the same band, a different product does not). The intervals between the charges of a
+ * band are matched against the weekly / monthly / yearly cadences (on the calendar: a monthly
+ * charge on the 31st is expected on the 28th in February) with a tolerance: the share of intervals
+ * that fit, their jitter, how often the amount repeats exactly and the number of charges give the
+ * confidence. A skipped charge (an interval of two periods) counts half.
+ *
+ * Only the merchants touched since the last detection are analyzed again. The date of "today"
+ * is applied at query time: a pattern that missed its last charge loses confidence, one that
+ * missed two is considered cancelled.
+ */
+public final class SubscriptionDetector {
+
+    static final int WEEKLY = 0;
+    static final int MONTHLY = 1;
+    static final int YEARLY = 2;
+
+    private static final String[] CADENCE_NAMES = {"weekly", "monthly", "yearly"};
+    private static final double[] PERIODS = {7, 30.44, 365.25};
+    private static final int[] TOLERANCES = {1, 4, 10}; // days around one period
+    private static final int[] MIN_CHARGES = {4, 3, 2};
+    private static final int[] FULL_SUPPORT = {6, 4, 2}; // intervals for full confidence
+
+    // Amounts within 15% (at least 1€) of the previous one are the same band
+    private static final double BAND_RATIO = 0.15;
+    private static final long BAND_MIN_CENTS = 100;
+
+    private static final double MISSED_PENALTY = 0.6;
+
+    private static final class Entry {
+        final String merchant;
+        final int day;
+
+        Entry(String merchant, int day) {
+            this.merchant = merchant;
+            this.day = day;
+        }
+    }
+
+    /**
+     * Charges of one merchant, sorted by day (parallel arrays, grown by doubling)
+     */
+    private static final class Group {
+        int size;
+        int[] days = new int[4];
+        long[] cents = new long[4];
+        String[] ids = new String[4];
+        String[] names = new String[4];
+        String[] categories = new String[4];
+        boolean dirty = true;
+        List<Pattern> patterns = new ArrayList<>();
+    }
+
+    private static final class Pattern {
+        int cadence;
+        int charges;
+        int firstDay;
+        int lastDay;
+        int anchor; // day of the month (monthly) or {month * 32 + day} (yearly) of the charges
+        long lastCents;
+        long averageCents;
+        double confidence; // before applying "today"
+        String name;
+        String category;
+        String lastId;
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Group> groups = new HashMap<>();
+
+    public synchronized void clear() {
+        entries.clear();
+        groups.clear();
+    }
+
+    /**
+     * Insert or replace a transaction (null dateDay: undated). Only dated expenses of a
+     * recognizable merchant are kept.
+     */
+    public synchronized void put(String id, String type, double amount, String description, String category, Integer dateDay) {
+        remove(id);
+        if (!"expense".equals(type) || dateDay == null || Double.isNaN(amount) || Double.isInfinite(amount)) return;
+        int day = dateDay;
+        long cents = Math.round(Math.abs(amount) * 100);
+        if (cents == 0) return;
+        String merchant = MerchantCategoryIndex.merchantKey(description);
+        if (merchant == null) return;
+
+        Group group = groups.get(merchant);
+        if (group == null) {
+            group = new Group();
+            groups.put(merchant, group);
+        }
+        if (group.size == group.days.length) grow(group);
+
+        // After the charges of the same day: appending in date order costs O(1)
+        int at = upperBound(group.days, group.size, day);
+        int tail = group.size - at;
+        System.arraycopy(group.days, at, group.days, at + 1, tail);
+        System.arraycopy(group.cents, at, group.cents, at + 1, tail);
+        System.arraycopy(group.ids, at, group.ids, at + 1, tail);
+        System.arraycopy(group.names, at, group.names, at + 1, tail);
+        System.arraycopy(group.categories, at, group.categories, at + 1, tail);
+        group.days[at] = day;
+        group.cents[at] = cents;
+        group.ids[at] = id;
+        group.names[at] = description;
+        group.categories[at] = category;
+        group.size++;
+        group.dirty = true;
+
+        entries.put(id, new Entry(merchant, day));
+    }
+
+    public synchronized void remove(String id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) return;
+        Group group = groups.get(entry.merchant);
+        if (group == null) return;
+
+        int at = upperBound(group.days, group.size, entry.day - 1);
+        while (at < group.size && group.days[at] == entry.day && !group.ids[at].equals(id)) at++;
+        if (at == group.size || group.days[at] != entry.day) return;
+
+        int tail = group.size - at - 1;
+        System.arraycopy(group.days, at + 1, group.days, at, tail);
+        System.arraycopy(group.cents, at + 1, group.cents, at, tail);
+        System.arraycopy(group.ids, at + 1, group.ids, at, tail);
+        System.arraycopy(group.names, at + 1, group.names, at, tail);
+        System.arraycopy(group.categories, at + 1, group.categories, at, tail);
+        group.size--;
+        group.ids[group.size] = null;
+        group.names[group.size] = null;
+        group.categories[group.size] = null;
+        group.dirty = true;
+
+        if (group.size == 0) groups.remove(entry.merchant);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * A recurring charge suggested as subscription
+     */
+    static final class Suggestion {
+        final String merchant;
+        final String name;
+        final String category;
+        final int cadence;
+        final long cents; // last charge
+        final long averageCents;
+        final int charges;
+        final int firstDay; // epoch days
+        final int lastDay;
+        final int nextDay;
+        final double confidence;
+        final String lastTransactionId;
+
+        Suggestion(String merchant, Pattern pattern, int nextDay, double confidence) {
+            this.merchant = merchant;
+            this.name = pattern.name;
+            this.category = pattern.category;
+            this.cadence = pattern.cadence;
+            this.cents = pattern.lastCents;
+            this.averageCents = pattern.averageCents;
+            this.charges = pattern.charges;
+            this.firstDay = pattern.firstDay;
+            this.lastDay = pattern.lastDay;
+            this.nextDay = nextDay;
+            this.confidence = confidence;
+            this.lastTransactionId = pattern.lastId;
+        }
+
+        JSObject toJSObject() {
+            JSObject ret = new JSObject();
+            ret.put("merchant", merchant);
+            ret.put("name", name);
+            ret.put("category", category);
+            ret.put("cadence", CADENCE_NAMES[cadence]);
+            ret.put("amount", cents / 100.0);
+            ret.put("averageAmount", averageCents / 100.0);
+            ret.put("charges", charges);
+            ret.put("firstDate", formatDay(firstDay));
+            ret.put("lastDate", formatDay(lastDay));
+            ret.put("nextDate", formatDay(nextDay));
+            ret.put("confidence", Math.round(confidence * 100) / 100.0);
+            ret.put("lastTransactionId", lastTransactionId);
+            return ret;
+        }
+    }
+
+    /**
+     * Recurring charges still active at the epoch day `today`, most confident first.
+     * Returns {suggestions: [{merchant, name, category, cadence, amount, averageAmount, charges,
+     * firstDate, lastDate, nextDate, confidence, lastTransactionId}], merchants, analyzed}.
+     */
+    public synchronized JSObject detect(int today, double minConfidence) {
+        int analyzed = pendingAnalysis();
+        JSArray suggestions = new JSArray();
+        for (Suggestion suggestion : suggestions(today, minConfidence)) suggestions.put(suggestion.toJSObject());
+
+        JSObject ret = new JSObject();
+        ret.put("suggestions", suggestions);
+        ret.put("merchants", groups.size());
+        ret.put("analyzed", analyzed);
+        return ret;
+    }
+
+    /**
+     * Same as detect(), as plain objects
+     */
+    synchronized List<Suggestion> suggestions(int today, double minConfidence) {
+        List<Suggestion> found = new ArrayList<>();
+
+        for (Map.Entry<String, Group> item : groups.entrySet()) {
+            Group group = item.getValue();
+            if (group.dirty) analyze(group);
+
+            for (Pattern pattern : group.patterns) {
+                // Roll the expected charge forward over the periods already missed
+                int next = advance(pattern, pattern.lastDay);
+                int missed = 0;
+                while (missed < 2 && next + TOLERANCES[pattern.cadence] < today) {
+                    next = advance(pattern, next);
+                    missed++;
+                }
+                if (missed >= 2) continue; // Cancelled or moved elsewhere
+
+                double confidence = pattern.confidence * (missed == 1 ? MISSED_PENALTY : 1);
+                if (confidence < minConfidence) continue;
+                found.add(new Suggestion(item.getKey(), pattern, next, confidence));
+            }
+        }
+
+        Collections.sort(found, new Comparator<Suggestion>() {
+            @Override
+            public int compare(Suggestion a, Suggestion b) {
+                return Double.compare(b.confidence, a.confidence);
+            }
+        });
+        return found;
+    }
+
+    /**
+     * Merchants whose charges changed since the last detection
+     */
+    synchronized int pendingAnalysis() {
+        int dirty = 0;
+        for (Group group : groups.values()) {
+            if (group.dirty) dirty++;
+        }
+        return dirty;
+    }
+
+    // ---- Analysis ----
+
+    private static void analyze(Group group) {
+        group.patterns = new ArrayList<>();
+        group.dirty = false;
+        int n = group.size;
+        if (n < 2) return;
+
+        // Amount bands: sort (cents, index) packed in a long, split where the gap is too large
+        long[] sorted = new long[n];
+        for (int i = 0; i < n; i++) sorted[i] = group.cents[i] << 20 | i;
+        Arrays.sort(sorted);
+        int[] bandOf = new int[n];
+        int bands = 1;
+        long previous = sorted[0] >>> 20;
+        for (int k = 0; k < n; k++) {
+            long cents = sorted[k] >>> 20;
+            if (cents - previous > Math.max((long) (previous * BAND_RATIO), BAND_MIN_CENTS)) bands++;
+            bandOf[(int) (sorted[k] & 0xFFFFF)] = bands - 1;
+            previous = cents;
+        }
+
+        int[] days = new int[n];
+        int[] members = new int[n];
+        for (int band = 0; band < bands; band++) {
+            // Charges of the band in day order, one per day
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                if (bandOf[i] != band) continue;
+                if (count > 0 && days[count - 1] == group.days[i]) continue;
+                days[count] = group.days[i];
+                members[count] = i;
+                count++;
+            }
+            if (count < 2) continue;
+
+            Pattern pattern = match(days, count);
+            if (pattern == null) continue;
+
+            // A subscription repeats the same amount (a price change breaks it once); purchases
+            // that just happen to cost about the same do not
+            long sum = group.cents[members[0]];
+            long sumSquares = sum * sum;
+            int repeats = 0;
+            for (int k = 1; k < count; k++) {
+                long cents = group.cents[members[k]];
+                sum += cents;
+                sumSquares += cents * cents;
+                if (cents == group.cents[members[k - 1]]) repeats++;
+            }
+            double mean = (double) sum / count;
+            double variance = Math.max(0, (double) sumSquares / count - mean * mean);
+            double stability = (0.6 + 0.4 * repeats / (count - 1)) * (1 - Math.min(0.5, Math.sqrt(variance) / mean * 2));
+
+            int last = members[count - 1];
+            pattern.confidence *= stability;
+            pattern.charges = count;
+            pattern.firstDay = days[0];
+            pattern.lastDay = days[count - 1];
+            pattern.anchor = anchorOf(pattern.cadence, days, count);
+            pattern.lastCents = group.cents[last];
+            pattern.averageCents = Math.round(mean);
+            pattern.name = group.names[last];
+            pattern.category = group.categories[last];
+            pattern.lastId = group.ids[last];
+            group.patterns.add(pattern);
+        }
+    }
+
+    /**
+     * Cadence of the sorted days (null if none fits): the median interval picks the cadence,
+     * then every interval is scored against it
+     */
+    private static Pattern match(int[] days, int count) {
+        int intervals = count - 1;
+        int[] gaps = new int[intervals];
+        for (int k = 0; k < intervals; k++) gaps[k] = days[k + 1] - days[k];
+        int[] ordered = gaps.clone();
+        Arrays.sort(ordered);
+        double median = intervals % 2 == 1 ? ordered[intervals / 2]
+            : (ordered[intervals / 2 - 1] + ordered[intervals / 2]) / 2.0;
+
+        int cadence = -1;
+        for (int c = 0; c < PERIODS.length; c++) {
+            if (Math.abs(median - PERIODS[c]) <= TOLERANCES[c]) {
+                cadence = c;
+                break;
+            }
+        }
+        if (cadence < 0 || count < MIN_CHARGES[cadence]) return null;
+
+        int tolerance = TOLERANCES[cadence];
+        double fit = 0;
+        double jitter = 0;
+        int fitting = 0;
+        for (int k = 0; k < intervals; k++) {
+            int gap = gaps[k];
+            int anchor = anchorOf(cadence, days, k + 1);
+            int expected = next(cadence, days[k], anchor);
+            int single = Math.abs(days[k] + gap - expected);
+            int skipped = Math.abs(days[k] + gap - next(cadence, expected, anchor));
+            if (single <= tolerance) {
+                fit += 1;
+                jitter += (double) single / tolerance;
+                fitting++;
+            } else if (skipped <= tolerance * 2) {
+                fit += 0.5;
+            }
+        }
+        if (fitting == 0) return null;
+
+        double share = fit / intervals;
+        double regularity = 1 - 0.5 * (jitter / fitting);
+        double support = intervals >= FULL_SUPPORT[cadence] ? 1 : 0.5 + 0.5 * intervals / FULL_SUPPORT[cadence];
+
+        Pattern pattern = new Pattern();
+        pattern.cadence = cadence;
+        pattern.confidence = share * regularity * support;
+        return pattern;
+    }
+
+    /**
+     * Day of the month (monthly) or month * 32 + day (yearly) the first `count` charges fall on.
+     * Monthly: the median of the last three, so that a charge moved back to the 28th in February
+     * or a late one does not move the following ones
+     */
+    private static int anchorOf(int cadence, int[] days, int count) {
+        if (cadence == WEEKLY) return 0;
+        int[] civil = BalanceLedger.civilFromDays(days[count - 1]);
+        if (cadence == YEARLY || count < 3) return cadence == YEARLY ? civil[1] * 32 + civil[2] : civil[2];
+
+        int a = civil[2];
+        int b = BalanceLedger.civilFromDays(days[count - 2])[2];
+        int c = BalanceLedger.civilFromDays(days[count - 3])[2];
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    /**
+     * Expected charge one period after the epoch day
+     */
+    private static int advance(Pattern pattern, int day) {
+        return next(pattern.cadence, day, pattern.anchor);
+    }
+
+    private static int next(int cadence, int day, int anchor) {
+        switch (cadence) {
+            case WEEKLY:
+                return day + 7;
+            case MONTHLY: {
+                int[] civil = BalanceLedger.civilFromDays(day);
+                int year = civil[0] + (civil[1] == 12 ? 1 : 0);
+                int month = civil[1] == 12 ? 1 : civil[1] + 1;
+                return DashboardAggregates.daysFromCivil(year, month, Math.min(anchor, monthLength(year, month)));
+            }
+            default: {
+                int[] civil = BalanceLedger.civilFromDays(day);
+                int month = anchor / 32;
+                return DashboardAggregates.daysFromCivil(civil[0] + 1, month,
+                    Math.min(anchor % 32, monthLength(civil[0] + 1, month)));
+            }
+        }
+    }
+
+    private static int monthLength(int year, int month) {
+        int next = month == 12 ? DashboardAggregates.daysFromCivil(year + 1, 1, 1)
+            : DashboardAggregates.daysFromCivil(year, month + 1, 1);
+        return next - DashboardAggregates.daysFromCivil(year, month, 1);
+    }
+
+    private static String formatDay(int day) {
+        int[] civil = BalanceLedger.civilFromDays(day);
+        return String.format(Locale.ROOT, "%04d-%02d-%02d", civil[0], civil[1], civil[2]);
+    }
+
+    // ---- Arrays ----
+
+    /**
+     * First index whose day is greater than `day`
+     */
+    private static int upperBound(int[] days, int size, int day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] <= day) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private static void grow(Group group) {
+        int capacity = group.days.length * 2;
+        group.days = Arrays.copyOf(group.days, capacity);
+        group.cents = Arrays.copyOf(group.cents, capacity);
+        group.ids = Arrays.copyOf(group.ids, capacity);
+        group.names = Arrays.copyOf(group.names, capacity);
+        group.categories = Arrays.copyOf(group.categories, capacity);
+    }
+}
@@ -0,0 +1,528 @@
+package com.gestore.spese;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.text.Normalizer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cross-source correlation of the same payment seen as SMS, bank notification and bank API transaction.
+ *
+ * Every parsed event is offered here before it reaches the bridge or storage. Events are kept
+ * as canonical transactions for RETENTION_MS, indexed by amount in cents (TreeMap range lookup,
+ * so the tolerance only touches neighbouring buckets). A new event joins a canonical when:
+ * - same type, amount within tolerance
+ * - inside the time window of the pair (minutes for SMS/notification, days for bank bookings)
+ * - the canonical has no event of the same source yet (two SMS = two payments)
+ * - the merchants are at least MIN_MERCHANT_SIMILARITY alike (same amount and day alone is common)
+ * - the weighted amount / time / merchant / account score reaches MIN_SCORE
+ * The first event stays the canonical one (that is what JS stored, canonicalId = its sourceHash);
+ * later ones only add provenance and are collapsed by the callers.
+ *
+ * The state is written to SharedPreferences at most every SAVE_DELAY_MS on a background thread
+ * (a bank sync offers hundreds of transactions, SMS arrive on the main thread); flush() writes
+ * it right away at the end of a sync.
+ */
+public final class TransactionCorrelator {
+
+    private static final String TAG = "TransactionCorrelator";
+    private static final String PREFS_NAME = "transaction_correlation";
+    private static final String KEY_ENTRIES = "entries";
+
+    public static final String SOURCE_SMS = "sms";
+    public static final String SOURCE_NOTIFICATION = "notification";
+    public static final String SOURCE_BANK = "bank";
+
+    private static final long RETENTION_MS = 7L * 24 * 60 * 60 * 1000;
+    private static final int MAX_ENTRIES = 500;
+    // SMS and push of the same card payment arrive within minutes
+    private static final long LIVE_WINDOW_MS = 30L * 60 * 1000;
+    // Bank API only has dates, bookings can lag the payment by a few working days
+    private static final int BANK_WINDOW_DAYS = 5;
+    private static final double AMOUNT_TOLERANCE = 0.01; // ±1%
+    private static final double MIN_SCORE = 0.6;
+    private static final double MIN_MERCHANT_SIMILARITY = 0.5;
+    private static final long SAVE_DELAY_MS = 2000;
+
+    private static final Object LOCK = new Object();
+    private static final TreeMap<Long, List<Entry>> byCents = new TreeMap<>();
+    private static final List<Entry> entries = new ArrayList<>();
+    private static boolean loaded = false;
+    private static boolean dirty = false;
+    private static boolean saveScheduled = false;
+
+    private static final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "correlation-save");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private TransactionCorrelator() {
+    }
+
+    private static final class Entry {
+        String canonicalId;
+        String type;
+        double amount;
+        long cents;
+        long timestamp;
+        String date;
+        String account;
+        String description;
+        String merchant;
+        JSONArray sources = new JSONArray();
+        long updatedAt;
+
+        boolean hasSource(String source) {
+            for (int i = 0; i < sources.length(); i++) {
+                JSONObject s = sources.optJSONObject(i);
+                if (s != null && source.equals(s.optString("source"))) return true;
+            }
+            return false;
+        }
+
+        boolean hasRef(String source, String ref) {
+            for (int i = 0; i < sources.length(); i++) {
+                JSONObject s = sources.optJSONObject(i);
+                if (s != null && source.equals(s.optString("source")) && ref.equals(s.optString("ref"))) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Outcome of offer()
+     */
+    public static final class Match {
+        /** Canonical transaction with the provenance of every source */
+        public final JSObject canonical;
+        /** First time this payment is seen: the caller goes on as usual */
+        public final boolean isNew;
+        /** Same source event offered again (re-posted notification, replayed bank page) */
+        public final boolean repeated;
+        public final double score;
+
+        Match(JSObject canonical, boolean isNew, boolean repeated, double score) {
+            this.canonical = canonical;
+            this.isNew = isNew;
+            this.repeated = repeated;
+            this.score = score;
+        }
+
+        /**
+         * Joined a payment already seen from another source: drop the event, keep the provenance
+         */
+        public boolean isCollapsed() {
+            return !isNew && !repeated;
+        }
+
+        /**
+         * Number of sources (SMS, notification, bank) the canonical transaction was seen from
+         */
+        public int sourceCount() {
+            return canonical.optJSONArray("sources") != null ? canonical.optJSONArray("sources").length() : 0;
+        }
+    }
+
+    /**
+     * Offer a bank notification payload (BankNotificationListenerService format)
+     *
+     * @return null if the native parser does not recognize it as a transaction
+     */
+    public static Match offerNotification(Context context, JSONObject data) {
+        String appName = HeadlessTransactionCapture.jsAppName(data.optString("packageName", ""), data.optString("appName", ""));
+        String title = data.optString("title", "");
+        String text = data.optString("text", "");
+        long timestamp = data.optLong("timestamp", System.currentTimeMillis());
+
+        JSObject tx = NotificationTransactionParser.parse(appName, title, text, timestamp,
+            HeadlessCaptureStore.getApiActiveBanks(context));
+        if (tx == null) return null;
+
+        return offerParsed(context, SOURCE_NOTIFICATION, TransactionHash.rawNotificationHash(appName, title, text),
+            sourceHash(tx), tx, timestamp);
+    }
+
+    /**
+     * Offer an incoming SMS
+     *
+     * @return null if the native parser does not recognize it as a transaction
+     */
+    public static Match offerSms(Context context, String sender, String body, long timestamp) {
+        JSObject tx = SmsTransactionParser.parse(sender, body, timestamp, HeadlessCaptureStore.getApiActiveBanks(context));
+        if (tx == null) return null;
+
+        return offerParsed(context, SOURCE_SMS, TransactionHash.md5(sender + "|" + body + "|" + timestamp),
+            sourceHash(tx), tx, timestamp);
+    }
+
+    /**
+     * Offer a transaction parsed from an SMS or a notification (fields as produced by the native parsers)
+     *
+     * @param ref       stable identity of the raw event (raw hash)
+     * @param sourceHash hash JS uses for the same transaction (canonicalId if this event is the first)
+     */
+    public static Match offerParsed(Context context, String source, String ref, String sourceHash,
+                                    JSONObject tx, long timestamp) {
+        Entry event = new Entry();
+        event.canonicalId = sourceHash;
+        event.type = tx.optString("type", "expense");
+        event.amount = Math.abs(tx.optDouble("amount", 0));
+        event.timestamp = timestamp;
+        event.date = tx.optString("date", NotificationTransactionParser.formatDate(timestamp));
+        event.account = tx.optString("account", "");
+        event.description = tx.optString("description", "");
+        return offer(context, source, ref, event);
+    }
+
+    /**
+     * Offer a raw Enable Banking transaction
+     *
+     * @param ref bankTransactionId (entry reference / transaction id) or content hash
+     */
+    public static Match offerBank(Context context, String accountUid, String ref, JSONObject tx) {
+        double amount = parseAmount(tx);
+        String indicator = firstString(tx, "creditDebitIndicator", "credit_debit_indicator");
+        boolean debit = amount < 0 || "DBIT".equalsIgnoreCase(indicator);
+
+        Entry event = new Entry();
+        event.canonicalId = ref.startsWith("h:") ? "bank:" + ref : TransactionHash.md5("bank-" + ref);
+        event.type = debit ? "expense" : "income";
+        event.amount = Math.abs(amount);
+        event.date = firstString(tx, "bookingDate", "booking_date", "valueDate", "value_date", "transactionDate", "transaction_date");
+        if (event.date.length() > 10) event.date = event.date.substring(0, 10);
+        event.timestamp = parseDate(event.date);
+        event.account = "";
+        event.description = bankDescription(tx);
+
+        Match match = offer(context, SOURCE_BANK, ref, event);
+        if (match.isCollapsed()) {
+            Log.d(TAG, "🔗 Bank transaction of " + accountUid + " joins " + match.canonical.optString("canonicalId"));
+        }
+        return match;
+    }
+
+    private static Match offer(Context context, String source, String ref, Entry event) {
+        synchronized (LOCK) {
+            load(context);
+            long now = System.currentTimeMillis();
+            prune(now);
+
+            event.cents = Math.round(event.amount * 100);
+            event.merchant = normalize(event.description);
+            event.updatedAt = now;
+
+            long tolerance = Math.max(1, Math.round(event.cents * AMOUNT_TOLERANCE));
+            Entry best = null;
+            double bestScore = 0;
+
+            for (Map.Entry<Long, List<Entry>> bucket : byCents.subMap(event.cents - tolerance, true,
+                event.cents + tolerance, true).entrySet()) {
+                for (Entry candidate : bucket.getValue()) {
+                    if (candidate.hasRef(source, ref)) {
+                        return new Match(toJson(candidate), false, true, 1);
+                    }
+                    double score = score(source, event, candidate, tolerance);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        best = candidate;
+                    }
+                }
+            }
+
+            JSONObject provenance = provenance(source, ref, event);
+            if (best != null && bestScore >= MIN_SCORE) {
+                best.sources.put(provenance);
+                best.updatedAt = now;
+                scheduleSave(context);
+                Log.d(TAG, "🔗 " + source + " event joins " + best.canonicalId + " (score " + String.format(Locale.US, "%.2f", bestScore) + ")");
+                return new Match(toJson(best), false, false, bestScore);
+            }
+
+            event.sources.put(provenance);
+            add(event);
+            scheduleSave(context);
+            return new Match(toJson(event), true, false, 0);
+        }
+    }
+
+    /**
+     * Write pending changes now (end of a bank sync, before the process may be stopped)
+     */
+    public static void flush(Context context) {
+        synchronized (LOCK) {
+            if (dirty) save(context);
+        }
+    }
+
+    /**
+     * 0 if a hard criterion fails, otherwise amount/time/merchant/account weighted score
+     */
+    private static double score(String source, Entry event, Entry candidate, long tolerance) {
+        if (!event.type.equals(candidate.type)) return 0;
+        if (candidate.hasSource(source)) return 0;
+
+        long amountDiff = Math.abs(event.cents - candidate.cents);
+        if (amountDiff > tolerance) return 0;
+        double amountScore = 1 - (double) amountDiff / (tolerance + 1);
+
+        double timeScore;
+        if (SOURCE_BANK.equals(source) || candidate.hasSource(SOURCE_BANK)) {
+            long days = Math.abs(parseDate(event.date) - parseDate(candidate.date)) / (24L * 60 * 60 * 1000);
+            if (days > BANK_WINDOW_DAYS) return 0;
+            timeScore = 1 - (double) days / (BANK_WINDOW_DAYS + 1);
+        } else {
+            long diff = Math.abs(event.timestamp - candidate.timestamp);
+            if (diff > LIVE_WINDOW_MS) return 0;
+            timeScore = 1 - (double) diff / LIVE_WINDOW_MS;
+        }
+
+        // Same amount on the same day is not enough: two purchases would be merged into one
+        double merchantScore = similarity(event.merchant, candidate.merchant);
+        if (merchantScore < MIN_MERCHANT_SIMILARITY) return 0;
+
+        // Bank events have no account name: unknown is no evidence either way
+        double accountScore;
+        String a = normalize(event.account);
+        String b = normalize(candidate.account);
+        if (a.isEmpty() || b.isEmpty()) {
+            accountScore = 0;
+        } else {
+            accountScore = a.equals(b) || a.contains(b) || b.contains(a) ? 1 : 0;
+        }
+
+        return amountScore * 0.35 + timeScore * 0.2 + merchantScore * 0.3 + accountScore * 0.15;
+    }
+
+    private static String sourceHash(JSONObject tx) {
+        return TransactionHash.transactionHash(tx.optDouble("amount", 0), tx.optString("date", ""),
+            tx.optString("account", ""), tx.optString("description", ""));
+    }
+
+    private static JSONObject provenance(String source, String ref, Entry event) {
+        JSONObject p = new JSONObject();
+        try {
+            p.put("source", source);
+            p.put("ref", ref);
+            p.put("amount", event.amount);
+            p.put("date", event.date);
+            p.put("timestamp", event.timestamp);
+            p.put("account", event.account);
+            p.put("description", event.description);
+        } catch (Exception ignored) {
+        }
+        return p;
+    }
+
+    private static JSObject toJson(Entry entry) {
+        JSObject ret = new JSObject();
+        ret.put("canonicalId", entry.canonicalId);
+        ret.put("type", entry.type);
+        ret.put("amount", entry.amount);
+        ret.put("date", entry.date);
+        ret.put("timestamp", entry.timestamp);
+        ret.put("account", entry.account);
+        ret.put("description", entry.description);
+        ret.put("sources", entry.sources);
+        ret.put("updatedAt", entry.updatedAt);
+        return ret;
+    }
+
+    private static void add(Entry entry) {
+        entries.add(entry);
+        List<Entry> bucket = byCents.get(entry.cents);
+        if (bucket == null) {
+            bucket = new ArrayList<>(2);
+            byCents.put(entry.cents, bucket);
+        }
+        bucket.add(entry);
+    }
+
+    private static void prune(long now) {
+        boolean removed = false;
+        Iterator<Entry> it = entries.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (now - entry.updatedAt > RETENTION_MS || entries.size() > MAX_ENTRIES) {
+                it.remove();
+                removed = true;
+            }
+        }
+        if (!removed) return;
+
+        byCents.clear();
+        for (Entry entry : entries) {
+            List<Entry> bucket = byCents.get(entry.cents);
+            if (bucket == null) {
+                bucket = new ArrayList<>(2);
+                byCents.put(entry.cents, bucket);
+            }
+            bucket.add(entry);
+        }
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static void load(Context context) {
+        if (loaded) return;
+        loaded = true;
+        try {
+            JSONArray array = new JSONArray(prefs(context).getString(KEY_ENTRIES, "[]"));
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject json = array.getJSONObject(i);
+                Entry entry = new Entry();
+                entry.canonicalId = json.getString("canonicalId");
+                entry.type = json.optString("type", "expense");
+                entry.amount = json.optDouble("amount", 0);
+                entry.cents = Math.round(entry.amount * 100);
+                entry.timestamp = json.optLong("timestamp", 0);
+                entry.date = json.optString("date", "");
+                entry.account = json.optString("account", "");
+                entry.description = json.optString("description", "");
+                entry.merchant = normalize(entry.description);
+                entry.sources = json.optJSONArray("sources") != null ? json.getJSONArray("sources") : new JSONArray();
+                entry.updatedAt = json.optLong("updatedAt", 0);
+                add(entry);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ Dropping unreadable correlation state", e);
+        }
+    }
+
+    // Called with LOCK held
+    private static void scheduleSave(Context context) {
+        dirty = true;
+        if (saveScheduled) return;
+        saveScheduled = true;
+
+        final Context appContext = context.getApplicationContext();
+        saver.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (LOCK) {
+                    saveScheduled = false;
+                    if (dirty) save(appContext);
+                }
+            }
+        }, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Called with LOCK held
+    private static void save(Context context) {
+        JSONArray array = new JSONArray();
+        for (Entry entry : entries) array.put(toJson(entry));
+        prefs(context).edit().putString(KEY_ENTRIES, array.toString()).apply();
+        dirty = false;
+    }
+
+    /**
+     * Lowercase, accents folded, punctuation and digits dropped (card numbers, references)
+     */
+    static String normalize(String text) {
+        if (text == null) return "";
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return folded.toLowerCase(Locale.ROOT).replaceAll("[^a-z ]", " ").replaceAll("\\s+", " ").trim();
+    }
+
+    /**
+     * Containment or bigram Dice coefficient, like DeduplicationService.calculateStringSimilarity
+     */
+    static double similarity(String a, String b) {
+        if (a.isEmpty() || b.isEmpty()) return 0;
+        if (a.equals(b)) return 1;
+        if (a.contains(b) || b.contains(a)) return 0.85;
+
+        Set<String> bigramsA = bigrams(a);
+        Set<String> bigramsB = bigrams(b);
+        if (bigramsA.isEmpty() || bigramsB.isEmpty()) return 0;
+
+        int intersection = 0;
+        for (String bigram : bigramsA) {
+            if (bigramsB.contains(bigram)) intersection++;
+        }
+        return (2.0 * intersection) / (bigramsA.size() + bigramsB.size());
+    }
+
+    private static Set<String> bigrams(String text) {
+        Set<String> set = new HashSet<>();
+        for (int i = 0; i < text.length() - 1; i++) {
+            set.add(text.substring(i, i + 2));
+        }
+        return set;
+    }
+
+    static double parseAmount(JSONObject tx) {
+        Object raw = null;
+        JSONObject nested = tx.optJSONObject("transactionAmount");
+        if (nested == null) nested = tx.optJSONObject("transaction_amount");
+        if (nested == null) nested = tx.optJSONObject("amount");
+        if (nested != null) {
+            raw = nested.has("amount") ? nested.opt("amount") : nested.opt("value");
+        } else {
+            raw = tx.opt("amount");
+        }
+        try {
+            return raw != null ? Double.parseDouble(String.valueOf(raw)) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String bankDescription(JSONObject tx) {
+        String description = firstString(tx, "description", "remittanceInformationUnstructured");
+        if (!description.isEmpty()) return description;
+
+        JSONArray remittance = tx.optJSONArray("remittance_information");
+        if (remittance != null && remittance.length() > 0) return remittance.optString(0, "");
+
+        JSONObject party = tx.optJSONObject("creditor");
+        if (party == null) party = tx.optJSONObject("debtor");
+        return party != null ? party.optString("name", "") : "";
+    }
+
+    private static String firstString(JSONObject tx, String... keys) {
+        for (String key : keys) {
+            String value = tx.optString(key, "");
+            if (!value.isEmpty() && !"null".equals(value)) return value;
+        }
+        return "";
+    }
+
+    /**
+     * Local midday of a YYYY-MM-DD date (0 if unparsable)
+     */
+    private static long parseDate(String date) {
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.US);
+            format.setTimeZone(TimeZone.getDefault());
+            return format.parse(date.substring(0, 10) + " 12:00").getTime();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
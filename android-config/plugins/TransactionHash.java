@@ -0,0 +1,56 @@
+package com.gestore.spese;
+
+import java.util.Locale;
+
+/**
+ * Native port of src/utils/hash.ts and AutoTransactionService.generateTransactionHash.
+ * Hashes MUST stay byte-for-byte identical to the JS ones, otherwise
+ * duplicates captured natively would not be recognised by the web layer.
+ */
+public final class TransactionHash {
+
+    private TransactionHash() {
+    }
+
+    /**
+     * Same 32-bit string hash as md5() in hash.ts (not a real MD5).
+     */
+    public static String md5(String input) {
+        int hash = 0;
+        for (int i = 0; i < input.length(); i++) {
+            hash = ((hash << 5) - hash) + input.charAt(i);
+        }
+        // JS Math.abs works on doubles, so MIN_VALUE must not overflow here
+        String hex = Long.toHexString(Math.abs((long) hash));
+        StringBuilder sb = new StringBuilder();
+        for (int i = hex.length(); i < 8; i++) sb.append('0');
+        return sb.append(hex).toString();
+    }
+
+    /**
+     * Same as normalizeForHash() in hash.ts
+     */
+    public static String normalizeForHash(String text) {
+        if (text == null) return "";
+        return text
+            .toLowerCase(Locale.ROOT)
+            .trim()
+            .replaceAll("\\s+", "")
+            .replaceAll("[^\\w]", "");
+    }
+
+    /**
+     * Legacy (SMS/notification) hash: amount.toFixed(2)-date-account-normalizedDescription
+     */
+    public static String transactionHash(double amount, String date, String account, String description) {
+        String key = String.format(Locale.US, "%.2f", amount) + "-" + date + "-" + account + "-" + normalizeForHash(description);
+        return md5(key);
+    }
+
+    /**
+     * Raw notification hash used by NotificationListenerService.processedCache (appName|title|text)
+     */
+    public static String rawNotificationHash(String appName, String title, String text) {
+        return md5(appName + "|" + title + "|" + text);
+    }
+}
@@ -0,0 +1,8 @@
+package com.gestore.spese;
+
+/**
+ * JUnit category of the timing benchmarks: left out of testDebugUnitTest, run alone with
+ * -Pbenchmarks (see unit-tests.gradle). They print their measurements (📊) and only assert results.
+ */
+public interface Benchmark {
+}
@@ -0,0 +1,164 @@
+package com.gestore.spese;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * CategoryModel on a synthetic corpus of bank descriptions: prequential accuracy, accuracy on
+ * merchants never seen, learn/classify speed and the file round trip.
+ */
+public class CategoryClassifierTest {
+
+    private static final String[] PREFIXES = {"PAGAMENTO POS ", "POS ", "ADDEBITO CARTA ", "PAGAMENTO CONTACTLESS ", ""};
+    private static final String[] CITIES = {"MILANO", "ROMA", "TORINO", "NAPOLI", "BOLOGNA", "FIRENZE", "BARI", "PADOVA"};
+
+    // {category, subcategory, merchants...}: the last two of each class are kept for the unseen test
+    private static final String[][] CLASSES = {
+        {"Alimentari", "Supermercato", "ESSELUNGA", "CONAD", "COOP", "CARREFOUR", "LIDL", "PAM PANORAMA", "EUROSPIN", "MD DISCOUNT", "SUPERMERCATO SIGMA", "SUPERMERCATO DESPAR"},
+        {"Ristoranti", "", "PIZZERIA DA MARIO", "PIZZERIA BELLA NAPOLI", "TRATTORIA DA LUIGI", "RISTORANTE IL PORTO", "OSTERIA DEL PONTE", "RISTORANTE LA PERGOLA", "PIZZERIA DA GENNARO", "TRATTORIA LA BUCA"},
+        {"Bar", "Colazione", "BAR CENTRALE", "BAR SPORT", "CAFFETTERIA ROMA", "BAR PASTICCERIA DOLCE", "CAFFE DEL CORSO", "BAR TABACCHI STELLA", "CAFFE NERO", "BAR LA PIAZZA"},
+        {"Trasporti", "Carburante", "ENI STATION", "Q8 EASY", "TAMOIL", "IP GAS", "ESSO STAZIONE", "API CARBURANTI", "ENI STATION NORD", "Q8 SERVICE"},
+        {"Trasporti", "Treni", "TRENITALIA", "ITALO TRENO", "TRENORD", "TRENITALIA FRECCIAROSSA", "TRENORD BIGLIETTERIA", "ITALO BIGLIETTI"},
+        {"Salute", "Farmacia", "FARMACIA COMUNALE", "FARMACIA SAN MARCO", "FARMACIA CENTRALE", "PARAFARMACIA SALUS", "FARMACIA DEL DUOMO", "FARMACIA MODERNA"},
+        {"Abbonamenti", "Streaming", "NETFLIX.COM", "SPOTIFY AB", "DISNEY PLUS", "AMAZON PRIME VIDEO", "DAZN ITALIA", "NOW TV"},
+        {"Casa", "Bricolage", "LEROY MERLIN", "BRICOMAN", "OBI ITALIA", "BRICO CENTER", "BRICO IO", "LEROY MERLIN EXPRESS"},
+        {"Abbigliamento", "", "ZARA ITALIA", "H&M HENNES", "OVS", "DECATHLON", "UNIQLO", "BERSHKA", "ZARA HOME", "DECATHLON CITY"},
+    };
+    private static final int UNSEEN_PER_CLASS = 2;
+
+    private static final class Example {
+        final String description;
+        final String category;
+        final String subcategory;
+
+        Example(String description, String category, String subcategory) {
+            this.description = description;
+            this.category = category;
+            this.subcategory = subcategory;
+        }
+    }
+
+    private static List<Example> corpus(Random random, int size, boolean unseen) {
+        List<Example> ret = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String[] c = CLASSES[random.nextInt(CLASSES.length)];
+            int merchants = c.length - 2;
+            int seen = merchants - UNSEEN_PER_CLASS;
+            String merchant = unseen
+                ? c[2 + seen + random.nextInt(UNSEEN_PER_CLASS)]
+                : c[2 + random.nextInt(seen)];
+            String description = PREFIXES[random.nextInt(PREFIXES.length)] + merchant + " "
+                + CITIES[random.nextInt(CITIES.length)] + " " + (1 + random.nextInt(28)) + "/" + (1 + random.nextInt(12))
+                + " CARTA *" + (1000 + random.nextInt(9000));
+            ret.add(new Example(description, c[0], c[1]));
+        }
+        return ret;
+    }
+
+    private static double accuracy(CategoryModel model, List<Example> examples) {
+        int right = 0;
+        for (Example e : examples) {
+            CategoryModel.Prediction p = model.predict(e.description);
+            if (p != null && p.is(e.category, e.subcategory)) right++;
+        }
+        return (double) right / examples.size();
+    }
+
+    @Test
+    public void predictsNothingBeforeLearning() {
+        CategoryModel model = new CategoryModel();
+        assertNull(model.predict("PAGAMENTO POS ESSELUNGA MILANO"));
+        assertFalse(model.learn("1234 5678", "Alimentari", ""));
+        assertFalse(model.learn("ESSELUNGA", "", ""));
+        assertEquals(0, model.examples());
+    }
+
+    @Test
+    public void learnsFromTheStream() {
+        Random random = new Random(42);
+        CategoryModel model = new CategoryModel();
+        for (Example e : corpus(random, 2000, false)) model.learn(e.description, e.category, e.subcategory);
+
+        System.out.println(String.format("📊 Prequential on 2000 examples: accuracy %.3f, confident %.3f on %.0f%% coverage",
+            model.accuracy(), model.confidentAccuracy(), model.coverage() * 100));
+        assertEquals(2000, model.examples());
+        assertEquals(CLASSES.length, model.classCount());
+        assertTrue(model.accuracy() > 0.9);
+        assertTrue(model.confidentAccuracy() > 0.95);
+        assertTrue(model.coverage() > 0.8);
+
+        double seen = accuracy(model, corpus(new Random(7), 1000, false));
+        System.out.println(String.format("📊 Held-out, known merchants: %.3f", seen));
+        assertTrue(seen > 0.97);
+    }
+
+    @Test
+    public void generalizesToUnseenMerchants() {
+        CategoryModel model = new CategoryModel();
+        for (Example e : corpus(new Random(1), 2000, false)) model.learn(e.description, e.category, e.subcategory);
+
+        double unseen = accuracy(model, corpus(new Random(2), 1000, true));
+        System.out.println(String.format("📊 Held-out, unseen merchants: %.3f", unseen));
+        assertTrue(unseen > 0.6);
+
+        CategoryModel.Prediction p = model.predict("PAGAMENTO POS PIZZERIA DA GENNARO NAPOLI");
+        assertNotNull(p);
+        assertTrue(p.is("Ristoranti", ""));
+        p = model.predict("FARMACIA DEL DUOMO MILANO");
+        assertTrue(p.is("Salute", "Farmacia"));
+    }
+
+    @Test
+    public void benchmark() {
+        List<Example> train = corpus(new Random(3), 5000, false);
+        List<Example> test = corpus(new Random(4), 20000, false);
+        CategoryModel model = new CategoryModel();
+
+        long start = System.nanoTime();
+        for (Example e : train) model.learn(e.description, e.category, e.subcategory);
+        long learnNanos = System.nanoTime() - start;
+
+        // Warm up, then measure
+        accuracy(model, test.subList(0, 2000));
+        start = System.nanoTime();
+        double accuracy = accuracy(model, test);
+        long classifyNanos = System.nanoTime() - start;
+
+        System.out.println(String.format("📊 learn %.1fµs/example, classify %.1fµs/description (%d classes), accuracy %.3f",
+            learnNanos / 1000.0 / train.size(), classifyNanos / 1000.0 / test.size(), model.classCount(), accuracy));
+        assertTrue(accuracy > 0.97);
+        // Generous bound: a prediction is a few hundred array reads per class
+        assertTrue(classifyNanos / test.size() < 2000000);
+    }
+
+    @Test
+    public void survivesTheFileRoundTrip() throws Exception {
+        CategoryModel model = new CategoryModel();
+        for (Example e : corpus(new Random(5), 500, false)) model.learn(e.description, e.category, e.subcategory);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        model.write(out);
+        out.close();
+        CategoryModel loaded = CategoryModel.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(model.examples(), loaded.examples());
+        assertEquals(model.classCount(), loaded.classCount());
+        assertEquals(model.accuracy(), loaded.accuracy(), 0);
+        for (Example e : corpus(new Random(6), 200, false)) {
+            CategoryModel.Prediction a = model.predict(e.description);
+            CategoryModel.Prediction b = loaded.predict(e.description);
+            assertTrue(a.is(b.category, b.subcategory));
+            assertEquals(a.confidence, b.confidence, 1e-12);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.gestore.spese;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * ContentChunker on a synthetic AppData of about 1.3 MB: chunk sizes, and how many chunks a
+ * backup would upload again after the usual edits (the rest must realign and keep their hashes).
+ */
+public class ContentChunkerTest {
+
+    private static final int EXPENSES = 9000;
+
+    private static String appData(int expenses, int editedIndex, String editedAmount) {
+        Random random = new Random(11);
+        String[] categories = {"Alimentari", "Ristoranti", "Trasporti", "Casa", "Salute", "Svago"};
+        StringBuilder json = new StringBuilder("{\"expenses\":[");
+        for (int i = 0; i < expenses; i++) {
+            if (i > 0) json.append(',');
+            String amount = String.format(Locale.ROOT, "%.2f", 1 + random.nextInt(20000) / 100.0);
+            json.append("{\"id\":\"exp-").append(100000 + i).append("\",\"date\":\"2024-")
+                .append(String.format(Locale.ROOT, "%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28)))
+                .append("\",\"amount\":").append(i == editedIndex ? editedAmount : amount)
+                .append(",\"category\":\"").append(categories[random.nextInt(categories.length)])
+                .append("\",\"description\":\"PAGAMENTO POS NEGOZIO ").append(random.nextInt(3000))
+                .append("\",\"createdAt\":").append(1704067200000L + random.nextInt(1000000000)).append('}');
+        }
+        json.append("],\"settings\":{\"currency\":\"EUR\",\"theme\":\"dark\"}}");
+        return json.toString();
+    }
+
+    private static Set<String> hashes(byte[] data) throws Exception {
+        Set<String> ret = new HashSet<>();
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (ContentChunker.Chunk chunk : ContentChunker.split(data)) {
+            digest.update(data, chunk.offset, chunk.length);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) hex.append(String.format("%02x", b));
+            ret.add(hex.toString());
+        }
+        return ret;
+    }
+
+    private static int newChunks(byte[] before, byte[] after) throws Exception {
+        Set<String> added = hashes(after);
+        added.removeAll(hashes(before));
+        return added.size();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void coversTheInputWithBoundedChunks() {
+        byte[] data = bytes(appData(EXPENSES, -1, null));
+        List<ContentChunker.Chunk> chunks = ContentChunker.split(data);
+
+        int offset = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            ContentChunker.Chunk chunk = chunks.get(i);
+            assertEquals(offset, chunk.offset);
+            assertTrue(chunk.length <= ContentChunker.MAX_SIZE);
+            if (i < chunks.size() - 1) assertTrue(chunk.length > ContentChunker.MIN_SIZE);
+            offset += chunk.length;
+        }
+        assertEquals(data.length, offset);
+
+        double average = (double) data.length / chunks.size();
+        System.out.println(String.format(Locale.ROOT, "📊 %.2f MB → %d chunks, %.1f KB average",
+            data.length / 1e6, chunks.size(), average / 1024));
+        assertTrue(average > 4 * 1024 && average < 16 * 1024);
+    }
+
+    @Test
+    public void smallInputsAreOneChunk() {
+        assertTrue(ContentChunker.split(new byte[0]).isEmpty());
+        List<ContentChunker.Chunk> chunks = ContentChunker.split(new byte[ContentChunker.MIN_SIZE]);
+        assertEquals(1, chunks.size());
+        assertEquals(ContentChunker.MIN_SIZE, chunks.get(0).length);
+    }
+
+    @Test
+    public void cutsAtMaxSizeWithoutBoundaries() {
+        // Whether or not constant data ever matches the mask, MAX_SIZE bounds every chunk
+        byte[] data = new byte[5 * ContentChunker.MAX_SIZE];
+        for (ContentChunker.Chunk chunk : ContentChunker.split(data)) {
+            assertTrue(chunk.length <= ContentChunker.MAX_SIZE);
+        }
+    }
+
+    @Test
+    public void isDeterministic() throws Exception {
+        byte[] data = bytes(appData(EXPENSES, -1, null));
+        assertEquals(hashes(data), hashes(data.clone()));
+    }
+
+    @Test
+    public void anEditOnlyChangesTheChunksAroundIt() throws Exception {
+        String original = appData(EXPENSES, -1, null);
+        byte[] before = bytes(original);
+
+        int edited = newChunks(before, bytes(appData(EXPENSES, EXPENSES / 2, "9999.99")));
+        int appended = newChunks(before, bytes(appData(EXPENSES + 1, -1, null)));
+        int prefixed = newChunks(before, bytes("{\"version\":2," + original.substring(1)));
+        int removed = newChunks(before, bytes(original.replace(
+            original.substring(original.indexOf("{\"id\":\"exp-103000\""), original.indexOf("{\"id\":\"exp-103001\"")), "")));
+
+        System.out.println(String.format(Locale.ROOT, "📊 New chunks: edit %d, append %d, prefix %d, removal %d (of %d)",
+            edited, appended, prefixed, removed, ContentChunker.split(before).size()));
+        // The edited chunk, plus the next one if the edit moved a boundary
+        assertTrue(edited >= 1 && edited <= 2);
+        assertTrue(appended >= 1 && appended <= 2);
+        assertTrue(prefixed >= 1 && prefixed <= 2);
+        assertTrue(removed >= 1 && removed <= 2);
+    }
+
+    @Test
+    public void benchmark() {
+        byte[] data = bytes(appData(EXPENSES, -1, null));
+        for (int i = 0; i < 5; i++) ContentChunker.split(data);
+
+        int rounds = 20;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) ContentChunker.split(data);
+        long nanos = System.nanoTime() - start;
+
+        System.out.println(String.format(Locale.ROOT, "📊 split: %.0f MB/s", (double) data.length * rounds / 1e6 / (nanos / 1e9)));
+    }
+}
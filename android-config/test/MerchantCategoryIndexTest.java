@@ -0,0 +1,52 @@
+package com.gestore.spese;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * MerchantCategoryIndex keys: what a learned category is filed under, for card payments,
+ * transfers and withdrawals.
+ */
+public class MerchantCategoryIndexTest {
+
+    @Test
+    public void normalizesDescriptions() {
+        assertEquals("caffe lape 12 50", MerchantCategoryIndex.normalize("CAFFÈ  L'APE, 12.50"));
+        assertEquals("", MerchantCategoryIndex.normalize(null));
+    }
+
+    @Test
+    public void keysCardPaymentsByMerchant() {
+        assertEquals("esselunga", MerchantCategoryIndex.merchantKey("PAGAMENTO POS ESSELUNGA MILANO 12"));
+        assertEquals("mc donalds", MerchantCategoryIndex.merchantKey("MC DONALDS ROMA"));
+        assertEquals("esselunga", MerchantCategoryIndex.merchantKey("APPLE PAY ESSELUNGA MILANO"));
+        assertEquals("conad", MerchantCategoryIndex.merchantKey("Google Pay CONAD CITY"));
+        // Apple itself is a merchant
+        assertEquals("apple", MerchantCategoryIndex.merchantKey("APPLE.COM/BILL"));
+    }
+
+    @Test
+    public void keysTransfersByPayee() {
+        assertEquals("mario rossi", MerchantCategoryIndex.merchantKey("BONIFICO A FAVORE DI MARIO ROSSI"));
+        assertEquals("mario rossi", MerchantCategoryIndex.merchantKey("Bonifico SEPA istantaneo a favore di Mario Rossi causale affitto"));
+        assertEquals("anna bianchi", MerchantCategoryIndex.merchantKey("BONIFICO A FAVORE DI ANNA BIANCHI"));
+        assertEquals("acme", MerchantCategoryIndex.merchantKey("ACCREDITO BONIFICO ORDINANTE ACME SPA"));
+    }
+
+    @Test
+    public void hasNoKeyForWithdrawals() {
+        assertNull(MerchantCategoryIndex.merchantKey("PRELIEVO ATM BANCOMAT 12/05"));
+        assertNull(MerchantCategoryIndex.merchantKey("BONIFICO A FAVORE DI"));
+    }
+
+    @Test
+    public void recognizesGenericKeys() {
+        // Explicit merchants passed to learn() are checked too
+        assertTrue(MerchantCategoryIndex.isGenericKey("favore"));
+        assertTrue(MerchantCategoryIndex.isGenericKey("bonifico"));
+        assertTrue(MerchantCategoryIndex.isGenericKey("prelievo atm"));
+        assertFalse(MerchantCategoryIndex.isGenericKey("esselunga"));
+        assertFalse(MerchantCategoryIndex.isGenericKey("mario rossi"));
+    }
+}
@@ -0,0 +1,269 @@
+package com.gestore.spese;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * SearchIndex in a temporary directory: analysis, AND / prefix / BM25 queries, incremental
+ * updates surviving a reopen, and query latency on 50k transactions.
+ */
+public class SearchIndexTest {
+
+    private static final List<String> NONE = Collections.emptyList();
+
+    private static File tempDir() throws Exception {
+        File dir = File.createTempFile("search", "");
+        assertTrue(dir.delete() && dir.mkdirs());
+        return dir;
+    }
+
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        dir.delete();
+    }
+
+    private static SearchIndex.Document doc(String id, String title, String text) {
+        return new SearchIndex.Document(id, title, text, 0);
+    }
+
+    private static List<String> ids(SearchIndex index, String query) {
+        return index.search(query, true, 0, 100).ids;
+    }
+
+    private static SearchIndex sample(File dir) throws Exception {
+        SearchIndex index = SearchIndex.open(dir, "transactions");
+        index.update(false, NONE, Arrays.asList(
+            doc("1", "Spesa Esselunga", "Alimentari"),
+            doc("2", "Farmacia Comunale", "Salute farmacie"),
+            doc("3", "Bonifico banca Intesa", "Trasferimenti"),
+            doc("4", "Pizzeria da Mario", "Ristoranti cena"),
+            doc("5", "Caffè al bar", "Ristoranti colazione"),
+            doc("6", "Spese condominiali", "Casa banche")
+        ), "v1");
+        return index;
+    }
+
+    // ==================== ANALYSIS ====================
+
+    @Test
+    public void foldsAndSplitsText() {
+        assertEquals(Arrays.asList("caffe", "piu", "l", "ape", "2024", "12", "50"),
+            SearchIndex.tokens("Caffè PIÙ l'ape 2024-12,50"));
+        assertTrue(SearchIndex.tokens(null).isEmpty());
+    }
+
+    @Test
+    public void stemsItalianInflections() {
+        assertEquals(SearchIndex.stem("spesa"), SearchIndex.stem("spese"));
+        assertEquals(SearchIndex.stem("banca"), SearchIndex.stem("banche"));
+        assertEquals(SearchIndex.stem("farmacia"), SearchIndex.stem("farmacie"));
+        assertEquals("banc", SearchIndex.stem("banche"));
+        // Short words and numbers stay whole
+        assertEquals("casa", SearchIndex.stem("casa"));
+        assertEquals("12345", SearchIndex.stem("12345"));
+    }
+
+    // ==================== QUERIES ====================
+
+    @Test
+    public void matchesEveryWordAndTheirInflections() throws Exception {
+        File dir = tempDir();
+        try {
+            SearchIndex index = sample(dir);
+            List<String> spese = ids(index, "spese ");
+            Collections.sort(spese);
+            assertEquals(Arrays.asList("1", "6"), spese);
+            assertEquals(Arrays.asList("4"), ids(index, "ristoranti cena "));
+            assertTrue(ids(index, "ristoranti bonifico ").isEmpty());
+            assertEquals(Arrays.asList("5"), ids(index, "caffe"));
+            assertEquals(Arrays.asList("5"), ids(index, "CAFFÈ"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void ranksTitleMatchesFirst() throws Exception {
+        File dir = tempDir();
+        try {
+            SearchIndex index = sample(dir);
+            // "banca" is the title of 3, "banche" only in the text of 6
+            assertEquals(Arrays.asList("3", "6"), ids(index, "banca "));
+            // "farmacia" in the title and "farmacie" in the text of 2
+            assertEquals(Arrays.asList("2"), ids(index, "farmacie "));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void matchesTheLastWordAsPrefix() throws Exception {
+        File dir = tempDir();
+        try {
+            SearchIndex index = sample(dir);
+            assertEquals(Arrays.asList("1"), ids(index, "essel"));
+            assertEquals(Arrays.asList("4"), ids(index, "pizzeria ma"));
+            // A complete word (trailing space) or prefix off is not expanded
+            assertTrue(ids(index, "essel ").isEmpty());
+            assertTrue(index.search("essel", false, 0, 10).ids.isEmpty());
+            // A stop word is dropped unless it is being typed
+            assertEquals(Arrays.asList("4"), ids(index, "pizzeria da "));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void pagesTheResults() throws Exception {
+        File dir = tempDir();
+        try {
+            SearchIndex index = SearchIndex.open(dir, "paging");
+            List<SearchIndex.Document> documents = new ArrayList<>();
+            for (int i = 0; i < 25; i++) documents.add(doc("t" + i, "Pagamento POS", "numero " + i));
+            index.update(false, NONE, documents, null);
+
+            SearchIndex.Page first = index.search("pagamento", true, 0, 10);
+            SearchIndex.Page third = index.search("pagamento", true, 20, 10);
+            assertEquals(25, first.total);
+            assertEquals(10, first.ids.size());
+            assertEquals(5, third.ids.size());
+            // Same score: newer documents first
+            assertEquals("t24", first.ids.get(0));
+            assertEquals("t0", third.ids.get(4));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    // ==================== UPDATES ====================
+
+    @Test
+    public void replacesAndRemovesDocuments() throws Exception {
+        File dir = tempDir();
+        try {
+            SearchIndex index = sample(dir);
+            index.update(false, Arrays.asList("4", "unknown"), Arrays.asList(doc("1", "Spesa Conad", "Alimentari")), "v2");
+
+            assertEquals(5, index.size());
+            assertTrue(ids(index, "esselunga ").isEmpty());
+            assertEquals(Arrays.asList("1"), ids(index, "conad"));
+            assertTrue(ids(index, "pizzeria").isEmpty());
+            assertEquals("v2", index.getFingerprint());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void survivesReopeningFromSnapshotAndJournal() throws Exception {
+        File dir = tempDir();
+        try {
+            SearchIndex index = sample(dir);
+            index.update(false, Arrays.asList("2"), Arrays.asList(doc("7", "Ricarica telefono", "Utenze")), "v2");
+
+            SearchIndex reopened = SearchIndex.open(dir, "transactions");
+            assertEquals(index.size(), reopened.size());
+            assertEquals(index.termCount(), reopened.termCount());
+            assertEquals("v2", reopened.getFingerprint());
+            assertEquals(Arrays.asList("7"), ids(reopened, "ricarica"));
+            assertTrue(ids(reopened, "farmacia").isEmpty());
+            assertEquals(ids(index, "spese "), ids(reopened, "spese "));
+
+            // A reset is written as a new snapshot
+            reopened.update(true, NONE, Arrays.asList(doc("8", "Cinema", "Svago")), "v3");
+            SearchIndex afterReset = SearchIndex.open(dir, "transactions");
+            assertEquals(1, afterReset.size());
+            assertEquals(Arrays.asList("8"), ids(afterReset, "cinema"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void compactsAfterManyUpdates() throws Exception {
+        File dir = tempDir();
+        try {
+            SearchIndex index = SearchIndex.open(dir, "churn");
+            for (int round = 0; round < 5; round++) {
+                List<SearchIndex.Document> documents = new ArrayList<>();
+                for (int i = 0; i < 500; i++) documents.add(doc("d" + i, "Spesa numero " + round, "giro " + round));
+                index.update(false, NONE, documents, null);
+            }
+            assertEquals(500, index.size());
+            assertEquals(500, index.search("giro 4", false, 0, 10).total);
+            assertEquals(0, index.search("giro 3", false, 0, 10).total);
+
+            SearchIndex reopened = SearchIndex.open(dir, "churn");
+            assertEquals(500, reopened.size());
+            assertEquals(500, reopened.search("giro 4", false, 0, 10).total);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    // ==================== BENCHMARK ====================
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmark() throws Exception {
+        String[] merchants = {"Esselunga", "Conad", "Coop", "Carrefour", "Lidl", "Farmacia Comunale", "Pizzeria Da Mario",
+            "Bar Centrale", "Eni Station", "Trenitalia", "Amazon", "Netflix", "Leroy Merlin", "Decathlon", "Zara"};
+        String[] categories = {"Alimentari", "Salute", "Ristoranti", "Trasporti", "Shopping", "Abbonamenti", "Casa"};
+        String[] cities = {"Milano", "Roma", "Torino", "Napoli", "Bologna", "Firenze"};
+        Random random = new Random(5);
+
+        File dir = tempDir();
+        try {
+            SearchIndex index = SearchIndex.open(dir, "benchmark");
+            List<SearchIndex.Document> documents = new ArrayList<>();
+            for (int i = 0; i < 50000; i++) {
+                documents.add(new SearchIndex.Document("tx" + i,
+                    "Pagamento POS " + merchants[random.nextInt(merchants.length)] + " " + cities[random.nextInt(cities.length)],
+                    categories[random.nextInt(categories.length)] + " carta " + random.nextInt(10000), i));
+            }
+            long start = System.nanoTime();
+            index.update(true, NONE, documents, null);
+            long indexNanos = System.nanoTime() - start;
+
+            String[] queries = {"esselunga", "pagamento", "farm", "pizzeria mario", "conad milano ", "spese",
+                "trenitalia roma", "p", "carta 12", "zara torino shop"};
+            for (String query : queries) index.search(query, true, 0, 50);
+
+            long[] nanos = new long[queries.length];
+            int rounds = 20;
+            for (int r = 0; r < rounds; r++) {
+                for (int q = 0; q < queries.length; q++) {
+                    start = System.nanoTime();
+                    index.search(queries[q], true, 0, 50);
+                    nanos[q] += System.nanoTime() - start;
+                }
+            }
+
+            StringBuilder report = new StringBuilder();
+            for (int q = 0; q < queries.length; q++) {
+                double ms = nanos[q] / 1e6 / rounds;
+                report.append(String.format(Locale.ROOT, "\n   \"%s\" %.2fms (%d hits)", queries[q], ms,
+                    index.search(queries[q], true, 0, 1).total));
+            }
+            System.out.println(String.format(Locale.ROOT, "📊 50k documents indexed in %dms, %d terms; queries:%s",
+                indexNanos / 1000000, index.termCount(), report));
+
+            assertEquals(50000, index.size());
+        } finally {
+            delete(dir);
+        }
+    }
+}
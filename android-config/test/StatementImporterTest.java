@@ -0,0 +1,406 @@
+package com.gestore.spese;
+
+import static org.junit.Assert.*;
+
+import android.os.CancellationSignal;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * StatementImporter parsing without Android: number and date formats, column detection, CSV and
+ * XLSX files end to end, and rows/s on a 200k-row statement in both formats.
+ */
+public class StatementImporterTest {
+
+    private static final int BENCHMARK_ROWS = 200000;
+
+    private static final class Collected implements StatementImporter.TransactionHandler {
+        final List<StatementImporter.Transaction> transactions = new ArrayList<>();
+
+        @Override
+        public void onTransaction(StatementImporter.Transaction tx) {
+            transactions.add(tx);
+        }
+    }
+
+    private static final class Counted implements StatementImporter.TransactionHandler {
+        int count = 0;
+
+        @Override
+        public void onTransaction(StatementImporter.Transaction tx) {
+            count++;
+        }
+    }
+
+    private static StatementImporter.Result csv(byte[] bytes, Collected handler) throws Exception {
+        StatementImporter.Result result = new StatementImporter.Result();
+        StatementImporter.readCsv(new ByteArrayInputStream(bytes), null, result, new CancellationSignal(), handler);
+        return result;
+    }
+
+    private static List<String> row(String... cells) {
+        return new ArrayList<>(Arrays.asList(cells));
+    }
+
+    // ==================== VALUES ====================
+
+    @Test
+    public void parsesItalianAmounts() {
+        assertEquals(1234.56, StatementImporter.parseAmount("1.234,56"), 1e-9);
+        assertEquals(-12.5, StatementImporter.parseAmount("-12,50"), 1e-9);
+        assertEquals(-12.5, StatementImporter.parseAmount("12,50-"), 1e-9);
+        assertEquals(1234567.89, StatementImporter.parseAmount("1.234.567,89"), 1e-9);
+        assertEquals(1234.56, StatementImporter.parseAmount("€ 1.234,56"), 1e-9);
+        assertEquals(-45.0, StatementImporter.parseAmount("-45,00 EUR"), 1e-9);
+        assertEquals(0.99, StatementImporter.parseAmount("0,99"), 1e-9);
+        assertEquals(12345678, StatementImporter.parseAmount("12.345.678"), 1e-9);
+    }
+
+    @Test
+    public void parsesEnglishAmounts() {
+        assertEquals(1234.56, StatementImporter.parseAmount("1,234.56"), 1e-9);
+        assertEquals(-12.5, StatementImporter.parseAmount("(12.50)"), 1e-9);
+        assertEquals(-12.5, StatementImporter.parseAmount("-12.5"), 1e-9);
+        assertEquals(1500, StatementImporter.parseAmount("1.5e3"), 1e-9);
+    }
+
+    @Test
+    public void rejectsWhatIsNotAnAmount() {
+        assertTrue(Double.isNaN(StatementImporter.parseAmount("")));
+        assertTrue(Double.isNaN(StatementImporter.parseAmount("Saldo finale")));
+        assertTrue(Double.isNaN(StatementImporter.parseAmount("2024-01-15")));
+        assertTrue(Double.isNaN(StatementImporter.parseAmount("€")));
+        assertTrue(Double.isNaN(StatementImporter.parseAmount(null)));
+    }
+
+    @Test
+    public void parsesDates() {
+        assertEquals("2024-04-03", StatementImporter.parseDate("03/04/2024", true));
+        assertEquals("2024-03-04", StatementImporter.parseDate("03/04/2024", false));
+        assertEquals("2024-04-03", StatementImporter.parseDate("03.04.24", true));
+        assertEquals("2024-04-03", StatementImporter.parseDate("2024-04-03T10:15:00", true));
+        assertEquals("2024-01-01", StatementImporter.serialToIso(45292));
+        assertNull(StatementImporter.parseDate("31/13/2024", true));
+        assertNull(StatementImporter.parseDate("Totale", true));
+    }
+
+    @Test
+    public void detectsTheDelimiter() {
+        assertEquals(';', StatementImporter.detectDelimiter("Data;Descrizione;Importo\n01/02/2024;\"Bar; Sport\";-1,50\n"));
+        assertEquals(',', StatementImporter.detectDelimiter("Date,Description,Amount\n2024-02-01,Coffee,-1.50\n"));
+        assertEquals('\t', StatementImporter.detectDelimiter("Data\tCausale\tImporto\n01/02/2024\tBar\t-1,50\n"));
+    }
+
+    // ==================== COLUMN DETECTION ====================
+
+    @Test
+    public void findsItalianHeaderBelowThePreamble() {
+        List<List<String>> sample = new ArrayList<>();
+        sample.add(row("Banca Esempio S.p.A.", "", "", "", ""));
+        sample.add(row("Estratto conto dal 01/01/2024 al 31/03/2024", "", "", "", ""));
+        sample.add(row("Data contabile", "Data valuta", "Descrizione operazione", "Uscite", "Entrate"));
+        sample.add(row("02/01/2024", "02/01/2024", "PAGAMENTO POS ESSELUNGA", "45,20", ""));
+
+        StatementImporter.Mapping mapping = StatementImporter.detectMapping(sample);
+        assertNotNull(mapping);
+        assertEquals(2, mapping.headerRow);
+        assertEquals(0, mapping.date);
+        assertEquals(-1, mapping.amount);
+        assertEquals(3, mapping.debit);
+        assertEquals(4, mapping.credit);
+        assertEquals(1, mapping.description.length);
+        assertEquals(2, mapping.description[0]);
+        assertTrue(mapping.dayFirst);
+    }
+
+    @Test
+    public void prefersTheBookingDateAndKeepsEveryDescriptionColumn() {
+        List<List<String>> sample = new ArrayList<>();
+        sample.add(row("Data valuta", "Data operazione", "Causale", "Dettagli", "Importo (€)"));
+
+        StatementImporter.Mapping mapping = StatementImporter.detectMapping(sample);
+        assertEquals(1, mapping.date);
+        assertEquals(4, mapping.amount);
+        assertEquals(2, mapping.description.length);
+        assertEquals(2, mapping.description[0]);
+        assertEquals(3, mapping.description[1]);
+    }
+
+    @Test
+    public void infersColumnsWithoutHeader() {
+        List<List<String>> sample = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            sample.add(row("ID" + i, i + "/01/2024", "-" + i + ",50", "PAGAMENTO POS NEGOZIO NUMERO " + i));
+        }
+
+        StatementImporter.Mapping mapping = StatementImporter.detectMapping(sample);
+        assertNotNull(mapping);
+        assertEquals(-1, mapping.headerRow);
+        assertEquals(1, mapping.date);
+        assertEquals(2, mapping.amount);
+        assertEquals(3, mapping.description[0]);
+    }
+
+    @Test
+    public void switchesToMonthFirstOnlyWhenNeeded() {
+        List<List<String>> sample = new ArrayList<>();
+        sample.add(row("Date", "Description", "Amount"));
+        sample.add(row("01/05/2024", "Coffee", "-1.50"));
+        sample.add(row("12/25/2024", "Gift", "-20.00"));
+        assertFalse(StatementImporter.detectMapping(sample).dayFirst);
+    }
+
+    @Test
+    public void givesUpWithoutDateOrAmount() {
+        List<List<String>> sample = new ArrayList<>();
+        sample.add(row("Nome", "Cognome"));
+        sample.add(row("Mario", "Rossi"));
+        assertNull(StatementImporter.detectMapping(sample));
+    }
+
+    // ==================== FILES ====================
+
+    @Test
+    public void readsAnItalianCsv() throws Exception {
+        String text = "Banca Esempio\r\n"
+            + "\r\n"
+            + "Data;Valuta;Descrizione;Dare;Avere\r\n"
+            + "02/01/2024;02/01/2024;\"PAGAMENTO POS \"\"CAFFÈ\"\"; CENTRO\";3,50;\r\n"
+            + "05/01/2024;05/01/2024;Stipendio gennaio;;1.850,00\r\n"
+            + "07/01/2024;07/01/2024;Bonifico a Rossi;-1.200,00;\r\n"
+            + ";;Saldo finale;;650,00\r\n";
+        Collected handler = new Collected();
+        StatementImporter.Result result = csv(text.getBytes(Charset.forName("windows-1252")), handler);
+
+        assertEquals(StatementImporter.FORMAT_CSV, result.format);
+        assertEquals(1, result.mapping.headerRow);
+        assertEquals(4, result.rows);
+        assertEquals(3, result.parsed);
+        assertEquals(1, result.skipped);
+
+        StatementImporter.Transaction first = handler.transactions.get(0);
+        assertEquals("2024-01-02", first.date);
+        assertEquals(3.5, first.amount, 0);
+        assertEquals("expense", first.type);
+        assertEquals("PAGAMENTO POS \"CAFFÈ\"; CENTRO", first.description);
+        assertEquals(3, first.row);
+
+        StatementImporter.Transaction salary = handler.transactions.get(1);
+        assertEquals(1850, salary.amount, 0);
+        assertEquals("income", salary.type);
+
+        // Negative values in the debit column stay expenses
+        StatementImporter.Transaction transfer = handler.transactions.get(2);
+        assertEquals(1200, transfer.amount, 0);
+        assertEquals("expense", transfer.type);
+    }
+
+    @Test
+    public void readsUtf8WithBomAndAUserMapping() throws Exception {
+        String text = "\uFEFFDate,Memo,Amount\n2024-03-01,Caffè,\"-1,234.50\"\n2024-03-02,Refund,20.00";
+        StatementImporter.Mapping mapping = new StatementImporter.Mapping();
+        mapping.headerRow = 0;
+        mapping.date = 0;
+        mapping.amount = 2;
+        mapping.description = new int[]{1};
+
+        Collected handler = new Collected();
+        StatementImporter.Result result = new StatementImporter.Result();
+        StatementImporter.readCsv(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), mapping, result,
+            new CancellationSignal(), handler);
+
+        assertEquals(2, result.parsed);
+        assertEquals("Caffè", handler.transactions.get(0).description);
+        assertEquals(1234.5, handler.transactions.get(0).amount, 0);
+        assertEquals("income", handler.transactions.get(1).type);
+    }
+
+    @Test(expected = PluginTaskExecutor.Rejection.class)
+    public void rejectsAnUnterminatedQuote() throws Exception {
+        StringBuilder text = new StringBuilder("Data;Descrizione;Importo\n01/01/2024;\"");
+        for (int i = 0; i < 70000; i++) text.append('x');
+        csv(text.toString().getBytes(StandardCharsets.UTF_8), new Collected());
+    }
+
+    @Test
+    public void readsAnXlsxSheet() throws Exception {
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[]{"s:Data operazione", "s:Descrizione", "s:Importo"});
+        rows.add(new String[]{"d:45292", "s:PAGAMENTO POS ESSELUNGA", "n:-45.2"});
+        rows.add(new String[]{"s:15/01/2024", "i:Stipendio", "s:1.850,00"});
+        rows.add(new String[]{"", "s:Totale", "n:1804.8"});
+        File file = xlsx(rows);
+        try {
+            Collected handler = new Collected();
+            StatementImporter.Result result = new StatementImporter.Result();
+            StatementImporter.readXlsx(file, null, result, new CancellationSignal(), handler);
+
+            assertEquals(StatementImporter.FORMAT_XLSX, result.format);
+            assertEquals(0, result.mapping.headerRow);
+            assertEquals(2, result.parsed);
+            assertEquals(1, result.skipped);
+
+            StatementImporter.Transaction first = handler.transactions.get(0);
+            assertEquals("2024-01-01", first.date);
+            assertEquals(45.2, first.amount, 0);
+            assertEquals("expense", first.type);
+            assertEquals("PAGAMENTO POS ESSELUNGA", first.description);
+
+            StatementImporter.Transaction second = handler.transactions.get(1);
+            assertEquals("2024-01-15", second.date);
+            assertEquals(1850, second.amount, 0);
+            assertEquals("Stipendio", second.description);
+        } finally {
+            file.delete();
+        }
+    }
+
+    // ==================== BENCHMARK ====================
+
+    @Test
+    public void benchmarkCsv() throws Exception {
+        Random random = new Random(1);
+        StringBuilder text = new StringBuilder("Data contabile;Data valuta;Descrizione;Uscite;Entrate\n");
+        for (int i = 0; i < BENCHMARK_ROWS; i++) {
+            String date = String.format(Locale.ROOT, "%02d/%02d/2024", 1 + random.nextInt(28), 1 + random.nextInt(12));
+            String amount = String.format(Locale.ROOT, "%d.%03d,%02d", random.nextInt(3), random.nextInt(1000), 1 + random.nextInt(99));
+            boolean debit = random.nextInt(5) > 0;
+            text.append(date).append(';').append(date).append(";\"PAGAMENTO POS NEGOZIO ").append(random.nextInt(5000))
+                .append(" MILANO CARTA *1234\";").append(debit ? amount : "").append(';').append(debit ? "" : amount).append('\n');
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        // Warm up, then measure
+        csv(Arrays.copyOf(bytes, bytes.length / 10), new Collected());
+        Counted handler = new Counted();
+        long start = System.nanoTime();
+        StatementImporter.Result result = new StatementImporter.Result();
+        StatementImporter.readCsv(new ByteArrayInputStream(bytes), null, result, new CancellationSignal(), handler);
+        long nanos = System.nanoTime() - start;
+
+        System.out.println(String.format(Locale.ROOT, "📊 CSV: %d rows (%.1f MB) in %dms, %.0f rows/s",
+            result.rows, bytes.length / 1e6, nanos / 1000000, result.rows * 1e9 / nanos));
+        assertEquals(BENCHMARK_ROWS, result.rows);
+        assertEquals(BENCHMARK_ROWS, handler.count);
+    }
+
+    @Test
+    public void benchmarkXlsx() throws Exception {
+        Random random = new Random(2);
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[]{"s:Data", "s:Valuta", "s:Descrizione", "s:Importo"});
+        for (int i = 0; i < BENCHMARK_ROWS; i++) {
+            String serial = "d:" + (45292 + random.nextInt(365));
+            rows.add(new String[]{serial, serial, "s:PAGAMENTO POS NEGOZIO " + random.nextInt(5000),
+                "n:" + (random.nextInt(200000) - 150000) / 100.0});
+        }
+        File file = xlsx(rows);
+        try {
+            Counted handler = new Counted();
+            long start = System.nanoTime();
+            StatementImporter.Result result = new StatementImporter.Result();
+            StatementImporter.readXlsx(file, null, result, new CancellationSignal(), handler);
+            long nanos = System.nanoTime() - start;
+
+            System.out.println(String.format(Locale.ROOT, "📊 XLSX: %d rows (%.1f MB sheet, %.1f MB file) in %dms, %.0f rows/s",
+                result.rows, result.totalBytes / 1e6, file.length() / 1e6, nanos / 1000000, result.rows * 1e9 / nanos));
+            assertEquals(BENCHMARK_ROWS, result.rows);
+            assertEquals(BENCHMARK_ROWS, handler.count + result.skipped);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Minimal workbook: cells are "s:" shared string, "i:" inline string, "n:" number,
+     * "d:" date serial (style 1 = built-in format 14), "" empty
+     */
+    private static File xlsx(List<String[]> rows) throws Exception {
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> stringIndex = new HashMap<>();
+        StringBuilder sheet = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+        for (int r = 0; r < rows.size(); r++) {
+            sheet.append("<row r=\"").append(r + 1).append("\">");
+            String[] cells = rows.get(r);
+            for (int c = 0; c < cells.length; c++) {
+                String cell = cells[c];
+                if (cell.isEmpty()) continue;
+                String ref = (char) ('A' + c) + String.valueOf(r + 1);
+                String value = escape(cell.substring(2));
+                switch (cell.charAt(0)) {
+                    case 's':
+                        Integer index = stringIndex.get(value);
+                        if (index == null) {
+                            index = strings.size();
+                            strings.add(value);
+                            stringIndex.put(value, index);
+                        }
+                        sheet.append("<c r=\"").append(ref).append("\" t=\"s\"><v>").append(index).append("</v></c>");
+                        break;
+                    case 'i':
+                        sheet.append("<c r=\"").append(ref).append("\" t=\"inlineStr\"><is><t>").append(value).append("</t></is></c>");
+                        break;
+                    case 'd':
+                        sheet.append("<c r=\"").append(ref).append("\" s=\"1\"><v>").append(value).append("</v></c>");
+                        break;
+                    default:
+                        sheet.append("<c r=\"").append(ref).append("\"><v>").append(value).append("</v></c>");
+                }
+            }
+            sheet.append("</row>");
+        }
+        sheet.append("</sheetData></worksheet>");
+
+        StringBuilder shared = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">");
+        for (String s : strings) shared.append("<si><t>").append(s).append("</t></si>");
+        shared.append("</sst>");
+
+        File file = File.createTempFile("statement", ".xlsx");
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            entry(zip, "xl/workbook.xml", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+                + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">"
+                + "<sheets><sheet name=\"Movimenti\" sheetId=\"1\" r:id=\"rId1\"/></sheets></workbook>");
+            entry(zip, "xl/_rels/workbook.xml.rels", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\""
+                + " Target=\"worksheets/movimenti.xml\"/></Relationships>");
+            entry(zip, "xl/styles.xml", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+                + "<cellXfs count=\"2\"><xf numFmtId=\"0\"/><xf numFmtId=\"14\"/></cellXfs></styleSheet>");
+            entry(zip, "xl/sharedStrings.xml", shared.toString());
+            entry(zip, "xl/worksheets/movimenti.xml", sheet.toString());
+        } finally {
+            zip.close();
+        }
+        return file;
+    }
+
+    private static void entry(ZipOutputStream zip, String name, String content) throws Exception {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    private static String escape(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
@@ -0,0 +1,196 @@
+package com.gestore.spese;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * SubscriptionDetector on synthetic expense histories: weekly / monthly / yearly charges with
+ * jitter, price changes and skipped charges, cancelled ones, purchases that only look regular,
+ * and the cost of a full and of an incremental detection on 20k expenses over 3k merchants.
+ */
+public class SubscriptionDetectorTest {
+
+    private static final int TODAY = day(2026, 10, 19);
+
+    private static int day(int year, int month, int day) {
+        return DashboardAggregates.daysFromCivil(year, month, day);
+    }
+
+    private static String date(int day) {
+        int[] civil = BalanceLedger.civilFromDays(day);
+        return String.format(Locale.ROOT, "%04d-%02d-%02d", civil[0], civil[1], civil[2]);
+    }
+
+    private static SubscriptionDetector.Suggestion find(List<SubscriptionDetector.Suggestion> suggestions, String merchant) {
+        for (SubscriptionDetector.Suggestion suggestion : suggestions) {
+            if (suggestion.merchant.equals(merchant)) return suggestion;
+        }
+        return null;
+    }
+
+    @Test
+    public void findsAMonthlyChargeThroughJitterAndAPriceChange() {
+        SubscriptionDetector detector = new SubscriptionDetector();
+        Random random = new Random(7);
+        int n = 0;
+        for (int year = 2023; year <= 2026; year++) {
+            for (int month = 1; month <= 12; month++) {
+                int d = day(year, month, 15) + random.nextInt(5) - 2;
+                if (d > TODAY) continue;
+                detector.put("nf" + n++, "expense", year < 2025 ? 12.99 : 13.99, "NETFLIX.COM AMSTERDAM", "Svago", d);
+            }
+        }
+
+        SubscriptionDetector.Suggestion netflix = find(detector.suggestions(TODAY, 0.5), "netflix");
+        assertNotNull(netflix);
+        assertEquals(SubscriptionDetector.MONTHLY, netflix.cadence);
+        assertEquals(1399, netflix.cents);
+        assertEquals("2026-11-15", date(netflix.nextDay));
+        assertTrue(netflix.confidence > 0.7);
+    }
+
+    @Test
+    public void expectsTheEndOfMonthChargeOnShortMonths() {
+        SubscriptionDetector detector = new SubscriptionDetector();
+        int[][] charges = {{2026, 1, 31}, {2026, 2, 28}, {2026, 3, 31}, {2026, 4, 30}, {2026, 5, 31}, {2026, 6, 30},
+            {2026, 7, 31}, {2026, 8, 31}, {2026, 9, 30}};
+        for (int i = 0; i < charges.length; i++) {
+            detector.put("r" + i, "expense", 450, "AFFITTO VIA ROMA", "Casa", day(charges[i][0], charges[i][1], charges[i][2]));
+        }
+
+        SubscriptionDetector.Suggestion rent = find(detector.suggestions(TODAY, 0.5), "affitto");
+        assertNotNull(rent);
+        assertEquals(SubscriptionDetector.MONTHLY, rent.cadence);
+        assertEquals("2026-10-31", date(rent.nextDay));
+    }
+
+    @Test
+    public void findsWeeklyAndYearlyCharges() {
+        SubscriptionDetector detector = new SubscriptionDetector();
+        Random random = new Random(3);
+        int n = 0;
+        // Every Monday, a few skipped
+        for (int d = day(2026, 1, 5); d <= TODAY; d += 7) {
+            if (random.nextInt(15) > 0) detector.put("gym" + n++, "expense", 8, "Palestra FitLab", "Sport", d);
+        }
+        for (int year = 2022; year <= 2026; year++) {
+            detector.put("prime" + n++, "expense", 49.90, "Amazon Prime rinnovo", "Svago", day(year, 2, 10));
+        }
+
+        List<SubscriptionDetector.Suggestion> suggestions = detector.suggestions(TODAY, 0.5);
+        SubscriptionDetector.Suggestion gym = find(suggestions, "palestra");
+        assertNotNull(gym);
+        assertEquals(SubscriptionDetector.WEEKLY, gym.cadence);
+        assertTrue(gym.nextDay > TODAY - 7 && gym.nextDay <= TODAY + 7);
+
+        SubscriptionDetector.Suggestion prime = find(suggestions, "amazon");
+        assertNotNull(prime);
+        assertEquals(SubscriptionDetector.YEARLY, prime.cadence);
+        assertEquals("2027-02-10", date(prime.nextDay));
+    }
+
+    @Test
+    public void dropsCancelledChargesAndPenalizesAMissedOne() {
+        SubscriptionDetector detector = new SubscriptionDetector();
+        for (int month = 1; month <= 10; month++) {
+            if (month <= 5) detector.put("sp" + month, "expense", 10.99, "PAGAMENTO POS SPOTIFY AB", "Svago", day(2026, month, 3));
+            if (month <= 8) detector.put("dz" + month, "expense", 29.99, "DAZN ITALIA", "Svago", day(2026, month, 20));
+            detector.put("nw" + month, "expense", 9.99, "NOW TV", "Svago", day(2026, month, 10));
+        }
+
+        List<SubscriptionDetector.Suggestion> suggestions = detector.suggestions(TODAY, 0);
+        // Spotify missed June to October: cancelled
+        assertNull(find(suggestions, "spotify"));
+        // DAZN missed September 20 only
+        SubscriptionDetector.Suggestion dazn = find(suggestions, "dazn");
+        SubscriptionDetector.Suggestion now = find(suggestions, "now tv");
+        assertNotNull(dazn);
+        assertNotNull(now);
+        assertEquals("2026-10-20", date(dazn.nextDay));
+        assertTrue(dazn.confidence < now.confidence);
+    }
+
+    @Test
+    public void ignoresIrregularPurchasesIncomeAndUndatedTransactions() {
+        SubscriptionDetector detector = new SubscriptionDetector();
+        Random random = new Random(11);
+        for (int i = 0; i < 300; i++) {
+            detector.put("es" + i, "expense", 5 + random.nextInt(8000) / 100.0, "ESSELUNGA MILANO", "Spesa", TODAY - random.nextInt(900));
+        }
+        for (int month = 1; month <= 9; month++) {
+            detector.put("salary" + month, "income", 1850, "STIPENDIO ACME SPA", "Lavoro", day(2026, month, 27));
+        }
+        detector.put("undated", "expense", 9.99, "NOW TV", "Svago", null);
+
+        assertEquals(300, detector.size());
+        assertNull(find(detector.suggestions(TODAY, 0.5), "esselunga"));
+        assertNull(find(detector.suggestions(TODAY, 0), "stipendio"));
+    }
+
+    @Test
+    public void reanalyzesOnlyTheChangedMerchants() {
+        SubscriptionDetector detector = new SubscriptionDetector();
+        for (int month = 1; month <= 9; month++) {
+            detector.put("nw" + month, "expense", 9.99, "NOW TV", "Svago", day(2026, month, 10));
+            detector.put("dz" + month, "expense", 29.99, "DAZN ITALIA", "Svago", day(2026, month, 20));
+        }
+        assertEquals(2, detector.pendingAnalysis());
+        assertEquals(2, detector.suggestions(TODAY, 0.5).size());
+        assertEquals(0, detector.pendingAnalysis());
+
+        detector.put("nw10", "expense", 9.99, "NOW TV", "Svago", day(2026, 10, 10));
+        assertEquals(1, detector.pendingAnalysis());
+        assertEquals("2026-11-10", date(find(detector.suggestions(TODAY, 0.5), "now tv").nextDay));
+
+        // Removing the charges one by one ends the pattern
+        for (int month = 1; month <= 8; month++) detector.remove("dz" + month);
+        assertNull(find(detector.suggestions(TODAY, 0), "dazn"));
+        assertEquals(11, detector.size());
+    }
+
+    @Test
+    public void benchmark() {
+        SubscriptionDetector detector = new SubscriptionDetector();
+        Random random = new Random(7);
+        int n = 0;
+        for (int year = 2022; year <= 2026; year++) {
+            for (int month = 1; month <= 12; month++) {
+                int d = day(year, month, 15) + random.nextInt(5) - 2;
+                if (d <= TODAY) detector.put("nf" + n++, "expense", 13.99, "NETFLIX.COM AMSTERDAM", "Svago", d);
+            }
+        }
+        for (int i = 0; i < 20000; i++) {
+            detector.put("rn" + n++, "expense", 1 + random.nextInt(20000) / 100.0, "Merchant" + random.nextInt(3000) + " shop",
+                "Altro", TODAY - random.nextInt(1800));
+        }
+
+        int merchants = detector.pendingAnalysis();
+        assertTrue(merchants > 1000);
+        long start = System.nanoTime();
+        List<SubscriptionDetector.Suggestion> suggestions = detector.suggestions(TODAY, 0.5);
+        long full = System.nanoTime() - start;
+
+        // One new charge at a time: only its merchant is analyzed again
+        int rounds = 20;
+        long incremental = 0;
+        for (int i = 0; i < rounds; i++) {
+            detector.put("nf-new" + i, "expense", 13.99, "NETFLIX.COM AMSTERDAM", "Svago", TODAY - i % 3);
+            assertEquals(1, detector.pendingAnalysis());
+            start = System.nanoTime();
+            detector.suggestions(TODAY, 0.5);
+            incremental += System.nanoTime() - start;
+            assertEquals(0, detector.pendingAnalysis());
+        }
+        incremental /= rounds;
+
+        // Timings are informational only: the work done is asserted above
+        System.out.println(String.format(Locale.ROOT, "📊 %d expenses, 3k merchants: full detection %.1fms, incremental %.2fms, %d suggestions",
+            detector.size(), full / 1e6, incremental / 1e6, suggestions.size()));
+        assertNotNull(find(suggestions, "netflix"));
+    }
+}
@@ -1,5 +1,7 @@
 import React, { useEffect, useState, useRef } from 'react';
-import { OfflineImage, deleteImageFromQueue, addImageToQueue, getQueuedImages } from './utils/db';
+import { OfflineImage } from './utils/db';
+import { readImageBase64 } from './utils/fileHelper';
+import { ReceiptQueueService } from './services/receipt-queue-service';
 import { Expense, EventBudget } from './types';
 
 // Components
@@ -30,6 +32,7 @@ import GlobalSearchModal from './components/GlobalSearchModal';
 import AIChatModal from './components/AIChatModal';
 import BudgetSettingsModal from './components/BudgetSettingsModal';
 import { BankSyncService } from './services/bank-sync-service';
+import { RawDataService } from './services/raw-data-service';
 import { Budgets } from './types';
 import { LocalNotifications } from '@capacitor/local-notifications';
 import { useRecurringNotifications } from './hooks/useRecurringNotifications';
@@ -182,21 +185,30 @@ const App: React.FC<{ onLogout: () => void; currentEmail: string; onEmailChanged
 
   // Handle bank sync on resume
   useEffect(() => {
+    const notifySyncResult = (result: { transactions: number, adjustments: number }) => {
+      if (result.transactions > 0 || result.adjustments > 0) {
+        let msg = "";
+        if (result.transactions > 0) msg += `${result.transactions} nuovi movimenti. `;
+        if (result.adjustments > 0) msg += `Patrimonio aggiornato.`;
+        ui.showToast({ message: msg.trim(), type: 'success' });
+      }
+    };
+
     const handleResume = async () => {
       console.log('🔄 App resumed - checking bank sync');
       try {
-        const result = await BankSyncService.syncAll();
-        if (result.transactions > 0 || result.adjustments > 0) {
-          let msg = "";
-          if (result.transactions > 0) msg += `${result.transactions} nuovi movimenti. `;
-          if (result.adjustments > 0) msg += `Patrimonio aggiornato.`;
-          ui.showToast({ message: msg.trim(), type: 'success' });
-        }
+        notifySyncResult(await BankSyncService.syncAll());
       } catch (e) {
         console.warn('Silent bank sync failed:', e);
       }
     };
 
+    // ✅ NEW: At launch just store what the background job already synced (no live sync)
+    BankSyncService.importBackgroundSync().then(notifySyncResult);
+
+    // ✅ NEW: Move settled raw events to the native archive (not awaited: it can take a while)
+    RawDataService.archiveSettledEvents();
+
     const resumeListener = CapApp.addListener('appStateChange', ({ isActive }) => {
       if (isActive) handleResume();
     });
@@ -293,22 +305,23 @@ const App: React.FC<{ onLogout: () => void; currentEmail: string; onEmailChanged
     ui.setIsParsingImage(true);
     try {
       const { parseExpensesFromImage } = await import('./utils/ai');
-      const parsedData = await parseExpensesFromImage(image.base64Image, image.mimeType);
+      const base64Image = await readImageBase64(image);
+      const parsedData = await parseExpensesFromImage(base64Image, image.mimeType);
 
       if (parsedData?.length === 1) {
-        ui.setPrefilledData(data.sanitizeExpenseData(parsedData[0], image.base64Image));
+        ui.setPrefilledData(data.sanitizeExpenseData(parsedData[0], base64Image));
         window.history.replaceState({ modal: 'form' }, '');
         ui.nav.setIsFormOpen(true);
       } else if (parsedData && parsedData.length > 1) {
         // Handle multiple expenses
-        ui.setMultipleExpensesData(parsedData.map(e => data.sanitizeExpenseData(e, image.base64Image)));
+        ui.setMultipleExpensesData(parsedData.map(e => data.sanitizeExpenseData(e, base64Image)));
         ui.nav.setIsMultipleExpensesModalOpen(true);
         window.history.replaceState({ modal: 'multiple_expenses' }, '');
       } else {
         ui.showToast({ message: 'Nessuna spesa trovata.', type: 'error' });
       }
 
-      await deleteImageFromQueue(image.id);
+      await ReceiptQueueService.remove(image);
       ui.refreshPendingImages();
     } catch (error) {
       console.error('Error analyzing image:', error);
@@ -365,7 +378,7 @@ const App: React.FC<{ onLogout: () => void; currentEmail: string; onEmailChanged
       ref={mainLayoutRef}
       header={
         <Header
-          pendingSyncs={ui.pendingImages.length}
+          pendingSyncs={ui.pendingImagesTotal}
           isOnline={isOnline}
           onInstallClick={handleInstallClick}
           installPromptEvent={installPromptEvent}
@@ -650,7 +663,7 @@ const App: React.FC<{ onLogout: () => void; currentEmail: string; onEmailChanged
         }
         onOpenCardManager={() => setIsCardManagerOpen(true)}
       />
-      <PendingImages images={ui.pendingImages} onAnalyze={handleAnalyzeImage} onDelete={async (id) => { await deleteImageFromQueue(id); ui.refreshPendingImages(); }} isOnline={isOnline} syncingImageId={ui.syncingImageId} />
+      <PendingImages images={ui.pendingImages} total={ui.pendingImagesTotal} onLoadMore={ui.loadMorePendingImages} onAnalyze={handleAnalyzeImage} onDelete={async (id) => { const image = ui.pendingImages.find(i => i.id === id); if (image) await ReceiptQueueService.remove(image); ui.refreshPendingImages(); }} isOnline={isOnline} syncingImageId={ui.syncingImageId} />
 
       {/* Global Loading Overlay for Image Analysis */}
       <LoadingOverlay isVisible={ui.isParsingImage} message="Analisi scontrino in corso..." />
@@ -784,6 +797,7 @@ const App: React.FC<{ onLogout: () => void; currentEmail: string; onEmailChanged
           setTimeout(() => ui.nav.setIsBankSyncModalOpen(true), 150);
         }}
         expenses={data.expenses}
+        accounts={data.accounts}
         showToast={ui.showToast}
       />
 
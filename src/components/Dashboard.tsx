@@ -17,6 +17,7 @@ import { AccountsDetailedIcon } from './icons/AccountsDetailedIcon';
 import { SubscriptionIcon } from './icons/SubscriptionIcon';
 import { exportExpenses } from '../utils/fileHelper';
 import { useTapBridge } from '../hooks/useTapBridge';
+import { useDashboardMetrics } from '../hooks/useDashboardMetrics';
 import { parseLocalYYYYMMDD, toYYYYMMDD } from '../utils/date';
 import {
     QuickFilterControl,
@@ -352,16 +353,8 @@ const Dashboard: React.FC<DashboardProps> = ({
         return (Object.values(balances) as number[]).reduce((acc, val) => acc + val, 0);
     }, [accounts, expenses]);
 
-    const { totalExpenses, totalIncome, netBudget, dailyTotal, categoryData, recurringCountInPeriod, periodLabel, dateRangeLabel } = useMemo(() => {
-        const safeExpenses = expenses || [];
-        const validExpenses = safeExpenses.filter(e => e.amount != null && !isNaN(Number(e.amount)));
+    const { rangeStart, rangeEnd, periodLabel, dateRangeLabel } = useMemo(() => {
         const now = new Date();
-
-        const todayString = toYYYYMMDD(now);
-        const daily = validExpenses
-            .filter(expense => expense.date === todayString && expense.type === 'expense')
-            .reduce((acc, expense) => acc + Number(expense.amount), 0);
-
         let start: Date, end: Date, label: string, rangeLabel = '';
 
         if (activeViewIndex === 0) {
@@ -433,23 +426,17 @@ const Dashboard: React.FC<DashboardProps> = ({
             }
         }
 
-        const periodTransactions = validExpenses.filter(e => {
-            const expenseDate = parseLocalYYYYMMDD(e.date);
-            return expenseDate >= start && expenseDate <= end;
-        });
-
-        const periodExpenses = periodTransactions.filter(e => e.type === 'expense');
-        const periodIncome = periodTransactions.filter(e => e.type === 'income');
-        const periodAdjustments = periodTransactions.filter(e => e.type === 'adjustment');
+        return { rangeStart: start, rangeEnd: end, periodLabel: label, dateRangeLabel: rangeLabel };
+    }, [activeViewIndex, quickFilter, periodType, periodDate, customRange]);
 
-        const totalExp = periodExpenses.reduce((acc, e) => acc + Number(e.amount), 0);
-        const totalInc = periodIncome.reduce((acc, e) => acc + Number(e.amount), 0);
-        const totalAdj = periodAdjustments.reduce((acc, e) => acc + Number(e.amount), 0);
+    const safeExpenses = useMemo(() => expenses || [], [expenses]);
 
-        const budget = totalInc - totalExp + totalAdj;
+    // Totals from the native daily buckets on Android (one pass over the list on web)
+    const { totalExpenses, totalIncome, netBudget, dailyTotal, categoryData } = useDashboardMetrics(safeExpenses, rangeStart, rangeEnd);
 
+    const recurringCountInPeriod = useMemo(() => {
         let recurringCount = 0;
-        if (!isNaN(start.getTime()) && !isNaN(end.getTime())) {
+        if (!isNaN(rangeStart.getTime()) && !isNaN(rangeEnd.getTime())) {
             recurringExpenses.forEach(template => {
                 if (!template.date) return;
                 const totalGenerated = safeExpenses.filter(e => e.recurringExpenseId === template.id).length;
@@ -459,39 +446,19 @@ const Dashboard: React.FC<DashboardProps> = ({
                 let nextDue = parseLocalYYYYMMDD(template.date);
                 let simulatedOccurrences = 0;
                 while (nextDue) {
-                    if (nextDue > end) break;
+                    if (nextDue > rangeEnd) break;
                     if (template.recurrenceEndType === 'date' && template.recurrenceEndDate && toYYYYMMDD(nextDue) > template.recurrenceEndDate) break;
                     if (template.recurrenceEndType === 'count' && template.recurrenceCount && simulatedOccurrences >= template.recurrenceCount) break;
 
-                    if (nextDue >= start) recurringCount++;
+                    if (nextDue >= rangeStart) recurringCount++;
 
                     simulatedOccurrences++;
                     nextDue = calculateNextDueDate(template, nextDue);
                 }
             });
         }
-
-        const categoryTotals = periodExpenses.reduce((acc: Record<string, number>, expense) => {
-            const category = expense.category || 'Altro';
-            acc[category] = (acc[category] || 0) + Number(expense.amount);
-            return acc;
-        }, {} as Record<string, number>);
-
-        const sortedCategoryData = Object.entries(categoryTotals)
-            .map(([name, value]) => ({ name, value: value as number }))
-            .sort((a, b) => b.value - a.value);
-
-        return {
-            totalExpenses: totalExp,
-            totalIncome: totalInc,
-            netBudget: budget,
-            dailyTotal: daily,
-            categoryData: sortedCategoryData,
-            recurringCountInPeriod: recurringCount,
-            periodLabel: label,
-            dateRangeLabel: rangeLabel
-        };
-    }, [expenses, recurringExpenses, activeViewIndex, quickFilter, periodType, periodDate, customRange]);
+        return recurringCount;
+    }, [safeExpenses, recurringExpenses, rangeStart, rangeEnd]);
 
     const listTx = -activeViewIndex * (100 / 3);
 
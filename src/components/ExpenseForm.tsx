@@ -20,7 +20,7 @@ import ConfirmationModal from './ConfirmationModal';
 import { PaperClipIcon } from './icons/PaperClipIcon';
 import { CameraIcon } from './icons/CameraIcon';
 import { PhotoIcon } from './icons/PhotoIcon';
-import { pickImage, processImageFile } from '../utils/fileHelper';
+import { pickReceiptBase64 } from '../utils/fileHelper';
 import { parseLocalYYYYMMDD, toYYYYMMDD } from '../utils/date';
 
 interface ExpenseFormProps {
@@ -445,8 +445,7 @@ const ExpenseForm: React.FC<ExpenseFormProps> = ({ isOpen, onClose, onSubmit, in
 
   const handlePickReceipt = async (source: 'camera' | 'gallery') => {
     try {
-      const file = await pickImage(source);
-      const { base64 } = await processImageFile(file);
+      const base64 = await pickReceiptBase64(source);
       setFormData(prev => ({ ...prev, receipts: [...(prev.receipts || []), base64] }));
       setTimeout(handleCloseReceiptMenu, 500);
     } catch (e) {
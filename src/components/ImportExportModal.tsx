@@ -1,7 +1,8 @@
 import React, { useState, useRef } from 'react';
 import { createPortal } from 'react-dom';
-import { Expense } from '../types';
+import { Account, Expense } from '../types';
 import { exportExpenses } from '../utils/fileHelper';
+import { StatementImportService } from '../services/statement-import-service';
 import { ArrowPathIcon } from './icons/ArrowPathIcon';
 import { ArrowDownTrayIcon } from './icons/ArrowDownTrayIcon';
 import { ArrowUpTrayIcon } from './icons/ArrowUpTrayIcon';
@@ -15,6 +16,7 @@ interface ImportExportModalProps {
     onSync: () => Promise<void> | void;
     onOpenBankSyncSettings: () => void;
     expenses: Expense[];
+    accounts: Account[];
     showToast: (msg: { message: string; type: 'success' | 'info' | 'error' }) => void;
 }
 
@@ -25,10 +27,15 @@ const ImportExportModal: React.FC<ImportExportModalProps> = ({
     onSync,
     onOpenBankSyncSettings,
     expenses,
+    accounts,
     showToast
 }) => {
     const [showExportOptions, setShowExportOptions] = useState(false);
+    const [showStatementAccounts, setShowStatementAccounts] = useState(false);
     const [isExporting, setIsExporting] = useState(false);
+    const [exportProgress, setExportProgress] = useState(0);
+    const [isImportingStatement, setIsImportingStatement] = useState(false);
+    const [statementRows, setStatementRows] = useState(0);
     const fileInputRef = useRef<HTMLInputElement>(null);
 
     if (!isOpen) return null;
@@ -46,10 +53,11 @@ const ImportExportModal: React.FC<ImportExportModalProps> = ({
         if (fileInputRef.current) fileInputRef.current.value = '';
     };
 
-    const handleExportClick = async (format: 'excel' | 'json') => {
+    const handleExportClick = async (format: 'excel' | 'csv' | 'json') => {
         setIsExporting(true);
+        setExportProgress(0);
         try {
-            const result = await exportExpenses(expenses, format);
+            const result = await exportExpenses(expenses, format, setExportProgress);
             onClose();
             // Show toast after close
             setTimeout(() => {
@@ -66,6 +74,35 @@ const ImportExportModal: React.FC<ImportExportModalProps> = ({
         }
     };
 
+    const handleStatementImport = async (accountId: string) => {
+        setIsImportingStatement(true);
+        setStatementRows(0);
+        try {
+            const result = await StatementImportService.pickAndImport(accountId, (progress) => setStatementRows(progress.parsed));
+            if (!result) return;
+            onClose();
+            setTimeout(() => {
+                showToast({
+                    message: result.parsed > 0
+                        ? `Estratto conto: ${result.imported} nuovi movimenti da confermare (${result.parsed - result.imported} già presenti)`
+                        : 'Nessun movimento trovato nel file.',
+                    type: result.parsed > 0 ? 'success' : 'info'
+                });
+            }, 300);
+        } catch (error) {
+            console.error('Statement import error:', error);
+            showToast({ message: 'Impossibile leggere l\'estratto conto. Usa un file CSV o Excel (.xlsx).', type: 'error' });
+        } finally {
+            setIsImportingStatement(false);
+        }
+    };
+
+    const showSubView = showExportOptions || showStatementAccounts;
+    const closeSubView = () => {
+        setShowExportOptions(false);
+        setShowStatementAccounts(false);
+    };
+
     const handleSyncClick = async () => {
         onClose();
         await onSync();
@@ -82,16 +119,16 @@ const ImportExportModal: React.FC<ImportExportModalProps> = ({
                 {/* Header */}
                 <div className="p-6 flex items-center justify-between border-b dark:border-slate-800">
                     <div className="flex items-center gap-3">
-                        {showExportOptions && (
+                        {showSubView && (
                             <button
-                                onClick={() => setShowExportOptions(false)}
+                                onClick={closeSubView}
                                 className="p-2 -ml-2 rounded-full hover:bg-slate-100 dark:hover:bg-slate-800 transition-colors"
                             >
                                 <ArrowLeftIcon className="w-6 h-6 text-slate-500" />
                             </button>
                         )}
                         <h2 className="text-xl font-bold text-slate-800 dark:text-white">
-                            {showExportOptions ? 'Seleziona Formato' : 'Importa / Esporta'}
+                            {showExportOptions ? 'Seleziona Formato' : showStatementAccounts ? 'Seleziona Conto' : 'Importa / Esporta'}
                         </h2>
                     </div>
                     <button onClick={onClose} className="p-2 rounded-full hover:bg-slate-100 dark:hover:bg-slate-800 transition-colors">
@@ -101,7 +138,7 @@ const ImportExportModal: React.FC<ImportExportModalProps> = ({
 
                 {/* Body */}
                 <div className="p-6">
-                    {!showExportOptions ? (
+                    {!showSubView ? (
                         <div className="grid grid-cols-1 gap-4">
                             <button
                                 onClick={handleSyncClick}
@@ -124,11 +161,26 @@ const ImportExportModal: React.FC<ImportExportModalProps> = ({
                                     <ArrowDownTrayIcon className="w-7 h-7" />
                                 </div>
                                 <div>
-                                    <p className="font-bold text-slate-800 dark:text-white text-lg">Importa (CSV/Excel/JSON)</p>
+                                    <p className="font-bold text-slate-800 dark:text-white text-lg">Importa (JSON)</p>
                                     <p className="text-sm text-slate-500">Ripristina da un file precedentemente esportato.</p>
                                 </div>
                             </button>
 
+                            {StatementImportService.isAvailable() && (
+                                <button
+                                    onClick={() => setShowStatementAccounts(true)}
+                                    className="flex items-center gap-4 p-4 rounded-xl border-2 border-slate-100 dark:border-slate-800 hover:border-amber-500 dark:hover:border-amber-500/50 hover:bg-amber-50 dark:hover:bg-amber-950/20 transition-all text-left group"
+                                >
+                                    <div className="w-12 h-12 flex items-center justify-center bg-amber-50 dark:bg-amber-950/40 text-amber-600 dark:text-amber-400 rounded-lg group-hover:scale-110 transition-transform">
+                                        <ArrowDownTrayIcon className="w-7 h-7" />
+                                    </div>
+                                    <div>
+                                        <p className="font-bold text-slate-800 dark:text-white text-lg">Importa Estratto Conto</p>
+                                        <p className="text-sm text-slate-500">File CSV o Excel scaricato dalla tua banca.</p>
+                                    </div>
+                                </button>
+                            )}
+
                             <button
                                 onClick={() => setShowExportOptions(true)}
                                 className="flex items-center gap-4 p-4 rounded-xl border-2 border-slate-100 dark:border-slate-800 hover:border-emerald-500 dark:hover:border-emerald-500/50 hover:bg-emerald-50 dark:hover:bg-emerald-950/20 transition-all text-left group"
@@ -137,15 +189,31 @@ const ImportExportModal: React.FC<ImportExportModalProps> = ({
                                     <ArrowUpTrayIcon className="w-7 h-7" />
                                 </div>
                                 <div>
-                                    <p className="font-bold text-slate-800 dark:text-white text-lg">Esporta (Excel/JSON)</p>
+                                    <p className="font-bold text-slate-800 dark:text-white text-lg">Esporta (Excel/CSV/JSON)</p>
                                     <p className="text-sm text-slate-500">Salva tutte le tue spese in locale.</p>
                                 </div>
                             </button>
 
 
+                        </div>
+                    ) : showStatementAccounts ? (
+                        <div className="grid grid-cols-1 gap-3">
+                            {accounts.map(account => (
+                                <button
+                                    key={account.id}
+                                    onClick={() => handleStatementImport(account.id)}
+                                    disabled={isImportingStatement}
+                                    className="flex items-center justify-between p-4 rounded-xl border-2 border-slate-100 dark:border-slate-800 hover:border-amber-500 dark:hover:border-amber-500/50 hover:bg-amber-50 dark:hover:bg-amber-950/20 transition-all text-left disabled:opacity-50"
+                                >
+                                    <p className="font-bold text-slate-800 dark:text-white">{account.name}</p>
+                                </button>
+                            ))}
+                            {accounts.length === 0 && (
+                                <p className="text-sm text-slate-500 text-center">Crea prima un conto per importare l'estratto conto.</p>
+                            )}
                         </div>
                     ) : (
-                        <div className="grid grid-cols-1 md:grid-cols-2 gap-4">
+                        <div className="grid grid-cols-1 md:grid-cols-3 gap-4">
                             <button
                                 onClick={() => handleExportClick('excel')}
                                 disabled={isExporting}
@@ -158,6 +226,18 @@ const ImportExportModal: React.FC<ImportExportModalProps> = ({
                                 <p className="text-xs text-slate-500 mt-1">Leggibile con Excel/Drive</p>
                             </button>
 
+                            <button
+                                onClick={() => handleExportClick('csv')}
+                                disabled={isExporting}
+                                className="flex flex-col items-center justify-center p-6 rounded-xl border-2 border-slate-100 dark:border-slate-800 hover:border-cyan-500 dark:hover:border-cyan-500/50 hover:bg-cyan-50 dark:hover:bg-cyan-950/20 transition-all group disabled:opacity-50"
+                            >
+                                <div className="w-16 h-16 flex items-center justify-center bg-cyan-100 dark:bg-cyan-900/40 text-cyan-600 dark:text-cyan-400 rounded-full mb-3 group-hover:scale-110 transition-transform">
+                                    <svg className="w-8 h-8 font-black" viewBox="0 0 24 24" fill="currentColor"><path d="M14 2H6c-1.1 0-1.99.9-1.99 2L4 20c0 1.1.89 2 1.99 2H18c1.1 0 2-.9 2-2V8l-6-6zM6 20V4h7v5h5v11H6z" /><path d="M8 12h8v2H8zm0 4h8v2H8z" /></svg>
+                                </div>
+                                <p className="font-bold text-slate-800 dark:text-white">CSV (.csv)</p>
+                                <p className="text-xs text-slate-500 mt-1">Testo separato da ;</p>
+                            </button>
+
                             <button
                                 onClick={() => handleExportClick('json')}
                                 disabled={isExporting}
@@ -172,10 +252,21 @@ const ImportExportModal: React.FC<ImportExportModalProps> = ({
                         </div>
                     )}
 
+                    {isImportingStatement && (
+                        <div className="mt-6 flex flex-col items-center">
+                            <div className="w-10 h-10 border-4 border-amber-500 border-t-transparent rounded-full animate-spin mb-3" />
+                            <p className="text-sm font-semibold text-slate-600 dark:text-slate-400 animate-pulse">
+                                Lettura estratto conto...{statementRows > 0 ? ` ${statementRows} movimenti` : ''}
+                            </p>
+                        </div>
+                    )}
+
                     {isExporting && (
                         <div className="mt-6 flex flex-col items-center">
                             <div className="w-10 h-10 border-4 border-indigo-500 border-t-transparent rounded-full animate-spin mb-3" />
-                            <p className="text-sm font-semibold text-slate-600 dark:text-slate-400 animate-pulse">Generazione file in corso...</p>
+                            <p className="text-sm font-semibold text-slate-600 dark:text-slate-400 animate-pulse">
+                                Generazione file in corso...{exportProgress > 0 ? ` ${Math.round(exportProgress * 100)}%` : ''}
+                            </p>
                         </div>
                     )}
                 </div>
@@ -1,19 +1,45 @@
 
-import React, { useState } from 'react';
+import React, { useEffect, useState } from 'react';
 import { OfflineImage } from '../utils/db';
+import { ReceiptQueueService } from '../services/receipt-queue-service';
 import Skeleton from './Skeleton';
 import { TrashIcon } from './icons/TrashIcon';
 import { ChevronDownIcon } from './icons/ChevronDownIcon';
 
 interface PendingImagesProps {
   images: OfflineImage[];
+  total: number; // Queue size (images holds only the pages loaded so far)
+  onLoadMore: () => void;
   onAnalyze: (image: OfflineImage) => void;
   onDelete: (id: string) => void;
   isOnline: boolean;
   syncingImageId: string | null;
 }
 
-const PendingImages: React.FC<PendingImagesProps> = ({ images, onAnalyze, onDelete, isOnline, syncingImageId }) => {
+// Thumbnail requested only when the card is rendered (native: cached on disk, decoded once)
+const QueuedImageThumbnail: React.FC<{ image: OfflineImage }> = ({ image }) => {
+  const [src, setSrc] = useState<string | null>(null);
+
+  useEffect(() => {
+    let cancelled = false;
+    ReceiptQueueService.thumbnailSrc(image).then(s => { if (!cancelled) setSrc(s); });
+    return () => { cancelled = true; };
+  }, [image.id]);
+
+  if (!src) {
+    return <Skeleton variant="rectangular" height="6rem" animation="wave" className="rounded-t-lg" />;
+  }
+  return (
+    <img
+      src={src}
+      alt="Anteprima spesa offline"
+      loading="lazy"
+      className="w-full h-24 object-cover bg-sunset-cream/60 dark:bg-midnight-card rounded-t-lg"
+    />
+  );
+};
+
+const PendingImages: React.FC<PendingImagesProps> = ({ images, total, onLoadMore, onAnalyze, onDelete, isOnline, syncingImageId }) => {
   const [isOpen, setIsOpen] = useState(false);
 
   if (!images || images.length === 0) {
@@ -32,7 +58,7 @@ const PendingImages: React.FC<PendingImagesProps> = ({ images, onAnalyze, onDele
         <div className="flex items-center gap-3">
           <h2 className="text-xl font-bold text-slate-700 dark:text-slate-200">Immagini in Attesa</h2>
           <span className="flex items-center justify-center min-w-[24px] h-6 px-2 text-sm font-semibold text-white bg-sunset-coral dark:bg-electric-violet rounded-full">
-            {images.length}
+            {total}
           </span>
         </div>
         <ChevronDownIcon className={`w-6 h-6 text-slate-500 transition-transform duration-300 ${isOpen ? 'rotate-180' : ''}`} />
@@ -47,11 +73,7 @@ const PendingImages: React.FC<PendingImagesProps> = ({ images, onAnalyze, onDele
             {images.map(image => (
               <div key={image.id} className="border border-slate-200 dark:border-electric-violet/20 shadow-sm flex flex-col group rounded-lg overflow-hidden">
                 <div className="relative">
-                  <img
-                    src={`data:${image.mimeType};base64,${image.base64Image}`}
-                    alt="Anteprima spesa offline"
-                    className="w-full h-24 object-cover bg-sunset-cream/60 dark:bg-midnight-card rounded-t-lg"
-                  />
+                  <QueuedImageThumbnail image={image} />
                   {syncingImageId === image.id && (
                     <div className="absolute inset-0 rounded-t-lg z-10 overflow-hidden">
                       <Skeleton variant="rectangular" height="100%" animation="wave" className="opacity-80" />
@@ -82,6 +104,14 @@ const PendingImages: React.FC<PendingImagesProps> = ({ images, onAnalyze, onDele
               </div>
             ))}
           </div>
+          {images.length < total && (
+            <button
+              onClick={onLoadMore}
+              className="w-full mt-4 px-4 py-2 text-sm font-semibold text-slate-600 dark:text-slate-300 bg-sunset-cream/40 dark:bg-midnight-card/50 rounded-lg hover:bg-sunset-cream/70 dark:hover:bg-midnight-card transition-colors"
+            >
+              Mostra altre ({total - images.length})
+            </button>
+          )}
         </div>
       )}
     </div>
@@ -1,8 +1,9 @@
 import React, { useState, useEffect } from 'react';
 import { PendingTransaction } from '../services/notification-listener-service';
 import { Account, Expense } from '../types';
-import { pickImage, processImageFile } from '../utils/fileHelper';
+import { pickReceiptBase64 } from '../utils/fileHelper';
 import { CategoryService } from '../services/category-service'; // ✅ Import
+import { MerchantCategoryService } from '../services/merchant-category-service';
 
 // Type for pending transaction types (excludes 'adjustment' which is system-only)
 type PendingTransactionType = 'expense' | 'income' | 'transfer';
@@ -235,7 +236,9 @@ export function PendingTransactionsModal({
       const next = { ...prev };
       transactions.forEach((transaction) => {
         if (next[transaction.id]) return;
-        next[transaction.id] = { category: '', subcategory: '', receipts: [] };
+        // ✅ NEW: Prefill the category suggested at capture time (if it still exists)
+        const suggested = MerchantCategoryService.validate(transaction.category, transaction.subcategory);
+        next[transaction.id] = { category: suggested?.category || '', subcategory: suggested?.subcategory || '', receipts: [] };
       });
       return next;
     });
@@ -340,8 +343,7 @@ export function PendingTransactionsModal({
 
   const handlePickReceipt = async (transactionId: string, source: 'camera' | 'gallery') => {
     try {
-      const file = await pickImage(source);
-      const { base64 } = await processImageFile(file);
+      const base64 = await pickReceiptBase64(source);
       setExpenseMetaByTx((prev) => ({
         ...prev,
         [transactionId]: {
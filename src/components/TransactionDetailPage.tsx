@@ -17,7 +17,7 @@ import { TrashIcon } from './icons/TrashIcon';
 import { formatCurrency } from './icons/formatters';
 import SelectionMenu from './SelectionMenu';
 import { useTapBridge } from '../hooks/useTapBridge';
-import { pickImage, processImageFile } from '../utils/fileHelper';
+import { pickReceiptBase64 } from '../utils/fileHelper';
 import { parseLocalYYYYMMDD, toYYYYMMDD } from '../utils/date';
 import { getCategoryStyle } from '../utils/categoryStyles';
 
@@ -397,15 +397,14 @@ const TransactionDetailPage: React.FC<TransactionDetailPageProps> = ({
     e.stopPropagation();
     e.preventDefault();
 
-    const filePromise = pickImage(source);
+    const receiptPromise = pickReceiptBase64(source);
 
     setTimeout(() => {
       handleCloseReceiptMenu();
     }, 500);
 
-    filePromise
-      .then(async (file) => {
-        const { base64 } = await processImageFile(file);
+    receiptPromise
+      .then((base64) => {
         const currentReceipts = formDataRef.current.receipts || [];
         onFormChange({ receipts: [...currentReceipts, base64] });
       })
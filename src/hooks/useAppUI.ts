@@ -15,6 +15,8 @@ export function useAppUI(isOnline: boolean) {
     const {
         pendingImages,
         setPendingImages,
+        pendingImagesTotal,
+        loadMorePendingImages,
         syncingImageId,
         setSyncingImageId,
         imageForAnalysis,
@@ -51,6 +53,8 @@ export function useAppUI(isOnline: boolean) {
         // Pending Images Hook Returns
         pendingImages,
         setPendingImages,
+        pendingImagesTotal,
+        loadMorePendingImages,
         syncingImageId,
         setSyncingImageId,
         imageForAnalysis,
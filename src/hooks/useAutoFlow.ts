@@ -9,6 +9,11 @@ import { Account, Expense } from '../types';
 import { toYYYYMMDD } from '../utils/date';
 import { ToastMessage } from '../types/toast.types';
 import { DeduplicationService } from '../services/deduplication-service';
+import { MerchantCategoryService } from '../services/merchant-category-service';
+import { SMSHistoryImport } from '../services/sms-history-import';
+
+const SMS_HISTORY_IMPORT_KEY = 'sms_history_import_started';
+const SMS_HISTORY_MONTHS = 6;
 
 export type PendingConfirmOptions = {
     accountId?: string;
@@ -115,6 +120,11 @@ export function useAutoFlow(
 
                 const accountId = options?.accountId || fallbackAccountId;
 
+                // ✅ NEW: Every confirmed category trains the on-device categorizer
+                if (selectedType === 'expense' && options?.category) {
+                    MerchantCategoryService.learn(transaction.description, options.category, options.subcategory);
+                }
+
                 // --- Deduplication: check if a recurring-generated expense already matches ---
                 let deduplicated = false;
                 if (selectedType === 'expense' && expenses && setExpenses) {
@@ -367,6 +377,32 @@ export function useAutoFlow(
         }, 3000);
     }, [isSMSReaderEnabled, requestSMSPermission, manualCheckSMSPermission]);
 
+    // ✅ NEW: First time SMS access is granted, import the bank SMS of the last months.
+    // Runs natively in the background; if the app is closed it resumes at next launch (SmsListenerService).
+    useEffect(() => {
+        if (Capacitor.getPlatform() !== 'android' || !isSMSReaderEnabled) return;
+        if (localStorage.getItem(SMS_HISTORY_IMPORT_KEY)) return;
+        localStorage.setItem(SMS_HISTORY_IMPORT_KEY, String(Date.now()));
+
+        console.log(`📥 Starting first-run SMS history import (${SMS_HISTORY_MONTHS} months)...`);
+        SMSHistoryImport.start({ months: SMS_HISTORY_MONTHS }, (progress) => {
+            if (!progress.done) return;
+
+            if (progress.state === 'completed') {
+                window.dispatchEvent(new CustomEvent('auto-transactions-updated'));
+                if (progress.matched > 0) {
+                    showToast({ message: `Trovate ${progress.matched} transazioni negli SMS degli ultimi ${SMS_HISTORY_MONTHS} mesi`, type: 'success' });
+                }
+            } else if (progress.state === 'failed') {
+                // Retried at next launch (already saved chunks are skipped as duplicates)
+                localStorage.removeItem(SMS_HISTORY_IMPORT_KEY);
+                showToast({ message: 'Importazione degli SMS passati non riuscita, verrà ripetuta.', type: 'error' });
+            }
+        }).then((status) => {
+            if (!status) localStorage.removeItem(SMS_HISTORY_IMPORT_KEY);
+        });
+    }, [isSMSReaderEnabled, showToast]);
+
     // Transfer Confirmation Handling
     const currentConfirmationId = currentConfirmationTransaction?.id;
 
@@ -155,15 +155,15 @@ export const useAutoTransactions = () => {
     }
   }, [loadPending]);
 
-  // Manually scan SMS
-  const scanSMS = useCallback(async (hours: number = 24) => {
+  // Manually scan SMS (all senders by default: a manual scan is how new banks are discovered)
+  const scanSMS = useCallback(async (hours: number = 24, scanAll: boolean = true) => {
     try {
       if (!smsPermissionGranted) {
         console.log('⚠️ SMS permission not granted. Call requestSMSPermission() first.');
         return [];
       }
 
-      const transactions = await SMSTransactionParser.scanRecentSMS(hours);
+      const transactions = await SMSTransactionParser.scanRecentSMS(hours, scanAll);
       await loadPending();
       return transactions;
     } catch (error) {
@@ -3,11 +3,8 @@ import React, { useCallback, useEffect, useRef } from 'react';
 import { Expense, Account } from '../types';
 import { saveToCloud, loadFromCloud } from '../utils/cloud';
 import { getUsers } from '../utils/api';
-import { API_CONFIG } from '../config/api.config';
 import { ToastMessage } from '../types/toast.types';
 
-const SCRIPT_URL = API_CONFIG.DATA_SCRIPT_URL;
-
 export const useCloudSync = (
   currentEmail: string,
   isOnline: boolean,
@@ -26,17 +23,13 @@ export const useCloudSync = (
     try {
       if (!isSilent) showToast({ message: 'Sincronizzazione...', type: 'info' });
 
-      const response = await fetch(SCRIPT_URL, {
-        method: 'POST',
-        body: JSON.stringify({ action: 'load', email: currentEmail })
-      });
-
-      const json = await response.json();
+      // Incrementale sul dispositivo (solo i chunk cambiati), load completo altrimenti
+      const result = await loadFromCloud(currentEmail);
 
-      if (json.success && json.data) {
-        setExpenses(json.data.expenses || []);
-        if (json.data.recurringExpenses) setRecurringExpenses(json.data.recurringExpenses);
-        if (json.data.accounts) setAccounts(json.data.accounts);
+      if (result) {
+        setExpenses(result.data.expenses || []);
+        if (result.data.recurringExpenses) setRecurringExpenses(result.data.recurringExpenses);
+        if (result.data.accounts) setAccounts(result.data.accounts);
 
         if (!isSilent) showToast({ message: 'Dati aggiornati!', type: 'success' });
         console.log("Sync completato con successo.");
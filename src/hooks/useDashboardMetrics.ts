@@ -0,0 +1,43 @@
+import { useState, useEffect, useMemo } from 'react';
+import { Expense } from '../types';
+import { calculateDashboardMetrics, DashboardMetrics } from '../utils/dashboardMetrics';
+import { DashboardAggregateService } from '../services/dashboard-aggregate-service';
+
+/**
+ * Dashboard metrics of [start, end].
+ * With the full list (no filters) on Android they come from the native daily buckets,
+ * otherwise - and until the first native answer - from calculateDashboardMetrics.
+ * `filtered` is the list to use when some filters are active.
+ */
+export const useDashboardMetrics = (
+    expenses: Expense[],
+    start: Date,
+    end: Date,
+    filtered: Expense[] = expenses
+): DashboardMetrics => {
+    const useNative = filtered === expenses && DashboardAggregateService.isAvailable();
+    const [nativeMetrics, setNativeMetrics] = useState<DashboardMetrics | null>(null);
+
+    useEffect(() => {
+        if (!useNative) {
+            setNativeMetrics(null);
+            return;
+        }
+
+        let active = true;
+        DashboardAggregateService.getMetrics(expenses, start, end).then(metrics => {
+            if (active) setNativeMetrics(metrics);
+        });
+        return () => {
+            active = false;
+        };
+    }, [useNative, expenses, start, end]);
+
+    const hasNative = useNative && nativeMetrics !== null;
+    const jsMetrics = useMemo(
+        () => (hasNative ? null : calculateDashboardMetrics(filtered, start, end)),
+        [hasNative, filtered, start, end]
+    );
+
+    return jsMetrics ?? nativeMetrics!;
+};
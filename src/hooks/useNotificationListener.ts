@@ -13,7 +13,6 @@ export function useNotificationListener() {
   const [isEnabled, setIsEnabled] = useState<boolean | null>(null);
   const isCheckingRef = useRef(false);
   const hasCheckedOnceRef = useRef(false);
-  const resumeTimeoutRef = useRef<NodeJS.Timeout | null>(null);
 
   // Check if running on Android
   const isAndroid = Capacitor.getPlatform() === 'android';
@@ -148,39 +147,29 @@ export function useNotificationListener() {
       }
     })();
 
-    // ✅✅✅ SAFE resume listener with 3000ms delay
-    // This gives Android enough time to update Settings.Secure after user returns
-    const resumeListener = CapApp.addListener('resume', () => {
-      console.log('📱 App resumed - scheduling SAFE permission check in 3000ms...');
+    // ✅ Enabled/disabled state is pushed by the native Settings observer
+    // (no more delayed re-check when the user comes back from Settings)
+    const stateListener = notificationListenerService.onStateChange(() => {
+      checkPermissionStatus();
+    });
 
-      // Clear any existing timeout
-      if (resumeTimeoutRef.current) {
-        clearTimeout(resumeTimeoutRef.current);
+    // Resume: only drain what the native service queued while we were in background
+    const resumeListener = CapApp.addListener('resume', async () => {
+      console.log('📱 App resumed - checking pending notifications');
+      try {
+        // ✅ FORCE check pending info on resume, even if already initialized
+        await notificationListenerService.checkPendingNotifications();
+      } catch (error) {
+        console.error('❌ Error in resume pending check:', error);
+        // Swallow error - don't crash
       }
-
-      // Schedule check with 3 second delay (SAFE)
-      resumeTimeoutRef.current = setTimeout(async () => {
-        console.log('⏰ 3 seconds elapsed - checking permission and pending transactions (SAFE)');
-        try {
-          await checkPermissionStatus();
-          // ✅ FORCE check pending info on resume, even if already initialized
-          await notificationListenerService.checkPendingNotifications();
-        } catch (error) {
-          console.error('❌ Error in resume permission check:', error);
-          // Swallow error - don't crash
-        }
-      }, 1000); // ✅ 1 SECOND - enough time for Android to update Settings.Secure
     });
 
-    console.log('✅ SAFE resume listener registered (1s delay)');
-
     // Cleanup
     return () => {
       console.log('🧹 useNotificationListener unmounting');
+      stateListener.then(listener => listener.remove());
       resumeListener.then(listener => listener.remove());
-      if (resumeTimeoutRef.current) {
-        clearTimeout(resumeTimeoutRef.current);
-      }
       // ✅ Cleanup service on unmount
       notificationListenerService.destroy();
     };
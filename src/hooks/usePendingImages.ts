@@ -1,28 +1,53 @@
 
-import { useState, useCallback, useRef } from 'react';
-import { getQueuedImages, OfflineImage, addImageToQueue } from '../utils/db';
-import { processImageFile, pickImage } from '../utils/fileHelper';
+import { useState, useCallback, useRef, useEffect } from 'react';
+import { OfflineImage } from '../utils/db';
+import { processImageFile, pickReceiptImage } from '../utils/fileHelper';
+import { ReceiptQueueService } from '../services/receipt-queue-service';
 
 export type ExtendedOfflineImage = OfflineImage & { _isShared?: boolean };
 
 export const usePendingImages = (isOnline: boolean, showToast: any) => {
   const [pendingImages, setPendingImages] = useState<OfflineImage[]>([]);
+  const [pendingImagesTotal, setPendingImagesTotal] = useState(0);
   const [syncingImageId, setSyncingImageId] = useState<string | null>(null);
   const [imageForAnalysis, setImageForAnalysis] = useState<ExtendedOfflineImage | null>(null);
 
   const pendingImagesCountRef = useRef(0);
   const sharedImageIdRef = useRef<string | null>(null);
 
+  // Reloads the pages already shown (at least the first): metadata only, thumbnails load lazily
   const refreshPendingImages = useCallback(async () => {
     try {
-      const images = await getQueuedImages();
-      setPendingImages(images || []);
-      pendingImagesCountRef.current = (images || []).length;
+      const limit = Math.max(ReceiptQueueService.PAGE_SIZE, pendingImagesCountRef.current);
+      const { items, total } = await ReceiptQueueService.list(0, limit);
+      setPendingImages(items);
+      setPendingImagesTotal(total);
+      pendingImagesCountRef.current = items.length;
     } catch (e) {
       setPendingImages([]);
+      setPendingImagesTotal(0);
     }
   }, []);
 
+  const loadMorePendingImages = useCallback(async () => {
+    try {
+      const { items, total } = await ReceiptQueueService.list(pendingImagesCountRef.current, ReceiptQueueService.PAGE_SIZE);
+      setPendingImages(prev => {
+        const known = new Set(prev.map(i => i.id));
+        const next = [...prev, ...items.filter(i => !known.has(i.id))];
+        pendingImagesCountRef.current = next.length;
+        return next;
+      });
+      setPendingImagesTotal(total);
+    } catch (e) {
+      console.error('Error loading queued images', e);
+    }
+  }, []);
+
+  useEffect(() => {
+    refreshPendingImages();
+  }, [refreshPendingImages]);
+
   const handleSharedFile = async (file: File) => {
     try {
       showToast({ message: 'Elaborazione immagine condivisa...', type: 'info' });
@@ -31,7 +56,7 @@ export const usePendingImages = (isOnline: boolean, showToast: any) => {
       if (isOnline) {
         setImageForAnalysis(newImage);
       } else {
-        await addImageToQueue(newImage);
+        await ReceiptQueueService.add(newImage);
         refreshPendingImages();
         showToast({ message: 'Salvata in coda (offline).', type: 'info' });
       }
@@ -45,12 +70,11 @@ export const usePendingImages = (isOnline: boolean, showToast: any) => {
     try { window.history.replaceState({ modal: 'home' }, ''); } catch (e) { console.warn('History replace error', e); }
     sessionStorage.setItem('preventAutoLock', 'true');
     try {
-      const file = await pickImage(source);
-      const { base64: base64Image, mimeType } = await processImageFile(file);
-      const newImage: OfflineImage = { id: crypto.randomUUID(), base64Image, mimeType, timestamp: Date.now() };
+      const picked = await pickReceiptImage(source);
+      const newImage: OfflineImage = { id: crypto.randomUUID(), ...picked, timestamp: Date.now() };
       if (isOnline) setImageForAnalysis(newImage);
       else {
-        await addImageToQueue(newImage);
+        await ReceiptQueueService.add(newImage);
         refreshPendingImages();
       }
     } catch (error) { /* Ignora */ }
@@ -60,6 +84,8 @@ export const usePendingImages = (isOnline: boolean, showToast: any) => {
   return {
     pendingImages,
     setPendingImages,
+    pendingImagesTotal,
+    loadMorePendingImages,
     syncingImageId,
     setSyncingImageId,
     imageForAnalysis,
@@ -1,7 +1,6 @@
 // src/hooks/useSMSListener.ts
 
 import { useState, useEffect, useCallback, useRef } from 'react';
-import { App as CapApp } from '@capacitor/app';
 import { Capacitor } from '@capacitor/core';
 import smsListenerService from '../services/sms-listener-service';
 import type { PendingSMSTransaction } from '../services/sms-listener-service';
@@ -11,7 +10,6 @@ export function useSMSListener() {
   const [isEnabled, setIsEnabled] = useState<boolean | null>(null);
   const isCheckingRef = useRef(false);
   const hasCheckedOnceRef = useRef(false);
-  const resumeTimeoutRef = useRef<NodeJS.Timeout | null>(null);
 
   // Check if running on Android
   const isAndroid = Capacitor.getPlatform() === 'android';
@@ -144,36 +142,16 @@ export function useSMSListener() {
       }
     })();
 
-    // SAFE resume listener with 3000ms delay
-    const resumeListener = CapApp.addListener('resume', () => {
-      console.log('📱 App resumed - scheduling SAFE SMS permission check in 3000ms...');
-
-      // Clear any existing timeout
-      if (resumeTimeoutRef.current) {
-        clearTimeout(resumeTimeoutRef.current);
-      }
-
-      // Schedule check with 3 second delay (SAFE)
-      resumeTimeoutRef.current = setTimeout(async () => {
-        console.log('⏰ 3 seconds elapsed - checking SMS permission now (SAFE)');
-        try {
-          await checkPermissionStatus();
-        } catch (error) {
-          console.error('❌ Error in resume SMS permission check:', error);
-          // Swallow error - don't crash
-        }
-      }, 1000); // 1 SECOND - enough time for Android to update
+    // ✅ Permission changes are pushed natively (after the dialog, or on resume
+    // when the user granted it from app settings): no delayed re-check needed
+    const permissionListener = smsListenerService.onPermissionChange(() => {
+      checkPermissionStatus();
     });
 
-    console.log('✅ SAFE SMS resume listener registered (1s delay)');
-
     // Cleanup
     return () => {
       console.log('🧹 useSMSListener unmounting');
-      resumeListener.then(listener => listener.remove());
-      if (resumeTimeoutRef.current) {
-        clearTimeout(resumeTimeoutRef.current);
-      }
+      permissionListener.then(listener => listener?.remove());
       // Cleanup service on unmount
       smsListenerService.destroy();
     };
@@ -0,0 +1,29 @@
+import { useState, useEffect } from 'react';
+import { Expense } from '../types';
+import { SearchIndexService } from '../services/search-index-service';
+
+/**
+ * Ids of the transactions matching the description query, from the native search index
+ * (every word must match, the last one also as a prefix; accents and Italian plurals folded).
+ * null when there is no query, on web, or until the native answer for this query arrives:
+ * the caller then filters the descriptions in JS.
+ */
+export const useTransactionSearch = (query: string, expenses: Expense[]): Set<string> | null => {
+    const [result, setResult] = useState<{ query: string; expenses: Expense[]; ids: Set<string> } | null>(null);
+    const trimmed = query.trim();
+
+    useEffect(() => {
+        if (!trimmed || !SearchIndexService.isAvailable()) return;
+
+        let active = true;
+        SearchIndexService.searchTransactions(expenses, trimmed, 0, Math.max(expenses.length, 1)).then(page => {
+            if (active && page) setResult({ query: trimmed, expenses, ids: new Set(page.ids) });
+        });
+        return () => {
+            active = false;
+        };
+    }, [trimmed, expenses]);
+
+    if (!trimmed || !result || result.query !== trimmed || result.expenses !== expenses) return null;
+    return result.ids;
+};
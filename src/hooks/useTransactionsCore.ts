@@ -2,6 +2,8 @@ import { useState, useCallback, useEffect } from 'react';
 import { Expense, Account, EventBudget } from '../types';
 import { SubscriptionService } from '../services/subscription-service';
 import { CategoryService } from '../services/category-service';
+import { DashboardAggregateService } from '../services/dashboard-aggregate-service';
+import { SearchIndexService } from '../services/search-index-service';
 import { useLocalStorage } from './useLocalStorage';
 import { DEFAULT_ACCOUNTS } from '../utils/defaults';
 import { toYYYYMMDD } from '../utils/date';
@@ -28,6 +30,12 @@ export function useTransactionsCore(showToast: (msg: ToastMessage) => void) {
     // This hook watches expenses/recurringExpenses and adds new ones if needed
     useRecurringExpenseGenerator(expenses, setExpenses, recurringExpenses, setRecurringExpenses);
 
+    // ✅ NEW: Keep the native aggregates (dashboard totals, account balances) and the search index in step with the list
+    useEffect(() => {
+        DashboardAggregateService.update(expenses || []);
+        SearchIndexService.updateTransactions(expenses || []);
+    }, [expenses]);
+
     // ✅ Listen for external updates (e.g. from BankSyncService Bank reconciliation)
     useEffect(() => {
         const handleRefresh = () => {
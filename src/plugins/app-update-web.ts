@@ -14,4 +14,8 @@ export class AppUpdateWeb extends WebPlugin implements AppUpdatePlugin {
   }> {
     throw this.unimplemented('Not implemented on web.');
   }
+
+  async cancelRequest(): Promise<{ cancelled: boolean }> {
+    return { cancelled: false };
+  }
 }
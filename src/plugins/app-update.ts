@@ -14,15 +14,22 @@ export interface AppUpdatePlugin {
 
   /**
    * Get download progress for a specific download ID
+   * (native query has a short deadline: a stuck poll is rejected, not queued forever)
    */
   getDownloadProgress(options: {
     downloadId: number;
+    requestId?: string;
   }): Promise<{
     progress: number;
     bytesDownloaded: number;
     bytesTotal: number;
     status: string;
   }>;
+
+  /**
+   * ✅ NEW: Cancel a queued or running call started with the same requestId option
+   */
+  cancelRequest(options: { requestId: string }): Promise<{ cancelled: boolean }>;
 }
 
 const AppUpdate = registerPlugin<AppUpdatePlugin>('AppUpdate', {
@@ -0,0 +1,59 @@
+// src/plugins/bank-sync-web.ts
+
+import { WebPlugin } from '@capacitor/core';
+import type { BankSyncPlugin, BankApiResponse, BankTransactionsResult, BankSyncDelta, BankBackgroundInbox, BankHttpStats } from './bank-sync';
+
+// On web BankSyncService keeps using fetch: every method here is unimplemented
+export class BankSyncWeb extends WebPlugin implements BankSyncPlugin {
+  async configure(): Promise<{ baseUrl: string }> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async request<T = any>(): Promise<BankApiResponse<T>> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async fetchTransactions(): Promise<BankTransactionsResult> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async syncAccounts(): Promise<BankSyncDelta> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async commitSync(): Promise<{ committed: boolean }> {
+    return { committed: false };
+  }
+
+  async resetSyncState(): Promise<void> {
+    return;
+  }
+
+  async scheduleBackgroundSync(): Promise<{ scheduled: boolean }> {
+    return { scheduled: false };
+  }
+
+  async cancelBackgroundSync(): Promise<void> {
+    return;
+  }
+
+  async getBackgroundSync(): Promise<BankBackgroundInbox> {
+    return { batches: [], count: 0, scheduled: false, lastRun: 0, lastError: null };
+  }
+
+  async ackBackgroundSync(): Promise<{ removed: number }> {
+    return { removed: 0 };
+  }
+
+  async getStats(): Promise<BankHttpStats> {
+    return { requests: 0, retries: 0, notModified: 0, bytesOnWire: 0, bytesDecoded: 0 };
+  }
+
+  async clearCache(): Promise<void> {
+    return;
+  }
+
+  async cancelRequest(): Promise<{ cancelled: boolean }> {
+    return { cancelled: false };
+  }
+}
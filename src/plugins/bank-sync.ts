@@ -0,0 +1,198 @@
+// src/plugins/bank-sync.ts
+
+import { registerPlugin } from '@capacitor/core';
+import type { PluginListenerHandle } from '@capacitor/core';
+import type { CorrelatedTransaction } from '../types/transaction';
+
+export interface BankApiResponse<T = any> {
+  status: number;
+  ok: boolean;
+  data?: T;
+  text?: string;
+  fromCache: boolean; // Served from the native cache after a 304
+}
+
+export interface BankTransactionsResult {
+  accountUid: string;
+  status: number; // 401 = session expired (count 0)
+  count: number;
+  pages: number;
+  responses: number; // HTTP responses (continuation keys followed)
+  notModified: boolean; // Every response revalidated with 304
+  truncated: boolean; // Too many continuation keys: the download stopped before the end
+  transactions?: any[]; // Only when stream is false
+}
+
+export interface BankTransactionsPage {
+  accountUid: string;
+  requestId?: string;
+  page: number;
+  transactions: any[];
+}
+
+export interface BankAccountDelta {
+  accountUid: string;
+  status: number; // 401 = session expired (no delta, no balances)
+  dateFrom: string | null; // Window requested from the bank (null = full history)
+  fetched: number;
+  unchanged: number;
+  responses: number;
+  notModified: boolean;
+  truncated: boolean; // Download stopped early: the watermark was not advanced, next sync asks the same window
+  added: any[]; // Raw transactions never seen before
+  changed: any[]; // Raw transactions whose content changed (e.g. pending → booked)
+  correlated?: CorrelatedTransaction[]; // New for the bank, already captured from SMS / notification (raw tx in `transaction`)
+  balances?: BankApiResponse; // Raw /balances response
+  error?: string;
+  elapsedMs: number;
+}
+
+export interface BankSyncDelta {
+  syncId: string; // Pass to commitSync() once the delta is stored
+  accounts: BankAccountDelta[];
+  added: number;
+  changed: number;
+  parallelism: number;
+  elapsedMs: number;
+}
+
+export interface BankBackgroundBatch {
+  id: string;
+  syncedAt: number;
+  added: number;
+  changed: number;
+  accounts: BankAccountDelta[]; // Only accounts with new/changed transactions or balances
+}
+
+export interface BankBackgroundInbox {
+  batches: BankBackgroundBatch[]; // Oldest first
+  count: number;
+  scheduled: boolean;
+  lastRun: number; // 0 = never
+  lastError: string | null;
+}
+
+export interface BankHttpStats {
+  requests: number;
+  retries: number;
+  notModified: number;
+  bytesOnWire: number;
+  bytesDecoded: number;
+}
+
+export interface BankSyncPlugin {
+  /**
+   * ✅ NEW: Change the API base URL (e.g. a local mock server); empty resets to Enable Banking
+   */
+  configure(options: { baseUrl?: string }): Promise<{ baseUrl: string }>;
+
+  /**
+   * ✅ NEW: API call through the native client (pooled, gzip, ETag/If-Modified-Since, jittered retries)
+   * Non-2xx statuses resolve with ok=false, like fetch.
+   */
+  request<T = any>(options: {
+    path: string;
+    token?: string;
+    method?: string;
+    body?: Record<string, any>;
+    cache?: boolean;
+    requestId?: string;
+  }): Promise<BankApiResponse<T>>;
+
+  /**
+   * ✅ NEW: All transactions of an account, decoded as a stream and following continuation keys
+   * @param options.status - Default 'both' (retried without it if the bank rejects it)
+   * @param options.stream - Emit 'transactionsPage' events instead of returning the list
+   */
+  fetchTransactions(options: {
+    accountUid: string;
+    token: string;
+    status?: string;
+    dateFrom?: string;
+    pageSize?: number;
+    stream?: boolean;
+    requestId?: string;
+  }): Promise<BankTransactionsResult>;
+
+  /**
+   * ✅ NEW: Incremental sync of several accounts, downloaded in parallel.
+   * Only transactions not seen in previous committed syncs (or changed since) are returned.
+   * @param options.parallelism - Accounts downloaded at the same time (default 3)
+   * @param options.full - Ignore the stored cursors and download the whole history
+   */
+  syncAccounts(options: {
+    token: string;
+    accounts: string[];
+    parallelism?: number;
+    full?: boolean;
+    requestId?: string;
+  }): Promise<BankSyncDelta>;
+
+  /**
+   * ✅ NEW: Persist the cursors of a syncAccounts() result (call after storing its delta)
+   */
+  commitSync(options: { syncId: string }): Promise<{ committed: boolean }>;
+
+  /**
+   * ✅ NEW: Forget the sync cursor of an account (all accounts if omitted)
+   */
+  resetSyncState(options?: { accountUid?: string }): Promise<void>;
+
+  /**
+   * ✅ NEW: Periodic native sync with JobScheduler (network + idle), also when the app is closed.
+   * The JWT is signed natively from these credentials and reused until it expires.
+   * @param options.privateKey - PKCS#8 PEM
+   * @param options.intervalMinutes - Default 240 (minimum 15)
+   */
+  scheduleBackgroundSync(options: {
+    appId: string;
+    clientId: string;
+    privateKey: string;
+    accounts: string[];
+    intervalMinutes?: number;
+    requiresIdle?: boolean;
+  }): Promise<{ scheduled: boolean }>;
+
+  /**
+   * ✅ NEW: Stop the background sync and forget its credentials
+   */
+  cancelBackgroundSync(): Promise<void>;
+
+  /**
+   * ✅ NEW: Deltas collected by the background sync, to store in one batch at launch
+   */
+  getBackgroundSync(): Promise<BankBackgroundInbox>;
+
+  /**
+   * ✅ NEW: Delete stored background batches
+   */
+  ackBackgroundSync(options: { ids: string[] }): Promise<{ removed: number }>;
+
+  /**
+   * ✅ NEW: Transport counters
+   */
+  getStats(): Promise<BankHttpStats>;
+
+  /**
+   * ✅ NEW: Drop cached bodies and validators
+   */
+  clearCache(): Promise<void>;
+
+  /**
+   * ✅ NEW: Cancel a queued or running call started with the same requestId option
+   */
+  cancelRequest(options: { requestId: string }): Promise<{ cancelled: boolean }>;
+
+  addListener(
+    eventName: 'transactionsPage',
+    listenerFunc: (page: BankTransactionsPage) => void
+  ): Promise<PluginListenerHandle>;
+
+  removeAllListeners(): Promise<void>;
+}
+
+const BankSync = registerPlugin<BankSyncPlugin>('BankSync', {
+  web: () => import('./bank-sync-web').then(m => new m.BankSyncWeb()),
+});
+
+export default BankSync;
@@ -0,0 +1,42 @@
+// src/plugins/categorizer-web.ts
+
+import { WebPlugin } from '@capacitor/core';
+import type { CategorizerPlugin, MerchantCategoryMatch, MerchantIndexStats, CategoryPrediction, ClassifierStats } from './categorizer';
+
+// No merchant index on web: transactions simply arrive without a suggested category
+export class CategorizerWeb extends WebPlugin implements CategorizerPlugin {
+  async suggestCategory(): Promise<{ match?: MerchantCategoryMatch; prediction?: CategoryPrediction }> {
+    return {};
+  }
+
+  async learnCategory(): Promise<{ merchant: string | null }> {
+    return { merchant: null };
+  }
+
+  async forgetMerchant(): Promise<{ removed: boolean }> {
+    return { removed: false };
+  }
+
+  async exportMerchantIndex(): Promise<MerchantIndexStats & { data: string }> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async importMerchantIndex(): Promise<{ entries: number }> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async getMerchantIndexStats(): Promise<MerchantIndexStats> {
+    return { entries: 0, learned: 0, nodes: 0, bytes: 0 };
+  }
+
+  async getClassifierStats(): Promise<ClassifierStats> {
+    return {
+      examples: 0, classes: 0, tested: 0, accuracy: 0, confidentTested: 0,
+      confidentAccuracy: 0, coverage: 0, avgClassifyMicros: 0, bytes: 0
+    };
+  }
+
+  async resetClassifier(): Promise<void> {
+    return;
+  }
+}
@@ -0,0 +1,86 @@
+// src/plugins/categorizer.ts
+
+import { registerPlugin } from '@capacitor/core';
+
+export interface MerchantCategoryMatch {
+  category: string;
+  subcategory: string; // '' = none
+  merchant: string; // Normalized merchant key that matched
+  learned: boolean; // true = chosen by the user, false = built-in list
+}
+
+export interface CategoryPrediction {
+  category: string;
+  subcategory: string;
+  confidence: number; // Posterior probability of the predicted category (0-1)
+  confident: boolean; // Confidence high enough and enough examples to use it without asking
+  examples: number; // Confirmations learned for this category
+}
+
+export interface ClassifierStats {
+  examples: number;
+  classes: number;
+  tested: number; // Confirmations predicted before being learned
+  accuracy: number; // Share of those predictions that were right
+  confidentTested: number;
+  confidentAccuracy: number; // Accuracy of the predictions marked confident
+  coverage: number; // Share of predictions marked confident
+  avgClassifyMicros: number;
+  bytes: number;
+}
+
+export interface MerchantIndexStats {
+  entries: number;
+  learned: number;
+  nodes: number; // Trie nodes
+  bytes: number; // Size on disk
+}
+
+export interface CategorizerPlugin {
+  /**
+   * ✅ NEW: Category of the longest known merchant in the description (native trie lookup),
+   * otherwise the on-device classifier prediction
+   */
+  suggestCategory(options: { description: string }): Promise<{ match?: MerchantCategoryMatch; prediction?: CategoryPrediction }>;
+
+  /**
+   * ✅ NEW: Learn the category confirmed by the user (classifier + merchant index); the merchant
+   * key is derived from the description unless given explicitly. Returns the merchant key (null if none).
+   */
+  learnCategory(options: {
+    description: string;
+    merchant?: string;
+    category: string;
+    subcategory?: string;
+  }): Promise<{ merchant: string | null }>;
+
+  /**
+   * ✅ NEW: Forget a learned merchant (built-in entries come back)
+   */
+  forgetMerchant(options: { merchant: string }): Promise<{ removed: boolean }>;
+
+  /**
+   * ✅ NEW: Whole merchant index as a compact base64 blob
+   */
+  exportMerchantIndex(): Promise<MerchantIndexStats & { data: string }>;
+
+  /**
+   * ✅ NEW: Load a blob from exportMerchantIndex(); by default its entries override the current ones
+   */
+  importMerchantIndex(options: { data: string; replace?: boolean }): Promise<{ entries: number }>;
+
+  getMerchantIndexStats(): Promise<MerchantIndexStats>;
+
+  /**
+   * ✅ NEW: Classifier accuracy on real confirmations and classify() timing
+   */
+  getClassifierStats(): Promise<ClassifierStats>;
+
+  resetClassifier(): Promise<void>;
+}
+
+const Categorizer = registerPlugin<CategorizerPlugin>('Categorizer', {
+  web: () => import('./categorizer-web').then(m => new m.CategorizerWeb()),
+});
+
+export default Categorizer;
@@ -0,0 +1,19 @@
+// src/plugins/cloud-backup-web.ts
+
+import { WebPlugin } from '@capacitor/core';
+import type { CloudBackupPlugin, CloudBackupResult, CloudRestoreResult } from './cloud-backup';
+
+// On web the whole AppData is still posted / loaded by cloud.ts
+export class CloudBackupWeb extends WebPlugin implements CloudBackupPlugin {
+  async backup(): Promise<CloudBackupResult> {
+    return { supported: false };
+  }
+
+  async restore(): Promise<CloudRestoreResult> {
+    return { supported: false };
+  }
+
+  async forget(): Promise<void> {
+    // Nothing stored on web
+  }
+}
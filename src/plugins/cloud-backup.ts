@@ -0,0 +1,58 @@
+// src/plugins/cloud-backup.ts
+
+import { registerPlugin } from '@capacitor/core';
+
+export interface CloudBackupResult {
+  supported: boolean; // false: the backend has no chunk actions, use the legacy full save
+  unchanged?: boolean; // same data already committed: nothing was sent
+  createdAt?: number; // of the committed manifest, stamped on the legacy save too
+  size?: number; // serialized bytes
+  chunks?: number;
+  uploadedChunks?: number;
+  uploadedBytes?: number; // compressed
+  elapsedMs?: number;
+}
+
+export interface CloudRestoreResult {
+  supported: boolean;
+  found?: boolean; // false: no chunked backup for this account
+  data?: string; // AppData as JSON
+  pinHash?: string;
+  pinSalt?: string;
+  createdAt?: number;
+  size?: number;
+  chunks?: number;
+  downloadedChunks?: number; // the others came from the local chunk cache
+  downloadedBytes?: number;
+  elapsedMs?: number;
+}
+
+export interface CloudBackupPlugin {
+  /**
+   * ✅ NEW: Incremental backup: only the chunks the backend lacks are uploaded (compressed).
+   * A file:// endpoint backs up to a local directory.
+   */
+  backup(options: {
+    endpoint: string;
+    email: string;
+    data: string;
+    pinHash: string;
+    pinSalt: string;
+  }): Promise<CloudBackupResult>;
+
+  /**
+   * ✅ NEW: Rebuild the latest backup, downloading only the chunks not cached on the device
+   */
+  restore(options: { endpoint: string; email: string }): Promise<CloudRestoreResult>;
+
+  /**
+   * ✅ NEW: Drop the local backup state of an account
+   */
+  forget(options: { endpoint: string; email: string }): Promise<void>;
+}
+
+const CloudBackup = registerPlugin<CloudBackupPlugin>('CloudBackup', {
+  web: () => import('./cloud-backup-web').then(m => new m.CloudBackupWeb()),
+});
+
+export default CloudBackup;
@@ -0,0 +1,23 @@
+// src/plugins/dashboard-aggregates-web.ts
+
+import { WebPlugin } from '@capacitor/core';
+import type { AggregateStats, AggregateTotals, DashboardAggregatesPlugin, SubscriptionSuggestion } from './dashboard-aggregates';
+
+// On web the totals and balances are computed in JS (calculateDashboardMetrics, calculateLocalBalance)
+export class DashboardAggregatesWeb extends WebPlugin implements DashboardAggregatesPlugin {
+  async sync(): Promise<AggregateStats> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async query(): Promise<AggregateTotals> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async balances(): Promise<{ balances: Record<string, number> }> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async detectSubscriptions(): Promise<{ suggestions: SubscriptionSuggestion[]; merchants: number; analyzed: number }> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+}
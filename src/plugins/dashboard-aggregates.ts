@@ -0,0 +1,85 @@
+// src/plugins/dashboard-aggregates.ts
+
+import { registerPlugin } from '@capacitor/core';
+
+export interface AggregateTransaction {
+  id: string;
+  date: string; // YYYY-MM-DD
+  type: 'expense' | 'income' | 'transfer' | 'adjustment'; // transfers only move balances
+  amount: number | null; // null: not a number (0 in the balances, not counted in the totals)
+  category: string;
+  accountId: string;
+  toAccountId?: string;
+  description?: string; // merchant, for the subscription detection
+  recurring?: boolean; // generated by a recurring template: not a subscription to suggest
+}
+
+export interface AggregateStats {
+  transactions: number; // counted in the dashboard totals
+  ledgerTransactions: number; // moving some account balance
+  days: number; // buckets allocated
+  outliers: number; // dates out of the bucket window (scanned at every query)
+  categories: number;
+}
+
+export interface AggregateTotals {
+  totalExpenses: number;
+  totalIncome: number;
+  totalAdjustments: number;
+  dailyTotal: number; // expenses of "today"
+  categories: { name: string; value: number }[]; // expenses of the range, largest first
+}
+
+export interface SubscriptionSuggestion {
+  merchant: string; // normalized merchant key
+  name: string; // description of the last charge
+  category: string;
+  cadence: 'weekly' | 'monthly' | 'yearly';
+  amount: number; // last charge
+  averageAmount: number;
+  charges: number;
+  firstDate: string; // YYYY-MM-DD
+  lastDate: string;
+  nextDate: string; // expected next charge
+  confidence: number; // 0-1
+  lastTransactionId: string;
+}
+
+export interface DashboardAggregatesPlugin {
+  /**
+   * ✅ NEW: Apply the transactions changed since the last sync to the daily buckets
+   * (reset: drop everything first, for the first sync of the session)
+   */
+  sync(options: {
+    reset?: boolean;
+    upserts?: AggregateTransaction[];
+    removals?: string[];
+  }): Promise<AggregateStats>;
+
+  /**
+   * ✅ NEW: Totals of the inclusive range [start, end] from the prefix sums of the buckets
+   */
+  query(options: { start: string; end: string; today: string }): Promise<AggregateTotals>;
+
+  /**
+   * ✅ NEW: Account balances from the running-balance ledger: the current one (O(1)), or at the
+   * end of `date` (YYYY-MM-DD) from the monthly checkpoints
+   */
+  balances(options: { accountIds: string[]; date?: string }): Promise<{ balances: Record<string, number> }>;
+
+  /**
+   * ✅ NEW: Recurring charges of the history (same merchant and amount band, weekly / monthly /
+   * yearly intervals) still active at `today`, most confident first
+   */
+  detectSubscriptions(options: { today: string; minConfidence?: number }): Promise<{
+    suggestions: SubscriptionSuggestion[];
+    merchants: number;
+    analyzed: number; // merchants changed since the previous detection
+  }>;
+}
+
+const DashboardAggregates = registerPlugin<DashboardAggregatesPlugin>('DashboardAggregates', {
+  web: () => import('./dashboard-aggregates-web').then(m => new m.DashboardAggregatesWeb()),
+});
+
+export default DashboardAggregates;
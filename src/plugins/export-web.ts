@@ -0,0 +1,23 @@
+// src/plugins/export-web.ts
+
+import { WebPlugin } from '@capacitor/core';
+import type { ExportPlugin, ExportProgress, ExportResult } from './export';
+
+// On web the file is built in memory and downloaded (fileHelper.exportExpenses)
+export class ExportWeb extends WebPlugin implements ExportPlugin {
+  async beginExport(): Promise<{ exportId: string }> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async appendRows(): Promise<ExportProgress> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async finishExport(): Promise<ExportResult> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async cancelExport(): Promise<{ cancelled: boolean }> {
+    return { cancelled: false };
+  }
+}
@@ -0,0 +1,60 @@
+// src/plugins/export.ts
+
+import { registerPlugin, PluginListenerHandle } from '@capacitor/core';
+
+export type ExportFormat = 'xlsx' | 'csv';
+export type ExportCell = string | number | boolean | null;
+
+export interface ExportProgress {
+  exportId: string;
+  rows: number; // Data rows written so far
+  totalRows: number;
+  bytes: number;
+  progress: number; // 0-1 (0 if totalRows was not given)
+}
+
+export interface ExportResult extends ExportProgress {
+  uri: string; // file:// URI in the cache dir, ready for the share sheet
+  path: string;
+  fileName: string;
+  mimeType: string;
+  elapsedMs: number;
+}
+
+export interface ExportPlugin {
+  /**
+   * ✅ NEW: Open a streaming export (CSV default ';' and decimal ',')
+   */
+  beginExport(options: {
+    format: ExportFormat;
+    fileName: string;
+    columns: string[];
+    sheetName?: string;
+    totalRows?: number;
+    delimiter?: string;
+    decimalSeparator?: string;
+  }): Promise<{ exportId: string }>;
+
+  /**
+   * ✅ NEW: Write a page of rows straight to the file
+   */
+  appendRows(options: { exportId: string; rows: ExportCell[][] }): Promise<ExportProgress>;
+
+  /**
+   * ✅ NEW: Complete the file and get its URI
+   */
+  finishExport(options: { exportId: string }): Promise<ExportResult>;
+
+  cancelExport(options: { exportId: string }): Promise<{ cancelled: boolean }>;
+
+  addListener(
+    eventName: 'exportProgress',
+    listenerFunc: (progress: ExportProgress) => void
+  ): Promise<PluginListenerHandle>;
+}
+
+const Export = registerPlugin<ExportPlugin>('Export', {
+  web: () => import('./export-web').then(m => new m.ExportWeb()),
+});
+
+export default Export;
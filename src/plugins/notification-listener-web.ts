@@ -1,7 +1,7 @@
 // src/plugins/notification-listener-web.ts
 
 import { WebPlugin } from '@capacitor/core';
-import type { NotificationListenerPlugin, NotificationData, PluginListenerHandle } from './notification-listener';
+import type { NotificationListenerPlugin, NotificationData, PluginListenerHandle, HeadlessTransaction, PendingNotificationBatch, BootstrapSnapshot, ListenerHealth, ExecutorLaneMetrics } from './notification-listener';
 
 export class NotificationListenerWeb extends WebPlugin implements NotificationListenerPlugin {
   constructor() {
@@ -29,14 +29,76 @@ export class NotificationListenerWeb extends WebPlugin implements NotificationLi
     return { missed: [] };
   }
 
-  async getPendingNotifications(): Promise<{ notifications: NotificationData[]; count: number }> {
+  async getPendingNotifications(): Promise<PendingNotificationBatch> {
     console.log('getPendingNotifications called on web - not supported');
-    return { notifications: [], count: 0 };
+    return { notifications: [], count: 0, fromSeq: 0, toSeq: 0, ackedSeq: 0, remaining: 0 };
+  }
+
+  async ackNotifications(): Promise<{ removed: number; remaining: number }> {
+    return { removed: 0, remaining: 0 };
+  }
+
+  async setHeadlessCapture(): Promise<{ enabled: boolean }> {
+    console.log('setHeadlessCapture called on web - not supported');
+    return { enabled: false };
+  }
+
+  async getHeadlessTransactions(): Promise<{ transactions: HeadlessTransaction[]; count: number }> {
+    console.log('getHeadlessTransactions called on web - not supported');
+    return { transactions: [], count: 0 };
+  }
+
+  async removeHeadlessTransactions(): Promise<{ removed: number }> {
+    return { removed: 0 };
+  }
+
+  async bootstrap(): Promise<BootstrapSnapshot> {
+    console.log('bootstrap called on web - not supported');
+    return {
+      listenerEnabled: false,
+      permissions: { readSMS: false, receiveSMS: false },
+      pending: { notifications: [], count: 0, fromSeq: 0, toSeq: 0, ackedSeq: 0, remaining: 0 },
+      headless: [],
+      missed: [],
+      errors: {},
+      elapsedMs: 0,
+    };
+  }
+
+  async getListenerHealth(): Promise<ListenerHealth> {
+    console.log('getListenerHealth called on web - not supported');
+    return {
+      enabled: false,
+      connected: false,
+      serviceRunning: false,
+      connectedSince: 0,
+      currentUptimeMs: 0,
+      totalUptimeMs: 0,
+      firstConnectedAt: 0,
+      disconnectedSince: 0,
+      currentGapMs: 0,
+      reconnectCount: 0,
+      disconnectCount: 0,
+      rebindRequests: 0,
+      rebindAttempt: 0,
+      uncleanRestarts: 0,
+      gaps: [],
+      totalGapMs: 0,
+      longestGapMs: 0,
+    };
+  }
+
+  async cancelRequest(): Promise<{ cancelled: boolean }> {
+    return { cancelled: false };
+  }
+
+  async getExecutorMetrics(): Promise<Record<string, ExecutorLaneMetrics>> {
+    return {};
   }
 
   async addListener(
-    eventName: 'notificationReceived',
-    listenerFunc: (data: NotificationData) => void
+    eventName: string,
+    listenerFunc: (data: any) => void
   ): Promise<PluginListenerHandle> {
     console.log('addListener called on web - not supported');
     // Return a no-op handle
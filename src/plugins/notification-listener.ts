@@ -1,6 +1,7 @@
 // src/plugins/notification-listener.ts
 
 import { registerPlugin } from '@capacitor/core';
+import type { AutoTransaction, CorrelatedTransaction } from '../types/transaction';
 
 export interface BankNotification {
   appName: string;
@@ -8,6 +9,7 @@ export interface BankNotification {
   title: string;
   text: string;
   timestamp: number;
+  correlated?: CorrelatedTransaction; // ✅ NEW: collassata su una transazione già catturata (solo dalla coda)
 }
 
 export interface NotificationListenerPlugin {
@@ -32,15 +34,69 @@ export interface NotificationListenerPlugin {
    * Scans active notifications from last 24 hours
    * @returns Array of missed bank notifications
    */
-  checkMissedNotifications(): Promise<{ missed: NotificationData[] }>;
+  checkMissedNotifications(options?: { requestId?: string }): Promise<{ missed: NotificationData[] }>;
 
   /**
    * ✅ NEW: Get pending notifications from persistent queue
    * Retrieves notifications that were saved while app was closed/killed
-   * Queue is cleared after retrieval to prevent duplicates
-   * @returns Object with notifications array and count
+   * Entries are NOT removed: call ackNotifications({ upTo: toSeq }) once processed
+   * @param options.limit - Max entries per batch (default: all)
+   * @returns Batch of unacknowledged notifications with its sequence range
    */
-  getPendingNotifications(): Promise<{ notifications: NotificationData[]; count: number }>;
+  getPendingNotifications(options?: { limit?: number }): Promise<PendingNotificationBatch>;
+
+  /**
+   * ✅ NEW: Acknowledge queued notifications up to (and including) a sequence number
+   * Only acknowledged entries are compacted away from the native queue
+   */
+  ackNotifications(options: { upTo: number }): Promise<{ removed: number; remaining: number }>;
+
+  /**
+   * ✅ NEW: Configure headless capture
+   * When the WebView is not alive, the native service parses bank notifications itself,
+   * stores the finished transaction and posts a local notification.
+   * @param options.apiActiveBanks - Banks synced via API (their notifications are suppressed)
+   */
+  setHeadlessCapture(options: { enabled: boolean; apiActiveBanks: string[] }): Promise<{ enabled: boolean }>;
+
+  /**
+   * ✅ NEW: Get transactions captured natively while the WebView was not alive
+   * Entries stay stored until removeHeadlessTransactions() is called
+   */
+  getHeadlessTransactions(): Promise<{ transactions: HeadlessTransaction[]; count: number }>;
+
+  /**
+   * ✅ NEW: Remove headless transactions already saved by JS
+   */
+  removeHeadlessTransactions(options: { ids: string[] }): Promise<{ removed: number }>;
+
+  /**
+   * ✅ NEW: Startup snapshot in a single bridge call
+   * Listener state, permissions, first pending batch, headless transactions,
+   * missed active notifications and (if smsSince is given) new inbox SMS,
+   * gathered in parallel natively.
+   * @param options.smsSince - SMS watermark timestamp (SMS section omitted if missing)
+   * @param options.pendingLimit - Max queue entries in the pending batch (default: all)
+   */
+  bootstrap(options?: { smsSince?: number; pendingLimit?: number }): Promise<BootstrapSnapshot>;
+
+  /**
+   * ✅ NEW: Listener connection health
+   * Uptime, reconnect count and recent disconnection gaps (persisted natively),
+   * to correlate missed transactions with periods the listener was not bound
+   */
+  getListenerHealth(): Promise<ListenerHealth>;
+
+  /**
+   * ✅ NEW: Cancel a queued or running call started with the same requestId option
+   */
+  cancelRequest(options: { requestId: string }): Promise<{ cancelled: boolean }>;
+
+  /**
+   * ✅ NEW: Metrics of the shared native executor used by the blocking plugin methods,
+   * keyed by "Plugin.method"
+   */
+  getExecutorMetrics(): Promise<Record<string, ExecutorLaneMetrics>>;
 
   /**
    * Add listener for notification events
@@ -50,6 +106,24 @@ export interface NotificationListenerPlugin {
     listenerFunc: (data: NotificationData) => void
   ): Promise<PluginListenerHandle>;
 
+  /**
+   * ✅ NEW: Fired when the user enables/disables notification access in Settings
+   * (pushed by a native Settings observer, no polling needed)
+   */
+  addListener(
+    eventName: 'listenerStateChanged',
+    listenerFunc: (data: { enabled: boolean }) => void
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * ✅ NEW: Fired instead of notificationReceived when the notification is a payment already
+   * captured from an SMS or the bank API (native cross-source correlation)
+   */
+  addListener(
+    eventName: 'transactionCorrelated',
+    listenerFunc: (data: CorrelatedTransaction) => void
+  ): Promise<PluginListenerHandle>;
+
   /**
    * Remove all listeners
    */
@@ -64,6 +138,88 @@ export interface NotificationData {
   timestamp: number;
 }
 
+export interface QueuedNotificationData extends NotificationData {
+  seq: number;
+}
+
+export interface PendingNotificationBatch {
+  notifications: QueuedNotificationData[];
+  count: number;
+  fromSeq: number; // 0 when the batch is empty
+  toSeq: number;
+  ackedSeq: number;
+  remaining: number; // Unacknowledged entries beyond this batch
+}
+
+/**
+ * Transaction parsed natively in headless mode (AutoTransaction + raw notification hash)
+ */
+export type HeadlessTransaction = AutoTransaction & {
+  rawHash: string;
+  capturedHeadless: true;
+};
+
+export interface BootstrapSMSMessage {
+  id: string;
+  sender: string;
+  body: string;
+  timestamp: number;
+}
+
+export interface BootstrapSnapshot {
+  listenerEnabled: boolean;
+  permissions: { readSMS: boolean; receiveSMS: boolean };
+  pending: PendingNotificationBatch;
+  headless: HeadlessTransaction[];
+  missed: NotificationData[];
+  sms?: { messages: BootstrapSMSMessage[]; count: number; since: number; watermark: number };
+  errors: Record<string, string>; // Sections that failed natively (their value is empty)
+  elapsedMs: number;
+}
+
+export interface ListenerGap {
+  from: number;
+  to: number;
+  durationMs: number;
+}
+
+export interface ListenerHealth {
+  enabled: boolean;
+  connected: boolean;
+  serviceRunning: boolean;
+  connectedSince: number; // 0 when disconnected
+  currentUptimeMs: number;
+  totalUptimeMs: number;
+  firstConnectedAt: number;
+  disconnectedSince: number; // 0 when connected
+  currentGapMs: number;
+  reconnectCount: number;
+  disconnectCount: number;
+  rebindRequests: number;
+  rebindAttempt: number; // Backoff step of the pending rebind (0 = none)
+  uncleanRestarts: number; // Reconnects without a disconnect callback (process killed)
+  gaps: ListenerGap[]; // Most recent closed gaps, oldest first
+  totalGapMs: number;
+  longestGapMs: number;
+}
+
+export interface ExecutorLaneMetrics {
+  maxConcurrent: number;
+  deadlineMs: number;
+  running: number;
+  queued: number;
+  submitted: number;
+  succeeded: number;
+  failed: number;
+  timedOut: number;
+  cancelled: number;
+  rejectedQueueFull: number;
+  avgQueueMs: number;
+  maxQueueMs: number;
+  avgExecMs: number;
+  maxExecMs: number;
+}
+
 export interface PluginListenerHandle {
   remove: () => Promise<void>;
 }
@@ -169,32 +325,119 @@ class NotificationListenerWrapper {
 
   /**
    * ✅ NEW: Get pending notifications from persistent queue
-   * These are notifications saved while the app was closed/killed
+   * These are notifications saved while the app was closed/killed.
+   * They stay queued until ackNotifications(toSeq) is called.
    */
-  async getPendingNotifications(): Promise<BankNotification[]> {
+  async getPendingNotifications(limit?: number): Promise<{ notifications: BankNotification[]; toSeq: number; remaining: number }> {
     try {
       console.log('📬 Retrieving pending notifications from queue...');
-      const result = await NotificationListenerPlugin.getPendingNotifications();
-      console.log(`✅ Found ${result.count} pending notifications in queue`);
+      const result = await NotificationListenerPlugin.getPendingNotifications(limit ? { limit } : undefined);
+      console.log(`✅ Found ${result.count} pending notifications in queue (seq ${result.fromSeq}..${result.toSeq})`);
       
       // Convert to BankNotification format
-      if (result.notifications && Array.isArray(result.notifications)) {
-        return result.notifications.map((data: NotificationData) => ({
+      const notifications = Array.isArray(result.notifications)
+        ? result.notifications.map((data: NotificationData) => ({
           appName: normalizeAppName(data),
           packageName: data.packageName,
           title: data.title,
           text: data.text,
           timestamp: data.timestamp,
-        }));
-      }
+        }))
+        : [];
       
-      return [];
+      return { notifications, toSeq: result.toSeq || 0, remaining: result.remaining || 0 };
     } catch (error) {
       console.error('❌ Failed to get pending notifications:', error);
+      return { notifications: [], toSeq: 0, remaining: 0 };
+    }
+  }
+
+  /**
+   * ✅ NEW: Acknowledge processed queue entries (removes them natively).
+   * Returns false if the ack failed: the same entries would be delivered again.
+   */
+  async ackNotifications(upTo: number): Promise<boolean> {
+    if (upTo <= 0) return false;
+    try {
+      const result = await NotificationListenerPlugin.ackNotifications({ upTo });
+      console.log(`✅ Acked queue up to seq ${upTo} (removed: ${result.removed}, remaining: ${result.remaining})`);
+      return true;
+    } catch (error) {
+      console.error('❌ Failed to ack notifications:', error);
+      return false;
+    }
+  }
+
+  /**
+   * ✅ NEW: Enable/disable native headless capture
+   */
+  async setHeadlessCapture(enabled: boolean, apiActiveBanks: string[]): Promise<void> {
+    try {
+      await NotificationListenerPlugin.setHeadlessCapture({ enabled, apiActiveBanks });
+      console.log(`✅ Headless capture ${enabled ? 'enabled' : 'disabled'}`);
+    } catch (error) {
+      console.error('❌ Failed to configure headless capture:', error);
+    }
+  }
+
+  /**
+   * ✅ NEW: Get transactions captured natively while the app was closed
+   */
+  async getHeadlessTransactions(): Promise<HeadlessTransaction[]> {
+    try {
+      const result = await NotificationListenerPlugin.getHeadlessTransactions();
+      console.log(`✅ Found ${result.count} headless transactions`);
+      return Array.isArray(result.transactions) ? result.transactions : [];
+    } catch (error) {
+      console.error('❌ Failed to get headless transactions:', error);
       return [];
     }
   }
 
+  /**
+   * ✅ NEW: Remove headless transactions once saved
+   */
+  async removeHeadlessTransactions(ids: string[]): Promise<void> {
+    if (ids.length === 0) return;
+    try {
+      await NotificationListenerPlugin.removeHeadlessTransactions({ ids });
+    } catch (error) {
+      console.error('❌ Failed to remove headless transactions:', error);
+    }
+  }
+
+  /**
+   * ✅ NEW: One-call startup snapshot (null on failure: callers fall back to single calls)
+   * Notification entries are already normalized to the BankNotification app names.
+   */
+  async bootstrap(options?: { smsSince?: number; pendingLimit?: number }): Promise<BootstrapSnapshot | null> {
+    try {
+      const snapshot = await NotificationListenerPlugin.bootstrap(options);
+      console.log(`🚀 Bootstrap snapshot in ${snapshot.elapsedMs}ms:`, {
+        listenerEnabled: snapshot.listenerEnabled,
+        pending: snapshot.pending?.count || 0,
+        headless: snapshot.headless?.length || 0,
+        missed: snapshot.missed?.length || 0,
+        sms: snapshot.sms?.count ?? 'skipped',
+      });
+
+      const normalize = <T extends NotificationData>(data: T): T => ({ ...data, appName: normalizeAppName(data) });
+      return {
+        ...snapshot,
+        pending: {
+          ...snapshot.pending,
+          notifications: Array.isArray(snapshot.pending?.notifications) ? snapshot.pending.notifications.map(normalize) : [],
+        },
+        headless: Array.isArray(snapshot.headless) ? snapshot.headless : [],
+        missed: Array.isArray(snapshot.missed) ? snapshot.missed.map(normalize) : [],
+        errors: snapshot.errors || {},
+      };
+    } catch (error) {
+      console.error('❌ NotificationListener.bootstrap() error:', error);
+      return null;
+    }
+  }
+
   async addListener(
     eventName: 'notificationReceived',
     listenerFunc: (data: BankNotification) => void
@@ -222,6 +465,66 @@ class NotificationListenerWrapper {
     }
   }
 
+  /**
+   * ✅ NEW: Listener connection health (null if unavailable)
+   */
+  async getListenerHealth(): Promise<ListenerHealth | null> {
+    try {
+      const health = await NotificationListenerPlugin.getListenerHealth();
+      console.log(`📊 Listener health: connected=${health.connected}, reconnects=${health.reconnectCount}, longest gap=${health.longestGapMs}ms`);
+      return health;
+    } catch (error) {
+      console.error('❌ Failed to get listener health:', error);
+      return null;
+    }
+  }
+
+  /**
+   * ✅ NEW: Native executor metrics (queueing delay / execution time per plugin method)
+   */
+  async getExecutorMetrics(): Promise<Record<string, ExecutorLaneMetrics> | null> {
+    try {
+      return await NotificationListenerPlugin.getExecutorMetrics();
+    } catch (error) {
+      console.error('❌ Failed to get executor metrics:', error);
+      return null;
+    }
+  }
+
+  /**
+   * ✅ NEW: Subscribe to listener enabled/disabled changes
+   */
+  async addStateListener(listenerFunc: (enabled: boolean) => void): Promise<PluginListenerHandle> {
+    try {
+      return await NotificationListenerPlugin.addListener('listenerStateChanged', (data: { enabled: boolean }) => {
+        console.log('🔔 Notification listener state changed:', data.enabled);
+        listenerFunc(data.enabled);
+      });
+    } catch (error) {
+      console.error('❌ Failed to add state listener:', error);
+      return {
+        remove: async () => Promise.resolve()
+      };
+    }
+  }
+
+  /**
+   * ✅ NEW: Subscribe to notifications collapsed into an already captured transaction
+   */
+  async addCorrelationListener(listenerFunc: (data: CorrelatedTransaction) => void): Promise<PluginListenerHandle> {
+    try {
+      return await NotificationListenerPlugin.addListener('transactionCorrelated', (data: CorrelatedTransaction) => {
+        console.log('🔗 Notification correlated with', data.canonicalId);
+        listenerFunc(data);
+      });
+    } catch (error) {
+      console.error('❌ Failed to add correlation listener:', error);
+      return {
+        remove: async () => Promise.resolve()
+      };
+    }
+  }
+
   async removeAllListeners(): Promise<void> {
     try {
       return await NotificationListenerPlugin.removeAllListeners();
@@ -0,0 +1,31 @@
+// src/plugins/raw-event-archive-web.ts
+
+import { WebPlugin } from '@capacitor/core';
+import type { RawEventArchivePage, RawEventArchivePlugin, RawEventArchiveStats } from './raw-event-archive';
+
+// On web the raw events stay in IndexedDB
+export class RawEventArchiveWeb extends WebPlugin implements RawEventArchivePlugin {
+  async append(): Promise<RawEventArchiveStats> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async get(): Promise<{ event: null }> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async query(): Promise<RawEventArchivePage> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async compact(): Promise<RawEventArchiveStats & { expiredIds: string[] }> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async setRetention(): Promise<RawEventArchiveStats> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async getStats(): Promise<RawEventArchiveStats> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+}
@@ -0,0 +1,75 @@
+// src/plugins/raw-event-archive.ts
+
+import { registerPlugin } from '@capacitor/core';
+import type { RawEvent } from '../utils/db';
+
+export interface RawEventArchiveStats {
+  events: number; // readable or not yet compacted
+  blocks: number; // sealed, compressed blocks
+  openEvents: number; // in the journal, not compressed yet
+  deadEvents: number; // replaced copies waiting for compaction
+  storedBytes: number;
+  sealedJsonBytes: number; // JSON size of the sealed events
+  compressedJsonBytes: number; // the same JSON deflated, block headers excluded
+  dictionaryBytes: number;
+  pendingRetentionDays: number; // 0 = forever
+  processedRetentionDays: number;
+  errorRetentionDays: number;
+  ignoredRetentionDays: number;
+}
+
+export interface RawEventArchivePage {
+  events: RawEvent[]; // newest first
+  total: number;
+}
+
+export interface RawEventArchivePlugin {
+  /**
+   * ✅ NEW: Archive raw events as they are (an id already archived is replaced)
+   */
+  append(options: { events: RawEvent[] }): Promise<RawEventArchiveStats>;
+
+  /**
+   * ✅ NEW: One archived event (null if unknown or expired)
+   */
+  get(options: { id: string }): Promise<{ event: RawEvent | null }>;
+
+  /**
+   * ✅ NEW: Archived events with from <= timestamp <= to, newest first
+   */
+  query(options: {
+    from?: number;
+    to?: number;
+    status?: RawEvent['status'];
+    offset?: number;
+    limit?: number;
+  }): Promise<RawEventArchivePage>;
+
+  /**
+   * ✅ NEW: Drop the expired events and rewrite the blocks with many replaced copies.
+   * full: rewrite everything with a dictionary retrained on the current events
+   */
+  compact(options?: { full?: boolean }): Promise<RawEventArchiveStats & { expiredIds: string[] }>;
+
+  /**
+   * ✅ NEW: Days to keep the archived events of each status (0 = forever, missing = unchanged).
+   * Defaults: processed 180, ignored 30, error 730, pending forever
+   */
+  setRetention(options: {
+    pendingDays?: number;
+    processedDays?: number;
+    errorDays?: number;
+    ignoredDays?: number;
+  }): Promise<RawEventArchiveStats>;
+
+  /**
+   * ✅ NEW: Size and retention of the archive
+   */
+  getStats(): Promise<RawEventArchiveStats>;
+}
+
+const RawEventArchive = registerPlugin<RawEventArchivePlugin>('RawEventArchive', {
+  web: () => import('./raw-event-archive-web').then(m => new m.RawEventArchiveWeb()),
+});
+
+export default RawEventArchive;
@@ -0,0 +1,39 @@
+// src/plugins/receipt-image-web.ts
+
+import { WebPlugin } from '@capacitor/core';
+import type { ReceiptImagePlugin, ProcessedReceiptImage, QueuedReceiptImage, ReceiptQueueStats } from './receipt-image';
+
+// On web images are resized in a canvas (fileHelper.processImageFile) and queued in IndexedDB
+export class ReceiptImageWeb extends WebPlugin implements ReceiptImagePlugin {
+  async processImage(): Promise<ProcessedReceiptImage> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async pickImage(): Promise<ProcessedReceiptImage> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async deleteImage(): Promise<{ deleted: boolean }> {
+    return { deleted: false };
+  }
+
+  async queueImage(): Promise<QueuedReceiptImage & { deduplicated: boolean }> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async listQueuedImages(): Promise<{ items: QueuedReceiptImage[]; total: number; hasMore: boolean }> {
+    return { items: [], total: 0, hasMore: false };
+  }
+
+  async removeQueuedImage(): Promise<{ removed: boolean }> {
+    return { removed: false };
+  }
+
+  async getQueuedThumbnail(): Promise<{ uri: string; bytes: number; cached: boolean }> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async getQueueStats(): Promise<ReceiptQueueStats> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+}
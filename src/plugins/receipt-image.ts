@@ -0,0 +1,106 @@
+// src/plugins/receipt-image.ts
+
+import { registerPlugin } from '@capacitor/core';
+
+export interface ProcessedReceiptImage {
+  uri: string; // file:// URI of the compressed image (app-private receipts dir)
+  path: string;
+  mimeType: string;
+  width: number;
+  height: number;
+  bytes: number;
+  originalWidth: number;
+  originalHeight: number;
+  sampleSize: number; // inSampleSize used on devices without ImageDecoder (1 otherwise)
+  elapsedMs: number;
+  sourceDeleted?: boolean;
+}
+
+export interface QueuedReceiptImage {
+  id: string;
+  hash: string; // SHA-256 of the content: identical images share one blob
+  uri: string; // file:// URI of the blob
+  mimeType: string;
+  width: number;
+  height: number;
+  bytes: number;
+  timestamp: number;
+}
+
+export interface ReceiptQueueStats {
+  entries: number;
+  blobs: number;
+  logicalBytes: number; // Sum of the queued images
+  storedBytes: number; // On disk after deduplication
+  thumbnails: number;
+  thumbnailBytes: number;
+  thumbnailMaxBytes: number;
+  thumbnailHits: number;
+  thumbnailMisses: number;
+}
+
+export interface ReceiptImagePlugin {
+  /**
+   * ✅ NEW: Decode an image already downscaled (longest side = maxDimension, default 1024),
+   * compress it (quality default 80) and write it to an app-private file.
+   * Only the URI and metadata cross the bridge, never the pixels.
+   */
+  processImage(options: {
+    uri: string;
+    maxDimension?: number;
+    quality?: number;
+    deleteSource?: boolean; // Remove the original if it is an app-owned file (camera capture)
+  }): Promise<ProcessedReceiptImage>;
+
+  /**
+   * ✅ NEW: Take a photo or pick one from the gallery natively and process it like processImage
+   * (replaces the WebView file input, so the original never reaches JS). Rejects if cancelled.
+   */
+  pickImage(options: {
+    source: 'camera' | 'gallery';
+    maxDimension?: number;
+    quality?: number;
+  }): Promise<ProcessedReceiptImage>;
+
+  /**
+   * ✅ NEW: Delete a file returned by processImage / pickImage
+   */
+  deleteImage(options: { uri: string }): Promise<{ deleted: boolean }>;
+
+  /**
+   * ✅ NEW: Put an image in the offline queue, stored on disk under its SHA-256.
+   * uri (a file from processImage/pickImage, moved into the store) or data (base64).
+   */
+  queueImage(options: {
+    id: string;
+    uri?: string;
+    data?: string;
+    mimeType?: string;
+    width?: number;
+    height?: number;
+    timestamp?: number;
+  }): Promise<QueuedReceiptImage & { deduplicated: boolean }>;
+
+  /**
+   * ✅ NEW: One page of the offline queue, newest first (metadata only)
+   */
+  listQueuedImages(options?: { offset?: number; limit?: number }): Promise<{ items: QueuedReceiptImage[]; total: number; hasMore: boolean }>;
+
+  /**
+   * ✅ NEW: Remove a queued image (its blob is deleted with the last reference)
+   */
+  removeQueuedImage(options: { id: string }): Promise<{ removed: boolean }>;
+
+  /**
+   * ✅ NEW: File URI of a cached thumbnail (longest side = size, default 256)
+   */
+  getQueuedThumbnail(options: { id: string; size?: number }): Promise<{ uri: string; bytes: number; cached: boolean }>;
+
+  getQueueStats(): Promise<ReceiptQueueStats>;
+}
+
+const ReceiptImage = registerPlugin<ReceiptImagePlugin>('ReceiptImage', {
+  web: () => import('./receipt-image-web').then(m => new m.ReceiptImageWeb()),
+});
+
+export default ReceiptImage;
@@ -0,0 +1,19 @@
+// src/plugins/search-index-web.ts
+
+import { WebPlugin } from '@capacitor/core';
+import type { SearchIndexInfo, SearchPlugin, SearchResult } from './search-index';
+
+// On web the screens keep filtering the descriptions in JS
+export class SearchWeb extends WebPlugin implements SearchPlugin {
+  async index(): Promise<SearchIndexInfo> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async search(): Promise<SearchResult> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async getIndexInfo(): Promise<SearchIndexInfo> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+}
@@ -0,0 +1,59 @@
+// src/plugins/search-index.ts
+
+import { registerPlugin } from '@capacitor/core';
+
+export interface SearchDocument {
+  id: string;
+  title: string; // weighs twice the text in the ranking
+  text: string;
+  time: number; // epoch ms: newer documents first among equal scores
+}
+
+export interface SearchIndexInfo {
+  documents: number;
+  terms: number;
+  fingerprint: string | null; // as passed to the last index() call
+}
+
+export interface SearchResult {
+  ids: string[]; // best match first
+  total: number; // all the matching documents
+  elapsedMs: number;
+}
+
+export interface SearchPlugin {
+  /**
+   * ✅ NEW: Add / replace / remove documents of an index (persisted, created on first use).
+   * reset: drop everything first; fingerprint: opaque state of the caller, returned by getIndexInfo()
+   */
+  index(options: {
+    index: string;
+    reset?: boolean;
+    documents?: SearchDocument[];
+    removals?: string[];
+    fingerprint?: string;
+  }): Promise<SearchIndexInfo>;
+
+  /**
+   * ✅ NEW: Documents containing every word of the query (accents folded, Italian stemming),
+   * ranked with BM25. With prefix (default) the last word also matches longer terms.
+   */
+  search(options: {
+    index: string;
+    query: string;
+    offset?: number;
+    limit?: number;
+    prefix?: boolean;
+  }): Promise<SearchResult>;
+
+  /**
+   * ✅ NEW: Size and fingerprint of an index
+   */
+  getIndexInfo(options: { index: string }): Promise<SearchIndexInfo>;
+}
+
+const Search = registerPlugin<SearchPlugin>('Search', {
+  web: () => import('./search-index-web').then(m => new m.SearchWeb()),
+});
+
+export default Search;
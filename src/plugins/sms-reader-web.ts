@@ -1,7 +1,7 @@
 // src/plugins/sms-reader-web.ts
 
 import { WebPlugin } from '@capacitor/core';
-import type { SMSReaderPlugin, SMSMessage } from './sms-reader';
+import type { SMSReaderPlugin, SMSMessage, SenderRegistry, HistoryImportStatus } from './sms-reader';
 
 export class SMSReaderWeb extends WebPlugin implements SMSReaderPlugin {
   async checkPermission(): Promise<{ granted: boolean }> {
@@ -18,4 +18,46 @@ export class SMSReaderWeb extends WebPlugin implements SMSReaderPlugin {
     console.log('SMS Reader not available on web');
     return { messages: [], count: 0 };
   }
+
+  async cancelRequest(): Promise<{ cancelled: boolean }> {
+    return { cancelled: false };
+  }
+
+  async getSenderRegistry(): Promise<SenderRegistry> {
+    return { seeds: [], learned: [] };
+  }
+
+  async setSenderSeeds(): Promise<SenderRegistry> {
+    return { seeds: [], learned: [] };
+  }
+
+  async learnSenders(): Promise<{ added: number }> {
+    return { added: 0 };
+  }
+
+  async startHistoryImport(): Promise<HistoryImportStatus> {
+    return this.getHistoryImportStatus();
+  }
+
+  async ackHistoryImport(): Promise<void> {
+    return;
+  }
+
+  async cancelHistoryImport(): Promise<{ cancelled: boolean }> {
+    return { cancelled: false };
+  }
+
+  async getHistoryImportStatus(): Promise<HistoryImportStatus> {
+    return {
+      jobId: null,
+      state: 'idle',
+      since: 0,
+      until: 0,
+      scanAll: false,
+      checkpointDate: 0,
+      processed: 0,
+      matched: 0,
+      updatedAt: 0
+    };
+  }
 }
@@ -2,6 +2,7 @@
 
 import { registerPlugin } from '@capacitor/core';
 import type { PluginListenerHandle } from '@capacitor/core';
+import type { AutoTransaction, CorrelatedTransaction } from '../types/transaction';
 
 export interface SMSMessage {
   sender: string;
@@ -9,11 +10,64 @@ export interface SMSMessage {
   timestamp: number;
 }
 
+export interface SMSPermissionState {
+  granted: boolean;
+  readSMS?: boolean;
+  receiveSMS?: boolean;
+}
+
+export interface SenderRegistry {
+  seeds: string[];
+  learned: string[];
+}
+
+/**
+ * ✅ NEW: Transaction parsed + fingerprinted natively by the historical import
+ */
+export interface HistoryImportTransaction extends AutoTransaction {
+  smsId: number;
+  sender: string;
+}
+
+export type HistoryImportState = 'idle' | 'running' | 'cancelled' | 'completed' | 'failed';
+
+export interface HistoryImportStatus {
+  jobId: string | null;
+  state: HistoryImportState;
+  since: number;
+  until: number;
+  scanAll: boolean;
+  checkpointDate: number;
+  processed: number;
+  matched: number;
+  updatedAt: number;
+  active?: boolean;
+  resumed?: boolean;
+  alreadyRunning?: boolean;
+}
+
+export interface HistoryImportProgress {
+  jobId: string;
+  state: HistoryImportState;
+  processed: number;
+  matched: number;
+  total: number; // -1 if unknown
+  checkpointDate: number;
+  done: boolean;
+  error?: string;
+}
+
+export interface HistoryImportChunk {
+  jobId: string;
+  seq: number;
+  transactions: HistoryImportTransaction[];
+}
+
 export interface SMSReaderPlugin {
   /**
    * Check if SMS read permission is granted
    */
-  checkPermission(): Promise<{ granted: boolean }>;
+  checkPermission(): Promise<SMSPermissionState>;
 
   /**
    * Request SMS read permission from user
@@ -23,8 +77,62 @@ export interface SMSReaderPlugin {
   /**
    * Get recent SMS messages
    * @param options.hours - How many hours back to scan (default: 24)
+   * @param options.scanAll - Read every sender (default: only bank senders, filtered natively in SQL)
+   * @param options.requestId - Optional id to abort the query with cancelRequest()
+   */
+  getRecentSMS(options: { hours: number; scanAll?: boolean; requestId?: string }): Promise<{ messages: SMSMessage[]; count: number; filtered?: boolean }>;
+
+  /**
+   * ✅ NEW: Cancel a queued or running call started with the same requestId option
+   */
+  cancelRequest(options: { requestId: string }): Promise<{ cancelled: boolean }>;
+
+  /**
+   * ✅ NEW: Bank sender registry used to prefilter getRecentSMS
+   * seeds = sender keywords (substring match), learned = exact addresses of parsed SMS
+   */
+  getSenderRegistry(): Promise<SenderRegistry>;
+
+  /**
+   * ✅ NEW: Replace the sender keywords (bank config identifiers)
+   */
+  setSenderSeeds(options: { identifiers: string[] }): Promise<SenderRegistry>;
+
+  /**
+   * ✅ NEW: Learn senders whose SMS were parsed into transactions
+   */
+  learnSenders(options: { senders: string[] }): Promise<{ added: number }>;
+
+  /**
+   * ✅ NEW: Import months of SMS history, read in pages and parsed natively.
+   * Results arrive via 'smsImportChunk' (ack each one with ackHistoryImport),
+   * progress via 'smsImportProgress'.
+   * @param options.months - How far back to go (default: 6), ignored if since is set
+   * @param options.resume - Continue an interrupted import from its checkpoint
    */
-  getRecentSMS(options: { hours: number }): Promise<{ messages: SMSMessage[]; count: number }>;
+  startHistoryImport(options?: {
+    months?: number;
+    since?: number;
+    scanAll?: boolean;
+    pageSize?: number;
+    resume?: boolean;
+  }): Promise<HistoryImportStatus>;
+
+  /**
+   * ✅ NEW: Confirm a chunk was saved (moves the resume checkpoint forward).
+   * failed: the chunk could not be saved, the import stops as 'failed' before it
+   */
+  ackHistoryImport(options: { jobId: string; seq: number; failed?: boolean; error?: string }): Promise<void>;
+
+  /**
+   * ✅ NEW: Stop the running import (resumable later)
+   */
+  cancelHistoryImport(): Promise<{ cancelled: boolean }>;
+
+  /**
+   * ✅ NEW: State of the last import (persisted across app restarts)
+   */
+  getHistoryImportStatus(): Promise<HistoryImportStatus>;
 
   /**
    * Listen for incoming SMS messages in real-time
@@ -36,6 +144,40 @@ export interface SMSReaderPlugin {
     listenerFunc: (message: SMSMessage) => void
   ): Promise<PluginListenerHandle>;
 
+  /**
+   * ✅ NEW: Fired when the SMS permission state changes
+   * (after the permission dialog or when returning from app settings)
+   */
+  addListener(
+    eventName: 'smsPermissionChanged',
+    listenerFunc: (state: SMSPermissionState) => void
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * ✅ NEW: Historical import progress
+   */
+  addListener(
+    eventName: 'smsImportProgress',
+    listenerFunc: (progress: HistoryImportProgress) => void
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * ✅ NEW: Historical import results (one chunk per inbox page with transactions)
+   */
+  addListener(
+    eventName: 'smsImportChunk',
+    listenerFunc: (chunk: HistoryImportChunk) => void
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * ✅ NEW: Fired instead of smsReceived when the SMS is a payment already captured
+   * from a notification or the bank API (native cross-source correlation)
+   */
+  addListener(
+    eventName: 'transactionCorrelated',
+    listenerFunc: (correlated: CorrelatedTransaction) => void
+  ): Promise<PluginListenerHandle>;
+
   /**
    * Remove all listeners for this plugin
    */
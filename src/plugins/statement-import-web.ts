@@ -0,0 +1,18 @@
+// src/plugins/statement-import-web.ts
+
+import { WebPlugin } from '@capacitor/core';
+import type { PickedStatement, StatementImportPlugin, StatementImportResult } from './statement-import';
+
+export class StatementImportWeb extends WebPlugin implements StatementImportPlugin {
+  async pickStatement(): Promise<PickedStatement> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async importStatement(): Promise<StatementImportResult> {
+    throw this.unimplemented('Not implemented on web.');
+  }
+
+  async cancelRequest(): Promise<{ cancelled: boolean }> {
+    return { cancelled: false };
+  }
+}
@@ -0,0 +1,86 @@
+// src/plugins/statement-import.ts
+
+import { registerPlugin, PluginListenerHandle } from '@capacitor/core';
+
+export type StatementFormat = 'csv' | 'xlsx';
+
+// Column indexes (0-based, -1 when missing)
+export interface StatementColumnMapping {
+  headerRow: number; // -1: no header row
+  date: number;
+  amount: number; // signed amount; otherwise debit / credit
+  debit: number;
+  credit: number;
+  description: number[];
+  dayFirst: boolean; // 03/04/2024 = 3 April
+  detected: boolean; // false when passed in by JS
+}
+
+export interface StatementTransaction {
+  date: string; // YYYY-MM-DD
+  amount: number; // always positive
+  type: 'expense' | 'income';
+  description: string;
+  row: number; // 1-based, empty rows not counted
+  category?: string; // from the native merchant index
+  subcategory?: string;
+}
+
+export interface StatementImportProgress {
+  importId: string;
+  format: StatementFormat;
+  rows: number;
+  parsed: number;
+  skipped: number; // rows without a valid date or amount (balances, totals...)
+  chunks: number;
+  bytesRead: number;
+  totalBytes: number; // -1 when unknown
+  progress: number; // 0-1
+}
+
+export interface StatementChunk extends StatementImportProgress {
+  seq: number;
+  transactions: StatementTransaction[];
+}
+
+export interface StatementImportResult extends StatementImportProgress {
+  mapping: StatementColumnMapping | null;
+  elapsedMs: number;
+  rowsPerSecond: number;
+}
+
+export interface PickedStatement {
+  uri: string;
+  name: string;
+  size: number; // -1 when unknown
+}
+
+export interface StatementImportPlugin {
+  /**
+   * ✅ NEW: Let the user choose a CSV / XLSX statement (system picker)
+   */
+  pickStatement(): Promise<PickedStatement>;
+
+  /**
+   * ✅ NEW: Read the statement row by row; transactions arrive as "statementChunk" events
+   */
+  importStatement(options: {
+    uri: string;
+    requestId?: string;
+    chunkSize?: number;
+    mapping?: Partial<StatementColumnMapping>;
+  }): Promise<StatementImportResult>;
+
+  cancelRequest(options: { requestId: string }): Promise<{ cancelled: boolean }>;
+
+  addListener(
+    eventName: 'statementChunk',
+    listenerFunc: (chunk: StatementChunk) => void
+  ): Promise<PluginListenerHandle>;
+}
+
+const StatementImport = registerPlugin<StatementImportPlugin>('StatementImport', {
+  web: () => import('./statement-import-web').then(m => new m.StatementImportWeb()),
+});
+
+export default StatementImport;
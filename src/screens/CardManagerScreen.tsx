@@ -8,8 +8,10 @@ import { CategoryPieCard } from '../components/dashboard/CategoryPieCard';
 import { BudgetTrendChart } from '../components/BudgetTrendChart';
 import AIInsightsWidget from '../components/AIInsightsWidget';
 import SavingsGoalsCard from '../components/SavingsGoalsCard';
-import { calculateDashboardMetrics, calculateTotalBalance } from '../utils/dashboardMetrics';
+import { calculateTotalBalance } from '../utils/dashboardMetrics';
+import { useDashboardMetrics } from '../hooks/useDashboardMetrics';
 import { DashboardCardId } from '../hooks/useDashboardConfig';
+import { useTransactionSearch } from '../hooks/useTransactionSearch';
 import { HistoryFilterCard, DateFilter, PeriodType } from '../components/HistoryFilterCard';
 import { parseLocalYYYYMMDD } from '../utils/date';
 
@@ -75,6 +77,8 @@ const CardManagerScreen: React.FC<CardManagerScreenProps> = ({
     const [filterAccount, setFilterAccount] = useState<string | null>(null);
     const [filterCategories, setFilterCategories] = useState<Set<string>>(new Set());
     const [filterDescription, setFilterDescription] = useState('');
+    // ✅ NEW: Native search index (words, prefixes, accents); null = substring match in JS
+    const descriptionMatches = useTransactionSearch(filterDescription, expenses);
     const [filterAmountRange, setFilterAmountRange] = useState<{ min: string; max: string }>({ min: '', max: '' });
     const [isFilterPanelOpen, setIsFilterPanelOpen] = useState(false);
     const [isDateModalOpen, setIsDateModalOpen] = useState(false);
@@ -101,7 +105,7 @@ const CardManagerScreen: React.FC<CardManagerScreenProps> = ({
 
         if (filterAccount) result = result.filter(e => e.accountId === filterAccount);
         if (filterCategories.size > 0) result = result.filter(e => { const whole = e.category; const sub = `${e.category}:${e.subcategory || ''}`; return filterCategories.has(whole) || (e.subcategory && filterCategories.has(sub)); });
-        if (filterDescription.trim()) { const q = filterDescription.toLowerCase(); result = result.filter(e => (e.description || '').toLowerCase().includes(q)); }
+        if (descriptionMatches) result = result.filter(e => descriptionMatches.has(e.id)); else if (filterDescription.trim()) { const q = filterDescription.toLowerCase(); result = result.filter(e => (e.description || '').toLowerCase().includes(q)); }
         if (filterAmountRange.min) { const min = parseFloat(filterAmountRange.min); if (!isNaN(min)) result = result.filter(e => Math.abs(e.amount) >= min); }
         if (filterAmountRange.max) { const max = parseFloat(filterAmountRange.max); if (!isNaN(max)) result = result.filter(e => Math.abs(e.amount) <= max); }
 
@@ -112,7 +116,7 @@ const CardManagerScreen: React.FC<CardManagerScreenProps> = ({
         // Yes, likely.
 
         return result;
-    }, [expenses, filterAccount, filterCategories, filterDescription, filterAmountRange]);
+    }, [expenses, filterAccount, filterCategories, filterDescription, descriptionMatches, filterAmountRange]);
 
     // 2. Date Range Calculation
     const { startDate, endDate } = useMemo(() => {
@@ -160,12 +164,8 @@ const CardManagerScreen: React.FC<CardManagerScreenProps> = ({
         return { startDate: start, endDate: end };
     }, [activeFilterMode, dateFilter, periodType, periodDate, customRange]);
 
-    const metrics = useMemo(() => {
-        // use baseFilteredExpenses and apply date range for metrics
-        // calculateDashboardMetrics expects expenses list and filters them by date range internally? 
-        // No, it expects 'expenses', 'start', 'end'. It filters within range.
-        return calculateDashboardMetrics(baseFilteredExpenses, startDate, endDate);
-    }, [baseFilteredExpenses, startDate, endDate]);
+    // Native daily buckets when no filter is active (baseFilteredExpenses === expenses)
+    const metrics = useDashboardMetrics(expenses, startDate, endDate, baseFilteredExpenses);
 
     const totalBalance = useMemo(() => calculateTotalBalance(accounts, expenses), [accounts, expenses]);
 
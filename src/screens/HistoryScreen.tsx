@@ -12,6 +12,7 @@ import { ArrowsUpDownIcon } from '../components/icons/ArrowsUpDownIcon';
 import { parseLocalYYYYMMDD } from '../utils/date';
 import ConfirmationModal from '../components/ConfirmationModal';
 import { useTapBridge } from '../hooks/useTapBridge';
+import { useTransactionSearch } from '../hooks/useTransactionSearch';
 import { EmptyState } from '../components/EmptyState';
 import { MagnifyingGlassIcon } from '../components/icons/MagnifyingGlassIcon';
 
@@ -253,6 +254,8 @@ const HistoryScreen: React.FC<HistoryScreenProps> = ({ expenses, accounts, onEdi
   const [filterAccount, setFilterAccount] = useState<string | null>(null);
   const [filterCategories, setFilterCategories] = useState<Set<string>>(new Set());
   const [filterDescription, setFilterDescription] = useState('');
+  // ✅ NEW: Native search index (words, prefixes, accents); null = substring match in JS
+  const descriptionMatches = useTransactionSearch(filterDescription, expenses);
   const [filterAmountRange, setFilterAmountRange] = useState<{ min: string; max: string }>({ min: '', max: '' });
   const [sortOption, setSortOption] = useState<SortOption>('date');
   const [isSortMenuOpen, setIsSortMenuOpen] = useState(false);
@@ -330,12 +333,12 @@ const HistoryScreen: React.FC<HistoryScreenProps> = ({ expenses, accounts, onEdi
 
     if (filterAccount) result = result.filter(e => e.accountId === filterAccount);
     if (filterCategories.size > 0) result = result.filter(e => { const whole = e.category; const sub = `${e.category}:${e.subcategory || ''}`; return filterCategories.has(whole) || (e.subcategory && filterCategories.has(sub)); });
-    if (filterDescription.trim()) { const q = filterDescription.toLowerCase(); result = result.filter(e => (e.description || '').toLowerCase().includes(q)); }
+    if (descriptionMatches) result = result.filter(e => descriptionMatches.has(e.id)); else if (filterDescription.trim()) { const q = filterDescription.toLowerCase(); result = result.filter(e => (e.description || '').toLowerCase().includes(q)); }
     if (filterAmountRange.min) { const min = parseFloat(filterAmountRange.min); if (!isNaN(min)) result = result.filter(e => Math.abs(e.amount) >= min); }
     if (filterAmountRange.max) { const max = parseFloat(filterAmountRange.max); if (!isNaN(max)) result = result.filter(e => Math.abs(e.amount) <= max); }
 
     return result;
-  }, [expenses, activeFilterMode, dateFilter, customRange, periodType, periodDate, filterAccount, filterCategories, filterDescription, filterAmountRange, filterType]);
+  }, [expenses, activeFilterMode, dateFilter, customRange, periodType, periodDate, filterAccount, filterCategories, filterDescription, descriptionMatches, filterAmountRange, filterType]);
 
   const groupedExpenses = useMemo(() => {
     const sorted = [...(filteredExpenses || [])].sort((a, b) => {
@@ -1,6 +1,7 @@
 import React, { useState, useEffect, useMemo } from 'react';
 import { Subscription, Account, Expense } from '../types';
 import { SubscriptionService } from '../services/subscription-service';
+import type { SubscriptionSuggestion } from '../plugins/dashboard-aggregates';
 import { getCategoryColor, getCategoryIcon } from '../utils/categoryStyles';
 import { formatCurrency, formatDate } from '../components/icons/formatters';
 import { ArrowLeftIcon } from '../components/icons/ArrowLeftIcon';
@@ -49,6 +50,7 @@ const SubscriptionManagerScreen: React.FC<SubscriptionManagerScreenProps> = ({
     onAddRecurringExpense
 }) => {
     const [subscriptions, setSubscriptions] = useState<Subscription[]>([]);
+    const [suggestions, setSuggestions] = useState<SubscriptionSuggestion[]>([]);
     const [isAnimatingIn, setIsAnimatingIn] = useState(false);
     const [isFormOpen, setIsFormOpen] = useState(!!initialSubscription);
     const [editingSub, setEditingSub] = useState<Partial<Subscription> | null>(initialSubscription || null);
@@ -57,6 +59,8 @@ const SubscriptionManagerScreen: React.FC<SubscriptionManagerScreenProps> = ({
 
     // --- Recurrence Creation State ---
     const [isCreatingRecurrence, setIsCreatingRecurrence] = useState(false);
+    // ✅ NEW: Accepted suggestion: its charges already arrive from bank / SMS / notifications
+    const [isFromSuggestion, setIsFromSuggestion] = useState(false);
     const [recurrence, setRecurrence] = useState<'daily' | 'weekly' | 'monthly' | 'yearly'>('monthly');
     const [recurrenceInterval, setRecurrenceInterval] = useState<number>(1);
     const [recurrenceDays, setRecurrenceDays] = useState<number[]>([]);
@@ -76,6 +80,24 @@ const SubscriptionManagerScreen: React.FC<SubscriptionManagerScreenProps> = ({
     const loadSubscriptions = async () => {
         const data = await SubscriptionService.getSubscriptions();
         setSubscriptions(data);
+        // ✅ NEW: Recurring charges found in the history and not tracked yet
+        SubscriptionService.getSuggestions(data).then(setSuggestions);
+    };
+
+    const handleAcceptSuggestion = (suggestion: SubscriptionSuggestion) => {
+        resetRecurrenceState();
+        setEditingSub({
+            name: suggestion.name,
+            amount: suggestion.amount,
+            frequency: suggestion.cadence === 'yearly' ? 'yearly' : 'monthly',
+            nextRenewalDate: suggestion.nextDate,
+            category: suggestion.category || 'Altro'
+        });
+        // The charges are already recorded: track only. A template would add the same expense
+        // every period on top of the real charges (double counting)
+        setIsFromSuggestion(true);
+        setRecurrence(suggestion.cadence === 'yearly' ? 'yearly' : 'monthly');
+        setIsFormOpen(true);
     };
 
     const handleClose = () => {
@@ -86,6 +108,7 @@ const SubscriptionManagerScreen: React.FC<SubscriptionManagerScreenProps> = ({
 
     const resetRecurrenceState = () => {
         setIsCreatingRecurrence(false);
+        setIsFromSuggestion(false);
         setRecurrence('monthly');
         setRecurrenceInterval(1);
         setRecurrenceDays([]);
@@ -127,8 +150,8 @@ const SubscriptionManagerScreen: React.FC<SubscriptionManagerScreenProps> = ({
             linkedId = newRecurringId;
         }
 
-        // Must have a linked recurring expense
-        if (!linkedId && !isCreatingRecurrence) return;
+        // Must have a linked recurring expense, unless the charges are already tracked
+        if (!linkedId && !isCreatingRecurrence && !canTrackOnly) return;
 
         const newSub: Subscription = {
             id: editingSub.id || crypto.randomUUID(),
@@ -213,8 +236,11 @@ const SubscriptionManagerScreen: React.FC<SubscriptionManagerScreenProps> = ({
         return `Ogni ${ordinalSuffixes[weekOfMonth]} ${dayOfWeekNames[dayOfWeek]} del mese`;
     }, [editingSub?.nextRenewalDate]);
 
+    // ✅ NEW: Subscriptions detected from real charges (or saved that way) can stay unlinked
+    const canTrackOnly = isFromSuggestion || (!!editingSub?.id && !editingSub?.linkedRecurringExpenseId);
+
     // Check if save is allowed: must have linked recurring or be creating one
-    const isLinkValid = !!(editingSub?.linkedRecurringExpenseId) || isCreatingRecurrence;
+    const isLinkValid = !!(editingSub?.linkedRecurringExpenseId) || isCreatingRecurrence || canTrackOnly;
     const canSave = !!(editingSub?.name && editingSub?.amount && isLinkValid);
 
     return (
@@ -246,6 +272,30 @@ const SubscriptionManagerScreen: React.FC<SubscriptionManagerScreenProps> = ({
                     </div>
                 </div>
 
+                {suggestions.length > 0 && (
+                    <div className="mb-8">
+                        <p className="text-indigo-600 dark:text-electric-violet font-bold uppercase tracking-widest text-[10px] mb-3">Trovati nelle tue spese</p>
+                        <div className="space-y-2">
+                            {suggestions.slice(0, 5).map((suggestion) => (
+                                <div key={`${suggestion.merchant}-${suggestion.cadence}-${suggestion.amount}`} className="flex items-center gap-3 p-3 rounded-2xl bg-white/70 dark:bg-midnight-card border border-dashed border-indigo-200 dark:border-electric-violet/30">
+                                    <div className="flex-1 min-w-0">
+                                        <h3 className="font-bold text-sm text-slate-900 dark:text-white truncate">{suggestion.name}</h3>
+                                        <p className="text-xs text-slate-500 dark:text-slate-400">
+                                            {suggestion.cadence === 'monthly' ? 'Mensile' : 'Annuale'} • {formatCurrency(suggestion.amount)} • {suggestion.charges} addebiti • Prossimo: {formatDate(parseLocalYYYYMMDD(suggestion.nextDate))}
+                                        </p>
+                                    </div>
+                                    <button
+                                        onClick={() => handleAcceptSuggestion(suggestion)}
+                                        className="py-1 px-3 rounded-lg bg-indigo-600 text-white text-xs font-bold active:scale-95 transition-transform"
+                                    >
+                                        Aggiungi
+                                    </button>
+                                </div>
+                            ))}
+                        </div>
+                    </div>
+                )}
+
                 {subscriptions.length > 0 ? (
                     <div className="space-y-4">
                         {sortedSubscriptions.map((sub) => {
@@ -381,7 +431,7 @@ const SubscriptionManagerScreen: React.FC<SubscriptionManagerScreenProps> = ({
                                 />
                             </div>
 
-                            {/* --- Collega/Crea Spesa Ricorrente (MANDATORY) --- */}
+                            {/* --- Collega/Crea Spesa Ricorrente (MANDATORY unless tracking detected charges) --- */}
                             <div className="border-t border-slate-200 dark:border-slate-700 pt-4">
                                 <label className="block text-xs font-bold text-indigo-600 dark:text-electric-violet uppercase mb-2 flex items-center gap-1.5">
                                     <CalendarDaysIcon className="w-4 h-4" />
@@ -416,7 +466,7 @@ const SubscriptionManagerScreen: React.FC<SubscriptionManagerScreenProps> = ({
                                     }}
                                     className="w-full p-3 rounded-xl bg-slate-100 dark:bg-slate-800 border-none focus:ring-2 focus:ring-indigo-500 text-slate-900 dark:text-white text-sm"
                                 >
-                                    <option value="">-- Seleziona --</option>
+                                    <option value="">{canTrackOnly ? 'Solo monitoraggio (addebiti già registrati)' : '-- Seleziona --'}</option>
                                     <option value="__CREATE_NEW__">➕ Crea nuova ricorrenza</option>
                                     {recurringExpenses
                                         .filter(ex => !subscriptions.some(s => s.linkedRecurringExpenseId === ex.id) || ex.id === editingSub?.linkedRecurringExpenseId)
@@ -433,6 +483,14 @@ const SubscriptionManagerScreen: React.FC<SubscriptionManagerScreenProps> = ({
                                     <p className="text-xs text-red-500 mt-1 font-medium">⚠️ Devi collegare o creare una spesa ricorrente</p>
                                 )}
 
+                                {/* ✅ NEW: Detected charges are already in the expenses */}
+                                {isFromSuggestion && !isCreatingRecurrence && (
+                                    <p className="text-xs text-slate-500 dark:text-slate-400 mt-1">Gli addebiti arrivano già da banca, SMS o notifiche: l'abbonamento viene solo monitorato.</p>
+                                )}
+                                {isFromSuggestion && isCreatingRecurrence && (
+                                    <p className="text-xs text-amber-600 dark:text-amber-400 mt-1 font-medium">⚠️ Gli addebiti di questo abbonamento sono già registrati: una spesa ricorrente li conterebbe due volte nei totali e nei saldi.</p>
+                                )}
+
                                 {/* --- Inline Recurrence Creator --- */}
                                 {isCreatingRecurrence && (
                                     <div className="mt-3 p-4 bg-indigo-50 dark:bg-indigo-900/20 rounded-xl border border-indigo-200 dark:border-indigo-500/30 space-y-4 animate-fade-in-down">
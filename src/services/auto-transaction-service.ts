@@ -8,14 +8,17 @@ import {
   updateAutoTransaction,
   deleteOldAutoTransactions
 } from '../utils/db';
-import { AutoTransaction } from '../types/transaction';
+import { AutoTransaction, CorrelatedTransaction } from '../types/transaction';
 import { md5, normalizeForHash } from '../utils/hash';
 import { LocalNotifications } from '@capacitor/local-notifications';
 import { Expense } from '../types';
 import { ValidatorService } from './validator-service';
+import { MerchantCategoryService } from './merchant-category-service';
+import { DashboardAggregateService } from './dashboard-aggregate-service';
 
 export class AutoTransactionService {
   private static readonly IGNORED_HASHES_KEY = 'auto_transactions_ignored_hashes';
+  private static readonly CORRELATION_RETRY_MS = 3000;
 
   /**
    * Genera hash univoco per detect duplicati
@@ -150,8 +153,14 @@ export class AutoTransactionService {
       console.warn('⚠️ Transaction validation warnings:', warnings);
     }
 
+    // ✅ NEW: Category of a known / learned merchant, or the on-device classifier if confident
+    const suggested = data.type === 'expense' && !data.category
+      ? await MerchantCategoryService.suggest(data.description)
+      : null;
+
     const transaction: AutoTransaction = {
       ...data,
+      ...(suggested ? { category: suggested.category, subcategory: suggested.subcategory } : {}),
       id: crypto.randomUUID(),
       sourceHash: hash,
       status: 'pending', // could force 'review_needed' if we had that status
@@ -166,6 +175,11 @@ export class AutoTransactionService {
     // Notifica utente
     await this.notifyNewTransaction(transaction);
 
+    // ✅ NEW: Still uncategorized: the remote AI answers later, the transaction is already saved
+    if (transaction.type === 'expense' && !transaction.category) {
+      this.categorizeRemotely(transaction);
+    }
+
     // ✅ NEW: Dispatch custom event for confirmation-required transactions
     if (transaction.requiresConfirmation) {
       const event = new CustomEvent('auto-transaction-confirmation-needed', {
@@ -180,6 +194,79 @@ export class AutoTransactionService {
     return transaction;
   }
 
+  /**
+   * ✅ NEW: Categoria dall'AI remota quando il classificatore on-device non è sicuro
+   */
+  private static async categorizeRemotely(tx: AutoTransaction): Promise<void> {
+    const suggested = await MerchantCategoryService.suggestRemote(tx.description);
+    if (!suggested) return;
+
+    await updateAutoTransaction(tx.id, { category: suggested.category, subcategory: suggested.subcategory });
+    console.log(`🤖 Remote category for ${tx.id}: ${suggested.category}`);
+    window.dispatchEvent(new CustomEvent('auto-transactions-updated'));
+  }
+
+  /**
+   * ✅ NEW: Salva una transazione già parsata e fingerprintata lato nativo (headless capture).
+   * Nessuna notifica: l'ha già mostrata il servizio nativo.
+   */
+  static async importCapturedTransaction(tx: AutoTransaction): Promise<AutoTransaction | null> {
+    if (await this.isDuplicate(tx.sourceHash)) {
+      console.log('⚠️ Duplicate headless transaction, skipping:', { hash: tx.sourceHash, desc: tx.description });
+      return null;
+    }
+
+    const transaction: AutoTransaction = {
+      ...tx,
+      validationWarnings: ValidatorService.validate(tx)
+    };
+
+    await dbAddAutoTransaction(transaction);
+    console.log('✅ Headless transaction imported:', transaction.id);
+
+    if (transaction.requiresConfirmation) {
+      window.dispatchEvent(new CustomEvent('auto-transaction-confirmation-needed', {
+        detail: { transaction }
+      }));
+    }
+    window.dispatchEvent(new CustomEvent('auto-transactions-updated'));
+
+    return transaction;
+  }
+
+  /**
+   * ✅ NEW: Lo stesso pagamento è arrivato da un'altra sorgente (SMS / notifica / banca):
+   * nessuna nuova transazione, si aggiorna solo la provenienza di quella già salvata.
+   */
+  static async applyCorrelation(correlated: CorrelatedTransaction): Promise<boolean> {
+    const existing = await getAutoTransactionByHash(correlated.canonicalId);
+    if (!existing) {
+      console.log('⚠️ Correlated transaction not stored yet:', correlated.canonicalId);
+      return false;
+    }
+
+    // I ref "h:" sono hash di contenuto, non ID bancari
+    const bank = correlated.sources.find(s => s.source === 'bank' && !s.ref.startsWith('h:'));
+    await updateAutoTransaction(existing.id, {
+      provenance: correlated.sources,
+      ...(bank && !existing.bankTransactionId ? { bankTransactionId: bank.ref } : {})
+    });
+    console.log(`🔗 Transaction ${existing.id} seen from ${correlated.sources.map(s => s.source).join(' + ')}`);
+    window.dispatchEvent(new CustomEvent('auto-transactions-updated'));
+    return true;
+  }
+
+  /**
+   * ✅ NEW: Come applyCorrelation, ma se la transazione canonica non c'è riprova una volta: SMS e
+   * notifica dello stesso pagamento arrivano a pochi secondi e la prima cattura può essere ancora
+   * in salvataggio. false = l'evento (correlated.event) va elaborato come nuovo.
+   */
+  static async applyCorrelationWithRetry(correlated: CorrelatedTransaction): Promise<boolean> {
+    if (await this.applyCorrelation(correlated)) return true;
+    await new Promise(resolve => setTimeout(resolve, this.CORRELATION_RETRY_MS));
+    return await this.applyCorrelation(correlated);
+  }
+
   /**
    * Notifica nuova transazione rilevata
    */
@@ -404,6 +491,8 @@ export class AutoTransactionService {
 
     expenses.unshift(adjustment);
     localStorage.setItem('expenses_v2', JSON.stringify(expenses));
+    // The next reconciliation must already see it, before React reloads the list
+    await DashboardAggregateService.recordAdded(adjustment);
 
     console.log('✅ Automatic balance adjustment added:', adjustment);
 
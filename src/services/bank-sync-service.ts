@@ -1,6 +1,10 @@
 import * as jose from 'jose';
 import { AutoTransaction } from '../types/transaction';
 import { AutoTransactionService } from './auto-transaction-service';
+import { DashboardAggregateService } from './dashboard-aggregate-service';
+import { Capacitor } from '@capacitor/core';
+import BankSync from '../plugins/bank-sync';
+import type { BankAccountDelta } from '../plugins/bank-sync';
 
 export interface BankSyncCredentials {
     appId: string;
@@ -8,15 +12,24 @@ export interface BankSyncCredentials {
     privateKey: string;
 }
 
+// Subset of fetch Response used by the API helpers (also produced by the native client)
+type ApiResponse = Pick<Response, 'ok' | 'status' | 'json' | 'text'>;
+
 export class BankSyncService {
     private static readonly STORAGE_KEY = 'bank_sync_credentials';
     private static readonly STORAGE_KEY_ACTIVE_BANKS = 'bank_sync_active_providers';
     private static readonly STORAGE_KEY_MAPPINGS = 'bank_sync_account_mappings';
     private static readonly STORAGE_KEY_LAST_SYNC = 'bank_sync_last_sync_timestamp';
+    private static readonly STORAGE_KEY_KNOWN_ACCOUNTS = 'bank_sync_known_accounts';
     private static readonly BASE_URL = 'https://api.enablebanking.com';
+    private static readonly BACKGROUND_SYNC_INTERVAL_MINUTES = 240;
+    // Renew the JWT a bit before its 1h expiry
+    private static readonly JWT_RENEW_MARGIN_MS = 5 * 60 * 1000;
 
     // Sync lock to prevent concurrent syncs
     private static isSyncing = false;
+    private static cachedToken: { token: string, expiresAt: number } | null = null;
+    private static backgroundImport: Promise<{ transactions: number, adjustments: number }> | null = null;
 
     /**
      * Check if a specific bank is handled by API
@@ -36,6 +49,20 @@ export class BankSyncService {
         }
     }
 
+    /**
+     * Get the list of providers currently synced via API
+     */
+    static getActiveBanks(): string[] {
+        const active = localStorage.getItem(this.STORAGE_KEY_ACTIVE_BANKS);
+        if (!active) return [];
+        try {
+            const list = JSON.parse(active);
+            return Array.isArray(list) ? list : [];
+        } catch {
+            return [];
+        }
+    }
+
     /**
      * Get stored credentials
      */
@@ -54,6 +81,7 @@ export class BankSyncService {
      */
     static saveCredentials(creds: BankSyncCredentials): void {
         localStorage.setItem(this.STORAGE_KEY, JSON.stringify(creds));
+        this.cachedToken = null;
     }
 
     /**
@@ -128,6 +156,11 @@ export class BankSyncService {
      * Generate signed JWT for Enable Banking
      */
     private static async generateJWT(creds: BankSyncCredentials): Promise<string> {
+        // ✅ NEW: Reuse the signed token until it is about to expire (every API call used to re-sign)
+        if (this.cachedToken && Date.now() < this.cachedToken.expiresAt - this.JWT_RENEW_MARGIN_MS) {
+            return this.cachedToken.token;
+        }
+
         const { appId, clientId, privateKey } = creds;
 
         // Ensure PKCS#8 format for jose
@@ -149,6 +182,7 @@ export class BankSyncService {
             .setExpirationTime('1h')
             .sign(rsaPrivateKey);
 
+        this.cachedToken = { token: jwt, expiresAt: Date.now() + 60 * 60 * 1000 };
         return jwt;
     }
 
@@ -168,8 +202,11 @@ export class BankSyncService {
 
             // Handle rate limiting (429) with retry logic
             if (response.status === 429 && retries > 0) {
-                console.warn(`⏳ Rate limit (429) detected. Retrying in ${backoff}ms... (${retries} retries remaining)`);
-                await this.sleep(backoff);
+                // ✅ Retry-After when present, otherwise full jitter (so parallel calls don't retry in lockstep)
+                const retryAfter = Number(response.headers.get('Retry-After'));
+                const delay = retryAfter > 0 ? retryAfter * 1000 : Math.round(Math.random() * backoff);
+                console.warn(`⏳ Rate limit (429) detected. Retrying in ${delay}ms... (${retries} retries remaining)`);
+                await this.sleep(delay);
                 return this.safeFetch(url, options, retries - 1, backoff * 2);
             }
 
@@ -187,6 +224,37 @@ export class BankSyncService {
         }
     }
 
+    /**
+     * ✅ NEW: On Android the heavy GETs go through the native BankSync client
+     * (pooled connections, gzip, ETag/If-Modified-Since, jittered retries)
+     */
+    private static useNativeHttp(): boolean {
+        return Capacitor.isNativePlatform() && Capacitor.isPluginAvailable('BankSync');
+    }
+
+    /**
+     * ✅ NEW: Authenticated GET (native client when available, safeFetch otherwise)
+     */
+    private static async apiGet(path: string, token: string): Promise<ApiResponse> {
+        if (!this.useNativeHttp()) {
+            return this.safeFetch(`${this.BASE_URL}${path}`, {
+                headers: {
+                    'Authorization': `Bearer ${token}`
+                }
+            });
+        }
+
+        console.log(`🌐 Native GET: ${path}`);
+        const res = await BankSync.request({ path, token });
+        console.log(`📡 Response status: ${res.status}${res.fromCache ? ' (not modified, native cache)' : ''}`);
+        return {
+            ok: res.ok,
+            status: res.status,
+            json: async () => res.data ?? JSON.parse(res.text || 'null'),
+            text: async () => res.text ?? JSON.stringify(res.data ?? '')
+        };
+    }
+
     /**
      * Diagnostic test to verify credentials and JWT signing.
      */
@@ -203,14 +271,10 @@ export class BankSyncService {
         if (!creds) throw new Error('Credentials not set');
 
         const token = await this.generateJWT(creds);
-        let url = `${this.BASE_URL}/aspsps`;
-        if (country) url += `?country=${country}`;
+        let path = '/aspsps';
+        if (country) path += `?country=${country}`;
 
-        const response = await this.safeFetch(url, {
-            headers: {
-                'Authorization': `Bearer ${token}`
-            }
-        });
+        const response = await this.apiGet(path, token);
 
         if (!response.ok) {
             const error = await response.text();
@@ -332,6 +396,8 @@ export class BankSyncService {
         localStorage.removeItem(this.STORAGE_KEY_ACTIVE_BANKS);
         localStorage.removeItem(this.STORAGE_KEY_MAPPINGS);
         localStorage.removeItem('bank_sync_synced_local_ids');
+        localStorage.removeItem(this.STORAGE_KEY_KNOWN_ACCOUNTS);
+        await this.cancelBackgroundSync();
 
         // Clear cachedBalance from all local accounts
         try {
@@ -369,6 +435,8 @@ export class BankSyncService {
         // If no sessions remain, clear all synced state
         if (filtered.length === 0) {
             localStorage.removeItem('bank_sync_synced_local_ids');
+            localStorage.removeItem(this.STORAGE_KEY_KNOWN_ACCOUNTS);
+            await this.cancelBackgroundSync();
             // Clear cachedBalance from all local accounts
             try {
                 const localAccounts = JSON.parse(localStorage.getItem('accounts_v1') || '[]');
@@ -457,11 +525,7 @@ export class BankSyncService {
         let globalAccountsMap = new Map<string, any>();
         try {
             console.log('🌐 Fetching global accounts...');
-            const response = await this.safeFetch(`${this.BASE_URL}/accounts`, {
-                headers: {
-                    'Authorization': `Bearer ${token}`
-                }
-            });
+            const response = await this.apiGet('/accounts', token);
 
             if (response.ok) {
                 const data = await response.json();
@@ -481,11 +545,7 @@ export class BankSyncService {
         // ✅ 2. Fetch accounts session by session
         for (const sessionId of sessions) {
             try {
-                const response = await this.safeFetch(`${this.BASE_URL}/sessions/${sessionId}`, {
-                    headers: {
-                        'Authorization': `Bearer ${token}`
-                    }
-                });
+                const response = await this.apiGet(`/sessions/${sessionId}`, token);
 
                 if (response.ok) {
                     const data = await response.json();
@@ -505,9 +565,7 @@ export class BankSyncService {
                                     // Fallback: Try individual fetch
                                     try {
                                         console.log(`🔍 UID fallback: individual fetch for ${accIdOrObj}`);
-                                        const accRes = await this.safeFetch(`${this.BASE_URL}/accounts/${accIdOrObj}`, {
-                                            headers: { 'Authorization': `Bearer ${token}` }
-                                        });
+                                        const accRes = await this.apiGet(`/accounts/${accIdOrObj}`, token);
                                         if (accRes.ok) {
                                             sessionAccounts.push(await accRes.json());
                                         } else {
@@ -573,6 +631,19 @@ export class BankSyncService {
 
         const token = await this.generateJWT(creds);
 
+        // ✅ NEW: Native client streams the pages, follows continuation keys and revalidates with ETag
+        // (same status=both → no status fallback as below)
+        if (this.useNativeHttp()) {
+            const result = await BankSync.fetchTransactions({ accountUid, token });
+            if (result.status === 401) {
+                console.warn(`Session expired for account ${accountUid}`);
+                return [];
+            }
+            console.log(`Found ${result.count} raw transactions for account ${accountUid} (${result.responses} responses${result.notModified ? ', not modified' : ''})`);
+            if (result.truncated) console.warn(`⚠️ Download truncated for account ${accountUid}: too many continuation keys`);
+            return result.transactions || [];
+        }
+
         // ✅ Request both booked and pending transactions
         // This ensures users see transactions immediately (pending) and when finalized (booked)
         // The bankTransactionId-based hash prevents duplicates when status changes
@@ -620,11 +691,7 @@ export class BankSyncService {
 
         const token = await this.generateJWT(creds);
 
-        const response = await this.safeFetch(`${this.BASE_URL}/accounts/${accountUid}/balances`, {
-            headers: {
-                'Authorization': `Bearer ${token}`
-            }
-        });
+        const response = await this.apiGet(`/accounts/${accountUid}/balances`, token);
 
         if (!response.ok) {
             const error = await response.text();
@@ -637,6 +704,13 @@ export class BankSyncService {
         }
 
         const data = await response.json();
+        return this.parseBalance(data);
+    }
+
+    /**
+     * Pick the most meaningful balance out of a /balances response
+     */
+    private static parseBalance(data: any): number {
         console.log('Balance API response:', JSON.stringify(data, null, 2));
 
         // Enable Banking API uses balanceType (camelCase) and amount.amount structure
@@ -717,9 +791,17 @@ export class BankSyncService {
     }
 
     /**
-     * Calculate current local balance from localStorage
+     * Current local balance of an account.
+     * ✅ NEW: Read from the native running-balance ledger (O(1)); the scan of every stored
+     * transaction is only the fallback (web, ledger not synced yet)
      */
-    static calculateLocalBalance(accountId: string): number {
+    static async calculateLocalBalance(accountId: string): Promise<number> {
+        const ledgerBalance = await DashboardAggregateService.getBalance(accountId);
+        if (ledgerBalance !== null) return ledgerBalance;
+        return this.scanLocalBalance(accountId);
+    }
+
+    private static scanLocalBalance(accountId: string): number {
         const expenses = JSON.parse(localStorage.getItem('expenses_v2') || '[]');
         return expenses.reduce((acc: number, e: any) => {
             if (e.accountId !== accountId && e.toAccountId !== accountId) return acc;
@@ -796,6 +878,9 @@ export class BankSyncService {
      * Sync all accounts (Transactions + Balances)
      */
     static async syncAll(force = false): Promise<{ transactions: number, adjustments: number }> {
+        // ✅ NEW: Deltas synced in background come first (they also move the cooldown forward)
+        const imported = await this.importBackgroundSync();
+
         const lastSync = localStorage.getItem(this.STORAGE_KEY_LAST_SYNC);
         const cooldown = 60 * 60 * 1000; // 1 hour
 
@@ -804,7 +889,7 @@ export class BankSyncService {
             if (timeSinceLastSync < cooldown) {
                 const minsLeft = Math.ceil((cooldown - timeSinceLastSync) / 60000);
                 console.log(`🛡️ Sync throttled. Prossimo aggiornamento tra ${minsLeft} minuti.`);
-                return { transactions: 0, adjustments: 0 };
+                return imported;
             }
         }
 
@@ -820,46 +905,37 @@ export class BankSyncService {
             let adjustmentsCount = 0;
             const syncedLocalIds = new Set<string>();
 
-            for (const acc of accounts) {
-                const localAccountId = this.resolveLocalAccountId(acc);
-                syncedLocalIds.add(localAccountId);
-
-                await this.sleep(1000);
-
-                // 1. Transactions
-                const rawTxs = await this.fetchRawTransactions(acc.uid);
-                for (const rawTx of rawTxs) {
-                    const mappedTx = this.mapToAutoTransaction(rawTx, localAccountId);
-                    const added = await AutoTransactionService.addAutoTransaction(mappedTx);
-                    if (added) totalAdded++;
-                }
-
-                // 2. Balance & Reconcile
-                let bankBalance: number | null = null;
-                try {
-                    bankBalance = await this.fetchBalance(acc.uid);
-
-                    const localAccounts = JSON.parse(localStorage.getItem('accounts_v1') || '[]');
-                    const accountIndex = localAccounts.findIndex((a: any) => a.id === localAccountId);
-                    if (accountIndex !== -1) {
-                        localAccounts[accountIndex].cachedBalance = bankBalance;
-                        localAccounts[accountIndex].lastSyncDate = new Date().toISOString();
-                        localStorage.setItem('accounts_v1', JSON.stringify(localAccounts));
+            // ✅ NEW: Native engine downloads all accounts in parallel and returns only the delta
+            if (this.useNativeHttp()) {
+                const result = await this.syncAllNative(accounts);
+                totalAdded = result.transactions;
+                adjustmentsCount = result.adjustments;
+                accounts.forEach(acc => syncedLocalIds.add(this.resolveLocalAccountId(acc)));
+                await this.scheduleBackgroundSync(accounts);
+            } else {
+                for (const acc of accounts) {
+                    const localAccountId = this.resolveLocalAccountId(acc);
+                    syncedLocalIds.add(localAccountId);
+
+                    await this.sleep(1000);
+
+                    // 1. Transactions
+                    const rawTxs = await this.fetchRawTransactions(acc.uid);
+                    for (const rawTx of rawTxs) {
+                        const mappedTx = this.mapToAutoTransaction(rawTx, localAccountId);
+                        const added = await AutoTransactionService.addAutoTransaction(mappedTx);
+                        if (added) totalAdded++;
                     }
-                } catch (balanceError: any) {
-                    console.warn(`⚠️ Could not fetch balance for ${localAccountId}:`, balanceError.message);
-                }
 
-                if (bankBalance !== null) {
-                    const localBalance = this.calculateLocalBalance(localAccountId);
-                    const diff = bankBalance - localBalance;
+                    // 2. Balance & Reconcile
+                    let bankBalance: number | null = null;
+                    try {
+                        bankBalance = await this.fetchBalance(acc.uid);
+                    } catch (balanceError: any) {
+                        console.warn(`⚠️ Could not fetch balance for ${localAccountId}:`, balanceError.message);
+                    }
 
-                    if (Math.abs(diff) > 0.01) {
-                        await AutoTransactionService.addAdjustment(
-                            localAccountId,
-                            diff,
-                            `Riconciliazione Automatica ${acc.name || localAccountId}`
-                        );
+                    if (bankBalance !== null && await this.reconcileBalance(acc, localAccountId, bankBalance)) {
                         adjustmentsCount++;
                     }
                 }
@@ -883,6 +959,210 @@ export class BankSyncService {
         }
     }
 
+    /**
+     * ✅ NEW: Incremental sync through the native engine (BankSync.syncAccounts).
+     * Accounts are fetched concurrently; only transactions not seen in the previous sync
+     * (or changed, e.g. pending → booked) come back. Cursors are committed after saving them.
+     */
+    private static async syncAllNative(accounts: any[]): Promise<{ transactions: number, adjustments: number }> {
+        const creds = this.getCredentials();
+        if (!creds) throw new Error('Credentials not set');
+
+        const token = await this.generateJWT(creds);
+        const accountsByUid = new Map<string, any>(accounts.map(acc => [acc.uid, acc]));
+        const delta = await BankSync.syncAccounts({ token, accounts: Array.from(accountsByUid.keys()) });
+        console.log(`🏦 Native sync: ${delta.added} new, ${delta.changed} changed in ${delta.elapsedMs}ms (${delta.parallelism} parallel)`);
+
+        const result = await this.applyAccountDeltas(delta.accounts, accountsByUid);
+        await BankSync.commitSync({ syncId: delta.syncId });
+        return result;
+    }
+
+    /**
+     * Store the transactions of native account deltas and reconcile their balances
+     */
+    private static async applyAccountDeltas(deltas: BankAccountDelta[], accountsByUid: Map<string, any>): Promise<{ transactions: number, adjustments: number }> {
+        let totalAdded = 0;
+        let adjustmentsCount = 0;
+
+        for (const result of deltas) {
+            const acc = accountsByUid.get(result.accountUid);
+            if (!acc) continue;
+            const localAccountId = this.resolveLocalAccountId(acc);
+
+            if (result.status === 401) {
+                console.warn(`Session expired for account ${result.accountUid}`);
+                continue;
+            }
+            if (result.error) {
+                console.warn(`⚠️ Sync failed for ${localAccountId}:`, result.error);
+                continue;
+            }
+            if (result.truncated) {
+                console.warn(`⚠️ Truncated download for ${localAccountId}: the next sync asks the same window again`);
+            }
+
+            // 1. Transactions (changed ones are deduplicated by bankTransactionId)
+            for (const rawTx of [...result.added, ...result.changed]) {
+                const mappedTx = this.mapToAutoTransaction(rawTx, localAccountId);
+                const added = await AutoTransactionService.addAutoTransaction(mappedTx);
+                if (added) totalAdded++;
+            }
+
+            // ✅ NEW: Already captured from SMS / notification: attach the bank provenance instead of a new
+            // transaction (stored as usual if the captured one is gone)
+            for (const correlated of result.correlated ?? []) {
+                if (await AutoTransactionService.applyCorrelation(correlated)) continue;
+                if (!correlated.transaction) continue;
+                const added = await AutoTransactionService.addAutoTransaction(this.mapToAutoTransaction(correlated.transaction, localAccountId));
+                if (added) totalAdded++;
+            }
+
+            // 2. Balance & Reconcile
+            const balances = result.balances;
+            if (!balances || !balances.ok) {
+                console.warn(`⚠️ Could not fetch balance for ${localAccountId}: status ${balances?.status}`);
+                continue;
+            }
+            const bankBalance = this.parseBalance(balances.data ?? JSON.parse(balances.text || 'null'));
+            if (await this.reconcileBalance(acc, localAccountId, bankBalance)) adjustmentsCount++;
+        }
+
+        return { transactions: totalAdded, adjustments: adjustmentsCount };
+    }
+
+    /**
+     * ✅ NEW: Store what the native background job (JobScheduler) synced while the app was closed.
+     * All pending batches are read at once; the next live sync honours the cooldown from the last batch.
+     */
+    static async importBackgroundSync(): Promise<{ transactions: number, adjustments: number }> {
+        if (!this.useNativeHttp()) return { transactions: 0, adjustments: 0 };
+
+        // Launch and resume may ask at the same time: share the same import
+        if (!this.backgroundImport) {
+            this.backgroundImport = this.doImportBackgroundSync().finally(() => {
+                this.backgroundImport = null;
+            });
+        }
+        return this.backgroundImport;
+    }
+
+    private static async doImportBackgroundSync(): Promise<{ transactions: number, adjustments: number }> {
+        try {
+            const inbox = await BankSync.getBackgroundSync();
+            if (inbox.lastError) {
+                console.warn('⚠️ Last background bank sync failed:', inbox.lastError);
+            }
+            if (inbox.count === 0) return { transactions: 0, adjustments: 0 };
+
+            // Merge the batches: every transaction, most recent valid balances per account
+            const merged = new Map<string, BankAccountDelta>();
+            let lastSyncedAt = 0;
+            for (const batch of inbox.batches) {
+                lastSyncedAt = Math.max(lastSyncedAt, batch.syncedAt);
+                for (const delta of batch.accounts) {
+                    const current = merged.get(delta.accountUid);
+                    if (!current) {
+                        merged.set(delta.accountUid, {
+                            ...delta, added: [...delta.added], changed: [...delta.changed], correlated: [...(delta.correlated ?? [])]
+                        });
+                        continue;
+                    }
+                    current.added.push(...delta.added);
+                    current.changed.push(...delta.changed);
+                    current.correlated!.push(...(delta.correlated ?? []));
+                    if (delta.balances?.ok) current.balances = delta.balances;
+                }
+            }
+
+            const known: any[] = JSON.parse(localStorage.getItem(this.STORAGE_KEY_KNOWN_ACCOUNTS) || '[]');
+            const accountsByUid = new Map<string, any>(known.map(acc => [acc.uid, acc]));
+            merged.forEach((_, uid) => {
+                if (!accountsByUid.has(uid)) accountsByUid.set(uid, { uid });
+            });
+
+            const result = await this.applyAccountDeltas(Array.from(merged.values()), accountsByUid);
+            await BankSync.ackBackgroundSync({ ids: inbox.batches.map(batch => batch.id) });
+
+            const lastSync = parseInt(localStorage.getItem(this.STORAGE_KEY_LAST_SYNC) || '0');
+            if (lastSyncedAt > lastSync) {
+                localStorage.setItem(this.STORAGE_KEY_LAST_SYNC, lastSyncedAt.toString());
+            }
+
+            console.log(`📥 Imported ${inbox.count} background bank sync batches: ${result.transactions} new, ${result.adjustments} adjustments`);
+            window.dispatchEvent(new Event('accounts-updated'));
+            window.dispatchEvent(new Event('expenses-updated'));
+            window.dispatchEvent(new Event('auto-transactions-updated'));
+            return result;
+        } catch (error) {
+            console.error('Error importing background bank sync:', error);
+            return { transactions: 0, adjustments: 0 };
+        }
+    }
+
+    /**
+     * ✅ NEW: (Re)schedule the native periodic sync for the linked accounts
+     */
+    private static async scheduleBackgroundSync(accounts: any[]): Promise<void> {
+        const creds = this.getCredentials();
+        if (!creds || accounts.length === 0) return;
+
+        // Bank metadata for resolveLocalAccountId when importing background batches
+        localStorage.setItem(this.STORAGE_KEY_KNOWN_ACCOUNTS, JSON.stringify(accounts.map(acc => ({
+            uid: acc.uid,
+            name: acc.name,
+            aspsp_name: acc.aspsp_name || acc.aspspName,
+        }))));
+
+        try {
+            await BankSync.scheduleBackgroundSync({
+                appId: creds.appId,
+                clientId: creds.clientId,
+                privateKey: this.ensurePKCS8(creds.privateKey),
+                accounts: accounts.map(acc => acc.uid),
+                intervalMinutes: this.BACKGROUND_SYNC_INTERVAL_MINUTES,
+            });
+        } catch (e) {
+            console.warn('⚠️ Could not schedule background bank sync:', e);
+        }
+    }
+
+    private static async cancelBackgroundSync(): Promise<void> {
+        if (!this.useNativeHttp()) return;
+        try {
+            await BankSync.cancelBackgroundSync();
+        } catch (e) {
+            console.warn('⚠️ Could not cancel background bank sync:', e);
+        }
+    }
+
+    /**
+     * Store the bank balance on the local account and add an adjustment if they diverge
+     * @returns true if an adjustment was added
+     */
+    private static async reconcileBalance(acc: any, localAccountId: string, bankBalance: number): Promise<boolean> {
+        const localAccounts = JSON.parse(localStorage.getItem('accounts_v1') || '[]');
+        const accountIndex = localAccounts.findIndex((a: any) => a.id === localAccountId);
+        if (accountIndex !== -1) {
+            localAccounts[accountIndex].cachedBalance = bankBalance;
+            localAccounts[accountIndex].lastSyncDate = new Date().toISOString();
+            localStorage.setItem('accounts_v1', JSON.stringify(localAccounts));
+        }
+
+        const localBalance = await this.calculateLocalBalance(localAccountId);
+        const diff = bankBalance - localBalance;
+
+        if (Math.abs(diff) > 0.01) {
+            await AutoTransactionService.addAdjustment(
+                localAccountId,
+                diff,
+                `Riconciliazione Automatica ${acc.name || localAccountId}`
+            );
+            return true;
+        }
+        return false;
+    }
+
     private static mapToAutoTransaction(tx: any, accountUid: string): Omit<AutoTransaction, 'id' | 'createdAt' | 'sourceHash' | 'status'> {
         let rawAmount: any = 0;
         if (tx.transactionAmount && typeof tx.transactionAmount === 'object') {
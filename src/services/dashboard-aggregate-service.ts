@@ -0,0 +1,202 @@
+// src/services/dashboard-aggregate-service.ts
+
+import { Capacitor } from '@capacitor/core';
+import DashboardAggregates from '../plugins/dashboard-aggregates';
+import type { AggregateTransaction, SubscriptionSuggestion } from '../plugins/dashboard-aggregates';
+import type { Expense } from '../types';
+import { DashboardMetrics, formatDateRangeLabel } from '../utils/dashboardMetrics';
+import { toYYYYMMDD } from '../utils/date';
+
+interface SyncedTransaction {
+  item: Expense; // stesso oggetto = nessuna modifica, non serve ricalcolare la firma
+  key: string;
+}
+
+/**
+ * ✅ NEW: Totali della dashboard e saldi dei conti dagli aggregati nativi.
+ *
+ * Il plugin tiene i totali per giorno / tipo / categoria con le somme prefisse e il saldo
+ * progressivo di ogni conto (con checkpoint mensili) e le spese ricorrenti per esercente da
+ * proporre come abbonamenti: qui si mandano solo le transazioni
+ * aggiunte, modificate o eliminate dall'ultima sync (tutte alla prima della sessione) e ogni
+ * range di date costa O(log giorni) invece di un giro su tutto lo storico.
+ * Sync e query passano da un'unica coda, così una query vede sempre le sync precedenti;
+ * in caso di errore lo stato viene ricostruito da zero alla sync successiva.
+ */
+export class DashboardAggregateService {
+  private static synced = new Map<string, SyncedTransaction>();
+  private static syncedList: Expense[] | null = null; // same array: nothing to diff
+  private static needsReset = true;
+  private static queue: Promise<unknown> = Promise.resolve();
+
+  static isAvailable(): boolean {
+    return Capacitor.isNativePlatform() && Capacitor.isPluginAvailable('DashboardAggregates');
+  }
+
+  /**
+   * Metriche del range [start, end] sull'elenco completo delle transazioni;
+   * null se non disponibili (web, errore, id duplicati): usare calculateDashboardMetrics
+   */
+  static getMetrics(expenses: Expense[], start: Date, end: Date): Promise<DashboardMetrics | null> {
+    if (!this.isAvailable() || isNaN(start.getTime()) || isNaN(end.getTime())) {
+      return Promise.resolve(null);
+    }
+
+    return this.enqueue(async () => {
+      if (!(await this.sync(expenses))) return null;
+
+      const totals = await DashboardAggregates.query({
+        start: toYYYYMMDD(start),
+        end: toYYYYMMDD(end),
+        today: toYYYYMMDD(new Date())
+      });
+      return {
+        totalExpenses: totals.totalExpenses,
+        totalIncome: totals.totalIncome,
+        netBudget: totals.totalIncome - totals.totalExpenses + totals.totalAdjustments,
+        dailyTotal: totals.dailyTotal,
+        categoryData: totals.categories,
+        dateRangeLabel: formatDateRangeLabel(start, end)
+      };
+    }, null);
+  }
+
+  /**
+   * Allinea gli aggregati all'elenco delle transazioni (chiamato a ogni modifica di expenses)
+   */
+  static update(expenses: Expense[]): Promise<boolean> {
+    if (!this.isAvailable()) return Promise.resolve(false);
+    return this.enqueue(() => this.sync(expenses), false);
+  }
+
+  /**
+   * Una transazione scritta fuori da React (es. rettifica della riconciliazione bancaria):
+   * arriva subito al ledger, prima dei saldi chiesti dopo. La sync successiva dell'elenco
+   * la ritrova già allineata (o la rimuove se nell'elenco non c'è).
+   */
+  static recordAdded(expense: Expense): Promise<boolean> {
+    if (!this.isAvailable()) return Promise.resolve(false);
+    return this.enqueue(async () => {
+      if (this.needsReset) return false; // Sarà nella ricostruzione completa
+      const aggregate = this.toAggregate(expense);
+      await DashboardAggregates.sync({ upserts: [aggregate] });
+      this.synced.set(expense.id, { item: expense, key: this.keyOf(aggregate) });
+      this.syncedList = null;
+      return true;
+    }, false);
+  }
+
+  /**
+   * Saldo del conto dal ledger nativo (a fine giornata `date` se indicata);
+   * null se non disponibile: usare il calcolo su tutte le transazioni
+   */
+  static getBalance(accountId: string, date?: string): Promise<number | null> {
+    if (!this.isAvailable()) return Promise.resolve(null);
+    return this.enqueue(async () => {
+      if (this.needsReset) return null; // Mai sincronizzato o stato da ricostruire
+      const { balances } = await DashboardAggregates.balances({ accountIds: [accountId], date });
+      return balances[accountId] ?? 0;
+    }, null);
+  }
+
+  /**
+   * Spese ricorrenti trovate nello storico (già sincronizzato da update), dalla più probabile;
+   * null se non disponibili
+   */
+  static detectSubscriptions(minConfidence = 0.5): Promise<SubscriptionSuggestion[] | null> {
+    if (!this.isAvailable()) return Promise.resolve(null);
+    return this.enqueue(async () => {
+      if (this.needsReset) return null;
+      const { suggestions } = await DashboardAggregates.detectSubscriptions({
+        today: toYYYYMMDD(new Date()),
+        minConfidence
+      });
+      return suggestions;
+    }, null);
+  }
+
+  private static enqueue<T>(task: () => Promise<T>, fallback: T): Promise<T> {
+    const run = this.queue.then(task).catch((error) => {
+      console.error('❌ Error in dashboard aggregates:', error);
+      this.needsReset = true;
+      return fallback;
+    });
+    this.queue = run;
+    return run;
+  }
+
+  /**
+   * Manda al plugin le differenze rispetto all'ultima sync; false se l'elenco non è
+   * rappresentabile per id (id duplicati: stato da ricostruire quando non ce ne saranno più)
+   */
+  private static async sync(expenses: Expense[]): Promise<boolean> {
+    if (expenses === this.syncedList && !this.needsReset) return true;
+
+    const reset = this.needsReset;
+    const previous = reset ? new Map<string, SyncedTransaction>() : this.synced;
+    const next = new Map<string, SyncedTransaction>();
+    const upserts: AggregateTransaction[] = [];
+
+    for (const item of expenses) {
+      if (next.has(item.id)) {
+        console.warn(`⚠️ Duplicate transaction id ${item.id}: totals and balances computed in JS`);
+        this.needsReset = true;
+        return false;
+      }
+
+      const old = previous.get(item.id);
+      if (old && old.item === item) {
+        next.set(item.id, old);
+        continue;
+      }
+
+      const aggregate = this.toAggregate(item);
+      const key = this.keyOf(aggregate);
+      next.set(item.id, { item, key });
+      if (old && old.key === key) continue;
+
+      upserts.push(aggregate);
+    }
+
+    const removals: string[] = [];
+    previous.forEach((_, id) => {
+      if (!next.has(id)) removals.push(id);
+    });
+
+    if (reset || upserts.length > 0 || removals.length > 0) {
+      try {
+        const stats = await DashboardAggregates.sync({ reset, upserts, removals });
+        if (reset) {
+          console.log(`📊 Dashboard aggregates rebuilt: ${stats.transactions} transactions over ${stats.days} days`);
+        }
+      } catch (error) {
+        this.needsReset = true;
+        throw error;
+      }
+    }
+
+    this.synced = next;
+    this.syncedList = expenses;
+    this.needsReset = false;
+    return true;
+  }
+
+  private static keyOf(tx: AggregateTransaction): string {
+    return `${tx.date}|${tx.type}|${tx.amount}|${tx.category}|${tx.accountId}|${tx.toAccountId || ''}|${tx.description}|${tx.recurring}`;
+  }
+
+  private static toAggregate(item: Expense): AggregateTransaction {
+    const amount = item.amount == null ? NaN : Number(item.amount);
+    return {
+      id: item.id,
+      date: item.date,
+      type: item.type,
+      amount: isNaN(amount) ? null : amount,
+      category: item.category || '',
+      accountId: item.accountId,
+      toAccountId: item.toAccountId,
+      description: item.description || '',
+      recurring: !!item.recurringExpenseId
+    };
+  }
+}
@@ -22,8 +22,144 @@ const AMOUNT_TOLERANCE = 0.05; // ±5%
 const DATE_TOLERANCE_DAYS = 7;  // ±7 days
 const MIN_DESCRIPTION_SIMILARITY = 0.4; // 40% similarity threshold
 
+const MS_PER_DAY = 1000 * 60 * 60 * 24;
+// Importi raggruppati in fasce logaritmiche larghe quanto la tolleranza: una ricerca tocca 2-3 fasce
+const AMOUNT_BUCKET_BASE = Math.log(1 + AMOUNT_TOLERANCE);
+const MIN_BUCKET_AMOUNT = 0.01;
+
+/**
+ * Description pre-normalized once, with its bigrams (the "merchant signature")
+ */
+interface DescriptionSignature {
+    normalized: string;
+    bigrams: Set<string>;
+}
+
+interface IndexedExpense {
+    expense: Expense;
+    day: number; // Local date as days since epoch
+    signature: DescriptionSignature;
+    bucketKey: string;
+    generation: number;
+}
+
+/**
+ * ✅ NEW: Index of recurring-generated expenses by amount bucket + week, so a bank transaction
+ * is only scored against the few expenses that can pass the hard criteria.
+ * Kept in sync incrementally: unchanged expense objects are not re-normalized.
+ */
+class RecurringExpenseIndex {
+    private buckets = new Map<string, IndexedExpense[]>();
+    private byId = new Map<string, IndexedExpense>();
+    private generation = 0;
+
+    /**
+     * Align the index with the current expense list (O(n) reference checks, work only for changed expenses)
+     */
+    sync(expenses: Expense[]): void {
+        const generation = ++this.generation;
+
+        for (const expense of expenses) {
+            // Only consider expenses that were auto-generated from a recurring template
+            if (!expense.recurringExpenseId || expense.frequency !== 'single') continue;
+
+            const existing = this.byId.get(expense.id);
+            if (existing && existing.expense === expense) {
+                existing.generation = generation;
+                continue;
+            }
+            if (existing) this.remove(existing);
+
+            const day = toDayNumber(expense.date);
+            if (day === null) continue;
+            this.add({
+                expense,
+                day,
+                signature: describe(expense.description),
+                bucketKey: bucketKey(amountBucket(expense.amount), weekOf(day)),
+                generation,
+            });
+        }
+
+        // Expenses deleted (or no longer recurring-generated) since the last sync
+        if (this.byId.size > 0) {
+            for (const entry of Array.from(this.byId.values())) {
+                if (entry.generation !== generation) this.remove(entry);
+            }
+        }
+    }
+
+    get size(): number {
+        return this.byId.size;
+    }
+
+    /**
+     * Expenses whose amount bucket and week can satisfy the amount/date tolerances
+     */
+    *candidates(amount: number, day: number): Iterable<IndexedExpense> {
+        // Expense amount e matches when |amount - e| <= e * tolerance → e in [amount / (1 + t), amount / (1 - t)]
+        const fromBucket = amountBucket(amount / (1 + AMOUNT_TOLERANCE));
+        const toBucket = amountBucket(amount / (1 - AMOUNT_TOLERANCE));
+        const fromWeek = weekOf(day - DATE_TOLERANCE_DAYS);
+        const toWeek = weekOf(day + DATE_TOLERANCE_DAYS);
+
+        for (let bucket = fromBucket; bucket <= toBucket; bucket++) {
+            for (let week = fromWeek; week <= toWeek; week++) {
+                const entries = this.buckets.get(bucketKey(bucket, week));
+                if (entries) yield* entries;
+            }
+        }
+    }
+
+    private add(entry: IndexedExpense): void {
+        this.byId.set(entry.expense.id, entry);
+        const entries = this.buckets.get(entry.bucketKey);
+        if (entries) {
+            entries.push(entry);
+        } else {
+            this.buckets.set(entry.bucketKey, [entry]);
+        }
+    }
+
+    private remove(entry: IndexedExpense): void {
+        this.byId.delete(entry.expense.id);
+        const entries = this.buckets.get(entry.bucketKey);
+        if (!entries) return;
+        const i = entries.indexOf(entry);
+        if (i >= 0) entries.splice(i, 1);
+        if (entries.length === 0) this.buckets.delete(entry.bucketKey);
+    }
+}
+
+function amountBucket(amount: number): number {
+    return Math.floor(Math.log(Math.max(amount, MIN_BUCKET_AMOUNT)) / AMOUNT_BUCKET_BASE);
+}
+
+function weekOf(day: number): number {
+    return Math.floor(day / DATE_TOLERANCE_DAYS);
+}
+
+function bucketKey(bucket: number, week: number): string {
+    return `${bucket}:${week}`;
+}
+
+function toDayNumber(date: string): number | null {
+    const d = parseLocalYYYYMMDD(date);
+    if (!d) return null;
+    // Calendar days, not elapsed ms: DST changes must not shift the difference
+    return Math.round((d.getTime() - d.getTimezoneOffset() * 60 * 1000) / MS_PER_DAY);
+}
+
+function describe(description: string): DescriptionSignature {
+    const normalized = DeduplicationService.normalizeDescription(description || '');
+    return { normalized, bigrams: DeduplicationService.getBigrams(normalized) };
+}
+
 export class DeduplicationService {
 
+    private static index = new RecurringExpenseIndex();
+    private static indexedExpenses: Expense[] | null = null;
+
     /**
      * Find a recurring-generated expense that matches a bank transaction.
      * Returns the best matching expense, or null if no match found.
@@ -32,49 +168,50 @@ export class DeduplicationService {
         bankTx: BankTransaction,
         existingExpenses: Expense[]
     ): Expense | null {
-        // Only consider expenses that were auto-generated from a recurring template
-        const recurringGenerated = existingExpenses.filter(e =>
-            e.recurringExpenseId && e.frequency === 'single'
-        );
-
-        if (recurringGenerated.length === 0) return null;
+        // Same array as last time (no state change in between): the index is already up to date
+        if (this.indexedExpenses !== existingExpenses) {
+            this.index.sync(existingExpenses);
+            this.indexedExpenses = existingExpenses;
+        }
+        if (this.index.size === 0) return null;
 
-        const matches: MatchResult[] = [];
+        const day = toDayNumber(bankTx.date);
+        if (day === null) return null;
+        const signature = describe(bankTx.description);
 
-        for (const expense of recurringGenerated) {
-            const score = this.calculateMatchScore(bankTx, expense);
-            if (score > 0) {
-                matches.push({ expense, score });
+        // Highest scoring match
+        let best: MatchResult | null = null;
+        for (const candidate of this.index.candidates(bankTx.amount, day)) {
+            const score = this.calculateMatchScore(bankTx.amount, day, signature, candidate);
+            if (score > 0 && (!best || score > best.score)) {
+                best = { expense: candidate.expense, score };
             }
         }
 
-        if (matches.length === 0) return null;
-
-        // Return highest scoring match
-        matches.sort((a, b) => b.score - a.score);
-        return matches[0].expense;
+        return best ? best.expense : null;
     }
 
     /**
      * Calculate a match score between a bank transaction and a recurring expense.
      * Returns 0 if any hard criteria fail, otherwise a score between 0 and 1.
      */
-    private static calculateMatchScore(bankTx: BankTransaction, expense: Expense): number {
+    private static calculateMatchScore(
+        amount: number,
+        day: number,
+        signature: DescriptionSignature,
+        candidate: IndexedExpense
+    ): number {
+        const expense = candidate.expense;
+
         // --- Hard criteria (must ALL pass) ---
 
         // 1. Amount within tolerance
-        const amountDiff = Math.abs(bankTx.amount - expense.amount);
+        const amountDiff = Math.abs(amount - expense.amount);
         const amountThreshold = expense.amount * AMOUNT_TOLERANCE;
         if (amountDiff > amountThreshold) return 0;
 
         // 2. Date within tolerance
-        const bankDate = parseLocalYYYYMMDD(bankTx.date);
-        const expenseDate = parseLocalYYYYMMDD(expense.date);
-        if (!bankDate || !expenseDate) return 0;
-
-        const daysDiff = Math.abs(
-            (bankDate.getTime() - expenseDate.getTime()) / (1000 * 60 * 60 * 24)
-        );
+        const daysDiff = Math.abs(day - candidate.day);
         if (daysDiff > DATE_TOLERANCE_DAYS) return 0;
 
         // --- Soft criteria (contribute to score) ---
@@ -86,10 +223,7 @@ export class DeduplicationService {
         const dateScore = 1 - (daysDiff / DATE_TOLERANCE_DAYS);
 
         // Description similarity
-        const descScore = this.calculateStringSimilarity(
-            this.normalizeDescription(bankTx.description),
-            this.normalizeDescription(expense.description)
-        );
+        const descScore = this.calculateStringSimilarity(signature, candidate.signature);
 
         // If description is very dissimilar, still allow match if amount+date are very close
         const hasStrongAmountDateMatch = amountScore > 0.9 && dateScore > 0.7;
@@ -105,7 +239,7 @@ export class DeduplicationService {
      * - remove special characters
      * - trim whitespace
      */
-    private static normalizeDescription(desc: string): string {
+    static normalizeDescription(desc: string): string {
         return desc
             .toLowerCase()
             .replace(/[^a-z0-9àèéìòùáéíóú\s]/gi, '')
@@ -114,19 +248,19 @@ export class DeduplicationService {
     }
 
     /**
-     * Calculate Dice coefficient similarity between two strings.
+     * Calculate Dice coefficient similarity between two pre-normalized descriptions.
      * Returns a value between 0 (no similarity) and 1 (identical).
      */
-    private static calculateStringSimilarity(a: string, b: string): number {
-        if (a === b) return 1;
-        if (a.length === 0 || b.length === 0) return 0;
+    private static calculateStringSimilarity(a: DescriptionSignature, b: DescriptionSignature): number {
+        if (a.normalized === b.normalized) return 1;
+        if (a.normalized.length === 0 || b.normalized.length === 0) return 0;
 
         // Check if one contains the other
-        if (a.includes(b) || b.includes(a)) return 0.85;
+        if (a.normalized.includes(b.normalized) || b.normalized.includes(a.normalized)) return 0.85;
 
         // Bigram-based Dice coefficient
-        const bigramsA = this.getBigrams(a);
-        const bigramsB = this.getBigrams(b);
+        const bigramsA = a.bigrams;
+        const bigramsB = b.bigrams;
 
         if (bigramsA.size === 0 || bigramsB.size === 0) return 0;
 
@@ -141,7 +275,7 @@ export class DeduplicationService {
     /**
      * Get bigrams (pairs of adjacent characters) from a string.
      */
-    private static getBigrams(str: string): Set<string> {
+    static getBigrams(str: string): Set<string> {
         const bigrams = new Set<string>();
         for (let i = 0; i < str.length - 1; i++) {
             bigrams.add(str.substring(i, i + 2));
@@ -0,0 +1,87 @@
+// src/services/merchant-category-service.ts
+
+import { Capacitor } from '@capacitor/core';
+import Categorizer from '../plugins/categorizer';
+import { CategoryService } from './category-service';
+
+/**
+ * ✅ NEW: Merchant → category suggestions backed by the native merchant index and on-device classifier.
+ * Native captures arrive already categorized; this covers the transactions parsed in JS
+ * and teaches both the categories the user confirms.
+ * The remote AI is only asked when the on-device classifier is not confident (and we are online).
+ */
+export class MerchantCategoryService {
+
+    private static remoteInFlight = 0;
+    private static readonly MAX_REMOTE_IN_FLIGHT = 2;
+
+    private static isAvailable(): boolean {
+        return Capacitor.isNativePlatform() && Capacitor.isPluginAvailable('Categorizer');
+    }
+
+    /**
+     * Category suggested for a description, only if it still exists (categories can be renamed/deleted)
+     */
+    static async suggest(description: string): Promise<{ category: string; subcategory?: string } | null> {
+        if (!this.isAvailable() || !description) return null;
+        try {
+            const { match, prediction } = await Categorizer.suggestCategory({ description });
+            if (match) return this.validate(match.category, match.subcategory);
+            if (prediction?.confident) {
+                const validated = this.validate(prediction.category, prediction.subcategory);
+                if (validated) {
+                    console.log(`🧠 On-device category for "${description}": ${prediction.category} (${(prediction.confidence * 100).toFixed(0)}%)`);
+                    return validated;
+                }
+            }
+        } catch (error) {
+            console.error('❌ Error suggesting category:', error);
+        }
+        return null;
+    }
+
+    /**
+     * Remote AI fallback (slow, online only): a few at a time, never blocking the capture on errors
+     */
+    static async suggestRemote(description: string): Promise<{ category: string; subcategory?: string } | null> {
+        if (!navigator.onLine || this.remoteInFlight >= this.MAX_REMOTE_IN_FLIGHT) return null;
+        this.remoteInFlight++;
+        try {
+            const { categorizeFromText } = await import('../utils/ai');
+            const result = await categorizeFromText(description);
+            return result ? this.validate(result.category, result.subcategory) : null;
+        } catch (error) {
+            console.warn('⚠️ Remote categorization failed:', error);
+            return null;
+        } finally {
+            this.remoteInFlight--;
+        }
+    }
+
+    /**
+     * Remember the category the user confirmed for this kind of transaction (every confirmation
+     * trains the classifier, the merchant index changes only when it was missing or wrong)
+     */
+    static async learn(description: string, category: string, subcategory?: string): Promise<void> {
+        if (!this.isAvailable() || !description || !category) return;
+        try {
+            const { merchant } = await Categorizer.learnCategory({ description, category, subcategory: subcategory || '' });
+            if (merchant) console.log(`🧠 Learned category for "${merchant}": ${category}${subcategory ? ' / ' + subcategory : ''}`);
+        } catch (error) {
+            console.error('❌ Error learning category:', error);
+        }
+    }
+
+    /**
+     * Same category/subcategory if still defined, category only if the subcategory is gone, null otherwise
+     */
+    static validate(category?: string, subcategory?: string): { category: string; subcategory?: string } | null {
+        if (!category) return null;
+        const cat = CategoryService.getCategoryByName(category);
+        if (!cat) return null;
+        return {
+            category,
+            subcategory: subcategory && cat.subcategories.includes(subcategory) ? subcategory : undefined
+        };
+    }
+}
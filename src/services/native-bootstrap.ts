@@ -0,0 +1,110 @@
+// src/services/native-bootstrap.ts
+
+import { Capacitor } from '@capacitor/core';
+import NotificationListener from '../plugins/notification-listener';
+import type { BootstrapSnapshot } from '../plugins/notification-listener';
+
+// Last SMS timestamp already handed to the parser (persisted across launches)
+const SMS_WATERMARK_KEY = 'sms_scan_watermark';
+// Never look back further than this at startup (same window as the old scanRecentSMS(24))
+const SMS_MAX_LOOKBACK_MS = 24 * 60 * 60 * 1000;
+const PENDING_BATCH_SIZE = 50;
+// Listener/permission state in the snapshot is trusted only briefly (the user may change it in Settings)
+const STATE_TTL_MS = 5000;
+
+type SnapshotSection = 'pending' | 'headless' | 'missed' | 'sms';
+
+/**
+ * Startup snapshot shared by the notification and SMS services.
+ *
+ * At launch the app used to fire isEnabled, checkPermission, getPendingNotifications,
+ * getHeadlessTransactions and getRecentSMS separately (plus a 300ms native delay).
+ * Now a single native bootstrap() call gathers everything in parallel and each service
+ * takes its own section once; later calls (resume, manual refresh) go through the plugins as before.
+ */
+export class NativeBootstrap {
+  private static snapshotPromise: Promise<BootstrapSnapshot | null> | null = null;
+  private static consumed = new Set<SnapshotSection>();
+  private static resolvedAt = 0;
+
+  /**
+   * Snapshot for this launch (memoized: concurrent callers share the same native call)
+   */
+  static get(): Promise<BootstrapSnapshot | null> {
+    if (Capacitor.getPlatform() !== 'android') {
+      return Promise.resolve(null);
+    }
+
+    if (!this.snapshotPromise) {
+      this.snapshotPromise = NotificationListener.bootstrap({
+        smsSince: this.getSmsSince(),
+        pendingLimit: PENDING_BATCH_SIZE,
+      }).then(snapshot => {
+        this.resolvedAt = Date.now();
+        return snapshot;
+      });
+    }
+    return this.snapshotPromise;
+  }
+
+  /**
+   * Listener/permission state from the snapshot, or null if it is too old to trust
+   */
+  static async getState(): Promise<Pick<BootstrapSnapshot, 'listenerEnabled' | 'permissions'> | null> {
+    const snapshot = await this.get();
+    if (!snapshot || Date.now() - this.resolvedAt > STATE_TTL_MS) return null;
+    return { listenerEnabled: snapshot.listenerEnabled, permissions: snapshot.permissions };
+  }
+
+  /**
+   * Forget the snapshot state (a native change event is newer than the snapshot)
+   */
+  static invalidateState(): void {
+    this.resolvedAt = 0;
+  }
+
+  /**
+   * Take a data section of the snapshot. Each section is handed out only once,
+   * so a second init (e.g. after a permission change) reads fresh data from the plugin.
+   */
+  static async take<K extends SnapshotSection>(section: K): Promise<BootstrapSnapshot[K] | null> {
+    const snapshot = await this.get();
+    if (!snapshot || this.consumed.has(section)) return null;
+
+    this.consumed.add(section);
+    if (snapshot.errors[section]) {
+      console.warn(`⚠️ Bootstrap section "${section}" failed natively:`, snapshot.errors[section]);
+      return null;
+    }
+    return snapshot[section] ?? null;
+  }
+
+  /**
+   * Lower bound for the startup SMS scan: last watermark, capped at 24 hours ago
+   */
+  static getSmsSince(): number {
+    const floor = Date.now() - SMS_MAX_LOOKBACK_MS;
+    try {
+      const stored = Number(localStorage.getItem(SMS_WATERMARK_KEY));
+      return Number.isFinite(stored) && stored > floor ? stored : floor;
+    } catch {
+      return floor;
+    }
+  }
+
+  /**
+   * Move the SMS watermark forward once the messages up to it have been processed
+   */
+  static saveSmsWatermark(timestamp: number): void {
+    try {
+      const current = Number(localStorage.getItem(SMS_WATERMARK_KEY)) || 0;
+      if (timestamp > current) {
+        localStorage.setItem(SMS_WATERMARK_KEY, String(timestamp));
+      }
+    } catch (e) {
+      console.error('Failed to save SMS watermark', e);
+    }
+  }
+}
+
+export default NativeBootstrap;
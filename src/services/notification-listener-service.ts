@@ -1,8 +1,10 @@
 import NotificationListener, { BankNotification } from '../plugins/notification-listener';
+import type { HeadlessTransaction } from '../plugins/notification-listener';
+import { NativeBootstrap } from './native-bootstrap';
 import { NotificationTransactionParser } from './notification-transaction-parser';
 import { AutoTransactionService } from './auto-transaction-service';
 import { Capacitor } from '@capacitor/core';
-import type { AutoTransaction } from '../types/transaction';
+import type { AutoTransaction, CorrelatedTransaction } from '../types/transaction';
 
 // Re-export type for consumers
 export type PendingTransaction = AutoTransaction;
@@ -12,10 +14,12 @@ import { md5 } from '../utils/hash';
 // Key for storage
 const PROCESSED_CACHE_KEY = 'processed_raw_notifications';
 const MAX_CACHE_SIZE = 100;
+const PENDING_BATCH_SIZE = 50;
 
 export class NotificationListenerService {
   private static isListening = false;
   private static listenerHandle: { remove: () => void } | null = null;
+  private static correlationHandle: { remove: () => void } | null = null;
   private static initialized = false;
 
   // Cache for raw notification hashes (appName + title + text)
@@ -46,8 +50,8 @@ export class NotificationListenerService {
     this.loadProcessedCache();
 
     try {
-      // Check if already enabled
-      const { enabled } = await NotificationListener.isEnabled();
+      // Check if already enabled (from the startup snapshot when available)
+      const enabled = await this.isEnabled();
 
       if (!enabled) {
         console.log('🔔 Notification listener not enabled');
@@ -57,9 +61,22 @@ export class NotificationListenerService {
       // Start listening
       await this.startListening();
 
+      // ✅ Headless capture: let the native service parse while the WebView is not alive
+      const { BankSyncService } = await import('./bank-sync-service');
+      await NotificationListener.setHeadlessCapture(true, BankSyncService.getActiveBanks());
+
       // ✅ Sync pending on init
       await this.checkPendingNotifications();
 
+      // ✅ Active bank notifications missed while the app was closed (already in the snapshot)
+      const missed = await NativeBootstrap.take('missed');
+      if (missed && missed.length > 0) {
+        console.log(`📥 Processing ${missed.length} missed notifications from bootstrap...`);
+        for (const notification of missed) {
+          await this.handleNotification(notification);
+        }
+      }
+
       this.initialized = true;
       return true;
 
@@ -74,21 +91,78 @@ export class NotificationListenerService {
    * Useful on app resume
    */
   static async checkPendingNotifications(): Promise<void> {
+    // ✅ Transactions already parsed natively (headless capture) come first
+    await this.importHeadlessTransactions();
+
     try {
       console.log('🔄 Checking for pending notifications from native queue...');
-      const pendingNative = await NotificationListener.getPendingNotifications();
 
-      if (pendingNative.length > 0) {
-        console.log(`📥 Processing ${pendingNative.length} pending native notifications...`);
-        for (const notification of pendingNative) {
-          await this.handleNotification(notification);
+      // ✅ Ack-based cursor: entries are removed natively only after we processed them,
+      // so a crash mid-batch replays exactly the unacknowledged tail (raw hash dedupe makes it idempotent)
+      let remaining = 0;
+      let ackedSeq = 0;
+      // First batch comes from the startup snapshot (only once per launch)
+      let batch: { notifications: BankNotification[]; toSeq: number; remaining: number } | null =
+        await NativeBootstrap.take('pending');
+      do {
+        if (!batch) batch = await NotificationListener.getPendingNotifications(PENDING_BATCH_SIZE);
+        if (batch.notifications.length === 0) break;
+        // Same batch again (cursor not advanced): stop, the next check retries it
+        if (batch.toSeq <= ackedSeq) {
+          console.warn(`⚠️ Pending queue did not advance past seq ${ackedSeq}: retrying on next check`);
+          break;
         }
-      }
+
+        console.log(`📥 Processing ${batch.notifications.length} pending native notifications...`);
+        for (const notification of batch.notifications) {
+          if (notification.correlated) {
+            const { correlated, ...event } = notification;
+            await this.handleCorrelation({ ...correlated, event: { ...event } }, false);
+          } else {
+            await this.handleNotification(notification);
+          }
+        }
+
+        if (!(await NotificationListener.ackNotifications(batch.toSeq))) break;
+        ackedSeq = batch.toSeq;
+        remaining = batch.remaining;
+        batch = null;
+      } while (remaining > 0);
     } catch (error) {
       console.error('Error checking pending notifications:', error);
     }
   }
 
+  /**
+   * ✅ NEW: Import transactions captured by the native service while the WebView was not alive.
+   * They are already parsed and fingerprinted: just save them, no re-parsing.
+   */
+  static async importHeadlessTransactions(): Promise<void> {
+    try {
+      const captured: HeadlessTransaction[] =
+        (await NativeBootstrap.take('headless')) ?? await NotificationListener.getHeadlessTransactions();
+      if (captured.length === 0) return;
+
+      console.log(`📥 Importing ${captured.length} headless transactions...`);
+      const savedIds: string[] = [];
+      for (const tx of captured) {
+        try {
+          const { rawHash, capturedHeadless, ...transaction } = tx;
+          await AutoTransactionService.importCapturedTransaction(transaction);
+          // Same notification may still be delivered by the queue/missed scan: skip it there
+          this.markAsProcessed(rawHash);
+          savedIds.push(tx.id);
+        } catch (e) {
+          console.error('Failed to import headless transaction (will retry next launch):', e);
+        }
+      }
+
+      await NotificationListener.removeHeadlessTransactions(savedIds);
+    } catch (error) {
+      console.error('Error importing headless transactions:', error);
+    }
+  }
+
   /**
    * Start listening for notifications
    */
@@ -109,6 +183,15 @@ export class NotificationListenerService {
         this.handleNotification.bind(this)
       );
 
+      // ✅ NEW: Same payment already captured from SMS / bank → only its provenance changes
+      if (this.correlationHandle) {
+        this.correlationHandle.remove();
+      }
+      this.correlationHandle = await NotificationListener.addCorrelationListener(correlated => {
+        this.handleCorrelation(correlated, true).catch(error =>
+          console.error('Error applying correlated notification:', error));
+      });
+
       // Start Android Service
       await NotificationListener.startListening();
 
@@ -156,6 +239,40 @@ export class NotificationListenerService {
     }
   }
 
+  /**
+   * Raw hash of a notification (appName + title + text): ignores timestamp variations
+   */
+  private static rawHashOf(notification: BankNotification): string {
+    return md5(`${notification.appName}|${notification.title}|${notification.text}`);
+  }
+
+  /**
+   * ✅ NEW: Notification collapsed into a transaction already captured from SMS / bank.
+   * Live (broadcast) and queued copies arrive both: the raw hash makes the second one a no-op.
+   * If the canonical transaction is not stored the notification goes through the normal pipeline.
+   */
+  private static async handleCorrelation(correlated: CorrelatedTransaction, live: boolean): Promise<void> {
+    const notification = correlated.event as unknown as BankNotification | undefined;
+    if (notification && this.processedCache.includes(this.rawHashOf(notification))) return;
+
+    try {
+      const applied = live
+        ? await AutoTransactionService.applyCorrelationWithRetry(correlated)
+        : await AutoTransactionService.applyCorrelation(correlated);
+      if (applied) {
+        if (notification) this.markAsProcessed(this.rawHashOf(notification));
+        return;
+      }
+    } catch (error) {
+      console.error('Error applying correlated notification:', error);
+    }
+
+    if (notification) {
+      console.log('↩️ Correlated notification has no stored transaction, processing it as new');
+      await this.handleNotification(notification);
+    }
+  }
+
   /**
    * Handle incoming notification
    */
@@ -164,8 +281,7 @@ export class NotificationListenerService {
 
     // ✅ CRITICAL FIX: Robust De-duplication using Raw Hash
     // This ignores timestamp variations and ensures we only process unique TEXT content once.
-    const rawData = `${notification.appName}|${notification.title}|${notification.text}`;
-    const rawHash = md5(rawData);
+    const rawHash = this.rawHashOf(notification);
 
     if (this.processedCache.includes(rawHash)) {
       console.log(`⏭️ Notification already processed (Raw Match): ${rawHash.substring(0, 8)}`);
@@ -225,6 +341,10 @@ export class NotificationListenerService {
         this.listenerHandle.remove();
         this.listenerHandle = null;
       }
+      if (this.correlationHandle) {
+        this.correlationHandle.remove();
+        this.correlationHandle = null;
+      }
       this.isListening = false;
       console.log('✅ Notification listener stopped');
     } catch (error) {
@@ -243,6 +363,10 @@ export class NotificationListenerService {
 
   static async isEnabled(): Promise<boolean> {
     try {
+      // ✅ Startup: answer from the bootstrap snapshot instead of a separate bridge call
+      const state = await NativeBootstrap.getState();
+      if (state) return state.listenerEnabled;
+
       const { enabled } = await NotificationListener.isEnabled();
       return enabled;
     } catch (error) {
@@ -251,6 +375,16 @@ export class NotificationListenerService {
     }
   }
 
+  /**
+   * ✅ NEW: Subscribe to notification access changes (pushed natively, no polling)
+   */
+  static async onStateChange(callback: (enabled: boolean) => void): Promise<{ remove: () => Promise<void> }> {
+    return NotificationListener.addStateListener((enabled) => {
+      NativeBootstrap.invalidateState();
+      callback(enabled);
+    });
+  }
+
   static async requestPermission(): Promise<{ enabled: boolean }> {
     try {
       console.log('📱 Requesting Android Notification Permission...');
@@ -1,6 +1,8 @@
 
-import { addRawEvent, updateRawEventStatus, RawEvent } from '../utils/db';
+import { addRawEvent, getRawEvent, updateRawEventStatus, RawEvent } from '../utils/db';
 import { BankNotification } from '../plugins/notification-listener';
+import { RawEventArchiveService } from './raw-event-archive-service';
+import { SearchIndexService } from './search-index-service';
 
 export class RawDataService {
 
@@ -18,9 +20,25 @@ export class RawDataService {
         };
 
         await addRawEvent(event);
+        SearchIndexService.indexRawEvent(event); // Not awaited: the parser must not wait for the index
         return id;
     }
 
+    /**
+     * Raw event by id: IndexedDB first, then the native archive (settled events older than 2 days)
+     */
+    static async getRawEvent(id: string): Promise<RawEvent | null> {
+        const event = await getRawEvent(id);
+        return event || await RawEventArchiveService.getEvent(id);
+    }
+
+    /**
+     * Move the settled events to the compressed archive (native only)
+     */
+    static async archiveSettledEvents(): Promise<number> {
+        return await RawEventArchiveService.archiveSettled();
+    }
+
     /**
      * Update status after processing
      */
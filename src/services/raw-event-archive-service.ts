@@ -0,0 +1,96 @@
+// src/services/raw-event-archive-service.ts
+
+import { Capacitor } from '@capacitor/core';
+import RawEventArchive from '../plugins/raw-event-archive';
+import type { RawEventArchivePage } from '../plugins/raw-event-archive';
+import { deleteRawEvents, getSettledRawEvents, RawEvent } from '../utils/db';
+import { SearchIndexService } from './search-index-service';
+
+const ARCHIVE_AFTER_MS = 2 * 24 * 60 * 60 * 1000; // gli eventi recenti possono ancora essere rielaborati
+const BATCH_SIZE = 200;
+const COMPACT_INTERVAL_MS = 24 * 60 * 60 * 1000;
+const LAST_COMPACT_KEY = 'raw_event_archive_last_compact';
+
+/**
+ * ✅ NEW: Archivio nativo compresso degli eventi grezzi (notifiche e SMS così come ricevuti).
+ *
+ * Gli eventi già elaborati (processed, error, ignored) più vecchi di due giorni vengono copiati
+ * nell'archivio e poi eliminati da IndexedDB: restano leggibili per id e per intervallo di date.
+ * L'archivio tiene ogni stato per un numero di giorni diverso (gli errori più a lungo) e una volta
+ * al giorno viene compattato: gli eventi scaduti spariscono anche dall'indice di ricerca.
+ */
+export class RawEventArchiveService {
+  private static queue: Promise<unknown> = Promise.resolve();
+
+  static isAvailable(): boolean {
+    return Capacitor.isNativePlatform() && Capacitor.isPluginAvailable('RawEventArchive');
+  }
+
+  /**
+   * Sposta nell'archivio gli eventi elaborati e, se è passato un giorno, compatta; ritorna quanti
+   * eventi sono stati spostati
+   */
+  static archiveSettled(): Promise<number> {
+    if (!this.isAvailable()) return Promise.resolve(0);
+
+    return this.enqueue(async () => {
+      const start = Date.now();
+      let moved = 0;
+
+      for (;;) {
+        const events = await getSettledRawEvents(Date.now() - ARCHIVE_AFTER_MS, BATCH_SIZE);
+        if (events.length === 0) break;
+
+        // Prima la copia nell'archivio, poi l'eliminazione: un'interruzione lascia al massimo un doppione
+        await RawEventArchive.append({ events });
+        moved += await deleteRawEvents(events);
+        if (events.length < BATCH_SIZE) break;
+      }
+
+      if (moved > 0) {
+        console.log(`📦 Archived ${moved} raw events in ${Date.now() - start}ms`);
+      }
+
+      await this.compactIfDue();
+      return moved;
+    }, 0);
+  }
+
+  /**
+   * Evento archiviato per id; null se sconosciuto, scaduto o non disponibile
+   */
+  static getEvent(id: string): Promise<RawEvent | null> {
+    if (!this.isAvailable()) return Promise.resolve(null);
+    return this.enqueue(async () => (await RawEventArchive.get({ id })).event, null);
+  }
+
+  /**
+   * Eventi archiviati con from <= timestamp <= to, dal più recente; null se non disponibile
+   */
+  static queryEvents(from: number, to: number, offset = 0, limit = 50, status?: RawEvent['status']): Promise<RawEventArchivePage | null> {
+    if (!this.isAvailable()) return Promise.resolve(null);
+    return this.enqueue<RawEventArchivePage | null>(() => RawEventArchive.query({ from, to, status, offset, limit }), null);
+  }
+
+  private static async compactIfDue(): Promise<void> {
+    const last = Number(localStorage.getItem(LAST_COMPACT_KEY) || 0);
+    if (Date.now() - last < COMPACT_INTERVAL_MS) return;
+
+    const result = await RawEventArchive.compact();
+    localStorage.setItem(LAST_COMPACT_KEY, String(Date.now()));
+
+    if (result.expiredIds.length > 0) {
+      await SearchIndexService.removeRawEvents(result.expiredIds);
+    }
+    console.log(`🧹 Raw event archive compacted: ${result.events} events, ${result.expiredIds.length} expired, ${Math.round(result.storedBytes / 1024)}KB`);
+  }
+
+  private static enqueue<T>(task: () => Promise<T>, fallback: T): Promise<T> {
+    const run = this.queue.then(task).catch((error) => {
+      console.error('❌ Error in raw event archive:', error);
+      return fallback;
+    });
+    this.queue = run;
+    return run;
+  }
+}
@@ -0,0 +1,107 @@
+// src/services/receipt-queue-service.ts
+
+import { Capacitor } from '@capacitor/core';
+import ReceiptImage from '../plugins/receipt-image';
+import { OfflineImage, addImageToQueue, deleteImageFromQueue, getQueuedImages, getQueuedImagesPage } from '../utils/db';
+import { imageSrc, releaseImage } from '../utils/fileHelper';
+
+/**
+ * ✅ NEW: Offline receipt queue.
+ * ANDROID: native content-addressed blob store (files under their SHA-256, paged metadata,
+ * cached thumbnails), nothing but metadata crosses the bridge when listing
+ * WEB: IndexedDB as before, read a page at a time
+ */
+export class ReceiptQueueService {
+
+    static readonly PAGE_SIZE = 20;
+    private static migration: Promise<void> | null = null;
+
+    private static isNative(): boolean {
+        return Capacitor.isNativePlatform() && Capacitor.isPluginAvailable('ReceiptImage');
+    }
+
+    static async add(image: OfflineImage): Promise<void> {
+        if (!this.isNative()) {
+            await addImageToQueue(image);
+            return;
+        }
+        const stored = await ReceiptImage.queueImage({
+            id: image.id,
+            uri: image.uri,
+            data: image.uri ? undefined : image.base64Image,
+            mimeType: image.mimeType,
+            timestamp: image.timestamp || Date.now(),
+        });
+        if (stored.deduplicated) console.log(`♻️ Immagine già in coda (${stored.hash.slice(0, 12)}), salvata una volta sola`);
+    }
+
+    /**
+     * One page of queued images, newest first, plus the queue size
+     */
+    static async list(offset = 0, limit = this.PAGE_SIZE): Promise<{ items: OfflineImage[]; total: number }> {
+        if (!this.isNative()) return getQueuedImagesPage(offset, limit);
+
+        await this.migrate();
+        const { items, total } = await ReceiptImage.listQueuedImages({ offset, limit });
+        return {
+            items: items.map(item => ({
+                id: item.id,
+                uri: item.uri,
+                hash: item.hash,
+                mimeType: item.mimeType,
+                timestamp: item.timestamp,
+            })),
+            total,
+        };
+    }
+
+    /**
+     * Remove an image after analysis or on user request. Images analyzed right away were never
+     * queued: only their processed file is deleted.
+     */
+    static async remove(image: OfflineImage): Promise<void> {
+        if (!this.isNative()) {
+            await deleteImageFromQueue(image.id);
+            return;
+        }
+        const { removed } = await ReceiptImage.removeQueuedImage({ id: image.id });
+        if (!removed) await releaseImage(image);
+    }
+
+    /**
+     * src for the queue list: native thumbnail from the LRU cache, the image itself on web
+     */
+    static async thumbnailSrc(image: OfflineImage, size = 256): Promise<string> {
+        if (!this.isNative() || !image.hash) return imageSrc(image);
+        try {
+            const { uri } = await ReceiptImage.getQueuedThumbnail({ id: image.id, size });
+            return Capacitor.convertFileSrc(uri);
+        } catch (error) {
+            console.warn('⚠️ Thumbnail non disponibile:', error);
+            return imageSrc(image);
+        }
+    }
+
+    /**
+     * Images queued in IndexedDB before the native store existed: moved once, then deleted
+     */
+    private static migrate(): Promise<void> {
+        if (!this.migration) {
+            this.migration = (async () => {
+                try {
+                    const legacy = await getQueuedImages();
+                    for (const image of legacy) {
+                        if (!image.base64Image && !image.uri) continue;
+                        await this.add(image);
+                        await deleteImageFromQueue(image.id);
+                    }
+                    if (legacy.length > 0) console.log(`📦 ${legacy.length} immagini in coda spostate nell'archivio nativo`);
+                } catch (error) {
+                    console.error('❌ Error migrating queued images:', error);
+                    this.migration = null;
+                }
+            })();
+        }
+        return this.migration;
+    }
+}
@@ -0,0 +1,261 @@
+// src/services/search-index-service.ts
+
+import { Capacitor } from '@capacitor/core';
+import RawEventArchive from '../plugins/raw-event-archive';
+import Search from '../plugins/search-index';
+import type { SearchDocument } from '../plugins/search-index';
+import type { Expense } from '../types';
+import { countRawEvents, getAllRawEvents, RawEvent } from '../utils/db';
+
+const TRANSACTIONS_INDEX = 'transactions';
+const RAW_EVENTS_INDEX = 'raw-events';
+const ARCHIVE_PAGE_SIZE = 500;
+const FINGERPRINT_VERSION = 'v1'; // cambiare se cambia il contenuto dei documenti: reindicizza tutto
+
+interface IndexedTransaction {
+  item: Expense; // stesso oggetto = nessuna modifica
+  key: string;
+  hash: number;
+}
+
+export interface SearchPage {
+  ids: string[]; // dal più pertinente
+  total: number;
+}
+
+/**
+ * ✅ NEW: Ricerca full-text nativa su transazioni ed eventi grezzi (notifiche bancarie).
+ *
+ * L'indice nativo (token senza accenti, minuscoli, con stemming italiano) è salvato su disco:
+ * qui si mandano solo i documenti aggiunti, modificati o eliminati, insieme a un'impronta
+ * dell'elenco indicizzato (somma degli hash di id + contenuto, indipendente dall'ordine).
+ * Alla prima sync della sessione l'impronta salvata dal plugin viene confrontata con quella
+ * dell'elenco attuale: se coincidono non si rimanda nulla, altrimenti si ricostruisce l'indice.
+ * Gli eventi grezzi vengono aggiunti al salvataggio; se l'indice non ne ha lo stesso numero
+ * di IndexedDB più l'archivio nativo viene ricostruito da entrambi.
+ */
+export class SearchIndexService {
+  private static indexed = new Map<string, IndexedTransaction>();
+  private static indexedList: Expense[] | null = null;
+  private static hashSum = 0; // somma (mod 2^32) degli hash dei documenti indicizzati
+  private static needsCheck = true; // prima sync della sessione o dopo un errore
+  private static rawEventsChecked = false;
+  private static searchGeneration = 0;
+  private static queue: Promise<unknown> = Promise.resolve();
+
+  static isAvailable(): boolean {
+    return Capacitor.isNativePlatform() && Capacitor.isPluginAvailable('Search');
+  }
+
+  /**
+   * Allinea l'indice all'elenco delle transazioni (chiamato a ogni modifica di expenses)
+   */
+  static updateTransactions(expenses: Expense[]): Promise<boolean> {
+    if (!this.isAvailable()) return Promise.resolve(false);
+    return this.enqueue(() => this.syncTransactions(expenses), false);
+  }
+
+  /**
+   * Id delle transazioni che contengono tutte le parole della query (l'ultima anche come prefisso),
+   * dalla più pertinente; null se non disponibile o se nel frattempo è partita un'altra ricerca
+   */
+  static searchTransactions(expenses: Expense[], query: string, offset = 0, limit = 50): Promise<SearchPage | null> {
+    if (!this.isAvailable()) return Promise.resolve(null);
+    const generation = ++this.searchGeneration;
+
+    return this.enqueue(async () => {
+      if (generation !== this.searchGeneration) return null; // L'utente ha già digitato altro
+      if (!(await this.syncTransactions(expenses))) return null;
+
+      const result = await Search.search({ index: TRANSACTIONS_INDEX, query, offset, limit });
+      return { ids: result.ids, total: result.total };
+    }, null);
+  }
+
+  /**
+   * Aggiunge un evento grezzo appena salvato (notifica o SMS)
+   */
+  static indexRawEvent(event: RawEvent): Promise<boolean> {
+    if (!this.isAvailable()) return Promise.resolve(false);
+    return this.enqueue(async () => {
+      if (!(await this.checkRawEvents())) return true; // Già nella ricostruzione da IndexedDB
+      await Search.index({ index: RAW_EVENTS_INDEX, documents: [this.toRawDocument(event)] });
+      return true;
+    }, false);
+  }
+
+  /**
+   * Toglie gli eventi grezzi eliminati dall'archivio (scaduti)
+   */
+  static removeRawEvents(ids: string[]): Promise<boolean> {
+    if (!this.isAvailable() || ids.length === 0) return Promise.resolve(false);
+    return this.enqueue(async () => {
+      if (!(await this.checkRawEvents())) return true; // Ricostruito senza di loro
+      await Search.index({ index: RAW_EVENTS_INDEX, removals: ids });
+      return true;
+    }, false);
+  }
+
+  /**
+   * Id degli eventi grezzi che corrispondono alla query, dal più pertinente; null se non disponibile
+   */
+  static searchRawEvents(query: string, offset = 0, limit = 50): Promise<SearchPage | null> {
+    if (!this.isAvailable()) return Promise.resolve(null);
+    return this.enqueue(async () => {
+      await this.checkRawEvents();
+      const result = await Search.search({ index: RAW_EVENTS_INDEX, query, offset, limit });
+      return { ids: result.ids, total: result.total };
+    }, null);
+  }
+
+  private static enqueue<T>(task: () => Promise<T>, fallback: T): Promise<T> {
+    const run = this.queue.then(task).catch((error) => {
+      console.error('❌ Error in search index:', error);
+      this.needsCheck = true;
+      this.rawEventsChecked = false;
+      return fallback;
+    });
+    this.queue = run;
+    return run;
+  }
+
+  /**
+   * Manda al plugin le differenze rispetto all'ultima sync; false se l'elenco ha id duplicati
+   */
+  private static async syncTransactions(expenses: Expense[]): Promise<boolean> {
+    if (expenses === this.indexedList && !this.needsCheck) return true;
+
+    const check = this.needsCheck;
+    const previous = check ? new Map<string, IndexedTransaction>() : this.indexed;
+    const next = new Map<string, IndexedTransaction>();
+    const documents: SearchDocument[] = [];
+    let hashSum = check ? 0 : this.hashSum;
+
+    for (const item of expenses) {
+      if (next.has(item.id)) {
+        console.warn(`⚠️ Duplicate transaction id ${item.id}: search done in JS`);
+        this.needsCheck = true;
+        return false;
+      }
+
+      const old = previous.get(item.id);
+      if (old && old.item === item) {
+        next.set(item.id, old);
+        continue;
+      }
+
+      const document = this.toTransactionDocument(item);
+      const key = `${document.title}|${document.text}|${document.time}`;
+      if (old && old.key === key) {
+        next.set(item.id, { item, key, hash: old.hash });
+        continue;
+      }
+
+      const hash = this.hashOf(`${item.id}\u0000${key}`);
+      next.set(item.id, { item, key, hash });
+      hashSum = (hashSum + hash - (old ? old.hash : 0)) >>> 0;
+      documents.push(document);
+    }
+
+    const removals: string[] = [];
+    previous.forEach((old, id) => {
+      if (next.has(id)) return;
+      removals.push(id);
+      hashSum = (hashSum - old.hash) >>> 0;
+    });
+
+    const fingerprint = `${FINGERPRINT_VERSION}:${next.size}:${hashSum.toString(16)}`;
+
+    try {
+      if (check) {
+        const info = await Search.getIndexInfo({ index: TRANSACTIONS_INDEX });
+        if (info.fingerprint !== fingerprint) {
+          const start = Date.now();
+          await Search.index({ index: TRANSACTIONS_INDEX, reset: true, documents, fingerprint });
+          console.log(`🔎 Search index rebuilt: ${documents.length} transactions in ${Date.now() - start}ms`);
+        }
+      } else if (documents.length > 0 || removals.length > 0) {
+        await Search.index({ index: TRANSACTIONS_INDEX, documents, removals, fingerprint });
+      }
+    } catch (error) {
+      this.needsCheck = true;
+      throw error;
+    }
+
+    this.indexed = next;
+    this.indexedList = expenses;
+    this.hashSum = hashSum;
+    this.needsCheck = false;
+    return true;
+  }
+
+  /**
+   * Alla prima richiesta della sessione ricostruisce l'indice degli eventi grezzi se non ha
+   * lo stesso numero di eventi di IndexedDB e dell'archivio; false se lo ha appena ricostruito
+   */
+  private static async checkRawEvents(): Promise<boolean> {
+    if (this.rawEventsChecked) return true;
+
+    const archived = this.hasArchive();
+    const [info, count, stats] = await Promise.all([
+      Search.getIndexInfo({ index: RAW_EVENTS_INDEX }),
+      countRawEvents(),
+      archived ? RawEventArchive.getStats() : Promise.resolve(null)
+    ]);
+    this.rawEventsChecked = true;
+    if (info.documents === count + (stats ? stats.events : 0)) return true;
+
+    const events = await getAllRawEvents();
+    await Search.index({
+      index: RAW_EVENTS_INDEX,
+      reset: true,
+      documents: events.map(event => this.toRawDocument(event))
+    });
+
+    // Gli archiviati a pagine, per non portare tutto l'archivio in memoria
+    let total = events.length;
+    for (let offset = 0; archived; offset += ARCHIVE_PAGE_SIZE) {
+      const page = await RawEventArchive.query({ offset, limit: ARCHIVE_PAGE_SIZE });
+      if (page.events.length === 0) break;
+      await Search.index({ index: RAW_EVENTS_INDEX, documents: page.events.map(event => this.toRawDocument(event)) });
+      total += page.events.length;
+      if (offset + page.events.length >= page.total) break;
+    }
+    console.log(`🔎 Raw events index rebuilt: ${total} events`);
+    return false;
+  }
+
+  private static hasArchive(): boolean {
+    return Capacitor.isPluginAvailable('RawEventArchive');
+  }
+
+  private static toTransactionDocument(item: Expense): SearchDocument {
+    const time = new Date(`${item.date}T${item.time || '00:00'}`).getTime();
+    return {
+      id: item.id,
+      title: item.description || '',
+      text: [item.category, item.subcategory, ...(item.tags || [])].filter(Boolean).join(' '),
+      time: isNaN(time) ? 0 : time
+    };
+  }
+
+  private static toRawDocument(event: RawEvent): SearchDocument {
+    const content = event.rawContent || {};
+    return {
+      id: event.id,
+      title: [content.appName, content.title, content.sender].filter(Boolean).join(' '),
+      text: String(content.text ?? content.body ?? ''),
+      time: event.timestamp || 0
+    };
+  }
+
+  // FNV-1a a 32 bit
+  private static hashOf(value: string): number {
+    let hash = 0x811c9dc5;
+    for (let i = 0; i < value.length; i++) {
+      hash ^= value.charCodeAt(i);
+      hash = Math.imul(hash, 0x01000193);
+    }
+    return hash >>> 0;
+  }
+}
@@ -0,0 +1,181 @@
+// src/services/sms-history-import.ts
+
+import { Capacitor } from '@capacitor/core';
+import type { PluginListenerHandle } from '@capacitor/core';
+import SMSReader from '../plugins/sms-reader';
+import type {
+  HistoryImportChunk,
+  HistoryImportProgress,
+  HistoryImportStatus
+} from '../plugins/sms-reader';
+import { AutoTransactionService } from './auto-transaction-service';
+import { SMSTransactionParser } from './sms-transaction-parser';
+
+type ProgressCallback = (progress: HistoryImportProgress) => void;
+
+const CHUNK_ATTEMPTS = 3;
+const CHUNK_RETRY_DELAY_MS = 1000;
+
+/**
+ * ✅ NEW: Import storico degli SMS (primo avvio / "importa ultimi N mesi").
+ *
+ * L'inbox viene letta e parsata lato nativo a pagine; qui arrivano solo le transazioni
+ * già fingerprintate, che vengono salvate e confermate (ack) chunk per chunk.
+ * Il nativo fa avanzare il checkpoint solo sui chunk confermati: se l'app viene chiusa
+ * l'import riprende da lì (resumeIfInterrupted) e i chunk ripetuti sono scartati come duplicati.
+ */
+export class SMSHistoryImport {
+  private static chunkListener: PluginListenerHandle | null = null;
+  private static progressListener: PluginListenerHandle | null = null;
+  private static progressCallbacks = new Set<ProgressCallback>();
+  // Chunks are saved one at a time, in arrival order
+  private static queue: Promise<void> = Promise.resolve();
+
+  /**
+   * Avvia l'import degli ultimi `months` mesi (default 6)
+   */
+  static async start(
+    options: { months?: number; scanAll?: boolean } = {},
+    onProgress?: ProgressCallback
+  ): Promise<HistoryImportStatus | null> {
+    return this.run({ ...options, resume: false }, onProgress);
+  }
+
+  /**
+   * Riprende un import interrotto dalla chiusura dell'app; no-op se non ce n'è uno
+   * (un import annullato dall'utente resta annullato)
+   */
+  static async resumeIfInterrupted(onProgress?: ProgressCallback): Promise<HistoryImportStatus | null> {
+    const status = await this.getStatus();
+    if (!status || status.active || status.state !== 'running') return null;
+
+    console.log(`🔄 Resuming SMS history import (${status.processed} SMS already processed)`);
+    return this.run({ resume: true }, onProgress);
+  }
+
+  static async cancel(): Promise<boolean> {
+    if (Capacitor.getPlatform() !== 'android') return false;
+
+    try {
+      const { cancelled } = await SMSReader.cancelHistoryImport();
+      return cancelled;
+    } catch (error) {
+      console.error('❌ Error cancelling SMS history import:', error);
+      return false;
+    }
+  }
+
+  static async getStatus(): Promise<HistoryImportStatus | null> {
+    if (Capacitor.getPlatform() !== 'android') return null;
+
+    try {
+      return await SMSReader.getHistoryImportStatus();
+    } catch (error) {
+      console.error('❌ Error reading SMS history import status:', error);
+      return null;
+    }
+  }
+
+  private static async run(
+    options: { months?: number; scanAll?: boolean; resume: boolean },
+    onProgress?: ProgressCallback
+  ): Promise<HistoryImportStatus | null> {
+    if (Capacitor.getPlatform() !== 'android') return null;
+
+    try {
+      if (onProgress) this.progressCallbacks.add(onProgress);
+      // Listeners first: the first chunk can arrive before startHistoryImport resolves
+      await this.attachListeners();
+
+      const status = await SMSReader.startHistoryImport(options);
+      console.log('📥 SMS history import started:', status);
+
+      if (!status.alreadyRunning && options.resume && !status.resumed) {
+        await this.detachListeners();
+      }
+      return status;
+    } catch (error) {
+      console.error('❌ Error starting SMS history import:', error);
+      await this.detachListeners();
+      return null;
+    }
+  }
+
+  private static async attachListeners(): Promise<void> {
+    if (!this.chunkListener) {
+      this.chunkListener = await SMSReader.addListener('smsImportChunk', (chunk) => {
+        this.queue = this.queue.then(() => this.saveChunk(chunk));
+      });
+    }
+
+    if (!this.progressListener) {
+      this.progressListener = await SMSReader.addListener('smsImportProgress', (progress) => {
+        this.progressCallbacks.forEach(callback => callback(progress));
+
+        if (progress.done) {
+          console.log(`✅ SMS history import ${progress.state}: ${progress.matched} transactions from ${progress.processed} SMS`);
+          // Wait for the last chunks to be saved before dropping the listeners
+          this.queue = this.queue.then(() => this.detachListeners());
+        }
+      });
+    }
+  }
+
+  private static async detachListeners(): Promise<void> {
+    await this.chunkListener?.remove();
+    await this.progressListener?.remove();
+    this.chunkListener = null;
+    this.progressListener = null;
+    this.progressCallbacks.clear();
+  }
+
+  /**
+   * Salva un chunk e lo conferma; dopo CHUNK_ATTEMPTS tentativi falliti lo segnala come fallito,
+   * così il nativo chiude l'import come "failed" invece di restare in attesa dell'ack
+   */
+  private static async saveChunk(chunk: HistoryImportChunk): Promise<void> {
+    let lastError: unknown = null;
+
+    for (let attempt = 1; attempt <= CHUNK_ATTEMPTS; attempt++) {
+      try {
+        await this.importChunk(chunk);
+        await SMSReader.ackHistoryImport({ jobId: chunk.jobId, seq: chunk.seq });
+        return;
+      } catch (error) {
+        // Ripetere è sicuro: le transazioni già salvate sono scartate come duplicati (sourceHash)
+        lastError = error;
+        console.error(`❌ Error saving SMS import chunk #${chunk.seq} (attempt ${attempt}/${CHUNK_ATTEMPTS}):`, error);
+        if (attempt < CHUNK_ATTEMPTS) {
+          await new Promise(resolve => setTimeout(resolve, CHUNK_RETRY_DELAY_MS * attempt));
+        }
+      }
+    }
+
+    try {
+      // Il checkpoint resta prima di questo chunk: riprendendo l'import viene riletto
+      await SMSReader.ackHistoryImport({
+        jobId: chunk.jobId,
+        seq: chunk.seq,
+        failed: true,
+        error: lastError instanceof Error ? lastError.message : String(lastError)
+      });
+    } catch (error) {
+      console.error(`❌ Error reporting failed SMS import chunk #${chunk.seq}:`, error);
+    }
+  }
+
+  private static async importChunk(chunk: HistoryImportChunk): Promise<void> {
+    const senders = new Set<string>();
+    let imported = 0;
+
+    for (const { smsId: _smsId, sender, ...tx } of chunk.transactions) {
+      senders.add(sender);
+      if (await AutoTransactionService.importCapturedTransaction(tx)) {
+        imported++;
+      }
+    }
+
+    await SMSTransactionParser.learnSenders([...senders]);
+    console.log(`📥 Chunk #${chunk.seq}: ${imported}/${chunk.transactions.length} new transactions`);
+  }
+}
@@ -6,6 +6,8 @@ import SMSReader from '../plugins/sms-reader';
 import { SMSTransactionParser } from './sms-transaction-parser';
 // ✅ FIX: AutoTransactionService is in /services (project root), not in /src/services
 import { AutoTransactionService } from './auto-transaction-service';
+import { NativeBootstrap } from './native-bootstrap';
+import { SMSHistoryImport } from './sms-history-import';
 import type { SMSMessage } from '../plugins/sms-reader';
 import type { AutoTransaction } from '../types/transaction';
 
@@ -18,6 +20,7 @@ export interface PendingSMSTransaction {
 
 class SMSListenerService {
   private listener: PluginListenerHandle | null = null;
+  private correlationListener: PluginListenerHandle | null = null;
   private isInitialized = false;
   private pendingTransactions: PendingSMSTransaction[] = [];
   private readonly STORAGE_KEY = 'pending_sms_transactions';
@@ -31,6 +34,10 @@ class SMSListenerService {
     }
 
     try {
+      // ✅ Startup: permission state comes with the bootstrap snapshot
+      const state = await NativeBootstrap.getState();
+      if (state) return state.permissions.readSMS && state.permissions.receiveSMS; // Same as checkPermission().granted
+
       const result = await SMSReader.checkPermission();
       console.log('✅ SMSReader.checkPermission() result:', result);
       return result.granted;
@@ -40,6 +47,26 @@ class SMSListenerService {
     }
   }
 
+  /**
+   * ✅ NEW: Subscribe to SMS permission changes (pushed natively after the dialog / on resume)
+   */
+  async onPermissionChange(callback: (granted: boolean) => void): Promise<PluginListenerHandle | null> {
+    if (Capacitor.getPlatform() !== 'android') {
+      return null;
+    }
+
+    try {
+      return await SMSReader.addListener('smsPermissionChanged', (state) => {
+        console.log('🔔 SMS permission state changed:', state);
+        NativeBootstrap.invalidateState();
+        callback(state.granted);
+      });
+    } catch (error) {
+      console.error('❌ Error adding SMS permission listener:', error);
+      return null;
+    }
+  }
+
   /**
    * Request SMS permission
    */
@@ -83,15 +110,31 @@ class SMSListenerService {
 
       console.log('🚀 Initializing SMS listener...');
 
+      // Keep the native SQL sender filter in sync with the JS bank configs
+      SMSTransactionParser.syncSenderSeeds();
+
       // Load any pending transactions from storage
       await this.loadPendingTransactions();
 
       // Register real-time SMS listener
       await this.startListener();
 
-      // Scan recent SMS (last 24 hours)
-      console.log('📱 Scanning recent SMS (last 24 hours)...');
-      await SMSTransactionParser.scanRecentSMS(24);
+      // ✅ New SMS since the last watermark were already read by the bootstrap snapshot
+      const sms = await NativeBootstrap.take('sms');
+      if (sms) {
+        console.log(`📱 Processing ${sms.count} SMS from bootstrap snapshot...`);
+        await SMSTransactionParser.processMessages(sms.messages);
+        NativeBootstrap.saveSmsWatermark(sms.watermark);
+      } else {
+        // Scan recent SMS (last 24 hours)
+        console.log('📱 Scanning recent SMS (last 24 hours)...');
+        const scanStartedAt = Date.now();
+        await SMSTransactionParser.scanRecentSMS(24);
+        NativeBootstrap.saveSmsWatermark(scanStartedAt);
+      }
+
+      // ✅ An historical import killed with the app continues from its checkpoint
+      SMSHistoryImport.resumeIfInterrupted();
 
       this.isInitialized = true;
       console.log('✅ SMS listener initialized successfully');
@@ -124,6 +167,21 @@ class SMSListenerService {
         await this.handleIncomingSMS(sms);
       });
 
+      // ✅ NEW: Same payment already captured from a notification / bank → only its provenance changes
+      this.correlationListener = await SMSReader.addListener('transactionCorrelated', async (correlated) => {
+        console.log('🔗 SMS correlated with', correlated.canonicalId);
+        try {
+          if (await AutoTransactionService.applyCorrelationWithRetry(correlated)) return;
+        } catch (error) {
+          console.error('❌ Error applying correlated SMS:', error);
+        }
+        // Canonical transaction not stored (discarded or never saved): the SMS must not be lost
+        if (correlated.event) {
+          console.log('↩️ Correlated SMS has no stored transaction, processing it as new');
+          await this.handleIncomingSMS(correlated.event as unknown as SMSMessage);
+        }
+      });
+
       console.log('✅ SMS listener registered successfully');
     } catch (error) {
       console.error('❌ Error starting SMS listener:', error);
@@ -152,6 +210,9 @@ class SMSListenerService {
 
       console.log('✅ Transaction detected:', transaction);
 
+      // Teach the native sender filter (startup/bootstrap scans select only known senders)
+      SMSTransactionParser.learnSenders([sms.sender]);
+
       // Check if duplicate
       const hash = AutoTransactionService.generateTransactionHash(
         transaction.amount,
@@ -295,6 +356,14 @@ class SMSListenerService {
       }
       this.listener = null;
     }
+    if (this.correlationListener) {
+      try {
+        await this.correlationListener.remove();
+      } catch (error) {
+        console.error('❌ Error removing SMS correlation listener:', error);
+      }
+      this.correlationListener = null;
+    }
 
     this.isInitialized = false;
     console.log('✅ SMS listener service destroyed');
@@ -5,6 +5,7 @@ import { AutoTransactionService } from './auto-transaction-service';
 import { BankConfig } from '../types/transaction';
 import { Capacitor } from '@capacitor/core';
 import SMSReader from '../plugins/sms-reader';
+import type { SMSMessage } from '../plugins/sms-reader';
 import { BankSyncService } from './bank-sync-service';
 
 // Configurazioni banche italiane
@@ -79,6 +80,15 @@ const BANK_CONFIGS: BankConfig[] = [
   }
 ];
 
+// Parole chiave nei mittenti (Case insensitive)
+// ⚠️ Anche seed del filtro SQL nativo (BankSenderRegistry): tenere allineato DEFAULT_SEEDS
+const FINANCIAL_SENDERS = [
+  'BANK', 'BANCA', 'PAY', 'CARD', 'CARTA', 'CREDIT', 'DEBIT', 'ALERT', 'INFO', 'CONTO',
+  'POSTE', 'HYPE', 'N26', 'REVOLUT', 'CURVE', 'WISE', 'SATISPAY', 'AMEX', 'VISA',
+  'MASTERCARD', 'ING', 'BNL', 'BPER', 'FINECO', 'WEBANK', 'WIDIBA', 'ILLIMITY',
+  'NEXI', 'FINDOMESTIC', 'COMPASS', 'SANTANDER', 'UBI', 'CREDEM', 'MEDIOLANUM'
+];
+
 export class SMSTransactionParser {
 
   /**
@@ -117,8 +127,11 @@ export class SMSTransactionParser {
 
   /**
    * Scan recent SMS (ultimi X ore)
+   * @param scanAll - false (default): mittenti bancari più, da qualunque mittente, gli SMS con
+   *                  segnali di denaro nel testo (€, EUR, addebito...), filtrati in SQL lato nativo;
+   *                  true: tutti gli SMS della finestra
    */
-  static async scanRecentSMS(hours: number = 24): Promise<AutoTransaction[]> {
+  static async scanRecentSMS(hours: number = 24, scanAll: boolean = false): Promise<AutoTransaction[]> {
     // Solo su Android
     if (Capacitor.getPlatform() !== 'android') {
       console.log('⚠️ SMS scanning only available on Android');
@@ -133,47 +146,90 @@ export class SMSTransactionParser {
         return [];
       }
 
-      console.log(`📱 Scanning SMS from last ${hours} hours...`);
+      console.log(`📱 Scanning SMS from last ${hours} hours${scanAll ? ' (all senders)' : ''}...`);
 
       // Get SMS from native plugin
-      const result = await SMSReader.getRecentSMS({ hours });
+      const result = await SMSReader.getRecentSMS({ hours, scanAll });
       console.log(`📥 Found ${result.count} SMS messages`);
 
-      const transactions: AutoTransaction[] = [];
-
-      // Parse each SMS
-      for (const sms of result.messages) {
-        // ✅ Await parseSMS (async because of AI fallback)
-        const transaction = await this.parseSMS(sms.sender, sms.body, sms.timestamp);
-
-        if (transaction) {
-          // Check if duplicate
-          const isDuplicate = await AutoTransactionService.isDuplicate(
-            AutoTransactionService.generateTransactionHash(
-              transaction.amount,
-              transaction.date,
-              transaction.account,
-              transaction.description
-            )
-          );
-
-          if (!isDuplicate) {
-            // Add to database
-            await AutoTransactionService.addAutoTransaction(transaction);
-            transactions.push(transaction as AutoTransaction);
-            console.log(`✅ Added transaction: ${transaction.description} - €${transaction.amount}`);
-          } else {
-            console.log(`⚠️ Skipped duplicate: ${transaction.description}`);
-          }
+      return await this.processMessages(result.messages);
+
+    } catch (error) {
+      console.error('Error scanning SMS:', error);
+      return [];
+    }
+  }
+
+  /**
+   * Parse + dedupe + salva una lista di SMS già letti dall'inbox
+   * (usato da scanRecentSMS e dallo snapshot di bootstrap all'avvio)
+   */
+  static async processMessages(messages: SMSMessage[]): Promise<AutoTransaction[]> {
+    const transactions: AutoTransaction[] = [];
+    const bankSenders = new Set<string>();
+
+    // Parse each SMS
+    for (const sms of messages) {
+      // ✅ Await parseSMS (async because of AI fallback)
+      const transaction = await this.parseSMS(sms.sender, sms.body, sms.timestamp);
+
+      if (transaction) {
+        bankSenders.add(sms.sender);
+
+        // Check if duplicate
+        const isDuplicate = await AutoTransactionService.isDuplicate(
+          AutoTransactionService.generateTransactionHash(
+            transaction.amount,
+            transaction.date,
+            transaction.account,
+            transaction.description
+          )
+        );
+
+        if (!isDuplicate) {
+          // Add to database
+          await AutoTransactionService.addAutoTransaction(transaction);
+          transactions.push(transaction as AutoTransaction);
+          console.log(`✅ Added transaction: ${transaction.description} - €${transaction.amount}`);
+        } else {
+          console.log(`⚠️ Skipped duplicate: ${transaction.description}`);
         }
       }
+    }
+
+    console.log(`✅ Scan complete: ${transactions.length} new transactions added`);
+    await this.learnSenders([...bankSenders]);
+    return transactions;
+  }
 
-      console.log(`✅ Scan complete: ${transactions.length} new transactions added`);
-      return transactions;
+  /**
+   * ✅ NEW: Registra nel filtro nativo i mittenti i cui SMS sono diventati transazioni
+   */
+  static async learnSenders(senders: string[]): Promise<void> {
+    if (Capacitor.getPlatform() !== 'android' || senders.length === 0) return;
 
+    try {
+      const { added } = await SMSReader.learnSenders({ senders });
+      if (added > 0) console.log(`🧠 Learned ${added} new bank SMS senders`);
     } catch (error) {
-      console.error('Error scanning SMS:', error);
-      return [];
+      console.error('Error learning SMS senders:', error);
+    }
+  }
+
+  /**
+   * ✅ NEW: Allinea le keyword del filtro SQL nativo alle configurazioni banca correnti
+   */
+  static async syncSenderSeeds(): Promise<void> {
+    if (Capacitor.getPlatform() !== 'android') return;
+
+    try {
+      const identifiers = [...new Set([
+        ...BANK_CONFIGS.map(c => c.identifier.toUpperCase()),
+        ...FINANCIAL_SENDERS
+      ])];
+      await SMSReader.setSenderSeeds({ identifiers });
+    } catch (error) {
+      console.error('Error syncing SMS sender seeds:', error);
     }
   }
 
@@ -193,15 +249,8 @@ export class SMSTransactionParser {
 
     // 🧠 UNIVERSAL DETECTION: Se non troviamo una banca nota, cerchiamo segnali di "Finanza"
     if (!config) {
-      // Parole chiave nei mittenti (Case insensitive)
-      const FINANCIAL_SENDERS = [
-        'BANK', 'BANCA', 'PAY', 'CARD', 'CARTA', 'CREDIT', 'DEBIT', 'ALERT', 'INFO', 'CONTO',
-        'POSTE', 'HYPE', 'N26', 'REVOLUT', 'CURVE', 'WISE', 'SATISPAY', 'AMEX', 'VISA',
-        'MASTERCARD', 'ING', 'BNL', 'BPER', 'FINECO', 'WEBANK', 'WIDIBA', 'ILLIMITY',
-        'NEXI', 'FINDOMESTIC', 'COMPASS', 'SANTANDER', 'UBI', 'CREDEM', 'MEDIOLANUM'
-      ];
-
       // Parole chiave nel testo (Money signals)
+      // ⚠️ Il filtro SQL nativo (BankSenderRegistry.BODY_SIGNALS) ne usa un sottoinsieme per i mittenti sconosciuti
       const MONEY_SIGNALS = [
         '€', 'EUR', 'SPESO', 'SPESA', 'PAGATO', 'PAGAMENTO', 'ADDEBITO', 'ACCREDITO', 'BONIFICO',
         'AUTHORIZED', 'AUTORIZZAZIONE', 'SPENT', 'PURCHASE', 'TRANSAZIONE', 'TRANSACTION',
@@ -380,5 +429,6 @@ export class SMSTransactionParser {
    */
   static addBankConfig(config: BankConfig): void {
     BANK_CONFIGS.push(config);
+    this.syncSenderSeeds();
   }
 }
@@ -0,0 +1,149 @@
+// src/services/statement-import-service.ts
+
+import { Capacitor } from '@capacitor/core';
+import StatementImport from '../plugins/statement-import';
+import type {
+  PickedStatement,
+  StatementChunk,
+  StatementImportProgress,
+  StatementImportResult
+} from '../plugins/statement-import';
+import type { AutoTransaction } from '../types/transaction';
+import { AutoTransactionService } from './auto-transaction-service';
+
+export interface StatementImportSummary extends StatementImportResult {
+  fileName: string;
+  imported: number; // nuove transazioni (le righe già importate sono scartate)
+}
+
+/**
+ * ✅ NEW: Import di estratti conto (CSV / XLSX).
+ *
+ * Il file viene letto lato nativo riga per riga (colonne data / importo / descrizione
+ * riconosciute dall'intestazione o dal contenuto): qui arrivano solo le transazioni già
+ * parsate, a chunk, salvate come transazioni auto "pending" da confermare.
+ * Reimportare lo stesso file non crea duplicati (stesso hash per le stesse righe).
+ */
+export class StatementImportService {
+  private static readonly CHUNK_SIZE = 200;
+  private static activeRequestId: string | null = null;
+
+  static isAvailable(): boolean {
+    return Capacitor.isNativePlatform() && Capacitor.isPluginAvailable('StatementImport');
+  }
+
+  /**
+   * Fa scegliere il file all'utente e lo importa sul conto `account`; null se annullato
+   */
+  static async pickAndImport(
+    account: string,
+    onProgress?: (progress: StatementImportProgress) => void
+  ): Promise<StatementImportSummary | null> {
+    if (!this.isAvailable()) return null;
+
+    let picked: PickedStatement;
+    try {
+      picked = await StatementImport.pickStatement();
+    } catch {
+      return null; // Nessun file scelto
+    }
+    return this.importFile(picked, account, onProgress);
+  }
+
+  static async importFile(
+    file: PickedStatement,
+    account: string,
+    onProgress?: (progress: StatementImportProgress) => void
+  ): Promise<StatementImportSummary> {
+    const requestId = `statement_${Date.now()}`;
+    // Stessa riga ripetuta nel file (due caffè lo stesso giorno): occorrenze distinte nell'hash
+    const occurrences = new Map<string, number>();
+    let imported = 0;
+    // Chunks are saved one at a time, in arrival order
+    let queue: Promise<void> = Promise.resolve();
+
+    const listener = await StatementImport.addListener('statementChunk', (chunk) => {
+      if (chunk.importId !== requestId) return;
+      onProgress?.(chunk);
+      queue = queue.then(async () => {
+        imported += await this.saveChunk(chunk, account, file.name, occurrences);
+      });
+    });
+
+    this.activeRequestId = requestId;
+    try {
+      const result = await StatementImport.importStatement({
+        uri: file.uri,
+        requestId,
+        chunkSize: this.CHUNK_SIZE
+      });
+      await queue;
+
+      console.log(`✅ Statement ${file.name} (${result.format}): ${imported} new of ${result.parsed} parsed, ${result.skipped} rows skipped, ${result.rowsPerSecond} rows/s`);
+      return { ...result, fileName: file.name, imported };
+    } finally {
+      this.activeRequestId = null;
+      await listener.remove();
+    }
+  }
+
+  static async cancel(): Promise<boolean> {
+    if (!this.activeRequestId) return false;
+
+    try {
+      const { cancelled } = await StatementImport.cancelRequest({ requestId: this.activeRequestId });
+      return cancelled;
+    } catch (error) {
+      console.error('❌ Error cancelling statement import:', error);
+      return false;
+    }
+  }
+
+  private static async saveChunk(
+    chunk: StatementChunk,
+    account: string,
+    fileName: string,
+    occurrences: Map<string, number>
+  ): Promise<number> {
+    let imported = 0;
+
+    try {
+      for (const tx of chunk.transactions) {
+        const key = `${tx.date}|${tx.amount}|${tx.type}|${tx.description}`;
+        const occurrence = (occurrences.get(key) || 0) + 1;
+        occurrences.set(key, occurrence);
+
+        const sourceHash = AutoTransactionService.generateTransactionHash(
+          tx.amount,
+          tx.date,
+          account,
+          occurrence > 1 ? `${tx.description} #${occurrence}` : tx.description
+        );
+        const transaction: AutoTransaction = {
+          id: crypto.randomUUID(),
+          type: tx.type,
+          amount: tx.amount,
+          description: tx.description,
+          date: tx.date,
+          account,
+          category: tx.category,
+          subcategory: tx.subcategory,
+          sourceType: 'bank',
+          sourceApp: 'statement_import',
+          sourceHash,
+          rawText: `${fileName} #${tx.row}`,
+          status: 'pending',
+          createdAt: Date.now()
+        };
+
+        if (await AutoTransactionService.importCapturedTransaction(transaction)) {
+          imported++;
+        }
+      }
+      console.log(`📥 Statement chunk #${chunk.seq}: ${imported}/${chunk.transactions.length} new transactions`);
+    } catch (error) {
+      console.error(`❌ Error saving statement chunk #${chunk.seq}:`, error);
+    }
+    return imported;
+  }
+}
@@ -1,4 +1,6 @@
 import { Subscription } from '../types';
+import { DashboardAggregateService } from './dashboard-aggregate-service';
+import type { SubscriptionSuggestion } from '../plugins/dashboard-aggregates';
 
 const STORAGE_KEY = 'subscriptions';
 
@@ -25,6 +27,22 @@ export class SubscriptionService {
         localStorage.setItem(STORAGE_KEY, JSON.stringify(filtered));
     }
 
+    /**
+     * ✅ NEW: Recurring charges found in the history (native detector) that are not tracked yet.
+     * Only monthly / yearly ones, the cadences a Subscription can have; empty on web.
+     */
+    static async getSuggestions(subscriptions: Subscription[]): Promise<SubscriptionSuggestion[]> {
+        const suggestions = await DashboardAggregateService.detectSubscriptions();
+        if (!suggestions) return [];
+
+        const tracked = subscriptions.map(s => s.name.toLowerCase().trim()).filter(Boolean);
+        return suggestions.filter(suggestion => {
+            if (suggestion.cadence === 'weekly') return false;
+            const name = suggestion.name.toLowerCase();
+            return !tracked.some(t => name.includes(t) || t.includes(suggestion.merchant));
+        });
+    }
+
     /**
      * Fetches a company logo using Clearbit's logo API.
      * Includes a map for common services to ensure accuracy.
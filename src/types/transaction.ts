@@ -13,6 +13,7 @@ export interface AutoTransaction {
   date: string; // YYYY-MM-DD
   account: string;
   category?: string;
+  subcategory?: string; // ✅ NEW: Suggerita dall'indice merchant insieme alla categoria
 
   // Transfer specifico
   toAccount?: string; // Se type='transfer', conto destinazione
@@ -31,6 +32,9 @@ export interface AutoTransaction {
   // ✅ Bank API unique ID (entry_reference/transaction_id) - usato per hash stabili
   bankTransactionId?: string;
 
+  // ✅ NEW: Tutte le sorgenti (SMS, notifica, banca) da cui è arrivato lo stesso pagamento
+  provenance?: TransactionProvenance[];
+
   // Stato
   status: TransactionStatus;
   createdAt: number;
@@ -38,6 +42,32 @@ export interface AutoTransaction {
   validationWarnings?: string[]; // Array di warning generati dal validatore
 }
 
+// ✅ NEW: Una sorgente da cui è stato visto un pagamento (TransactionCorrelator nativo)
+export interface TransactionProvenance {
+  source: 'sms' | 'notification' | 'bank';
+  ref: string; // raw hash dell'evento o bankTransactionId
+  amount: number;
+  date: string;
+  timestamp: number;
+  account: string;
+  description: string;
+}
+
+// ✅ NEW: Pagamento già acquisito da un'altra sorgente: arriva solo la provenienza aggiornata
+export interface CorrelatedTransaction {
+  canonicalId: string; // sourceHash della transazione già salvata
+  type: TransactionType;
+  amount: number;
+  date: string;
+  timestamp: number;
+  account: string;
+  description: string;
+  sources: TransactionProvenance[];
+  updatedAt: number;
+  transaction?: Record<string, unknown>; // transazione bancaria grezza (solo bank sync)
+  event?: Record<string, unknown>; // notifica / SMS collassato: da elaborare se la transazione canonica non c'è
+}
+
 export interface BankConfig {
   name: string;
   identifier: string; // SMS sender o package name
@@ -125,6 +125,15 @@ export async function parseExpenseFromAudio(
   return result.expense || null;
 }
 
+// ====== TESTO → CATEGORIA (FALLBACK DEL CLASSIFICATORE ON-DEVICE) ======
+export async function categorizeFromText(
+  text: string
+): Promise<{ category: string; subcategory?: string } | null> {
+  const expense = await parseExpenseFromText(text);
+  if (!expense || !expense.category) return null;
+  return { category: expense.category, subcategory: expense.subcategory || undefined };
+}
+
 // ====== TESTO → 1 SPESA (FALLBACK) ======
 export async function parseExpenseFromText(
   text: string
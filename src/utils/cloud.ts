@@ -1,7 +1,9 @@
 
+import { Capacitor } from '@capacitor/core';
 import { Expense, Account } from '../types';
 
 import { API_CONFIG } from '../config/api.config';
+import CloudBackup from '../plugins/cloud-backup';
 
 // Use environment variable if available, otherwise fallback to the hardcoded URL
 // This ensures identical behavior while allowing configuration
@@ -19,6 +21,19 @@ export interface CloudResponse {
   pinSalt: string;
 }
 
+// ✅ NEW: Il documento completo ("save"/"load") porta l'istante del salvataggio, così il
+// ripristino sul dispositivo sceglie il più recente tra lui e il backup a chunk
+interface LegacyAppData extends AppData {
+  savedAt?: number;
+}
+
+// ✅ NEW: Backup incrementale nativo (chunk deduplicati e compressi, vedi CloudBackupPlugin).
+// Se lo script non conosce le azioni "backup*" si torna per la sessione al salvataggio completo.
+let chunkedBackupSupported = true;
+
+const isChunkedBackupAvailable = (): boolean =>
+  chunkedBackupSupported && Capacitor.isNativePlatform() && Capacitor.isPluginAvailable('CloudBackup');
+
 // Controlla se l'utente esiste già nel cloud
 export const checkUserInCloud = async (email: string): Promise<boolean> => {
   try {
@@ -46,7 +61,43 @@ export const saveToCloud = async (
   pinHash: string,
   pinSalt: string
 ): Promise<boolean> => {
+  if (isChunkedBackupAvailable()) {
+    try {
+      const result = await CloudBackup.backup({
+        endpoint: CLOUD_API_URL,
+        email,
+        data: JSON.stringify(data),
+        pinHash,
+        pinSalt
+      });
+      if (result.supported) {
+        if (!result.unchanged) {
+          console.log(`☁️ Backup incrementale: ${result.uploadedChunks}/${result.chunks} chunk inviati (${result.uploadedBytes} byte di ${result.size})`);
+          // Web e versioni precedenti leggono solo il documento completo: va tenuto aggiornato
+          // anche qui (lo script non lo ricostruisce dai chunk), con lo stesso istante del manifest
+          return saveLegacy(email, data, pinHash, pinSalt, result.createdAt || Date.now());
+        }
+        return true;
+      }
+      chunkedBackupSupported = false;
+    } catch (e) {
+      console.error("Errore backup incrementale:", e);
+      return false;
+    }
+  }
+
+  return saveLegacy(email, data, pinHash, pinSalt, Date.now());
+};
+
+const saveLegacy = (
+  email: string,
+  data: AppData,
+  pinHash: string,
+  pinSalt: string,
+  savedAt: number
+): boolean => {
   try {
+    const stamped: LegacyAppData = { ...data, savedAt };
     fetch(CLOUD_API_URL, {
       method: 'POST',
       mode: 'no-cors',
@@ -55,7 +106,7 @@ export const saveToCloud = async (
       body: JSON.stringify({
         action: 'save',
         email,
-        data,
+        data: stamped,
         pinHash,
         pinSalt
       })
@@ -68,6 +119,9 @@ export const saveToCloud = async (
 };
 
 export const deleteUserFromCloud = async (email: string): Promise<boolean> => {
+  if (Capacitor.isNativePlatform() && Capacitor.isPluginAvailable('CloudBackup')) {
+    CloudBackup.forget({ endpoint: CLOUD_API_URL, email }).catch(e => console.error("Errore reset backup locale:", e));
+  }
   try {
     await fetch(CLOUD_API_URL, {
       method: 'POST',
@@ -86,6 +140,45 @@ export const deleteUserFromCloud = async (email: string): Promise<boolean> => {
 };
 
 export const loadFromCloud = async (email: string): Promise<CloudResponse | null> => {
+  if (isChunkedBackupAvailable()) {
+    // Il documento completo può essere più recente (salvato dal web o da una versione precedente)
+    const [chunked, legacy] = await Promise.all([
+      CloudBackup.restore({ endpoint: CLOUD_API_URL, email }).catch(e => {
+        console.error("Errore ripristino incrementale:", e);
+        return null;
+      }),
+      loadLegacy(email)
+    ]);
+    if (chunked && !chunked.supported) chunkedBackupSupported = false;
+
+    if (chunked && chunked.supported && chunked.found && chunked.data) {
+      const legacySavedAt = legacy?.data.savedAt || 0;
+      if (legacy && legacySavedAt > (chunked.createdAt || 0)) {
+        console.log(`☁️ Documento completo più recente del backup a chunk (${new Date(legacySavedAt).toISOString()}): uso quello`);
+        return withoutStamp(legacy);
+      }
+      console.log(`☁️ Ripristino incrementale: ${chunked.downloadedChunks}/${chunked.chunks} chunk scaricati`);
+      return {
+        data: JSON.parse(chunked.data),
+        pinHash: chunked.pinHash || '',
+        pinSalt: chunked.pinSalt || ''
+      };
+    }
+    // Nessun backup a chunk (account salvato con la versione precedente): load completo
+    return legacy ? withoutStamp(legacy) : null;
+  }
+
+  const legacy = await loadLegacy(email);
+  return legacy ? withoutStamp(legacy) : null;
+};
+
+const withoutStamp = (response: CloudResponse & { data: LegacyAppData }): CloudResponse => {
+  const data: LegacyAppData = { ...response.data };
+  delete data.savedAt;
+  return { ...response, data };
+};
+
+const loadLegacy = async (email: string): Promise<(CloudResponse & { data: LegacyAppData }) | null> => {
   try {
     const response = await fetch(CLOUD_API_URL, {
       method: 'POST',
@@ -10,55 +10,73 @@ export interface DashboardMetrics {
     dateRangeLabel: string;
 }
 
+// YYYY-MM-DD key, comparable as a string (dates that are not zero-padded get normalized)
+const toDateKey = (date: string | undefined): string | undefined => {
+    if (!date) return undefined;
+    if (date.length === 10 && date[4] === '-' && date[7] === '-') return date;
+    const parsed = parseLocalYYYYMMDD(date);
+    return parsed ? toYYYYMMDD(parsed) : undefined;
+};
+
+export const formatDateRangeLabel = (start: Date, end: Date): string => {
+    const opts: Intl.DateTimeFormatOptions = { day: 'numeric', month: 'short' };
+    return `${start.toLocaleDateString('it-IT', opts)} - ${end.toLocaleDateString('it-IT', opts)}`;
+};
+
+/**
+ * Dashboard metrics in a single pass over the transactions.
+ * On Android useDashboardMetrics reads them from the native daily buckets instead:
+ * this is the web version, also used when the list is filtered.
+ */
 export const calculateDashboardMetrics = (
     expenses: Expense[],
     start: Date,
     end: Date
 ): DashboardMetrics => {
-    const validExpenses = expenses.filter(e => e.amount != null && !isNaN(Number(e.amount)));
-    const now = new Date();
-    const todayString = toYYYYMMDD(now);
-
-    const dailyTotal = validExpenses
-        .filter(expense => expense.date === todayString && expense.type === 'expense')
-        .reduce((acc, expense) => acc + Number(expense.amount), 0);
+    const todayKey = toYYYYMMDD(new Date());
+    const startKey = toYYYYMMDD(start);
+    const endKey = toYYYYMMDD(end);
 
-    const periodTransactions = validExpenses.filter(e => {
-        const expenseDate = parseLocalYYYYMMDD(e.date);
-        return expenseDate >= start && expenseDate <= end;
-    });
+    let totalExp = 0;
+    let totalInc = 0;
+    let totalAdj = 0;
+    let dailyTotal = 0;
+    const categoryTotals: Record<string, number> = {};
 
-    const periodExpenses = periodTransactions.filter(e => e.type === 'expense');
-    const periodIncome = periodTransactions.filter(e => e.type === 'income');
-    const periodAdjustments = periodTransactions.filter(e => e.type === 'adjustment');
+    for (const e of expenses) {
+        if (e.amount == null) continue;
+        const amount = Number(e.amount);
+        if (isNaN(amount)) continue;
 
-    const totalExp = periodExpenses.reduce((acc, e) => acc + Number(e.amount), 0);
-    const totalInc = periodIncome.reduce((acc, e) => acc + Number(e.amount), 0);
-    const totalAdj = periodAdjustments.reduce((acc, e) => acc + Number(e.amount), 0);
+        const dateKey = toDateKey(e.date);
+        if (!dateKey) continue;
 
-    const budget = totalInc - totalExp + totalAdj;
+        if (e.type === 'expense' && dateKey === todayKey) dailyTotal += amount;
+        if (dateKey < startKey || dateKey > endKey) continue;
 
-    const categoryTotals = periodExpenses.reduce((acc: Record<string, number>, expense) => {
-        const category = expense.category || 'Altro';
-        acc[category] = (acc[category] || 0) + Number(expense.amount);
-        return acc;
-    }, {} as Record<string, number>);
+        if (e.type === 'expense') {
+            totalExp += amount;
+            const category = e.category || 'Altro';
+            categoryTotals[category] = (categoryTotals[category] || 0) + amount;
+        } else if (e.type === 'income') {
+            totalInc += amount;
+        } else if (e.type === 'adjustment') {
+            totalAdj += amount;
+        }
+    }
 
     const sortedCategoryData = Object.entries(categoryTotals)
-        .map(([name, value]) => ({ name, value: value as number }))
+        .map(([name, value]) => ({ name, value }))
         .sort((a, b) => b.value - a.value);
 
-    // Default range label (can be overridden by caller)
-    const opts: Intl.DateTimeFormatOptions = { day: 'numeric', month: 'short' };
-    const rangeLabel = `${start.toLocaleDateString('it-IT', opts)} - ${end.toLocaleDateString('it-IT', opts)}`;
-
     return {
         totalExpenses: totalExp,
         totalIncome: totalInc,
-        netBudget: budget,
+        netBudget: totalInc - totalExp + totalAdj,
         dailyTotal,
         categoryData: sortedCategoryData,
-        dateRangeLabel: rangeLabel
+        // Default range label (can be overridden by caller)
+        dateRangeLabel: formatDateRangeLabel(start, end)
     };
 };
 
@@ -3,7 +3,9 @@ import { AutoTransaction } from '../types/transaction';
 
 export interface OfflineImage {
     id: string;
-    base64Image: string;
+    base64Image?: string; // Web / shared files: the image itself
+    uri?: string; // Android: app-private file written by the ReceiptImage plugin, read only when analyzed
+    hash?: string; // Android queue: SHA-256 of the stored blob
     mimeType: string;
     timestamp?: number;
     _isShared?: boolean; // Flag for shared images
@@ -103,6 +105,47 @@ export const getRawEvent = async (id: string): Promise<RawEvent | undefined> =>
     });
 };
 
+export const countRawEvents = async (): Promise<number> => {
+    return await withRetry(async (db) => {
+        return await db.count(STORE_RAW_EVENTS);
+    });
+};
+
+export const getAllRawEvents = async (): Promise<RawEvent[]> => {
+    return await withRetry(async (db) => {
+        return await db.getAll(STORE_RAW_EVENTS);
+    }) as RawEvent[];
+};
+
+// Oldest first: events no longer pending, received before olderThan
+export const getSettledRawEvents = async (olderThan: number, limit: number): Promise<RawEvent[]> => {
+    return await withRetry(async (db) => {
+        const events: RawEvent[] = [];
+        let cursor = await db.transaction(STORE_RAW_EVENTS).store.index('timestamp').openCursor(IDBKeyRange.upperBound(olderThan, true));
+        while (cursor && events.length < limit) {
+            const event = cursor.value as RawEvent;
+            if (event.status !== 'pending') events.push(event);
+            cursor = await cursor.continue();
+        }
+        return events;
+    });
+};
+
+// Deletes the given events unless they were updated in the meantime (e.g. copied to the archive)
+export const deleteRawEvents = async (events: RawEvent[]): Promise<number> => {
+    return await withRetry(async (db) => {
+        const tx = db.transaction(STORE_RAW_EVENTS, 'readwrite');
+        let deleted = 0;
+        for (const event of events) {
+            const existing = await tx.store.get(event.id) as RawEvent | undefined;
+            if (!existing || existing.status !== event.status || existing.processedTransactionId !== event.processedTransactionId) continue;
+            await tx.store.delete(event.id);
+            deleted++;
+        }
+        return deleted;
+    });
+};
+
 export const updateRawEventStatus = async (id: string, status: RawEvent['status'], error?: string, processedTransactionId?: string): Promise<void> => {
     await withRetry(async (db) => {
         const tx = db.transaction(STORE_RAW_EVENTS, 'readwrite');
@@ -130,6 +173,26 @@ export const getQueuedImages = async (): Promise<OfflineImage[]> => {
     }) as OfflineImage[];
 };
 
+/**
+ * One page of the queue without loading the other images (cursor over the keys).
+ * Newest first within the page: the store has no timestamp index.
+ */
+export const getQueuedImagesPage = async (offset: number, limit: number): Promise<{ items: OfflineImage[]; total: number }> => {
+    return await withRetry(async (db) => {
+        const tx = db.transaction(STORE_IMAGES, 'readonly');
+        const total = await tx.store.count();
+        const items: OfflineImage[] = [];
+        let cursor = await tx.store.openCursor();
+        if (cursor && offset > 0) cursor = await cursor.advance(offset);
+        while (cursor && items.length < limit) {
+            items.push(cursor.value as OfflineImage);
+            cursor = await cursor.continue();
+        }
+        items.sort((a, b) => (b.timestamp || 0) - (a.timestamp || 0));
+        return { items, total };
+    });
+};
+
 export const deleteImageFromQueue = async (id: string): Promise<void> => {
     await withRetry(async (db) => {
         await db.delete(STORE_IMAGES, id);
@@ -3,6 +3,9 @@ import { Expense } from '../types';
 import { Capacitor } from '@capacitor/core';
 import { Filesystem, Directory } from '@capacitor/filesystem';
 import { Share } from '@capacitor/share';
+import ReceiptImage from '../plugins/receipt-image';
+import Export, { ExportCell, ExportFormat, ExportResult } from '../plugins/export';
+import type { OfflineImage } from './db';
 
 /**
  * Converte un ArrayBuffer in base64
@@ -81,41 +84,6 @@ export const textToImage = (text: string): Promise<string> => {
   });
 };
 
-export const processFileToImage = async (file: File): Promise<{ base64: string; mimeType: string }> => {
-  let textContent = '';
-
-  if (file.name.endsWith('.csv')) {
-    textContent = await file.text();
-  } else if (file.name.match(/\.(xlsx|xls)$/i)) {
-    // Leggi Excel usando SheetJS
-    const buffer = await file.arrayBuffer();
-    const workbook = XLSX.read(buffer, { type: 'array' });
-    const sheetName = workbook.SheetNames[0];
-    const sheet = workbook.Sheets[sheetName];
-    // Converti in CSV per semplicità di rappresentazione testuale
-    textContent = XLSX.utils.sheet_to_csv(sheet);
-  } else {
-    // Se è già un'immagine, la processiamo standard
-    if (file.type.startsWith('image/')) {
-      return processImageFile(file);
-    }
-    throw new Error('Formato file non supportato. Usa CSV, Excel o Immagini.');
-  }
-
-  // Se il contenuto è vuoto
-  if (!textContent.trim()) {
-    throw new Error('Il file sembra vuoto.');
-  }
-
-  // Converti il testo CSV in un'immagine "screenshot"
-  const base64Image = await textToImage(textContent);
-
-  return {
-    base64: base64Image,
-    mimeType: 'image/png',
-  };
-};
-
 export const processImageFile = (file: File): Promise<{ base64: string; mimeType: string }> => {
   return new Promise((resolve, reject) => {
     const img = new Image();
@@ -153,75 +121,217 @@ export const pickImage = (source: 'camera' | 'gallery'): Promise<File> => {
   });
 };
 
+export type PickedImage = Pick<OfflineImage, 'base64Image' | 'uri' | 'mimeType'>;
+
+const hasNativeImagePipeline = () => Capacitor.isNativePlatform() && Capacitor.isPluginAvailable('ReceiptImage');
+
+/**
+ * ✅ NEW: Scatta o sceglie un'immagine già ridimensionata.
+ * ANDROID: decodifica ridotta e compressione native (ReceiptImage), torna solo l'URI del file
+ * WEB: input file + canvas come prima
+ */
+export const pickReceiptImage = (source: 'camera' | 'gallery'): Promise<PickedImage> => {
+  if (hasNativeImagePipeline()) {
+    return ReceiptImage.pickImage({ source }).then(image => {
+      console.log(`🖼️ Immagine ${image.originalWidth}x${image.originalHeight} -> ${image.width}x${image.height} (${Math.round(image.bytes / 1024)} KB, ${image.elapsedMs} ms)`);
+      return { uri: image.uri, mimeType: image.mimeType };
+    });
+  }
+  // L'input file va aperto subito, dentro il gesto dell'utente
+  return pickImage(source)
+    .then(processImageFile)
+    .then(({ base64, mimeType }) => ({ base64Image: base64, mimeType }));
+};
+
+/**
+ * ✅ NEW: Base64 di un'immagine scelta con pickReceiptImage (legge il file compresso, ~100-300 KB)
+ */
+export const readImageBase64 = async (image: PickedImage): Promise<string> => {
+  if (image.base64Image) return image.base64Image;
+  if (!image.uri) throw new Error('Immagine mancante');
+  const { data } = await Filesystem.readFile({ path: image.uri });
+  return typeof data === 'string' ? data : arrayBufferToBase64(await data.arrayBuffer());
+};
+
+/**
+ * ✅ NEW: src per <img> senza passare dal base64
+ */
+export const imageSrc = (image: PickedImage): string =>
+  image.uri ? Capacitor.convertFileSrc(image.uri) : `data:${image.mimeType};base64,${image.base64Image}`;
+
+/**
+ * ✅ NEW: Elimina il file nativo di un'immagine non più necessaria
+ */
+export const releaseImage = async (image: PickedImage): Promise<void> => {
+  if (!image.uri) return;
+  try {
+    await ReceiptImage.deleteImage({ uri: image.uri });
+  } catch (e) {
+    console.warn('⚠️ Impossibile eliminare immagine:', e);
+  }
+};
+
+/**
+ * ✅ NEW: Scatta/sceglie uno scontrino e lo restituisce in base64 (allegati delle spese)
+ */
+export const pickReceiptBase64 = (source: 'camera' | 'gallery'): Promise<string> => {
+  return pickReceiptImage(source).then(async image => {
+    try {
+      return await readImageBase64(image);
+    } finally {
+      releaseImage(image);
+    }
+  });
+};
+
+const EXPORT_COLUMNS = ['Data', 'Ora', 'Importo', 'Descrizione', 'Categoria', 'Sottocategoria', 'Conto', 'Tags', 'Frequenza'];
+const EXPORT_PAGE_SIZE = 500;
+
+const toExportRow = (e: Expense): ExportCell[] => [
+  e.date,
+  e.time || '',
+  e.amount,
+  e.description,
+  e.category,
+  e.subcategory || '',
+  e.accountId,
+  e.tags ? e.tags.join(', ') : '',
+  e.frequency === 'recurring' ? 'Ricorrente' : 'Singola'
+];
+
+const hasNativeExport = () => Capacitor.isNativePlatform() && Capacitor.isPluginAvailable('Export');
+
 /**
- * Esporta le spese in formato Excel o JSON
- * MOBILE: Usa Capacitor Filesystem + Share
- * WEB: Usa Blob download tradizionale
+ * ✅ NEW: Export nativo in streaming: le righe vanno al file una pagina alla volta,
+ * il workbook non esiste mai per intero in memoria
+ */
+const streamExport = async (
+  expenses: Expense[],
+  format: ExportFormat,
+  fileName: string,
+  onProgress?: (fraction: number) => void
+): Promise<ExportResult> => {
+  const { exportId } = await Export.beginExport({
+    format,
+    fileName,
+    columns: EXPORT_COLUMNS,
+    sheetName: 'Spese',
+    totalRows: expenses.length
+  });
+  try {
+    for (let i = 0; i < expenses.length; i += EXPORT_PAGE_SIZE) {
+      const progress = await Export.appendRows({
+        exportId,
+        rows: expenses.slice(i, i + EXPORT_PAGE_SIZE).map(toExportRow)
+      });
+      onProgress?.(progress.progress);
+    }
+    const result = await Export.finishExport({ exportId });
+    console.log(`📤 Export ${format}: ${result.rows} righe, ${Math.round(result.bytes / 1024)} KB in ${result.elapsedMs} ms`);
+    return result;
+  } catch (e) {
+    await Export.cancelExport({ exportId }).catch(() => undefined);
+    throw e;
+  }
+};
+
+// CSV come quello nativo: ';', virgola decimale, BOM per Excel
+const toCsv = (expenses: Expense[]): string => {
+  const quote = (s: string) => /[;"\r\n]/.test(s) ? `"${s.replace(/"/g, '""')}"` : s;
+  const cell = (v: ExportCell) => {
+    if (v === null) return '';
+    if (typeof v === 'number') return String(v).replace('.', ',');
+    const text = String(v);
+    return quote(/^[=+\-@]/.test(text) ? `'${text}` : text);
+  };
+  const lines = [EXPORT_COLUMNS.map(quote).join(';')];
+  for (const e of expenses) lines.push(toExportRow(e).map(cell).join(';'));
+  return '\uFEFF' + lines.join('\r\n') + '\r\n';
+};
+
+const downloadBlob = (blob: Blob, fileName: string) => {
+  const url = URL.createObjectURL(blob);
+  const a = document.createElement('a');
+  a.href = url;
+  a.download = fileName;
+  document.body.appendChild(a);
+  a.click();
+  document.body.removeChild(a);
+  URL.revokeObjectURL(url);
+};
+
+/**
+ * Esporta le spese in formato Excel, CSV o JSON
+ * MOBILE: Excel/CSV scritti in streaming dal plugin nativo, poi condivisi per URI
+ * WEB: Blob download tradizionale
  * @returns Promise con { success: boolean, message: string }
  */
-export const exportExpenses = async (expenses: Expense[], format: 'excel' | 'json' = 'excel'): Promise<{ success: boolean; message: string }> => {
+export const exportExpenses = async (
+  expenses: Expense[],
+  format: 'excel' | 'csv' | 'json' = 'excel',
+  onProgress?: (fraction: number) => void
+): Promise<{ success: boolean; message: string }> => {
   const dateStr = new Date().toISOString().slice(0, 10);
   const isNative = Capacitor.isNativePlatform();
 
-  if (format === 'excel') {
+  if (format === 'excel' || format === 'csv') {
+    const label = format === 'excel' ? 'Excel' : 'CSV';
+    const extension = format === 'excel' ? 'xlsx' : 'csv';
+    const fileName = `Spese_Export_${dateStr}.${extension}`;
     try {
-      const rows = expenses.map(e => ({
-        Data: e.date,
-        Ora: e.time || '',
-        Importo: e.amount,
-        Descrizione: e.description,
-        Categoria: e.category,
-        Sottocategoria: e.subcategory || '',
-        Conto: e.accountId,
-        Tags: e.tags ? e.tags.join(', ') : '',
-        Frequenza: e.frequency === 'recurring' ? 'Ricorrente' : 'Singola'
-      }));
-
-      const worksheet = XLSX.utils.json_to_sheet(rows);
-      const workbook = XLSX.utils.book_new();
-      XLSX.utils.book_append_sheet(workbook, worksheet, "Spese");
-      const excelBuffer = XLSX.write(workbook, { bookType: 'xlsx', type: 'array' });
-      const fileName = `Spese_Export_${dateStr}.xlsx`;
-
-      if (isNative) {
-        // MOBILE: Salva in cache + condividi
-        const base64Data = arrayBufferToBase64(excelBuffer);
-
-        const result = await Filesystem.writeFile({
-          path: fileName,
-          data: base64Data,
-          directory: Directory.Cache
-        });
+      if (hasNativeExport()) {
+        // MOBILE: Scrittura nativa in cache + condividi
+        const result = await streamExport(expenses, extension, fileName, onProgress);
 
         await Share.share({
-          title: 'Esporta Spese Excel',
-          text: `File Excel delle spese del ${dateStr}`,
+          title: `Esporta Spese ${label}`,
+          text: `File ${label} delle spese del ${dateStr}`,
           url: result.uri,
-          dialogTitle: 'Salva o Condividi Excel'
+          dialogTitle: `Salva o Condividi ${label}`
         });
 
-        return { success: true, message: `Salvataggio Excel riuscito` };
-      } else {
-        // WEB: Blob download
-        const blob = new Blob([excelBuffer], {
+        return { success: true, message: `Salvataggio ${label} riuscito` };
+      }
+
+      let blob: Blob;
+      if (format === 'excel') {
+        const worksheet = XLSX.utils.aoa_to_sheet([EXPORT_COLUMNS, ...expenses.map(toExportRow)]);
+        const workbook = XLSX.utils.book_new();
+        XLSX.utils.book_append_sheet(workbook, worksheet, "Spese");
+        const excelBuffer = XLSX.write(workbook, { bookType: 'xlsx', type: 'array' });
+
+        if (isNative) {
+          // MOBILE senza plugin: Salva in cache + condividi
+          const result = await Filesystem.writeFile({
+            path: fileName,
+            data: arrayBufferToBase64(excelBuffer),
+            directory: Directory.Cache
+          });
+
+          await Share.share({
+            title: 'Esporta Spese Excel',
+            text: `File Excel delle spese del ${dateStr}`,
+            url: result.uri,
+            dialogTitle: 'Salva o Condividi Excel'
+          });
+
+          return { success: true, message: `Salvataggio Excel riuscito` };
+        }
+        blob = new Blob([excelBuffer], {
           type: 'application/vnd.openxmlformats-officedocument.spreadsheetml.sheet'
         });
-        const url = URL.createObjectURL(blob);
-        const a = document.createElement('a');
-        a.href = url;
-        a.download = fileName;
-        document.body.appendChild(a);
-        a.click();
-        document.body.removeChild(a);
-        URL.revokeObjectURL(url);
-
-        return { success: true, message: `File Excel scaricato: ${fileName}` };
+      } else {
+        blob = new Blob([toCsv(expenses)], { type: 'text/csv;charset=utf-8' });
       }
+
+      // WEB: Blob download
+      downloadBlob(blob, fileName);
+      return { success: true, message: `File ${label} scaricato: ${fileName}` };
     } catch (e) {
-      console.error("Export Excel failed", e);
+      console.error(`Export ${label} failed`, e);
       return {
         success: false,
-        message: `Errore export Excel: ${e instanceof Error ? e.message : 'Errore sconosciuto'}`
+        message: `Errore export ${label}: ${e instanceof Error ? e.message : 'Errore sconosciuto'}`
       };
     }
   } else if (format === 'json') {